@@ -0,0 +1,81 @@
+package com.db.clm.kyc.ai.nexus.agent;
+
+import com.google.genai.Client;
+import dev.langchain4j.data.message.Content;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * One extraction run over bound documents, with one {@link GeminiContextCache}.
+ *
+ * <p>The agents that send the documents — extractor, source classifier, CSM
+ * classifier, title extractor and critic — are built for the run and bound to its
+ * documents and cache, so each system prompt + documents prefix is cached once and
+ * reused by every call of the run (the critic's loop iterations included). The cache
+ * is closed when the run ends, whether the workflow returned or threw.</p>
+ *
+ * <p>Bound documents and cache are agent state, so agents are never shared between
+ * runs: concurrent runs would overwrite each other's documents and handles. An agent
+ * already bound to another run's cache is rejected.</p>
+ *
+ * <pre>
+ * ContentAwareExtractionRun run = new ContentAwareExtractionRun(client, "gemini-2.5-pro", Duration.ofMinutes(30));
+ * Object output = run.execute(documents,
+ *         () -> new ContentAwareExtractionRun.Agents(
+ *                 agentFactory.createContentAware(extractorSpec), ...),
+ *         agents -> workflowOf(agents), Map.of("fileNames", fileNames));
+ * </pre>
+ */
+@Slf4j
+public class ContentAwareExtractionRun {
+
+    /** The agents of a run that send the bound documents. */
+    public record Agents(ContentAwareUntypedAgent extractor,
+                         ContentAwareUntypedAgent sourceClassifier,
+                         ContentAwareUntypedAgent csmClassifier,
+                         ContentAwareUntypedAgent titleExtractor,
+                         ContentAwareUntypedAgent critic) {
+
+        List<ContentAwareUntypedAgent> all() {
+            return List.of(extractor, sourceClassifier, csmClassifier, titleExtractor, critic);
+        }
+    }
+
+    private final Client client;
+    private final String modelName;
+    private final Duration ttl;
+
+    /**
+     * @param ttl handle lifetime; only a backstop, handles are deleted when the run ends
+     */
+    public ContentAwareExtractionRun(Client client, String modelName, Duration ttl) {
+        this.client = client;
+        this.modelName = modelName;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Builds the run's agents, binds {@code documents} and a new context cache to
+     * them, invokes their workflow and deletes the cache's handles.
+     *
+     * @param newAgents builds new agent instances — called once per run
+     * @param workflow  builds the run's workflow from its agents
+     */
+    public Object execute(List<Content> documents, Supplier<Agents> newAgents,
+                          Function<Agents, UntypedAgent> workflow, Map<String, Object> input) {
+        Agents agents = newAgents.get();
+        try (GeminiContextCache contextCache = new GeminiContextCache(client, modelName, ttl)) {
+            for (ContentAwareUntypedAgent agent : agents.all()) {
+                agent.withBoundContent(documents).withContextCache(contextCache);
+            }
+            log.info("Content-aware run — {} documents, context cache on {} agents",
+                    documents.size(), agents.all().size());
+            return workflow.apply(agents).invoke(input);
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package com.db.clm.kyc.ai.nexus.agent;
 
+import com.eainde.agent.engine.LimitedChatModel;
+import com.eainde.agent.thread.AdaptiveConcurrencyLimiter;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.Schema;
+import com.google.genai.types.ThinkingConfig;
 import dev.langchain4j.data.message.*;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
 import dev.langchain4j.model.chat.response.ChatResponse;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * ┌───────────────────────┬──────┬──────┬──────┬───────┬──────────┬────────────┐
@@ -36,9 +45,30 @@ public class ContentAwareUntypedAgent implements UntypedAgent {
     private final String agentName;
     private final String outputKey;
 
+    // Limiter key of the uncached path — the model endpoint chatModel calls
+    // (blank = chatModel's default model name); the cached path uses the cache's model
+    private final String modelName;
+
+    // csm.llm-limiter.* settings (ChatModelLimiterConfig) — the first caller of an
+    // endpoint fixes its limiter, so these must be the configured ones
+    private final AdaptiveConcurrencyLimiter.Settings limiterSettings;
+
+    // Generation settings from the agent's spec (table above) — the cached path
+    // bypasses chatModel, so it sends them itself; null = model default
+    private final Double temperature;
+    private final Double topP;
+    private final Integer topK;
+    private final Integer seed;
+    private final Integer thinkingBudget;
+    private final Integer maxOutputTokens;
+    private final String responseSchema;   // Gemini schema JSON; null = free text
+
     // Pre-bound at construction time — before passing to sequenceBuilder
     private List<Content> boundContents;
 
+    // Per-run cached-content handles — system prompt + bound files sent once per run
+    private GeminiContextCache contextCache;
+
     // ----------------------------------------------------------------
     // Fluent binder — call BEFORE handing to sequenceBuilder/parallel/loop
     // ----------------------------------------------------------------
@@ -47,10 +77,28 @@ public class ContentAwareUntypedAgent implements UntypedAgent {
         return this;
     }
 
+    // Call with the run's cache; the run closes the cache when it ends.
+    // One run per agent — a second run's cache would swap handles under the first
+    public ContentAwareUntypedAgent withContextCache(GeminiContextCache contextCache) {
+        if (this.contextCache != null && this.contextCache != contextCache) {
+            throw new IllegalStateException("[" + agentName + "] is bound to another run's context cache"
+                    + " — build new agents for each run");
+        }
+        this.contextCache = contextCache;
+        return this;
+    }
+
     // ----------------------------------------------------------------
     // Core internal execution
     // ----------------------------------------------------------------
     private String executeInternal(Map<String, Object> input) {
+        Optional<String> cachedPrefix = contextCache != null && boundContents != null && !boundContents.isEmpty()
+                ? contextCache.handleFor(systemInstruction, boundContents)
+                : Optional.empty();
+        if (cachedPrefix.isPresent()) {
+            return executeCached(cachedPrefix.get(), input);
+        }
+
         List<Content> fullContents = new ArrayList<>();
 
         // 1. DB prompt text as instruction prefix
@@ -78,13 +126,93 @@ public class ContentAwareUntypedAgent implements UntypedAgent {
                 fullContents.size(),
                 input != null ? input.keySet() : "none");
 
-        ChatResponse response = chatModel.chat(systemMessage, userMessage);
-        String result = response.aiMessage().text();
+        // A chat model bean is already behind the limiter (ChatModelLimiterConfig)
+        ChatResponse response = chatModel instanceof LimitedChatModel
+                ? chatModel.chat(systemMessage, userMessage)
+                : limited(chatModelName(), () -> chatModel.chat(systemMessage, userMessage));
+        String result = textOrEmpty(response.aiMessage().text());
+
+        log.debug("[{}] response length: {}", agentName, result.length());
+        return result;
+    }
+
+    // ----------------------------------------------------------------
+    // Cached execution — system prompt + bound files live in the handle,
+    // only the prompt text and chained inputs are sent (after the files)
+    // ----------------------------------------------------------------
+    private String executeCached(String handle, Map<String, Object> input) {
+        List<Content> suffix = new ArrayList<>();
+        suffix.add(TextContent.from(userPromptText));
+        if (input != null && !input.isEmpty()) {
+            input.values().stream()
+                    .filter(v -> v instanceof String)
+                    .map(v -> TextContent.from((String) v))
+                    .forEach(suffix::add);
+        }
+
+        log.debug("[{}] invoking with cached prefix {}, {} content items, inputKeys={}",
+                agentName,
+                handle,
+                suffix.size(),
+                input != null ? input.keySet() : "none");
+
+        String result = textOrEmpty(limited(contextCache.modelName(),
+                () -> contextCache.generate(handle, suffix, generationConfig())).text());
 
         log.debug("[{}] response length: {}", agentName, result.length());
         return result;
     }
 
+    // ----------------------------------------------------------------
+    // Spec settings as a Gemini config — no system instruction, it lives
+    // in the cached handle
+    // ----------------------------------------------------------------
+    private GenerateContentConfig generationConfig() {
+        GenerateContentConfig.Builder config = GenerateContentConfig.builder();
+        if (temperature != null) config.temperature(temperature.floatValue());
+        if (topP != null) config.topP(topP.floatValue());
+        if (topK != null) config.topK(topK.floatValue());
+        if (seed != null) config.seed(seed);
+        if (maxOutputTokens != null) config.maxOutputTokens(maxOutputTokens);
+        if (thinkingBudget != null) {
+            config.thinkingConfig(ThinkingConfig.builder().thinkingBudget(thinkingBudget).build());
+        }
+        if (responseSchema != null) {
+            config.responseMimeType("application/json").responseSchema(Schema.fromJson(responseSchema));
+        }
+        return config.build();
+    }
+
+    // ----------------------------------------------------------------
+    // A blocked or empty candidate has no text — logged, returned as ""
+    // ----------------------------------------------------------------
+    private String textOrEmpty(String text) {
+        if (text == null) {
+            log.warn("[{}] model returned no text", agentName);
+            return "";
+        }
+        return text;
+    }
+
+    // ----------------------------------------------------------------
+    // Every model call takes a slot from the JVM-wide limiter of its
+    // endpoint, queued with the caller's workflow
+    // ----------------------------------------------------------------
+    private <T> T limited(String endpoint, Supplier<T> call) {
+        AdaptiveConcurrencyLimiter.Settings settings = limiterSettings != null
+                ? limiterSettings : AdaptiveConcurrencyLimiter.Settings.DEFAULT;
+        return AdaptiveConcurrencyLimiter.forModel(endpoint, settings)
+                .call(MDC.get(AdaptiveConcurrencyLimiter.WORKFLOW_MDC_KEY), call);
+    }
+
+    private String chatModelName() {
+        if (modelName != null && !modelName.isBlank()) {
+            return modelName;
+        }
+        ChatRequestParameters defaults = chatModel.defaultRequestParameters();
+        return defaults != null ? defaults.modelName() : null;
+    }
+
     // ----------------------------------------------------------------
     // UntypedAgent contract — method 1
     // Called by sequenceBuilder / parallelBuilder / loopBuilder
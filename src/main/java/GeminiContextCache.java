@@ -0,0 +1,258 @@
+package com.db.clm.kyc.ai.nexus.agent;
+
+import com.google.genai.Client;
+import com.google.genai.types.CachedContent;
+import com.google.genai.types.Content;
+import com.google.genai.types.CreateCachedContentConfig;
+import com.google.genai.types.DeleteCachedContentConfig;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.PdfFileContent;
+import dev.langchain4j.data.message.TextContent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gemini cached-content handles for one extraction run.
+ *
+ * <p>Every agent of a run sends the same bound documents, and each agent re-sends its
+ * long system prompt on every call (the critic once per loop iteration). A handle
+ * stores system prompt + documents on the Gemini side once; calls made with it send
+ * only the agent's own prompt text and inputs, and the cached tokens are neither
+ * prefilled again nor billed at the full input rate.</p>
+ *
+ * <p>{@link ContentAwareExtractionRun} opens one per run, binds it to agents built
+ * for that run and closes it when the run ends:</p>
+ *
+ * <pre>
+ * try (GeminiContextCache cache = new GeminiContextCache(client, "gemini-2.5-pro", Duration.ofMinutes(30))) {
+ *     extractor.withBoundContent(documents).withContextCache(cache);
+ *     critic.withBoundContent(documents).withContextCache(cache);
+ *     ... run ...
+ * }   // handles deleted here; later calls send the full prompt
+ * </pre>
+ *
+ * <ul>
+ *   <li>Keyed by document hash + system prompt hash — Gemini does not accept a
+ *       system instruction next to a cached content, so agents with different
+ *       system prompts get different handles over the same documents</li>
+ *   <li>A handle is created on first use and shared by every agent and call with
+ *       the same key; concurrent first uses wait for the one creation</li>
+ *   <li>{@link #close()} deletes every handle of the run; the TTL only guards
+ *       against a run that never closes</li>
+ *   <li>If a handle cannot be created (e.g. the prefix is below the model's
+ *       minimum cacheable size) the key is remembered as uncacheable and callers
+ *       fall back to sending the full prompt</li>
+ * </ul>
+ */
+@Slf4j
+public class GeminiContextCache implements AutoCloseable {
+
+    /** The Gemini calls made by the cache — the SDK client's, or a stub in tests. */
+    interface Endpoint {
+
+        CachedContent create(String model, CreateCachedContentConfig config);
+
+        void delete(String name, DeleteCachedContentConfig config);
+
+        GenerateContentResponse generate(String model, List<Content> contents, GenerateContentConfig config);
+
+        static Endpoint of(Client client) {
+            return new Endpoint() {
+                @Override
+                public CachedContent create(String model, CreateCachedContentConfig config) {
+                    return client.caches.create(model, config);
+                }
+
+                @Override
+                public void delete(String name, DeleteCachedContentConfig config) {
+                    client.caches.delete(name, config);
+                }
+
+                @Override
+                public GenerateContentResponse generate(String model, List<Content> contents,
+                                                        GenerateContentConfig config) {
+                    return client.models.generateContent(model, contents, config);
+                }
+            };
+        }
+    }
+
+    private final Endpoint endpoint;
+    private final String modelName;
+    private final Duration ttl;
+
+    /** key → handle name, completed by the first caller; empty when the prefix could not be cached. */
+    private final Map<String, CompletableFuture<Optional<String>>> handles = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    public GeminiContextCache(Client client, String modelName, Duration ttl) {
+        this(Endpoint.of(client), modelName, ttl);
+    }
+
+    GeminiContextCache(Endpoint endpoint, String modelName, Duration ttl) {
+        this.endpoint = endpoint;
+        this.modelName = modelName;
+        this.ttl = ttl;
+    }
+
+    /**
+     * The handle caching {@code systemInstruction} + {@code documents}, created on
+     * first use.
+     *
+     * @return the cached-content name, or empty if this prefix cannot be cached or
+     *         the cache is closed
+     */
+    public Optional<String> handleFor(String systemInstruction, List<dev.langchain4j.data.message.Content> documents) {
+        if (closed) {
+            return Optional.empty();
+        }
+        String key = hash(documents) + ":" + hash(systemInstruction);
+        CompletableFuture<Optional<String>> handle = handles.get(key);
+        if (handle == null) {
+            CompletableFuture<Optional<String>> created = new CompletableFuture<>();
+            handle = handles.putIfAbsent(key, created);
+            if (handle == null) {
+                // Created outside the map — the remote call never holds up other keys;
+                // concurrent callers with this key wait for it below
+                try {
+                    created.complete(create(key, systemInstruction, documents));
+                } finally {
+                    created.complete(Optional.empty());
+                }
+                handle = created;
+            }
+        }
+        return handle.join();
+    }
+
+    /**
+     * Generates with the cached prefix {@code handle}; {@code contents} are sent after it.
+     *
+     * @param config the agent's generation settings, without a system instruction
+     */
+    public GenerateContentResponse generate(String handle, List<dev.langchain4j.data.message.Content> contents,
+                                            GenerateContentConfig config) {
+        GenerateContentConfig withCache = (config != null ? config.toBuilder() : GenerateContentConfig.builder())
+                .cachedContent(handle)
+                .build();
+        GenerateContentResponse response = endpoint.generate(modelName, List.of(userContent(contents)), withCache);
+        response.usageMetadata()
+                .flatMap(usage -> usage.cachedContentTokenCount())
+                .ifPresent(cached -> log.debug("[{}] {} input tokens served from cache", handle, cached));
+        return response;
+    }
+
+    /** @return the model the handles are created for — the endpoint of cached calls */
+    public String modelName() {
+        return modelName;
+    }
+
+    /** Deletes every handle created by this run; no handle is created after this. */
+    @Override
+    public void close() {
+        closed = true;
+        handles.values().forEach(handle -> handle.join().ifPresent(this::delete));
+        handles.clear();
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private Optional<String> create(String key, String systemInstruction,
+                                    List<dev.langchain4j.data.message.Content> documents) {
+        try {
+            CachedContent cached = endpoint.create(modelName, CreateCachedContentConfig.builder()
+                    .systemInstruction(Content.fromParts(Part.fromText(systemInstruction)))
+                    .contents(List.of(userContent(documents)))
+                    .displayName("csm-" + key.substring(0, 12))
+                    .ttl(ttl)
+                    .build());
+            Optional<String> name = cached.name();
+            log.info("Context cache created — {} ({} documents)", name.orElse("?"), documents.size());
+            return name;
+        } catch (RuntimeException e) {
+            log.warn("Context cache not created — sending full prompts for this prefix: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void delete(String name) {
+        try {
+            endpoint.delete(name, DeleteCachedContentConfig.builder().build());
+            log.debug("Context cache deleted — {}", name);
+        } catch (RuntimeException e) {
+            log.warn("Context cache {} not deleted — expires with its TTL: {}", name, e.getMessage());
+        }
+    }
+
+    private static Content userContent(List<dev.langchain4j.data.message.Content> contents) {
+        List<Part> parts = new ArrayList<>();
+        for (dev.langchain4j.data.message.Content content : contents) {
+            parts.add(toPart(content));
+        }
+        return Content.builder().role("user").parts(parts).build();
+    }
+
+    private static Part toPart(dev.langchain4j.data.message.Content content) {
+        if (content instanceof TextContent text) {
+            return Part.fromText(text.text());
+        }
+        if (content instanceof PdfFileContent pdf) {
+            return pdf.pdfFile().base64Data() != null
+                    ? Part.fromBytes(Base64.getDecoder().decode(pdf.pdfFile().base64Data()), "application/pdf")
+                    : Part.fromUri(pdf.pdfFile().url().toString(), "application/pdf");
+        }
+        if (content instanceof ImageContent image) {
+            return image.image().base64Data() != null
+                    ? Part.fromBytes(Base64.getDecoder().decode(image.image().base64Data()), image.image().mimeType())
+                    : Part.fromUri(image.image().url().toString(), image.image().mimeType());
+        }
+        throw new IllegalArgumentException("Unsupported content type for context cache: " + content.type());
+    }
+
+    private static String hash(List<dev.langchain4j.data.message.Content> documents) {
+        MessageDigest digest = sha256();
+        for (dev.langchain4j.data.message.Content content : documents) {
+            String value = switch (content) {
+                case TextContent text -> text.text();
+                case PdfFileContent pdf -> String.valueOf(pdf.pdfFile().base64Data() != null
+                        ? pdf.pdfFile().base64Data() : pdf.pdfFile().url());
+                case ImageContent image -> String.valueOf(image.image().base64Data() != null
+                        ? image.image().base64Data() : image.image().url());
+                default -> content.toString();
+            };
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String hash(String text) {
+        return HexFormat.of().formatHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -5,6 +5,7 @@ package com.db.clm.kyc.ai.agents;
 import com.db.clm.kyc.ai.config.AgentFactory;
 import com.db.clm.kyc.ai.config.AgentSpec;
 import com.db.clm.kyc.ai.prompt.AgentNames;
+import com.eainde.agent.engine.AgentCache;
 import dev.langchain4j.agentic.AgenticServices;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.observability.AgentMonitor;
@@ -99,6 +100,7 @@ public class CsmExtractionSubWorkflowConfigV5 {
     private static final double EXTRACTION_QUALITY_THRESHOLD   = 0.85;
 
     private final AgentFactory agentFactory;
+    private final AgentCache agentCache;
 
     private static final AgentMonitor monitor = new AgentMonitor();
 
@@ -222,17 +224,18 @@ public class CsmExtractionSubWorkflowConfigV5 {
         log.info("Building CSM extraction sub-workflow V5 (7-agent pipeline)...");
 
         // ── Sequential agents (Phases 1–5) ──────────────────────────────
-        UntypedAgent sourceClassifier = agentFactory.create(SOURCE_CLASSIFIER);
-        UntypedAgent personExtractor  = agentFactory.create(PERSON_EXTRACTOR);
-        UntypedAgent csmClassifier    = agentFactory.create(CSM_CLASSIFIER);
-        UntypedAgent scorer           = agentFactory.create(SCORER);
-        UntypedAgent outputAssembler  = agentFactory.create(OUTPUT_ASSEMBLER);
+        // (through AgentCache — opted-in agents get the cached / single-flight model)
+        UntypedAgent sourceClassifier = agentCache.create(SOURCE_CLASSIFIER);
+        UntypedAgent personExtractor  = agentCache.create(PERSON_EXTRACTOR);
+        UntypedAgent csmClassifier    = agentCache.create(CSM_CLASSIFIER);
+        UntypedAgent scorer           = agentCache.create(SCORER);
+        UntypedAgent outputAssembler  = agentCache.create(OUTPUT_ASSEMBLER);
 
         // ── First critic (Phase 6a) — runs ONCE before loop ─────────────
         // This bootstraps "extractionReview" so it exists when the loop starts.
         // Without this, the loop's OUTPUT_REFINER would crash because its
         // prompt contains {{extractionReview}} which doesn't exist yet.
-        UntypedAgent firstCritic = agentFactory.create(FIRST_CRITIC);
+        UntypedAgent firstCritic = agentCache.create(FIRST_CRITIC);
 
         // ── Refinement loop (Phases 7 + 6b) ─────────────────────────────
         // Exit check runs FIRST each iteration:
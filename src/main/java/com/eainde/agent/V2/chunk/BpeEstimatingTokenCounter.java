@@ -0,0 +1,128 @@
+package com.eainde.agent.V2.chunk;
+
+import java.util.Locale;
+
+/**
+ * BPE-style {@link TokenCounter} that approximates how subword tokenizers split text,
+ * without loading a vocabulary.
+ *
+ * <p>The text is scanned once and classified into runs; each run is charged by the
+ * model family's profile:</p>
+ * <pre>
+ *   Latin letter run of length L   → ceil(L / latinCharsPerToken)
+ *   other-script letter run        → ceil(L / otherCharsPerToken)   (Cyrillic, Greek, Arabic…)
+ *   digit run                      → ceil(L / 3)                     (digits merge in groups of ≤ 3)
+ *   CJK / kana / hangul character  → cjkTokensPerChar each
+ *   punctuation / symbol           → 1 each
+ *   whitespace                     → 0 (merged into the following word piece)
+ * </pre>
+ *
+ * <p>Registry extracts mix German, Polish, Japanese and Chinese text, where the plain
+ * word heuristic under-counts badly (CJK has no spaces). This estimator tracks real
+ * tokenizers much more closely on such documents while remaining allocation-free.</p>
+ */
+final class BpeEstimatingTokenCounter implements TokenCounter {
+
+    /** Per-family tokenizer profile. */
+    private record Profile(String family, double latinCharsPerToken,
+                           double otherCharsPerToken, double cjkTokensPerChar) {
+    }
+
+    private static final Profile GEMINI  = new Profile("gemini", 4.2, 2.6, 0.9);
+    private static final Profile GPT     = new Profile("gpt", 4.0, 2.2, 1.1);
+    private static final Profile DEFAULT = new Profile("default", 3.8, 2.0, 1.2);
+
+    private static final int DIGITS_PER_TOKEN = 3;
+
+    private final Profile profile;
+
+    private BpeEstimatingTokenCounter(Profile profile) {
+        this.profile = profile;
+    }
+
+    static BpeEstimatingTokenCounter forModel(String modelName) {
+        String name = modelName.toLowerCase(Locale.ROOT);
+        if (name.startsWith("gemini")) return new BpeEstimatingTokenCounter(GEMINI);
+        if (name.startsWith("gpt") || name.startsWith("o1") || name.startsWith("o3")) {
+            return new BpeEstimatingTokenCounter(GPT);
+        }
+        return new BpeEstimatingTokenCounter(DEFAULT);
+    }
+
+    @Override
+    public int count(CharSequence text, int start, int end) {
+        double tokens = 0;
+        int latinRun = 0;
+        int otherRun = 0;
+        int digitRun = 0;
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            // Classify; surrogate pairs are rare in registry text and counted per char
+            int kind = classify(c);
+            if (kind != LATIN_LETTER && latinRun > 0) {
+                tokens += Math.ceil(latinRun / profile.latinCharsPerToken());
+                latinRun = 0;
+            }
+            if (kind != OTHER_LETTER && otherRun > 0) {
+                tokens += Math.ceil(otherRun / profile.otherCharsPerToken());
+                otherRun = 0;
+            }
+            if (kind != DIGIT && digitRun > 0) {
+                tokens += Math.ceil((double) digitRun / DIGITS_PER_TOKEN);
+                digitRun = 0;
+            }
+
+            switch (kind) {
+                case LATIN_LETTER -> latinRun++;
+                case OTHER_LETTER -> otherRun++;
+                case DIGIT -> digitRun++;
+                case CJK -> tokens += profile.cjkTokensPerChar();
+                case SYMBOL -> tokens += 1;
+                default -> { /* whitespace is free */ }
+            }
+        }
+
+        tokens += Math.ceil(latinRun / profile.latinCharsPerToken());
+        tokens += Math.ceil(otherRun / profile.otherCharsPerToken());
+        tokens += Math.ceil((double) digitRun / DIGITS_PER_TOKEN);
+        return (int) Math.ceil(tokens);
+    }
+
+    // =========================================================================
+    //  Character classes
+    // =========================================================================
+
+    private static final int WHITESPACE = 0;
+    private static final int LATIN_LETTER = 1;
+    private static final int OTHER_LETTER = 2;
+    private static final int DIGIT = 3;
+    private static final int CJK = 4;
+    private static final int SYMBOL = 5;
+
+    private static int classify(char c) {
+        if (c < 0x80) {
+            if (c <= ' ') return WHITESPACE;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) return LATIN_LETTER;
+            if (c >= '0' && c <= '9') return DIGIT;
+            return SYMBOL;
+        }
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) return WHITESPACE;
+        if (Character.isDigit(c)) return DIGIT;
+        if (Character.isLetter(c)) {
+            Character.UnicodeScript script = Character.UnicodeScript.of(c);
+            return switch (script) {
+                case LATIN -> LATIN_LETTER;
+                case HAN, HIRAGANA, KATAKANA, HANGUL -> CJK;
+                default -> OTHER_LETTER;
+            };
+        }
+        return SYMBOL;
+    }
+
+    @Override
+    public String toString() {
+        return "BpeEstimatingTokenCounter[" + profile.family() + "]";
+    }
+}
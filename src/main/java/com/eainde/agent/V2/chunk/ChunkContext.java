@@ -21,8 +21,12 @@ package com.eainde.agent.V2.chunk;
  *                         (-1 for the first chunk which has no leading overlap)
  * @param overlapEndPage   1-based page where the overlap zone ends
  *                         (-1 for the first chunk)
- * @param chunkText        the raw text content of this chunk
+ * @param chunkText        the raw text content of this chunk — a lazy view over the
+ *                         source buffer (see {@link PageIndex}); call {@code toString()}
+ *                         only when the text is handed to a prompt
  * @param totalChunks      total number of chunks the document was split into
+ * @param estimatedTokens  estimated token count of this chunk's pages
+ *                         (per the chunker's {@link TokenCounter})
  */
 public record ChunkContext(
         int chunkIndex,
@@ -30,8 +34,9 @@ public record ChunkContext(
         int pageEnd,
         int overlapStartPage,
         int overlapEndPage,
-        String chunkText,
-        int totalChunks
+        CharSequence chunkText,
+        int totalChunks,
+        int estimatedTokens
 ) {
 
     /**
@@ -66,8 +71,8 @@ public record ChunkContext(
 
     @Override
     public String toString() {
-        return String.format("Chunk[%d/%d, pages %d-%d, overlap %d-%d]",
+        return String.format("Chunk[%d/%d, pages %d-%d, overlap %d-%d, ~%d tokens]",
                 chunkIndex + 1, totalChunks, pageStart, pageEnd,
-                overlapStartPage, overlapEndPage);
+                overlapStartPage, overlapEndPage, estimatedTokens);
     }
 }
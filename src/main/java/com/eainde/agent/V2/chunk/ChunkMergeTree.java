@@ -0,0 +1,231 @@
+package com.eainde.agent.V2.chunk;
+
+import com.eainde.agent.thread.BoundedParallelExecutor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Hierarchical (k-ary tree) reduction for the chunk merger.
+ *
+ * <p>A single chunk merger prompt holding every chunk's results can exceed the very
+ * context window the document was chunked to avoid. This class merges groups of
+ * adjacent chunks in parallel, turns each group's {@code mergedResult} back into a
+ * chunk entry spanning the group's pages, and repeats until one result remains.</p>
+ *
+ * <h3>Fan-in:</h3>
+ * <pre>
+ * fanIn = max(2, tokenBudget / largest entry at this level)
+ * </pre>
+ * <p>so every group's prompt fits the budget, and merge latency grows with
+ * log<sub>fanIn</sub>(chunks) rather than failing. When the whole payload already
+ * fits, exactly one merger call is made — the same as a flat merge.</p>
+ *
+ * <h3>Level entries:</h3>
+ * <p>A merged group keeps the first chunk's overlap zone, so the next level still
+ * resolves the overlap with the preceding group (lowest chunkIndex wins).
+ * {@code rawNames} is dropped after the first level; the merge rules do not use it.
+ * {@code merge_stats} of the root is rewritten to cover the whole tree.</p>
+ */
+public class ChunkMergeTree {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkMergeTree.class);
+
+    /**
+     * Floor for JSON payloads: compact JSON has almost no whitespace, so the word
+     * heuristic would count a whole chunk entry as a handful of words.
+     */
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final ObjectMapper objectMapper;
+    private final TokenCounter tokenCounter;
+    private final int tokenBudget;
+    private final BoundedParallelExecutor executor;
+
+    /**
+     * @param tokenBudget maximum estimated tokens of one merger prompt payload
+     * @param executor    runs the merges of one level in parallel
+     */
+    public ChunkMergeTree(ObjectMapper objectMapper, TokenCounter tokenCounter,
+                          int tokenBudget, BoundedParallelExecutor executor) {
+        if (tokenBudget < 1) {
+            throw new IllegalArgumentException("tokenBudget must be >= 1");
+        }
+        this.objectMapper = objectMapper;
+        this.tokenCounter = tokenCounter;
+        this.tokenBudget = tokenBudget;
+        this.executor = executor;
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Merges per-chunk results, level by level.
+     *
+     * @param chunkResultsJson {"chunks": [...]} as built for the chunk merger agent
+     * @param merger           invokes the chunk merger agent on a chunkResults payload
+     *                         and returns its mergedResult JSON; called concurrently
+     * @return mergedResult JSON
+     */
+    public String merge(String chunkResultsJson, UnaryOperator<String> merger) {
+        if (estimateTokens(chunkResultsJson) <= tokenBudget) {
+            return merger.apply(chunkResultsJson);
+        }
+
+        List<ObjectNode> entries = new ArrayList<>();
+        try {
+            for (JsonNode chunk : objectMapper.readTree(chunkResultsJson).path("chunks")) {
+                if (chunk.isObject()) entries.add((ObjectNode) chunk);
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("Chunk results are not valid JSON — merging in a single call");
+            return merger.apply(chunkResultsJson);
+        }
+        if (entries.size() < 2) {
+            return merger.apply(chunkResultsJson);
+        }
+
+        int chunkCount = entries.size();
+        int candidatesBefore = countCandidates(entries);
+        int overlapDuplicates = 0;
+        int level = 0;
+
+        while (true) {
+            level++;
+            List<List<ObjectNode>> groups = group(entries);
+            log.info("Tree merge — level {}: {} entries in {} groups (fan-in {})",
+                    level, entries.size(), groups.size(), groups.get(0).size());
+
+            List<String> results = executor.invokeAll(groups, g -> merger.apply(chunkResults(g)));
+
+            for (String result : results) {
+                overlapDuplicates += parse(result).path("merge_stats").path("overlapDuplicates").asInt(0);
+            }
+            if (results.size() == 1) {
+                return withTreeStats(results.get(0), chunkCount, candidatesBefore, overlapDuplicates);
+            }
+
+            List<ObjectNode> next = new ArrayList<>(results.size());
+            for (int i = 0; i < results.size(); i++) {
+                next.add(toEntry(i, groups.get(i), results.get(i)));
+            }
+            entries = next;
+        }
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /** Splits entries into adjacent groups of the fan-in allowed by the budget. */
+    private List<List<ObjectNode>> group(List<ObjectNode> entries) {
+        int largest = 1;
+        for (ObjectNode entry : entries) {
+            largest = Math.max(largest, estimateTokens(entry.toString()));
+        }
+        if (largest * 2 > tokenBudget) {
+            log.warn("Tree merge — largest entry ({} tokens) leaves no room for a pair within {} tokens",
+                    largest, tokenBudget);
+        }
+        int fanIn = Math.max(2, tokenBudget / largest);
+
+        List<List<ObjectNode>> groups = new ArrayList<>();
+        for (int start = 0; start < entries.size(); start += fanIn) {
+            groups.add(entries.subList(start, Math.min(start + fanIn, entries.size())));
+        }
+        return groups;
+    }
+
+    /**
+     * Turns a group's mergedResult into the chunk entry for the next level. If the
+     * merger output is unusable the group's candidates and sources are carried up
+     * unmerged, so nothing is lost.
+     */
+    private ObjectNode toEntry(int index, List<ObjectNode> group, String mergedResultJson) {
+        ObjectNode first = group.get(0);
+        ObjectNode last = group.get(group.size() - 1);
+        JsonNode merged = parse(mergedResultJson);
+
+        ArrayNode candidates = objectMapper.createArrayNode();
+        ArrayNode sources = objectMapper.createArrayNode();
+        if (merged.path("merged_candidates").isArray()) {
+            candidates.addAll((ArrayNode) merged.get("merged_candidates"));
+            if (merged.path("global_source_classification").isArray()) {
+                sources.addAll((ArrayNode) merged.get("global_source_classification"));
+            }
+        } else {
+            log.warn("Tree merge — unusable merger output for pages {}-{}, carrying the group up unmerged",
+                    first.path("pageStart").asInt(), last.path("pageEnd").asInt());
+            for (ObjectNode entry : group) {
+                entry.path("normalizedCandidates").path("normalized_candidates").forEach(candidates::add);
+                entry.path("sourceClassification").path("source_classification").forEach(sources::add);
+            }
+        }
+
+        ObjectNode entry = objectMapper.createObjectNode();
+        entry.put("chunkIndex", index);
+        entry.set("pageStart", first.path("pageStart"));
+        entry.set("pageEnd", last.path("pageEnd"));
+        entry.set("overlapStartPage", first.path("overlapStartPage"));
+        entry.set("overlapEndPage", first.path("overlapEndPage"));
+        entry.set("isFirstChunk", first.path("isFirstChunk"));
+        entry.set("isLastChunk", last.path("isLastChunk"));
+        entry.putObject("sourceClassification").set("source_classification", sources);
+        entry.putObject("normalizedCandidates").set("normalized_candidates", candidates);
+        return entry;
+    }
+
+    private String chunkResults(List<ObjectNode> group) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.putArray("chunks").addAll(group);
+        return root.toString();
+    }
+
+    /** Rewrites the root's merge_stats so it covers all levels, not just the last. */
+    private String withTreeStats(String mergedResultJson, int chunkCount,
+                                 int candidatesBefore, int overlapDuplicates) {
+        JsonNode root = parse(mergedResultJson);
+        if (!root.isObject()) return mergedResultJson;
+
+        int after = root.path("merged_candidates").size();
+        ObjectNode stats = ((ObjectNode) root).putObject("merge_stats");
+        stats.put("totalChunks", chunkCount);
+        stats.put("totalCandidatesBeforeMerge", candidatesBefore);
+        stats.put("totalCandidatesAfterMerge", after);
+        stats.put("duplicatesRemoved", candidatesBefore - after);
+        stats.put("overlapDuplicates", overlapDuplicates);
+        return root.toString();
+    }
+
+    private int estimateTokens(String json) {
+        return Math.max(tokenCounter.count(json), (json.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN);
+    }
+
+    private static int countCandidates(List<ObjectNode> entries) {
+        int count = 0;
+        for (ObjectNode entry : entries) {
+            count += entry.path("normalizedCandidates").path("normalized_candidates").size();
+        }
+        return count;
+    }
+
+    /** Parses merger output; a missing node if it is not valid JSON. */
+    private JsonNode parse(String json) {
+        if (json == null || json.isBlank()) return objectMapper.missingNode();
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            return objectMapper.missingNode();
+        }
+    }
+}
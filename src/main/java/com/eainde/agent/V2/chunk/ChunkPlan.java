@@ -0,0 +1,60 @@
+package com.eainde.agent.V2.chunk;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of {@link DocumentChunker#plan(CharSequence)}: the chunks to map, the
+ * page pre-filter statistics reported in run metrics (scope key {@value #METRICS_KEY}),
+ * and the governance anchors found in the same read of the pages.
+ *
+ * @param chunks        chunks to run through the map phase, never empty
+ * @param totalPages    non-empty pages in the document before pre-filtering
+ * @param droppedPages  1-based page numbers screened out by the pre-filter
+ * @param droppedTokens estimated tokens the map phase no longer has to read
+ * @param governanceAnchors lexicon hits of every page, dropped ones included, in
+ *                          document order (scope key {@value GovernanceTermIndex#SCOPE_KEY})
+ */
+public record ChunkPlan(
+        List<ChunkContext> chunks,
+        int totalPages,
+        List<Integer> droppedPages,
+        long droppedTokens,
+        List<GovernanceTermIndex.Hit> governanceAnchors
+) {
+
+    /** Scope key under which map-phase agents publish {@link #metrics()}. */
+    public static final String METRICS_KEY = "chunkPlanMetrics";
+
+    static ChunkPlan unfiltered(List<ChunkContext> chunks, int totalPages) {
+        return new ChunkPlan(chunks, totalPages, List.of(), 0, List.of());
+    }
+
+    /**
+     * @return number of pages that go to the map phase
+     */
+    public int keptPageCount() {
+        return totalPages - droppedPages.size();
+    }
+
+    /**
+     * @return pre-filter statistics as a JSON-friendly map, for run metrics / scope state
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("chunks", chunks.size());
+        metrics.put("totalPages", totalPages);
+        metrics.put("keptPages", keptPageCount());
+        metrics.put("droppedPages", droppedPages);
+        metrics.put("droppedTokens", droppedTokens);
+        metrics.put("governanceAnchors", governanceAnchors.size());
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChunkPlan[%d chunks, %d/%d pages kept, ~%d tokens dropped, dropped pages %s]",
+                chunks.size(), keptPageCount(), totalPages, droppedTokens, droppedPages);
+    }
+}
@@ -0,0 +1,292 @@
+package com.eainde.agent.V2.chunk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Deterministic replacement for most of the chunk merger agent's work.
+ *
+ * <p>Reads the same {@code chunkResults} JSON the chunk merger agent receives and
+ * produces the same {@code mergedResult} shape ({@code merged_candidates},
+ * {@code global_source_classification}, {@code merge_stats}) that the bridge
+ * parses into {@code MergedResult}. Candidate JSON is carried through untouched
+ * apart from the renumbered {@code id}, so no field is lost.</p>
+ *
+ * <h3>Merge rules (mirroring the chunk merger prompt):</h3>
+ * <ol>
+ *   <li><b>Source merge</b> — dedup by documentName keeping the most complete entry,
+ *       re-rank H1 &gt; H2 &gt; H3 &gt; H4, then most recent documentDate</li>
+ *   <li><b>Exact dedup</b> — candidates sharing a dedupKey or asciiDedupKey collapse
+ *       onto the first occurrence (lowest chunkIndex); a duplicate whose page lies in
+ *       its chunk's overlap zone counts as an overlap duplicate</li>
+ *   <li><b>Near matches</b> — distinct candidates with the same ASCII-folded last name,
+ *       first-name initial and documentName (A6.1) are ambiguous: only these groups
+ *       are sent to the LLM merger</li>
+ *   <li><b>Renumber</b> — ids sequential from 1</li>
+ * </ol>
+ *
+ * <p>When nothing is ambiguous, no LLM call is made. This class is pure logic with
+ * no Spring dependencies — safe for unit testing.</p>
+ */
+public class ChunkResultMerger {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkResultMerger.class);
+
+    private static final String CANDIDATES_FIELD = "normalized_candidates";
+    private static final String SOURCES_FIELD = "source_classification";
+
+    private final ObjectMapper objectMapper;
+
+    public ChunkResultMerger(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Merges per-chunk results.
+     *
+     * @param chunkResultsJson {"chunks": [...]} as built for the chunk merger agent
+     * @param llmMerger        invokes the chunk merger agent on a reduced chunkResults
+     *                         payload holding only ambiguous candidates; returns its
+     *                         mergedResult JSON
+     * @return mergedResult JSON
+     */
+    public String merge(String chunkResultsJson, UnaryOperator<String> llmMerger) {
+        JsonNode chunks;
+        try {
+            chunks = objectMapper.readTree(chunkResultsJson).path("chunks");
+        } catch (JsonProcessingException e) {
+            log.warn("Chunk results are not valid JSON — delegating the whole merge to the LLM merger");
+            return llmMerger.apply(chunkResultsJson);
+        }
+
+        // ── 1. Source merge ─────────────────────────────────────────────
+        ArrayNode sources = mergeSources(chunks);
+
+        // ── 2. Exact dedup in chunk order ───────────────────────────────
+        List<Entry> kept = new ArrayList<>();
+        Map<String, Entry> byKey = new HashMap<>();
+        int before = 0;
+        int overlapDuplicates = 0;
+
+        for (JsonNode chunk : chunks) {
+            for (JsonNode candidate : arrayField(chunk.path("normalizedCandidates"), CANDIDATES_FIELD)) {
+                before++;
+                if (!candidate.isObject()) continue;
+                String dedupKey = text(candidate, "dedupKey");
+                String asciiKey = text(candidate, "asciiDedupKey");
+                Entry existing = dedupKey != null ? byKey.get(dedupKey) : null;
+                if (existing == null && asciiKey != null) existing = byKey.get(asciiKey);
+
+                if (existing != null) {
+                    if (existing.chunkIndex < chunk.path("chunkIndex").asInt() && inOverlapZone(candidate, chunk)) {
+                        overlapDuplicates++;
+                    }
+                    continue;
+                }
+                Entry entry = new Entry((ObjectNode) candidate.deepCopy(), chunk.path("chunkIndex").asInt(), chunk);
+                kept.add(entry);
+                if (dedupKey != null) byKey.put(dedupKey, entry);
+                if (asciiKey != null) byKey.putIfAbsent(asciiKey, entry);
+            }
+        }
+
+        // ── 3. Near matches → LLM ───────────────────────────────────────
+        Map<String, List<Entry>> byNearKey = new LinkedHashMap<>();
+        for (Entry entry : kept) {
+            String nearKey = nearKey(entry.candidate);
+            if (nearKey != null) byNearKey.computeIfAbsent(nearKey, k -> new ArrayList<>()).add(entry);
+        }
+        List<Entry> ambiguous = new ArrayList<>();
+        byNearKey.values().stream().filter(group -> group.size() > 1).forEach(ambiguous::addAll);
+        Set<Entry> ambiguousSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        ambiguousSet.addAll(ambiguous);
+
+        List<ObjectNode> merged = new ArrayList<>();
+        for (Entry entry : kept) {
+            if (!ambiguousSet.contains(entry)) merged.add(entry.candidate);
+        }
+        int llmOverlapDuplicates = 0;
+        if (!ambiguous.isEmpty()) {
+            log.info("Chunk merge — {} candidates in {} near-match groups sent to the LLM merger",
+                    ambiguous.size(), byNearKey.values().stream().filter(g -> g.size() > 1).count());
+            JsonNode resolved = resolveWithLlm(ambiguous, llmMerger);
+            if (resolved != null) {
+                for (JsonNode candidate : resolved.path("merged_candidates")) {
+                    if (candidate.isObject()) merged.add((ObjectNode) candidate);
+                }
+                llmOverlapDuplicates = resolved.path("merge_stats").path("overlapDuplicates").asInt(0);
+            } else {
+                ambiguous.forEach(entry -> merged.add(entry.candidate));
+            }
+        }
+
+        // ── 4. Renumber ─────────────────────────────────────────────────
+        ArrayNode mergedCandidates = objectMapper.createArrayNode();
+        for (int i = 0; i < merged.size(); i++) {
+            mergedCandidates.add(merged.get(i).put("id", i + 1));
+        }
+
+        ObjectNode stats = objectMapper.createObjectNode();
+        stats.put("totalChunks", chunks.size());
+        stats.put("totalCandidatesBeforeMerge", before);
+        stats.put("totalCandidatesAfterMerge", merged.size());
+        stats.put("duplicatesRemoved", before - merged.size());
+        stats.put("overlapDuplicates", overlapDuplicates + llmOverlapDuplicates);
+
+        ObjectNode result = objectMapper.createObjectNode();
+        result.set("merged_candidates", mergedCandidates);
+        result.set("global_source_classification", sources);
+        result.set("merge_stats", stats);
+
+        log.info("Chunk merge complete — {} → {} candidates ({} overlap duplicates, {} sent to LLM)",
+                before, merged.size(), overlapDuplicates + llmOverlapDuplicates, ambiguous.size());
+        return result.toString();
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /** A kept candidate and the chunk it was first seen in. */
+    private record Entry(ObjectNode candidate, int chunkIndex, JsonNode chunk) {
+    }
+
+    /**
+     * Builds a chunkResults payload of only the ambiguous candidates (one pseudo-chunk
+     * per origin chunk, metadata preserved) and parses the LLM merger's answer.
+     *
+     * @return the LLM mergedResult, or null if it could not be parsed
+     */
+    private JsonNode resolveWithLlm(List<Entry> ambiguous, UnaryOperator<String> llmMerger) {
+        Map<Integer, ArrayNode> candidatesByChunk = new LinkedHashMap<>();
+        Map<Integer, JsonNode> chunkByIndex = new HashMap<>();
+        for (Entry entry : ambiguous) {
+            candidatesByChunk.computeIfAbsent(entry.chunkIndex, k -> objectMapper.createArrayNode())
+                    .add(entry.candidate);
+            chunkByIndex.putIfAbsent(entry.chunkIndex, entry.chunk);
+        }
+
+        ArrayNode residualChunks = objectMapper.createArrayNode();
+        candidatesByChunk.forEach((chunkIndex, candidates) -> {
+            ObjectNode chunk = ((ObjectNode) chunkByIndex.get(chunkIndex)).deepCopy();
+            chunk.remove("rawNames");
+            chunk.set("sourceClassification", objectMapper.createObjectNode()
+                    .set(SOURCES_FIELD, objectMapper.createArrayNode()));
+            chunk.set("normalizedCandidates", objectMapper.createObjectNode()
+                    .set(CANDIDATES_FIELD, candidates));
+            residualChunks.add(chunk);
+        });
+        ObjectNode residual = objectMapper.createObjectNode();
+        residual.set("chunks", residualChunks);
+
+        String response = llmMerger.apply(residual.toString());
+        try {
+            JsonNode resolved = response == null ? null : objectMapper.readTree(response);
+            if (resolved != null && resolved.path("merged_candidates").isArray()) return resolved;
+        } catch (JsonProcessingException e) {
+            // fall through
+        }
+        log.warn("LLM merger returned no usable merged_candidates — keeping near matches unmerged");
+        return null;
+    }
+
+    /**
+     * Dedups source entries by documentName (most non-null fields wins) and ranks
+     * them by hierarchy, then recency.
+     */
+    private ArrayNode mergeSources(JsonNode chunks) {
+        Map<String, ObjectNode> byDocument = new LinkedHashMap<>();
+        for (JsonNode chunk : chunks) {
+            for (JsonNode source : arrayField(chunk.path("sourceClassification"), SOURCES_FIELD)) {
+                String documentName = text(source, "documentName");
+                if (documentName == null || !source.isObject()) continue;
+                ObjectNode current = byDocument.get(documentName);
+                if (current == null || completeness(source) > completeness(current)) {
+                    byDocument.put(documentName, (ObjectNode) source.deepCopy());
+                }
+            }
+        }
+
+        List<ObjectNode> ranked = new ArrayList<>(byDocument.values());
+        ranked.sort(Comparator
+                .comparing((ObjectNode s) -> s.path("sourceClass").asText("H9"))
+                .thenComparing(s -> s.path("documentDate").asText(""), Comparator.reverseOrder()));
+
+        ArrayNode sources = objectMapper.createArrayNode();
+        for (int i = 0; i < ranked.size(); i++) {
+            sources.add(ranked.get(i).put("admissionRank", i + 1));
+        }
+        return sources;
+    }
+
+    /** Reads {"field": [...]} or a bare array; empty if neither. */
+    private JsonNode arrayField(JsonNode node, String field) {
+        if (node.isTextual()) {
+            try {
+                node = objectMapper.readTree(node.asText());
+            } catch (JsonProcessingException e) {
+                return objectMapper.createArrayNode();
+            }
+        }
+        if (node.isArray()) return node;
+        JsonNode array = node.path(field);
+        return array.isArray() ? array : objectMapper.createArrayNode();
+    }
+
+    private static boolean inOverlapZone(JsonNode candidate, JsonNode chunk) {
+        int overlapStart = chunk.path("overlapStartPage").asInt(-1);
+        int overlapEnd = chunk.path("overlapEndPage").asInt(-1);
+        int page = candidate.path("pageNumber").asInt(0);
+        return overlapStart > 0 && page >= overlapStart && page <= overlapEnd;
+    }
+
+    /** A6.1 near-match key: ascii(lastName) | firstName initial | documentName. */
+    private static String nearKey(JsonNode candidate) {
+        String lastName = text(candidate, "lastName");
+        String firstName = text(candidate, "firstName");
+        if (lastName == null || firstName == null) return null;
+        String first = fold(firstName);
+        if (first.isEmpty()) return null;
+        return fold(lastName) + "|" + first.charAt(0) + "|" + candidate.path("documentName").asText("");
+    }
+
+    private static String fold(String name) {
+        String stripped = Normalizer.normalize(name, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return stripped.toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static int completeness(JsonNode node) {
+        int count = 0;
+        for (JsonNode value : node) {
+            if (!value.isNull() && !(value.isTextual() && value.asText().isBlank())) count++;
+        }
+        return count;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.path(field);
+        return value.isTextual() && !value.asText().isBlank() ? value.asText() : null;
+    }
+}
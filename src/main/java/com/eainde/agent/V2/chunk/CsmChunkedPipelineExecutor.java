@@ -2,10 +2,18 @@ package com.eainde.agent.V2.chunk;
 
 import com.db.clm.kyc.ai.chunking.CandidateBatcher;
 import com.db.clm.kyc.ai.chunking.ChunkContext;
+import com.db.clm.kyc.ai.chunking.ChunkPlan;
 import com.db.clm.kyc.ai.chunking.DocumentChunker;
+import com.db.clm.kyc.ai.chunking.GovernancePageFilter;
+import com.db.clm.kyc.ai.chunking.GovernanceTermIndex;
+import com.db.clm.kyc.ai.chunking.MappedDocument;
+import com.db.clm.kyc.ai.chunking.TokenCounter;
 import com.db.clm.kyc.ai.config.AgentFactory;
 import com.db.clm.kyc.ai.config.AgentSpec;
 import com.db.clm.kyc.ai.prompt.AgentNames;
+import com.eainde.agent.engine.AgentCache;
+import com.eainde.agent.thread.BoundedParallelExecutor;
+import com.eainde.agent.thread.WorkflowMdc;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -18,6 +26,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -54,6 +64,15 @@ import java.util.List;
  *     pages-per-chunk: 20
  *     overlap-pages: 5
  *     page-delimiter: "\\f"
+ *     packing: pages                # or "tokens" — pack up to max-token-estimate
+ *     overlap-tokens: 4000          # token-packing overlap
+ *     token-model: gemini-2.5-pro   # token estimator (TokenCounterConfig); blank = word heuristic
+ *     page-filter:
+ *       enabled: false              # drop pages with no governance / name signal
+ *       min-score: 1.0
+ *   map:
+ *     max-concurrency: 4            # chunks in flight per model, across requests
+ *     model: gemini-2.5-pro         # key the limit is shared under
  *   batching:
  *     enabled: true
  *     batch-size: 50
@@ -84,6 +103,26 @@ public class CsmChunkedPipelineExecutor {
     @Value("${csm.chunking.page-delimiter:\\f}")
     private String pageDelimiterRegex;
 
+    /** "pages" = fixed pages-per-chunk windows; "tokens" = pack pages up to max-token-estimate. */
+    @Value("${csm.chunking.packing:pages}")
+    private String chunkPacking;
+
+    @Value("${csm.chunking.overlap-tokens:4000}")
+    private int overlapTokens;
+
+    @Value("${csm.chunking.page-filter.enabled:false}")
+    private boolean pageFilterEnabled;
+
+    @Value("${csm.chunking.page-filter.min-score:1.0}")
+    private double pageFilterMinScore;
+
+    // ── Map concurrency config ──────────────────────────────────────────
+    @Value("${csm.map.max-concurrency:4}")
+    private int mapMaxConcurrency;
+
+    @Value("${csm.map.model:${csm.chunking.token-model:default}}")
+    private String mapModel;
+
     // ── Batching config ─────────────────────────────────────────────────
     @Value("${csm.batching.enabled:true}")
     private boolean batchingEnabled;
@@ -97,12 +136,92 @@ public class CsmChunkedPipelineExecutor {
 
     private static final AgentMonitor monitor = new AgentMonitor();
 
+    // ── Agent specs — constants, so each agent is built once (see AgentCache) ──
+    private static final AgentSpec SOURCE_CLASSIFIER_SPEC = AgentSpec.of(
+                    AgentNames.SOURCE_CLASSIFIER,
+                    "Classifies sources within a document chunk")
+            .inputs("sourceText", "fileNames")
+            .outputKey("sourceClassification")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec PERSON_EXTRACTOR_SPEC = AgentSpec.of(
+                    AgentNames.PERSON_EXTRACTOR,
+                    "Extracts persons from a document chunk")
+            .inputs("sourceText", "sourceClassification", "fileNames")
+            .outputKey("rawCandidates")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec CHUNK_MERGER_SPEC = AgentSpec.of(
+                    AgentNames.CHUNK_MERGER,
+                    "Deduplicates persons and merges source classifications across chunks")
+            .inputs("chunkResults")
+            .outputKey("mergedResult")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec CLASSIFIER_SPEC = AgentSpec.of(
+                    AgentNames.CSM_CLASSIFIER,
+                    "Classifies candidates for CSM eligibility")
+            .inputs("rawCandidates", "sourceText", "sourceClassification")
+            .outputKey("classifiedCandidates")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec SCORER_SPEC = AgentSpec.of(
+                    AgentNames.SCORER,
+                    "Computes scores and validates quality gates")
+            .inputs("classifiedCandidates")
+            .outputKey("scoredCandidates")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec ASSEMBLER_SPEC = AgentSpec.of(
+                    AgentNames.OUTPUT_ASSEMBLER,
+                    "Assembles final JSON with reason strings")
+            .inputs("scoredCandidates", "fileNames")
+            .outputKey("finalOutput")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec FIRST_CRITIC_SPEC = AgentSpec.of(
+                    AgentNames.EXTRACTION_CRITIC,
+                    "Reviews output against compliance checklist")
+            .inputs("finalOutput", "sourceText")
+            .outputKey("extractionReview")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec REFINER_SPEC = AgentSpec.of(
+                    AgentNames.OUTPUT_REFINER,
+                    "Fixes critic-identified issues")
+            .inputs("finalOutput", "extractionReview", "scoredCandidates")
+            .outputKey("finalOutput")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec LOOP_CRITIC_SPEC = AgentSpec.of(
+                    AgentNames.EXTRACTION_CRITIC,
+                    "Re-evaluates refined output")
+            .inputs("finalOutput", "sourceText")
+            .outputKey("extractionReview")
+            .listener(monitor)
+            .build();
+
+    private final AgentCache agentCache;
+    private final TokenCounter tokenCounter;
+
     public CsmChunkedPipelineExecutor(AgentFactory agentFactory,
+                                      AgentCache agentCache,
                                       ObjectMapper objectMapper,
-                                      CsmExtractionSubWorkflowConfigV5 v5Config) {
+                                      CsmExtractionSubWorkflowConfigV5 v5Config,
+                                      TokenCounter tokenCounter) {
         this.agentFactory = agentFactory;
+        this.agentCache = agentCache;
         this.objectMapper = objectMapper;
         this.v5Config = v5Config;
+        this.tokenCounter = tokenCounter;
     }
 
     // =========================================================================
@@ -119,15 +238,51 @@ public class CsmChunkedPipelineExecutor {
      * @return the final extracted_records JSON string
      */
     public String execute(String sourceText, String fileNames, AgenticScope scope) {
-        DocumentChunker chunker = buildChunker();
+        // Model calls queue under this run's flowId in the LLM limiter
+        try (WorkflowMdc ignored = WorkflowMdc.join()) {
+            DocumentChunker chunker = buildChunker();
+
+            if (!chunkingEnabled || !chunker.needsChunking(sourceText, maxTokenEstimate)) {
+                log.info("Document fits within token limit — using direct V5 pipeline");
+                return executeDirect(sourceText, fileNames, scope);
+            }
 
-        if (!chunkingEnabled || !chunker.needsChunking(sourceText, maxTokenEstimate)) {
-            log.info("Document fits within token limit — using direct V5 pipeline");
-            return executeDirect(sourceText, fileNames, scope);
+            log.info("Document exceeds token limit — using chunked map-reduce pipeline");
+            return executeChunked(chunker.plan(sourceText), fileNames, scope);
         }
+    }
+
+    /**
+     * Same as {@link #execute(String, String, AgenticScope)} for an extracted-text file
+     * (UTF-8), memory-mapped so that only chunk slices are decoded. A document that
+     * fits the direct pipeline is decoded whole into {@code sourceText}; in the chunked
+     * path {@code sourceText} is seeded with {@link MappedDocument#SOURCE_TEXT_PLACEHOLDER}
+     * for the critic unless the caller already set it.
+     *
+     * @param sourcePath extracted document text
+     * @param fileNames  comma-separated or JSON list of document names
+     * @param scope      the AgenticScope for state management
+     * @return the final extracted_records JSON string
+     * @throws IOException if the file cannot be mapped
+     */
+    public String execute(Path sourcePath, String fileNames, AgenticScope scope) throws IOException {
+        DocumentChunker chunker = buildChunker();
+
+        // Model calls queue under this run's flowId in the LLM limiter
+        try (WorkflowMdc ignored = WorkflowMdc.join();
+             MappedDocument document = MappedDocument.open(sourcePath)) {
+            if (!chunkingEnabled || !chunker.needsChunking(document, maxTokenEstimate)) {
+                log.info("Mapped document fits within token limit — using direct V5 pipeline");
+                return executeDirect(document.readString(), fileNames, scope);
+            }
 
-        log.info("Document exceeds token limit — using chunked map-reduce pipeline");
-        return executeChunked(sourceText, fileNames, scope, chunker);
+            log.info("Mapped document ({} bytes) exceeds token limit — using chunked map-reduce pipeline",
+                    document.byteLength());
+            if (scope.readState("sourceText", "").isBlank()) {
+                scope.writeState("sourceText", MappedDocument.SOURCE_TEXT_PLACEHOLDER);
+            }
+            return executeChunked(chunker.plan(document), fileNames, scope);
+        }
     }
 
     // =========================================================================
@@ -141,7 +296,7 @@ public class CsmChunkedPipelineExecutor {
         scope.writeState("sourceText", sourceText);
         scope.writeState("fileNames", fileNames);
 
-        UntypedAgent pipeline = v5Config.buildExtractionSubWorkflow();
+        UntypedAgent pipeline = agentCache.workflow("v5.extraction", v5Config::buildExtractionSubWorkflow);
         pipeline.invoke(scope);
 
         return scope.readState("finalOutput", "");
@@ -155,12 +310,13 @@ public class CsmChunkedPipelineExecutor {
      * Executes the chunked pipeline:
      * 1. Chunk → 2. Map (agents 1-2) → 3. Merge → 4. Classify/Score → 5. Assemble/Critic
      */
-    private String executeChunked(String sourceText, String fileNames,
-                                  AgenticScope scope, DocumentChunker chunker) {
+    private String executeChunked(ChunkPlan plan, String fileNames, AgenticScope scope) {
 
-        // ── Step 1: Chunk the document ──────────────────────────────────
-        List<ChunkContext> chunks = chunker.chunk(sourceText);
-        log.info("Document split into {} chunks", chunks.size());
+        // ── Step 1: Chunk the document (planned by the caller) ─────────
+        List<ChunkContext> chunks = plan.chunks();
+        scope.writeState(ChunkPlan.METRICS_KEY, plan.metrics());
+        scope.writeState(GovernanceTermIndex.SCOPE_KEY, plan.governanceAnchors());
+        log.info("Document split into {} chunks — {}", chunks.size(), plan.metrics());
 
         // ── Step 2: MAP — run agents 1-2 per chunk ─────────────────────
         List<ChunkResult> chunkResults = processChunks(chunks, fileNames);
@@ -175,64 +331,40 @@ public class CsmChunkedPipelineExecutor {
     /**
      * MAP phase: processes each chunk through source-classifier and person-extractor.
      *
-     * <p>Currently sequential. For parallel execution with virtual threads, replace
-     * the for-loop with:</p>
-     * <pre>
-     * try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
-     *     List&lt;Future&lt;ChunkResult&gt;&gt; futures = chunks.stream()
-     *         .map(chunk -> executor.submit(() -> processOneChunk(chunk, fileNames)))
-     *         .toList();
-     *     return futures.stream().map(Future::get).toList();
-     * }
-     * </pre>
+     * <p>Chunks run in parallel on virtual threads, each in its own scope, at most
+     * {@code csm.map.max-concurrency} at a time for the configured model. Results are
+     * returned in chunk order.</p>
      */
     private List<ChunkResult> processChunks(List<ChunkContext> chunks, String fileNames) {
-        // Build the extraction mini-pipeline (agents 1-2) once
-        AgentSpec sourceClassifierSpec = AgentSpec.of(
-                        AgentNames.SOURCE_CLASSIFIER,
-                        "Classifies sources within a document chunk")
-                .inputs("sourceText", "fileNames")
-                .outputKey("sourceClassification")
-                .listener(monitor)
-                .build();
-
-        AgentSpec personExtractorSpec = AgentSpec.of(
-                        AgentNames.PERSON_EXTRACTOR,
-                        "Extracts persons from a document chunk")
-                .inputs("sourceText", "sourceClassification", "fileNames")
-                .outputKey("rawCandidates")
-                .listener(monitor)
-                .build();
-
-        List<ChunkResult> results = new ArrayList<>();
-
-        for (ChunkContext chunk : chunks) {
-            log.info("Processing {}", chunk);
-
-            // Create a fresh scope for each chunk
-            // Each chunk gets its own agent instances to avoid state contamination
-            UntypedAgent chunkClassifier = agentFactory.create(sourceClassifierSpec);
-            UntypedAgent chunkExtractor = agentFactory.create(personExtractorSpec);
-
-            UntypedAgent chunkPipeline = agentFactory.sequence(
-                    "rawCandidates", chunkClassifier, chunkExtractor);
-
-            // Create chunk-local scope and seed inputs
-            AgenticScope chunkScope = AgenticScope.create();
-            chunkScope.writeState("sourceText", chunk.chunkText());
-            chunkScope.writeState("fileNames", fileNames);
-
-            // Execute agents 1-2 on this chunk
-            chunkPipeline.invoke(chunkScope);
-
-            String sourceClassification = chunkScope.readState("sourceClassification", "{}");
-            String rawCandidates = chunkScope.readState("rawCandidates", "{}");
-
-            results.add(new ChunkResult(chunk, sourceClassification, rawCandidates));
-            log.info("Completed {} — extracted candidates", chunk);
-        }
+        // Agents 1-2 — built once, shared by all chunks (state lives in the chunk scope)
+        UntypedAgent chunkPipeline = agentCache.workflow("v2.chunk-map", () -> agentFactory.sequence(
+                "rawCandidates",
+                agentCache.create(SOURCE_CLASSIFIER_SPEC),
+                agentCache.create(PERSON_EXTRACTOR_SPEC)));
+
+        BoundedParallelExecutor mapExecutor = new BoundedParallelExecutor(mapModel, mapMaxConcurrency);
+        return mapExecutor.invokeAll(chunks, chunk -> processOneChunk(chunk, fileNames, chunkPipeline));
+    }
+
+    /**
+     * Runs agents 1-2 on a single chunk in a chunk-local scope.
+     */
+    private ChunkResult processOneChunk(ChunkContext chunk, String fileNames, UntypedAgent chunkPipeline) {
+        log.info("Processing {}", chunk);
+
+        // Create chunk-local scope and seed inputs
+        AgenticScope chunkScope = AgenticScope.create();
+        chunkScope.writeState("sourceText", chunk.chunkText().toString());
+        chunkScope.writeState("fileNames", fileNames);
+
+        // Execute agents 1-2 on this chunk
+        chunkPipeline.invoke(chunkScope);
 
-        return results;
+        String sourceClassification = chunkScope.readState("sourceClassification", "{}");
+        String rawCandidates = chunkScope.readState("rawCandidates", "{}");
+
+        log.info("Completed {} — extracted candidates", chunk);
+        return new ChunkResult(chunk, sourceClassification, rawCandidates);
     }
 
     /**
@@ -242,16 +374,8 @@ public class CsmChunkedPipelineExecutor {
         // Build the merger input JSON
         String chunkResultsJson = buildChunkResultsJson(chunkResults);
 
-        // Create and run the chunk-merger agent
-        AgentSpec chunkMergerSpec = AgentSpec.of(
-                        AgentNames.CHUNK_MERGER,
-                        "Deduplicates persons and merges source classifications across chunks")
-                .inputs("chunkResults")
-                .outputKey("mergedResult")
-                .listener(monitor)
-                .build();
-
-        UntypedAgent chunkMerger = agentFactory.create(chunkMergerSpec);
+        // Run the chunk-merger agent
+        UntypedAgent chunkMerger = agentCache.create(CHUNK_MERGER_SPEC);
 
         AgenticScope mergerScope = AgenticScope.create();
         mergerScope.writeState("chunkResults", chunkResultsJson);
@@ -333,27 +457,10 @@ public class CsmChunkedPipelineExecutor {
      */
     private String runClassifierScorer(String rawCandidatesJson, String sourceClassification) {
 
-        AgentSpec classifierSpec = AgentSpec.of(
-                        AgentNames.CSM_CLASSIFIER,
-                        "Classifies candidates for CSM eligibility")
-                .inputs("rawCandidates", "sourceText", "sourceClassification")
-                .outputKey("classifiedCandidates")
-                .listener(monitor)
-                .build();
-
-        AgentSpec scorerSpec = AgentSpec.of(
-                        AgentNames.SCORER,
-                        "Computes scores and validates quality gates")
-                .inputs("classifiedCandidates")
-                .outputKey("scoredCandidates")
-                .listener(monitor)
-                .build();
-
-        UntypedAgent classifier = agentFactory.create(classifierSpec);
-        UntypedAgent scorer = agentFactory.create(scorerSpec);
-
-        UntypedAgent classifyScore = agentFactory.sequence(
-                "scoredCandidates", classifier, scorer);
+        UntypedAgent classifyScore = agentCache.workflow("v2.classify-score", () -> agentFactory.sequence(
+                "scoredCandidates",
+                agentCache.create(CLASSIFIER_SPEC),
+                agentCache.create(SCORER_SPEC)));
 
         AgenticScope batchScope = AgenticScope.create();
         batchScope.writeState("rawCandidates", rawCandidatesJson);
@@ -375,55 +482,20 @@ public class CsmChunkedPipelineExecutor {
     private String assembleAndRefine(String scoredCandidates, String fileNames,
                                      AgenticScope scope) {
 
-        // ── Agent 5: Output Assembler ───────────────────────────────────
-        AgentSpec assemblerSpec = AgentSpec.of(
-                        AgentNames.OUTPUT_ASSEMBLER,
-                        "Assembles final JSON with reason strings")
-                .inputs("scoredCandidates", "fileNames")
-                .outputKey("finalOutput")
-                .listener(monitor)
-                .build();
-
-        // ── Agent 6a: First Critic (before loop) ────────────────────────
-        AgentSpec firstCriticSpec = AgentSpec.of(
-                        AgentNames.EXTRACTION_CRITIC,
-                        "Reviews output against compliance checklist")
-                .inputs("finalOutput", "sourceText")
-                .outputKey("extractionReview")
-                .listener(monitor)
-                .build();
-
-        // ── Agent 7: Output Refiner (inside loop) ───────────────────────
-        AgentSpec refinerSpec = AgentSpec.of(
-                        AgentNames.OUTPUT_REFINER,
-                        "Fixes critic-identified issues")
-                .inputs("finalOutput", "extractionReview", "scoredCandidates")
-                .outputKey("finalOutput")
-                .listener(monitor)
-                .build();
-
-        // ── Agent 6b: Loop Critic (inside loop) ─────────────────────────
-        AgentSpec loopCriticSpec = AgentSpec.of(
-                        AgentNames.EXTRACTION_CRITIC,
-                        "Re-evaluates refined output")
-                .inputs("finalOutput", "sourceText")
-                .outputKey("extractionReview")
-                .listener(monitor)
-                .build();
-
-        UntypedAgent assembler = agentFactory.create(assemblerSpec);
-        UntypedAgent firstCritic = agentFactory.create(firstCriticSpec);
-
-        UntypedAgent refinementLoop = agentFactory.loop(
-                REFINEMENT_LOOP_MAX_ITERATIONS,
-                s -> CsmExtractionSubWorkflowConfigV5.parseExtractionScore(
-                        s.readState("extractionReview", "NO"))
-                        >= EXTRACTION_QUALITY_THRESHOLD,
-                refinerSpec, loopCriticSpec
-        );
-
-        UntypedAgent assemblePipeline = agentFactory.sequence(
-                "finalOutput", assembler, firstCritic, refinementLoop);
+        // ── Agent 5 → Agent 6a → Loop(Agent 7 → Agent 6b) ────────────────
+        UntypedAgent assemblePipeline = agentCache.workflow("v2.assemble-refine", () -> {
+            UntypedAgent refinementLoop = agentFactory.loop(
+                    REFINEMENT_LOOP_MAX_ITERATIONS,
+                    s -> CsmExtractionSubWorkflowConfigV5.parseExtractionScore(
+                            s.readState("extractionReview", "NO"))
+                            >= EXTRACTION_QUALITY_THRESHOLD,
+                    REFINER_SPEC, LOOP_CRITIC_SPEC
+            );
+            return agentFactory.sequence("finalOutput",
+                    agentCache.create(ASSEMBLER_SPEC),      // Agent 5:  Output Assembler
+                    agentCache.create(FIRST_CRITIC_SPEC),   // Agent 6a: First Critic (before loop)
+                    refinementLoop);                        // Agent 7 → 6b inside loop
+        });
 
         // Seed the scope with required inputs
         scope.writeState("scoredCandidates", scoredCandidates);
@@ -490,11 +562,18 @@ public class CsmChunkedPipelineExecutor {
     }
 
     private DocumentChunker buildChunker() {
-        return DocumentChunker.builder()
+        DocumentChunker.Builder builder = DocumentChunker.builder()
                 .pagesPerChunk(pagesPerChunk)
                 .overlapPages(overlapPages)
                 .pageDelimiter(pageDelimiterRegex)
-                .build();
+                .tokenCounter(tokenCounter);
+        if ("tokens".equalsIgnoreCase(chunkPacking)) {
+            builder.maxTokensPerChunk(maxTokenEstimate).overlapTokens(overlapTokens);
+        }
+        if (pageFilterEnabled) {
+            builder.pageFilter(new GovernancePageFilter(pageFilterMinScore));
+        }
+        return builder.build();
     }
 
     // =========================================================================
@@ -32,6 +32,18 @@ import java.util.regex.Pattern;
  * }
  * </pre>
  *
+ * <h3>Token-budget packing:</h3>
+ * <p>Fixed page windows give tiny chunks for sparse registry pages and overflow
+ * on dense annual-report pages. With {@code maxTokensPerChunk} set, pages are
+ * packed greedily up to the budget and overlap is measured in tokens instead:</p>
+ * <pre>
+ * DocumentChunker chunker = DocumentChunker.builder()
+ *         .maxTokensPerChunk(100_000)
+ *         .overlapTokens(4_000)
+ *         .tokenCounter(TokenCounter.forModel("gemini-2.5-pro"))
+ *         .build();
+ * </pre>
+ *
  * <p>This class is pure logic with no Spring dependencies — safe for unit testing.</p>
  */
 public class DocumentChunker {
@@ -41,22 +53,31 @@ public class DocumentChunker {
     /** Default: form-feed character (standard PDF-to-text page delimiter) */
     private static final Pattern DEFAULT_PAGE_DELIMITER = Pattern.compile("\\f");
 
-    /** Heuristic: average tokens per word for English/mixed text */
-    private static final double TOKENS_PER_WORD = 0.75;
-
     private final int pagesPerChunk;
     private final int overlapPages;
     private final Pattern pageDelimiter;
+    private final TokenCounter tokenCounter;
+    private final int maxTokensPerChunk;
+    private final int overlapTokens;
+    private final GovernancePageFilter pageFilter;
 
     private DocumentChunker(Builder builder) {
         this.pagesPerChunk = builder.pagesPerChunk;
         this.overlapPages = builder.overlapPages;
         this.pageDelimiter = builder.pageDelimiter;
+        this.tokenCounter = builder.tokenCounter;
+        this.maxTokensPerChunk = builder.maxTokensPerChunk;
+        this.overlapTokens = builder.overlapTokens;
+        this.pageFilter = builder.pageFilter;
 
         if (overlapPages >= pagesPerChunk) {
             throw new IllegalArgumentException(
                     "overlapPages (" + overlapPages + ") must be < pagesPerChunk (" + pagesPerChunk + ")");
         }
+        if (maxTokensPerChunk > 0 && overlapTokens >= maxTokensPerChunk) {
+            throw new IllegalArgumentException(
+                    "overlapTokens (" + overlapTokens + ") must be < maxTokensPerChunk (" + maxTokensPerChunk + ")");
+        }
     }
 
     // =========================================================================
@@ -70,9 +91,28 @@ public class DocumentChunker {
      * @param maxTokenEstimate     the token budget (e.g., 80% of model context window)
      * @return true if the document likely exceeds the token budget
      */
-    public boolean needsChunking(String sourceText, int maxTokenEstimate) {
-        if (sourceText == null || sourceText.isBlank()) return false;
-        int estimatedTokens = estimateTokens(sourceText);
+    public boolean needsChunking(CharSequence sourceText, int maxTokenEstimate) {
+        if (sourceText == null) return false;
+        return needsChunkingForEstimate(tokenCounter.count(sourceText), maxTokenEstimate);
+    }
+
+    /**
+     * Same as {@link #needsChunking(CharSequence, int)} for a memory-mapped document,
+     * counted window by window without decoding it into one string.
+     */
+    public boolean needsChunking(MappedDocument document, int maxTokenEstimate) {
+        return needsChunkingForEstimate(document.countTokens(tokenCounter), maxTokenEstimate);
+    }
+
+    /**
+     * Same as {@link #needsChunking(CharSequence, int)} but for a token count the
+     * caller has already computed (see {@link TokenCounter#SOURCE_TOKEN_ESTIMATE_KEY}).
+     *
+     * @param estimatedTokens  token estimate for the full document
+     * @param maxTokenEstimate the token budget
+     * @return true if the estimate exceeds the token budget
+     */
+    public boolean needsChunkingForEstimate(int estimatedTokens, int maxTokenEstimate) {
         boolean needs = estimatedTokens > maxTokenEstimate;
         if (needs) {
             log.info("Document needs chunking: ~{} estimated tokens exceeds {} limit",
@@ -87,126 +127,283 @@ public class DocumentChunker {
      * <p>If the document has no page delimiters (or is a single page),
      * returns a single chunk containing the entire text.</p>
      *
+     * <p>Chunk text is a view over {@code sourceText} (see {@link PageIndex}) — it
+     * spans from the first character of the chunk's first page to the last
+     * character of its last page, original delimiters included. Call
+     * {@code toString()} only at the point the text is handed to a prompt.</p>
+     *
      * @param sourceText the full document text
      * @return list of chunks, never empty
      */
-    public List<ChunkContext> chunk(String sourceText) {
-        if (sourceText == null || sourceText.isBlank()) {
-            return Collections.singletonList(new ChunkContext(
-                    0, 1, 1, -1, -1, "", 1));
-        }
+    public List<ChunkContext> chunk(CharSequence sourceText) {
+        return plan(sourceText).chunks();
+    }
 
-        List<String> pages = splitIntoPages(sourceText);
-        log.info("Document split into {} pages (pagesPerChunk={}, overlap={})",
-                pages.size(), pagesPerChunk, overlapPages);
+    /**
+     * Same as {@link #chunk(CharSequence)}, but also reports what the page
+     * pre-filter dropped (if one is configured) for run metrics.
+     *
+     * <p>With a {@link GovernancePageFilter}, chunks are packed over the kept pages
+     * only. Page numbers on {@link ChunkContext} remain the document's original
+     * page numbers, so a chunk may span dropped pages without containing them.</p>
+     *
+     * @param sourceText the full document text
+     * @return chunks plus pre-filter statistics
+     */
+    public ChunkPlan plan(CharSequence sourceText) {
+        return plan(sourceText == null ? null : indexPages(sourceText), sourceText);
+    }
 
-        if (pages.size() <= pagesPerChunk) {
-            log.info("Document fits in single chunk — no splitting needed");
-            return Collections.singletonList(new ChunkContext(
-                    0, 1, pages.size(), -1, -1, sourceText, 1));
+    /**
+     * Same as {@link #plan(CharSequence)} for a memory-mapped document: the page index
+     * is built from the mapped bytes and each chunk's text is decoded only when its
+     * {@code toString()} is called. Each page is decoded once, transiently, to count
+     * its tokens and score it for the pre-filter in the same pass.
+     *
+     * @param document the mapped document; must stay open while chunks are read
+     * @return chunks plus pre-filter statistics
+     */
+    public ChunkPlan plan(MappedDocument document) {
+        return plan(document.indexPages(pageDelimiter), null);
+    }
+
+    /**
+     * @param wholeText the indexed text as one sequence, or null if it must not be
+     *                  materialised (single-chunk text is then the page span)
+     */
+    private ChunkPlan plan(PageIndex pages, CharSequence wholeText) {
+        if (pages == null || pages.pageCount() == 0) {
+            return ChunkPlan.unfiltered(Collections.singletonList(new ChunkContext(
+                    0, 1, 1, -1, -1, "", 1, 0)), 0);
         }
 
-        int stride = pagesPerChunk - overlapPages;
-        List<ChunkContext> chunks = new ArrayList<>();
+        // ── One read of every page: token count, governance anchors and, with a pre-filter, its score ──
+        int totalPageCount = pages.pageCount();
+        int[] pageTokens = new int[totalPageCount];
+        double[] scores = pageFilter != null ? new double[totalPageCount] : null;
+        List<GovernanceTermIndex.Hit> anchors = new ArrayList<>();
+        for (int p = 0; p < totalPageCount; p++) {
+            CharSequence text = pages.scanText(p);
+            pageTokens[p] = tokenCounter.count(text);
+            GovernanceTermIndex.lexicon().scanPage(text, p, anchors);
+            if (scores != null) {
+                scores[p] = pageFilter.scorePage(text, 0, text.length());
+            }
+        }
+        anchors = Collections.unmodifiableList(anchors);
+
+        // ── Pre-screen pages; chunking then runs over the kept pages only ──
+        int[] kept = null;
+        int[] dropped = new int[0];
+        if (pageFilter != null) {
+            GovernancePageFilter.Result screened = pageFilter.select(scores);
+            if (screened.droppedPages().length > 0) {
+                kept = screened.keptPages();
+                dropped = screened.droppedPages();
+            }
+        }
 
-        int chunkIndex = 0;
-        for (int start = 0; start < pages.size(); start += stride) {
-            int end = Math.min(start + pagesPerChunk, pages.size());
+        int pageCount = kept == null ? totalPageCount : kept.length;
+        long[] tokenPrefix = pageTokenPrefixSums(pageTokens, kept);
+        int documentTokens = (int) tokenPrefix[pageCount];
+        long droppedTokens = 0;
+        for (int p : dropped) {
+            droppedTokens += pageTokens[p];
+        }
 
-            // Build chunk text by joining the pages
-            StringBuilder chunkText = new StringBuilder();
-            for (int p = start; p < end; p++) {
-                if (chunkText.length() > 0) chunkText.append('\f');
-                chunkText.append(pages.get(p));
-            }
+        if (isTokenPacking()) {
+            log.info("Document split into {} pages, ~{} tokens (maxTokensPerChunk={}, overlapTokens={})",
+                    pageCount, documentTokens, maxTokensPerChunk, overlapTokens);
+        } else {
+            log.info("Document split into {} pages (pagesPerChunk={}, overlap={})",
+                    pageCount, pagesPerChunk, overlapPages);
+        }
+        if (dropped.length > 0) {
+            log.info("Page pre-filter dropped {}/{} pages (~{} tokens) with no governance signal",
+                    dropped.length, totalPageCount, droppedTokens);
+        }
 
-            // Determine overlap zone (pages that also appear in the previous chunk)
-            int overlapStart = -1;
-            int overlapEnd = -1;
-            if (chunkIndex > 0) {
-                overlapStart = start + 1;  // 1-based page number
-                overlapEnd = Math.min(start + overlapPages, end) ;  // 1-based
-            }
+        boolean fitsInOneChunk = isTokenPacking()
+                ? documentTokens <= maxTokensPerChunk
+                : pageCount <= pagesPerChunk;
+        if (fitsInOneChunk) {
+            log.info("Document fits in single chunk — no splitting needed");
+            CharSequence text = kept != null ? pages.selectedPages(kept, 0, pageCount)
+                    : wholeText != null ? wholeText
+                    : pages.pages(0, pageCount);
+            return new ChunkPlan(Collections.singletonList(new ChunkContext(
+                    0, 1, toPageNumber(kept, pageCount), -1, -1, text, 1, documentTokens)),
+                    totalPageCount, toPageNumbers(dropped), droppedTokens, anchors);
+        }
 
-            int totalChunks = (int) Math.ceil((double) (pages.size() - overlapPages) / stride);
-            // Correct for edge case where last chunk is exactly at boundary
-            if ((pages.size() - overlapPages) % stride == 0 && pages.size() > pagesPerChunk) {
-                totalChunks = Math.max(totalChunks, chunkIndex + 1);
-            }
+        List<PageRange> ranges = isTokenPacking()
+                ? packByTokens(tokenPrefix, pageCount)
+                : packByPages(pageCount);
 
+        int total = ranges.size();
+        List<ChunkContext> chunks = new ArrayList<>(total);
+        for (int chunkIndex = 0; chunkIndex < total; chunkIndex++) {
+            PageRange range = ranges.get(chunkIndex);
             chunks.add(new ChunkContext(
                     chunkIndex,
-                    start + 1,              // 1-based page start
-                    end,                     // 1-based page end (end is exclusive in loop but pages list is 0-based)
-                    overlapStart,
-                    overlapEnd,
-                    chunkText.toString(),
-                    -1                       // placeholder — updated below
+                    toPageNumber(kept, range.start() + 1),   // 1-based page start
+                    toPageNumber(kept, range.end()),         // 1-based page end (end is exclusive in loop but pages list is 0-based)
+                    toPageNumber(kept, range.overlapStartPage()),
+                    toPageNumber(kept, range.overlapEndPage()),
+                    kept == null
+                            ? pages.pages(range.start(), range.end())
+                            : pages.selectedPages(kept, range.start(), range.end()),
+                    total,
+                    (int) (tokenPrefix[range.end()] - tokenPrefix[range.start()])
             ));
-
-            chunkIndex++;
-
-            // Stop if we've reached the end
-            if (end >= pages.size()) break;
-        }
-
-        // Fix totalChunks on all records
-        int total = chunks.size();
-        List<ChunkContext> result = new ArrayList<>(total);
-        for (ChunkContext c : chunks) {
-            result.add(new ChunkContext(
-                    c.chunkIndex(), c.pageStart(), c.pageEnd(),
-                    c.overlapStartPage(), c.overlapEndPage(),
-                    c.chunkText(), total));
         }
 
         log.info("Document split into {} chunks", total);
-        for (ChunkContext c : result) {
+        for (ChunkContext c : chunks) {
             log.debug("  {}", c);
         }
 
-        return Collections.unmodifiableList(result);
+        return new ChunkPlan(Collections.unmodifiableList(chunks),
+                totalPageCount, toPageNumbers(dropped), droppedTokens, anchors);
     }
 
     /**
-     * Estimates the token count for a text string using a word-count heuristic.
+     * Builds the page-offset index for a document using the configured delimiter.
+     * Exposed so callers can resolve page numbers back to text without re-splitting.
      *
-     * <p>Heuristic: split on whitespace, multiply by {@value TOKENS_PER_WORD}.
-     * This is intentionally conservative — it's better to chunk unnecessarily
-     * than to exceed the context window.</p>
+     * @param sourceText the full document text
+     * @return index of non-empty, whitespace-stripped pages
+     */
+    public PageIndex indexPages(CharSequence sourceText) {
+        return PageIndex.build(sourceText, pageDelimiter);
+    }
+
+    /**
+     * Estimates the token count for a text string using the default word-count heuristic.
      *
      * @param text the text to estimate
      * @return estimated token count
+     * @deprecated scans the text on every call — compute the count once per document
+     *             with a {@link TokenCounter} and reuse it
      */
+    @Deprecated
     public static int estimateTokens(String text) {
-        if (text == null || text.isBlank()) return 0;
-        // Split on whitespace and count — simple but effective for mixed-language text
-        int wordCount = text.split("\\s+").length;
-        return (int) Math.ceil(wordCount / TOKENS_PER_WORD);
+        return TokenCounter.wordHeuristic().count(text);
     }
 
     // =========================================================================
     //  Internal
     // =========================================================================
 
+    /** Page range of one chunk: 0-based [start, end), overlap zone as 1-based pages or -1. */
+    private record PageRange(int start, int end, int overlapStartPage, int overlapEndPage) {
+    }
+
+    private boolean isTokenPacking() {
+        return maxTokensPerChunk > 0;
+    }
+
+    /**
+     * Prefix sums of the per-page token counts, so the token count of any page
+     * range is a single subtraction.
+     *
+     * @param pageTokens tokens per 0-based page of the document
+     * @param kept       0-based pages to sum, or null for every page
+     */
+    private static long[] pageTokenPrefixSums(int[] pageTokens, int[] kept) {
+        int n = kept == null ? pageTokens.length : kept.length;
+        long[] prefix = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            int p = kept == null ? i : kept[i];
+            prefix[i + 1] = prefix[i] + pageTokens[p];
+        }
+        return prefix;
+    }
+
+    /**
+     * Maps a 1-based position among the chunked pages back to the document's
+     * 1-based page number. Identity without a page filter; -1 stays -1.
+     */
+    private static int toPageNumber(int[] kept, int position) {
+        if (kept == null || position < 1) return position;
+        return kept[position - 1] + 1;
+    }
+
+    private static List<Integer> toPageNumbers(int[] zeroBasedPages) {
+        List<Integer> pageNumbers = new ArrayList<>(zeroBasedPages.length);
+        for (int page : zeroBasedPages) {
+            pageNumbers.add(page + 1);
+        }
+        return Collections.unmodifiableList(pageNumbers);
+    }
+
     /**
-     * Splits text into pages using the configured delimiter.
-     * Trims each page and filters out empty pages.
+     * Fixed page windows: chunk k covers pages [k*stride, k*stride + pagesPerChunk).
      */
-    private List<String> splitIntoPages(String text) {
-        String[] raw = pageDelimiter.split(text);
-        List<String> pages = new ArrayList<>();
-        for (String page : raw) {
-            String trimmed = page.strip();
-            if (!trimmed.isEmpty()) {
-                pages.add(trimmed);
+    private List<PageRange> packByPages(int pageCount) {
+        int stride = pagesPerChunk - overlapPages;
+        // The last chunk is the first whose end reaches pageCount
+        int total = (pageCount - pagesPerChunk + stride - 1) / stride + 1;
+        List<PageRange> ranges = new ArrayList<>(total);
+
+        for (int chunkIndex = 0; chunkIndex < total; chunkIndex++) {
+            int start = chunkIndex * stride;
+            int end = Math.min(start + pagesPerChunk, pageCount);
+
+            // Determine overlap zone (pages that also appear in the previous chunk)
+            int overlapStart = -1;
+            int overlapEnd = -1;
+            if (chunkIndex > 0) {
+                overlapStart = start + 1;  // 1-based page number
+                overlapEnd = Math.min(start + overlapPages, end);  // 1-based
             }
+            ranges.add(new PageRange(start, end, overlapStart, overlapEnd));
         }
-        // If no delimiters found, treat entire text as single page
-        if (pages.isEmpty()) {
-            pages.add(text.strip());
+        return ranges;
+    }
+
+    /**
+     * Greedy token packing: each chunk takes consecutive pages while the running
+     * total stays within {@code maxTokensPerChunk}. The next chunk starts with as
+     * many trailing pages of the previous one as fit in {@code overlapTokens}.
+     *
+     * <p>Every chunk contains at least one page not seen before, so a single page
+     * larger than the budget becomes its own (oversized) chunk rather than stalling.</p>
+     */
+    private List<PageRange> packByTokens(long[] tokenPrefix, int pageCount) {
+        List<PageRange> ranges = new ArrayList<>();
+        int start = 0;
+        int previousEnd = 0;
+
+        while (previousEnd < pageCount) {
+            // ── Shrink the overlap if it leaves no room for the first new page ──
+            while (start < previousEnd
+                    && tokenPrefix[previousEnd + 1] - tokenPrefix[start] > maxTokensPerChunk) {
+                start++;
+            }
+
+            // ── Pack: at least one new page, then as many as fit ──
+            int end = previousEnd + 1;
+            while (end < pageCount && tokenPrefix[end + 1] - tokenPrefix[start] <= maxTokensPerChunk) {
+                end++;
+            }
+
+            int overlapStart = start < previousEnd ? start + 1 : -1;   // 1-based
+            int overlapEnd = start < previousEnd ? previousEnd : -1;   // 1-based
+            ranges.add(new PageRange(start, end, overlapStart, overlapEnd));
+
+            if (end >= pageCount) break;
+
+            // ── Next chunk re-reads trailing pages worth up to overlapTokens ──
+            int nextStart = end;
+            while (nextStart - 1 > start
+                    && tokenPrefix[end] - tokenPrefix[nextStart - 1] <= overlapTokens) {
+                nextStart--;
+            }
+            start = nextStart;
+            previousEnd = end;
         }
-        return pages;
+        return ranges;
     }
 
     // =========================================================================
@@ -228,6 +425,10 @@ public class DocumentChunker {
         private int pagesPerChunk = 20;
         private int overlapPages = 5;
         private Pattern pageDelimiter = DEFAULT_PAGE_DELIMITER;
+        private TokenCounter tokenCounter = TokenCounter.wordHeuristic();
+        private int maxTokensPerChunk = 0;
+        private int overlapTokens = 0;
+        private GovernancePageFilter pageFilter;
 
         /**
          * Number of pages per chunk. Default: 20.
@@ -266,6 +467,46 @@ public class DocumentChunker {
             return this;
         }
 
+        /**
+         * Token estimator used for {@link #needsChunking}. Default: word-count heuristic.
+         */
+        public Builder tokenCounter(TokenCounter tokenCounter) {
+            if (tokenCounter == null) throw new IllegalArgumentException("tokenCounter must not be null");
+            this.tokenCounter = tokenCounter;
+            return this;
+        }
+
+        /**
+         * Switches to token-budget packing: consecutive pages are packed greedily until
+         * the next page would push the chunk over this many estimated tokens.
+         * {@code pagesPerChunk}/{@code overlapPages} are ignored in this mode.
+         * Default: 0 (fixed page windows).
+         */
+        public Builder maxTokensPerChunk(int maxTokensPerChunk) {
+            if (maxTokensPerChunk < 0) throw new IllegalArgumentException("maxTokensPerChunk must be >= 0");
+            this.maxTokensPerChunk = maxTokensPerChunk;
+            return this;
+        }
+
+        /**
+         * Token-packing mode only: how many tokens of trailing pages each chunk re-reads
+         * from the previous one. Must be less than maxTokensPerChunk. Default: 0.
+         */
+        public Builder overlapTokens(int overlapTokens) {
+            if (overlapTokens < 0) throw new IllegalArgumentException("overlapTokens must be >= 0");
+            this.overlapTokens = overlapTokens;
+            return this;
+        }
+
+        /**
+         * Pre-screens pages before chunking and drops those with no governance or
+         * person-name signal. Default: none (every page is chunked).
+         */
+        public Builder pageFilter(GovernancePageFilter pageFilter) {
+            this.pageFilter = pageFilter;
+            return this;
+        }
+
         public DocumentChunker build() {
             return new DocumentChunker(this);
         }
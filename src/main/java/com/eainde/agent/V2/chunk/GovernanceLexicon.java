@@ -0,0 +1,101 @@
+package com.eainde.agent.V2.chunk;
+
+import java.util.List;
+
+/**
+ * Multilingual governance vocabulary used for deterministic page screening.
+ *
+ * <p>Seeded from the Gate 4 (governance body), Gate 5 (canonical titles) and
+ * Gate 6 (signatory) vocabulary of the eligibility classifier prompt, so a page
+ * that mentions none of these terms cannot yield a CSM candidate on its own.</p>
+ *
+ * <p>Bare generic titles ("Director", "Manager", "Officer", "Administrator") are
+ * left out on purpose: financial statements and notes use them on nearly every page
+ * ("Directors' remuneration", "Key Management"). They still count inside the
+ * compound terms above.</p>
+ *
+ * <p>Matching is case-insensitive. Terms in space-delimited scripts must start on
+ * a word boundary ("Vorstand" does not match inside "Landesvorstand") and short
+ * acronyms must also end on one; CJK terms match anywhere.</p>
+ */
+public final class GovernanceLexicon {
+
+    /** Which gate vocabulary a term comes from. */
+    public enum Category {
+        /** Gate 4 executive bodies — positive signal. */
+        EXECUTIVE,
+        /** Gate 4 non-executive / supervisory bodies. */
+        SUPERVISORY,
+        /** Gate 5 canonical titles and function heads. */
+        TITLE,
+        /** Gate 6 signatory calibration. */
+        SIGNATORY,
+        /** Gate 7 hard-exclusion roles (notary, witness, secretary). */
+        EXCLUSION
+    }
+
+    /** A single lexicon entry. */
+    public record Term(String text, Category category) {
+    }
+
+    private static final List<Term> TERMS = List.of(
+            // ── Gate 4: executive bodies ─────────────────────────────────
+            exec("Vorstand"), exec("Management Board"), exec("Executive Board"),
+            exec("ExCo"), exec("Executive Committee"),
+            exec("Presiden Direktur"), exec("Direktur Utama"), exec("Direktur"), exec("Direksi"),
+            exec("Geschäftsführer"), exec("Geschäftsführung"), exec("Geschaeftsfuehrer"),
+            exec("Directeur Général"), exec("Direction Générale"), exec("Directoire"),
+            exec("Consejero Delegado"), exec("Director General"),
+            exec("Amministratore Delegato"), exec("Direttore Generale"),
+            exec("Bestuur"), exec("Statutair bestuurder"), exec("RvB"),
+            exec("Zarząd"), exec("Zarządu"), exec("Członek Zarządu"), exec("Prezes Zarządu"),
+            exec("代表取締役"), exec("取締役"), exec("法定代表人"), exec("总经理"), exec("董事"),
+            exec("General Director"), exec("Sole Executive Body"),
+            exec("Liquidator"), exec("Insolvency Administrator"), exec("Insolvency Practitioner"),
+            exec("Board of Directors"), exec("Managing Director"), exec("Managing Partner"),
+
+            // ── Gate 4: supervisory bodies ───────────────────────────────
+            sup("Aufsichtsrat"), sup("Supervisory Board"), sup("Verwaltungsrat"),
+            sup("Raad van Commissarissen"), sup("RvC"), sup("Rada Nadzorcza"),
+            sup("Collegio Sindacale"), sup("Collegio dei Revisori"),
+            sup("Conseil de Surveillance"), sup("Advisory Board"), sup("Beirat"),
+            sup("Statutory Auditor"), sup("監査役"), sup("监事会"),
+            sup("Non-Executive Director"), sup("Dewan Komisaris"),
+
+            // ── Gate 5: canonical titles ─────────────────────────────────
+            title("CEO"), title("CFO"), title("COO"), title("CIO"), title("CRO"),
+            title("Chief Executive Officer"), title("Chief Financial Officer"),
+            title("Chief Operating Officer"), title("Chief Risk Officer"),
+            title("Chief Legal Officer"), title("General Counsel"), title("Head of Compliance"),
+            title("Executive Chair"), title("Chairman"), title("Chairwoman"), title("Chairperson"),
+            title("President"), title("Président"), title("Presidente"), title("Prezes"),
+            title("社長"), title("会长"), title("董事长"),
+
+            // ── Gate 6: signatories ──────────────────────────────────────
+            sig("Einzelprokura"), sig("Gesamtprokura"), sig("Prokura"), sig("Prokurist"),
+            sig("alleinvertretungsberechtigt"), sig("vertretungsberechtigt"),
+            sig("Prokura samoistna"), sig("Prokura łączna"), sig("Pełnomocnik"),
+            sig("Authorised Signatory"), sig("Authorized Signatory"), sig("Signatory"),
+            sig("Power of Attorney"),
+
+            // ── Gate 7: exclusion roles (still person-bearing pages) ────
+            excl("Notary"), excl("Notar"), excl("Notaire"), excl("Witness"), excl("Zeuge"),
+            excl("Company Secretary"), excl("Corporate Secretary")
+    );
+
+    private GovernanceLexicon() {
+    }
+
+    /**
+     * @return all lexicon terms, in declaration order
+     */
+    public static List<Term> terms() {
+        return TERMS;
+    }
+
+    private static Term exec(String text)  { return new Term(text, Category.EXECUTIVE); }
+    private static Term sup(String text)   { return new Term(text, Category.SUPERVISORY); }
+    private static Term title(String text) { return new Term(text, Category.TITLE); }
+    private static Term sig(String text)   { return new Term(text, Category.SIGNATORY); }
+    private static Term excl(String text)  { return new Term(text, Category.EXCLUSION); }
+}
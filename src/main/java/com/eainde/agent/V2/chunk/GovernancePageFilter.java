@@ -0,0 +1,196 @@
+package com.eainde.agent.V2.chunk;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Deterministic page pre-screen that runs before chunking, so pages that cannot
+ * contain a CSM candidate never reach the map-phase agents.
+ *
+ * <h3>Scoring (per page):</h3>
+ * <pre>
+ *   +1.0  per governance lexicon hit      (see {@link GovernanceLexicon}, {@link GovernanceTermIndex})
+ *   +1.0  per honorific followed by a capitalised word   ("Mr. Smith", "Herr Müller")
+ *   +0.1  per pair of capitalised words   ("Hans Müller" — name-shaped), at most +0.5
+ * </pre>
+ *
+ * <p>A name pair only counts when the two words are separated by spaces alone, so
+ * table cells and line items ("Total Assets\n1,234") do not pair up across line
+ * breaks and figures. The cap means name shapes alone never keep a page at the
+ * default threshold — capitalised line items fill financial statements.</p>
+ *
+ * <h3>Keep rule:</h3>
+ * <ul>
+ *   <li>Pages scoring at least {@code minScore} are kept</li>
+ *   <li>Their immediate neighbours are kept too — a name on page 20 may carry its
+ *       governance title on page 21 (same reason chunks overlap)</li>
+ *   <li>The first page is always kept — it carries the document type and date the
+ *       source classifier needs</li>
+ * </ul>
+ *
+ * <p>Financial statements and boilerplate pages typically score zero and are
+ * dropped. This class is pure logic with no Spring dependencies — safe for unit testing.</p>
+ */
+public final class GovernancePageFilter {
+
+    /** Default threshold: one lexicon or honorific hit. */
+    public static final double DEFAULT_MIN_SCORE = 1.0;
+
+    private static final double TERM_WEIGHT = 1.0;
+    private static final double HONORIFIC_WEIGHT = 1.0;
+    private static final double NAME_PAIR_WEIGHT = 0.1;
+    private static final double NAME_PAIR_CAP = 0.5;
+
+    private static final Set<String> HONORIFICS = Set.of(
+            "mr", "mrs", "ms", "dr", "prof", "sir", "dame",
+            "herr", "frau", "pan", "pani", "mme", "mlle", "m",
+            "sig", "dott", "sr", "sra", "dhr", "mevr",
+            "ir", "drs", "bapak", "ibu");
+
+    /** All lexicon terms in one automaton — a page is read once, not once per term bucket. */
+    private final GovernanceTermIndex termIndex;
+    private final double minScore;
+
+    public GovernancePageFilter(double minScore) {
+        this(minScore, GovernanceTermIndex.lexicon());
+    }
+
+    public GovernancePageFilter(double minScore, GovernanceTermIndex termIndex) {
+        this.minScore = minScore;
+        this.termIndex = termIndex;
+    }
+
+    public static GovernancePageFilter withDefaults() {
+        return new GovernancePageFilter(DEFAULT_MIN_SCORE);
+    }
+
+    /**
+     * Outcome of screening a document.
+     *
+     * @param keptPages    0-based page numbers that go to the map phase, ascending
+     * @param droppedPages 0-based page numbers that were screened out, ascending
+     * @param scores       score per page, indexed by 0-based page number
+     */
+    public record Result(int[] keptPages, int[] droppedPages, double[] scores) {
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Scores every page of the index and decides which pages to keep.
+     *
+     * @param pages page index of the full document
+     * @return kept and dropped pages; never drops every page of a non-empty document
+     */
+    public Result filter(PageIndex pages) {
+        double[] scores = new double[pages.pageCount()];
+        for (int p = 0; p < scores.length; p++) {
+            CharSequence page = pages.scanText(p);
+            scores[p] = scorePage(page, 0, page.length());
+        }
+        return select(scores);
+    }
+
+    /**
+     * Applies the keep rule to page scores computed by the caller — for a caller
+     * that already reads every page once for something else (token counting).
+     *
+     * @param scores {@link #scorePage} per page, indexed by 0-based page number
+     * @return kept and dropped pages
+     */
+    public Result select(double[] scores) {
+        int pageCount = scores.length;
+        boolean[] hit = new boolean[pageCount];
+        for (int p = 0; p < pageCount; p++) {
+            hit[p] = scores[p] >= minScore;
+        }
+
+        int[] kept = new int[pageCount];
+        int[] dropped = new int[pageCount];
+        int keptCount = 0;
+        int droppedCount = 0;
+        for (int p = 0; p < pageCount; p++) {
+            boolean keep = p == 0
+                    || hit[p]
+                    || hit[p - 1]
+                    || (p + 1 < pageCount && hit[p + 1]);
+            if (keep) kept[keptCount++] = p;
+            else dropped[droppedCount++] = p;
+        }
+
+        return new Result(
+                Arrays.copyOf(kept, keptCount),
+                Arrays.copyOf(dropped, droppedCount),
+                scores);
+    }
+
+    /**
+     * Scores a single region of text.
+     *
+     * @param text  the buffer
+     * @param start inclusive start offset
+     * @param end   exclusive end offset
+     * @return governance-signal score (0 = nothing person- or governance-shaped)
+     */
+    public double scorePage(CharSequence text, int start, int end) {
+        return termIndex.count(text, start, end) * TERM_WEIGHT + scoreNameShapes(text, start, end);
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /**
+     * Walks the words of a page once, scoring honorific + capitalised word and
+     * capitalised word pairs. No per-word allocation except for short candidate
+     * honorifics.
+     */
+    private static double scoreNameShapes(CharSequence text, int start, int end) {
+        double honorificScore = 0;
+        double nameScore = 0;
+        boolean previousCapitalised = false;
+        boolean previousHonorific = false;
+
+        int i = start;
+        while (i < end) {
+            // Skip to the next word; anything but spaces in between breaks a name pair
+            boolean spaceOnly = true;
+            while (i < end && !Character.isLetter(text.charAt(i))) {
+                spaceOnly &= text.charAt(i) == ' ';
+                i++;
+            }
+            if (i >= end) break;
+
+            int wordStart = i;
+            while (i < end && (Character.isLetter(text.charAt(i)) || text.charAt(i) == '-')) i++;
+            int wordEnd = i;
+            boolean followedByDot = i < end && text.charAt(i) == '.';
+
+            boolean capitalised = isCapitalisedWord(text, wordStart, wordEnd);
+            if (capitalised && previousHonorific) {
+                honorificScore += HONORIFIC_WEIGHT;
+            } else if (capitalised && previousCapitalised && spaceOnly) {
+                nameScore += NAME_PAIR_WEIGHT;
+            }
+
+            previousHonorific = wordEnd - wordStart <= 5
+                    && (followedByDot || Character.isUpperCase(text.charAt(wordStart)))
+                    && HONORIFICS.contains(text.subSequence(wordStart, wordEnd).toString().toLowerCase(Locale.ROOT));
+            // A sentence-ending dot breaks a name pair
+            previousCapitalised = capitalised && !followedByDot && !previousHonorific;
+        }
+        return honorificScore + Math.min(nameScore, NAME_PAIR_CAP);
+    }
+
+    /** "Müller", "Jean-Luc" — uppercase first letter followed by at least one lowercase letter. */
+    private static boolean isCapitalisedWord(CharSequence text, int start, int end) {
+        if (end - start < 2 || !Character.isUpperCase(text.charAt(start))) return false;
+        for (int k = start + 1; k < end; k++) {
+            if (Character.isLowerCase(text.charAt(k))) return true;
+        }
+        return false;
+    }
+}
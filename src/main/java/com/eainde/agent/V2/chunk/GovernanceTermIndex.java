@@ -0,0 +1,270 @@
+package com.eainde.agent.V2.chunk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiled multi-pattern matcher (Aho–Corasick) over the {@link GovernanceLexicon}.
+ *
+ * <p>All terms are found in one left-to-right pass over the text, whatever the size
+ * of the lexicon: each character is one transition of the automaton, and a term is
+ * reported at the position where it ends. Scanning a document once yields the
+ * governance anchors (term, category, page, offset) that the page filter scores and
+ * that later stages can use as evidence or to prune the text they send to a model.</p>
+ *
+ * <h3>Matching rules (same as the lexicon):</h3>
+ * <ul>
+ *   <li>case-insensitive, per character</li>
+ *   <li>Latin-script terms start on a word boundary; terms shorter than
+ *       {@value #MIN_INFLECTABLE_TERM_LENGTH} characters must also end on one, longer
+ *       ones may carry an inflection ("Vorstands", "Geschäftsführers")</li>
+ *   <li>CJK terms match anywhere</li>
+ *   <li>overlapping hits resolve leftmost-longest: "Direktur Utama" is one hit,
+ *       not also "Direktur"</li>
+ * </ul>
+ *
+ * <p>The automaton is immutable and thread-safe; build it once and share it.</p>
+ */
+public final class GovernanceTermIndex {
+
+    /** Terms at least this long may be followed by inflection letters. */
+    static final int MIN_INFLECTABLE_TERM_LENGTH = 6;
+
+    private static final GovernanceTermIndex LEXICON = new GovernanceTermIndex(GovernanceLexicon.terms());
+
+    /** Scope key under which the chunked paths publish a document's hits ({@code List<Hit>}). */
+    public static final String SCOPE_KEY = "governanceAnchors";
+
+    /**
+     * A term occurrence.
+     *
+     * @param term   the lexicon entry that matched
+     * @param page   0-based page number, or -1 when a plain text range was scanned
+     * @param offset offset of the first character, relative to the scanned page or text
+     * @param length number of characters matched (the term, without inflection)
+     */
+    public record Hit(GovernanceLexicon.Term term, int page, int offset, int length) {
+    }
+
+    private final List<GovernanceLexicon.Term> terms;
+    private final int[] termLengths;
+
+    // ── Goto function, one sorted edge list per state (CSR layout) ──
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+
+    /** Root transitions indexed by char — most positions never leave the root. */
+    private final int[] rootNext = new int[Character.MAX_VALUE + 1];
+
+    private final int[] fail;
+    /** Index of the longest term ending in this state, or -1. */
+    private final int[] output;
+    /** Next state on the fail chain that has an output, or -1. */
+    private final int[] outputLink;
+
+    public GovernanceTermIndex(List<GovernanceLexicon.Term> terms) {
+        this.terms = List.copyOf(terms);
+        this.termLengths = new int[this.terms.size()];
+
+        // ── Trie ────────────────────────────────────────────────────────
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> trieOutput = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        trieOutput.add(-1);
+        for (int t = 0; t < this.terms.size(); t++) {
+            String text = this.terms.get(t).text();
+            termLengths[t] = text.length();
+            int state = 0;
+            for (int k = 0; k < text.length(); k++) {
+                char c = Character.toLowerCase(text.charAt(k));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    trieOutput.add(-1);
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            // Duplicate terms keep the first declaration (and its category)
+            if (trieOutput.get(state) < 0) trieOutput.set(state, t);
+        }
+
+        int stateCount = trie.size();
+        this.edgeStart = new int[stateCount + 1];
+        int edgeCount = 0;
+        for (int s = 0; s < stateCount; s++) {
+            edgeStart[s] = edgeCount;
+            edgeCount += trie.get(s).size();
+        }
+        edgeStart[stateCount] = edgeCount;
+        this.edgeChars = new char[edgeCount];
+        this.edgeTargets = new int[edgeCount];
+        for (int s = 0; s < stateCount; s++) {
+            int e = edgeStart[s];
+            for (Map.Entry<Character, Integer> edge : trie.get(s).entrySet()) {
+                edgeChars[e] = edge.getKey();
+                edgeTargets[e++] = edge.getValue();
+            }
+        }
+
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            rootNext[edgeChars[e]] = edgeTargets[e];
+        }
+
+        // ── Fail and output links, breadth-first ────────────────────────
+        this.fail = new int[stateCount];
+        this.output = new int[stateCount];
+        this.outputLink = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) output[s] = trieOutput.get(s);
+        Arrays.fill(outputLink, -1);
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            queue.add(edgeTargets[e]);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int child = edgeTargets[e];
+                int f = fail[state];
+                int next;
+                while ((next = transition(f, edgeChars[e])) < 0 && f != 0) f = fail[f];
+                fail[child] = next >= 0 ? next : 0;
+                outputLink[child] = output[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /** @return the shared index over {@link GovernanceLexicon#terms()} */
+    public static GovernanceTermIndex lexicon() {
+        return LEXICON;
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Scans every page of a document once.
+     *
+     * @return hits in document order, offsets relative to their page
+     */
+    public List<Hit> scan(PageIndex pages) {
+        List<Hit> hits = new ArrayList<>();
+        for (int p = 0; p < pages.pageCount(); p++) {
+            scanPage(pages.scanText(p), p, hits);
+        }
+        return hits;
+    }
+
+    /**
+     * Scans the text of one page — for callers already reading every page once, such
+     * as {@link DocumentChunker#plan(CharSequence)}.
+     *
+     * @param page 0-based page number recorded on the hits
+     * @param hits receives the hits in text order, offsets relative to the page
+     */
+    public void scanPage(CharSequence pageText, int page, List<Hit> hits) {
+        collect(pageText, 0, pageText.length(), page, hits);
+    }
+
+    /**
+     * Scans a region of text.
+     *
+     * @param text  the buffer
+     * @param start inclusive start offset
+     * @param end   exclusive end offset
+     * @return hits in text order, offsets relative to {@code text}
+     */
+    public List<Hit> scan(CharSequence text, int start, int end) {
+        List<Hit> hits = new ArrayList<>();
+        collect(text, start, end, -1, hits);
+        return hits;
+    }
+
+    /** @return number of hits in a region of text, without building {@link Hit}s */
+    public int count(CharSequence text, int start, int end) {
+        return collect(text, start, end, -1, null);
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /**
+     * One pass of the automaton. Every valid occurrence is recorded as it ends, then
+     * the occurrences are swept in (start, longest first) order, keeping those that do
+     * not overlap an earlier kept one.
+     */
+    private int collect(CharSequence text, int start, int end, int page, List<Hit> hits) {
+        // (start << 32) | (0xFFFF - length) << 16 | term — sorts by start, longest first
+        long[] found = new long[16];
+        int foundCount = 0;
+
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) state = fail[state];
+            state = Math.max(next, 0);
+
+            for (int s = output[state] >= 0 ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+                int term = output[s];
+                int termStart = i + 1 - termLengths[term];
+                if (!validAt(text, termStart, termLengths[term])) continue;
+                if (foundCount == found.length) found = Arrays.copyOf(found, foundCount * 2);
+                found[foundCount++] = ((long) termStart << 32) | ((long) (0xFFFF - termLengths[term]) << 16) | term;
+            }
+        }
+
+        Arrays.sort(found, 0, foundCount);
+        int count = 0;
+        int cursor = start;
+        for (int k = 0; k < foundCount; k++) {
+            int termStart = (int) (found[k] >>> 32);
+            int term = (int) (found[k] & 0xFFFF);
+            if (termStart < cursor) continue;
+            if (hits != null) hits.add(new Hit(terms.get(term), page, termStart, termLengths[term]));
+            cursor = termStart + termLengths[term];
+            count++;
+        }
+        return count;
+    }
+
+    private int transition(int state, char c) {
+        if (state == 0) {
+            int next = rootNext[c];
+            return next > 0 ? next : -1;
+        }
+        int idx = Arrays.binarySearch(edgeChars, edgeStart[state], edgeStart[state + 1], c);
+        return idx >= 0 ? edgeTargets[idx] : -1;
+    }
+
+    /** Word-boundary rules for a case-insensitive match of {@code len} chars at {@code pos}. */
+    private static boolean validAt(CharSequence text, int pos, int len) {
+        char first = text.charAt(pos);
+        if (isWordChar(first) && pos > 0 && isWordChar(text.charAt(pos - 1))) {
+            return false;
+        }
+        return len >= MIN_INFLECTABLE_TERM_LENGTH
+                || !(isWordChar(text.charAt(pos + len - 1)) && pos + len < text.length()
+                        && isWordChar(text.charAt(pos + len)));
+    }
+
+    /** Letters and digits of space-delimited scripts; CJK ideographs are not word chars. */
+    static boolean isWordChar(char c) {
+        if (!Character.isLetterOrDigit(c)) return false;
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script != Character.UnicodeScript.HAN
+                && script != Character.UnicodeScript.HIRAGANA
+                && script != Character.UnicodeScript.KATAKANA
+                && script != Character.UnicodeScript.HANGUL;
+    }
+}
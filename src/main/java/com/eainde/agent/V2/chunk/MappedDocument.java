@@ -0,0 +1,309 @@
+package com.eainde.agent.V2.chunk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+/**
+ * Extracted document text held in a read-only memory-mapped file instead of
+ * one heap {@code String}.
+ *
+ * <p>Large bundles (hundreds of MB of PDF-to-text output) would otherwise need
+ * the whole text as a UTF-16 {@code String} in the {@link dev.langchain4j.agentic.scope.AgenticScope}
+ * — twice the file size on the heap, for the lifetime of the request. Here the
+ * file stays in the page cache and only the slices a chunk actually sends to a
+ * prompt are decoded, at the moment they are sent — chunk views keep no decoded copy:</p>
+ * <pre>
+ * try (MappedDocument document = MappedDocument.open(path)) {
+ *     ChunkPlan plan = chunker.plan(document);          // index built from the mapping
+ *     for (ChunkContext chunk : plan.chunks()) {
+ *         String text = chunk.chunkText().toString();   // decodes this chunk only
+ *     }
+ * }
+ * </pre>
+ *
+ * <h3>How pages are found without decoding:</h3>
+ * <p>The text must be UTF-8. Page delimiters are matched against a one-byte-per-char
+ * view of the mapping; every byte of a multi-byte UTF-8 sequence is {@code >= 0x80}
+ * and therefore never whitespace or ASCII, so page bounds found this way always fall
+ * on character boundaries. Delimiter patterns must consequently be ASCII-only
+ * (the defaults — form feed, "--- Page N ---" — are).</p>
+ *
+ * <p>Offsets in a {@link PageIndex} built by {@link #indexPages(Pattern)} are byte
+ * offsets. Files larger than 2 GB are rejected.</p>
+ */
+public final class MappedDocument implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedDocument.class);
+
+    /** Scope key for a document handed over as a file instead of {@code sourceText}. */
+    public static final String SOURCE_PATH_KEY = "sourcePath";
+
+    /**
+     * Scope key for the open mapping of {@link #SOURCE_PATH_KEY}, written by the agent
+     * that opens it so the rest of the run reads the same mapping instead of mapping
+     * the file again. Valid until that agent returns.
+     */
+    public static final String DOCUMENT_KEY = "sourceDocument";
+
+    /**
+     * Written to {@code sourceText} for the reduce and critic agents when the document was
+     * ingested from a file and is too large to materialise — same convention as the batched
+     * classifier in {@link CsmChunkedPipelineExecutor}.
+     */
+    public static final String SOURCE_TEXT_PLACEHOLDER = "[See source classification for document references]";
+
+    /** Decode window for whole-document token counting. */
+    private static final int COUNT_WINDOW_BYTES = 1 << 20;
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int offset;
+    private final boolean temporary;
+
+    private MappedDocument(Path path, MappedByteBuffer buffer, boolean temporary) {
+        this.path = path;
+        this.buffer = buffer;
+        this.offset = hasBom(buffer) ? UTF8_BOM.length : 0;
+        this.temporary = temporary;
+    }
+
+    // =========================================================================
+    //  Factories
+    // =========================================================================
+
+    /**
+     * Maps a UTF-8 text file read-only.
+     *
+     * @param path extracted document text
+     * @return the mapped document; close it to release a spooled temp file
+     * @throws IOException              if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if the file is larger than 2 GB
+     */
+    public static MappedDocument open(Path path) throws IOException {
+        return new MappedDocument(path, map(path), false);
+    }
+
+    /**
+     * Spools a stream to a temporary file and maps it. The stream is read to the
+     * end but not closed; the temp file is deleted by {@link #close()}.
+     *
+     * @param in UTF-8 extracted document text
+     * @return the mapped document
+     * @throws IOException if spooling or mapping fails
+     */
+    public static MappedDocument open(InputStream in) throws IOException {
+        Path spool = Files.createTempFile("csm-source-", ".txt");
+        try {
+            Files.copy(in, spool, StandardCopyOption.REPLACE_EXISTING);
+            return new MappedDocument(spool, map(spool), true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "Document " + path + " is " + size + " bytes — larger than 2 GB is not supported");
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private static boolean hasBom(ByteBuffer buffer) {
+        if (buffer.limit() < UTF8_BOM.length) return false;
+        for (int i = 0; i < UTF8_BOM.length; i++) {
+            if (buffer.get(i) != UTF8_BOM[i]) return false;
+        }
+        return true;
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /** @return size of the text in bytes (excluding a leading BOM) */
+    public int byteLength() {
+        return buffer.limit() - offset;
+    }
+
+    /** @return the mapped file — a temp file if opened from a stream */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Builds the page index from the mapped bytes. Page views decode their
+     * byte range each time they are read.
+     *
+     * @param pageDelimiter ASCII-only page delimiter pattern
+     */
+    public PageIndex indexPages(Pattern pageDelimiter) {
+        return PageIndex.build(new ByteView(), pageDelimiter, DecodedSlice::new);
+    }
+
+    /**
+     * Decodes the whole document. Only for documents already known to be small
+     * enough for the direct path.
+     */
+    public String readString() {
+        return decode(0, byteLength());
+    }
+
+    /**
+     * Counts tokens over the whole document without materialising it, decoding
+     * roughly 1 MB at a time. Windows are cut at ASCII whitespace so no word is split.
+     *
+     * @param tokenCounter the estimator
+     * @return estimated tokens for the full document
+     */
+    public int countTokens(TokenCounter tokenCounter) {
+        long total = 0;
+        int length = byteLength();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(start + COUNT_WINDOW_BYTES, length);
+            // ── Extend to the next ASCII whitespace byte ──
+            while (end < length && !isAsciiWhitespace(byteAt(end))) end++;
+            total += tokenCounter.count(decode(start, end));
+            start = end;
+        }
+        log.debug("Counted ~{} tokens over {} bytes of {}", total, length, path);
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Deletes the spooled temp file, if any. The mapping itself is released when
+     * the buffer is garbage-collected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (temporary) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private byte byteAt(int index) {
+        return buffer.get(offset + index);
+    }
+
+    private String decode(int start, int end) {
+        ByteBuffer slice = buffer.slice(offset + start, end - start);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    private static boolean isAsciiWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+    /**
+     * One char per byte (ISO-8859-1 reading of the mapping) — used only to scan for
+     * page delimiters and strip ASCII whitespace, never handed to a prompt.
+     */
+    private final class ByteView implements CharSequence {
+
+        @Override
+        public int length() {
+            return byteLength();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (byteAt(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new PageIndex.TextSlice(this, start, end);
+        }
+
+        @Override
+        public String toString() {
+            return "MappedDocument[" + path + "]";
+        }
+    }
+
+    /**
+     * Text of a byte range, decoded from UTF-8 each time it is read — a chunk in
+     * flight holds two offsets, not its text. Length and character offsets refer to
+     * the decoded text; the length is measured on the bytes without decoding.
+     *
+     * <p>{@link #toString()} is the way to read the text. {@code charAt} and
+     * {@code subSequence} of a pure-ASCII range read the mapping directly; of any
+     * other range they decode it on every call.</p>
+     */
+    private final class DecodedSlice implements CharSequence {
+
+        private final int start;
+        private final int end;
+        /** Decoded UTF-16 length, -1 until measured. Racy but idempotent. */
+        private int length = -1;
+        private boolean ascii;
+
+        DecodedSlice(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            if (length < 0) {
+                int chars = 0;
+                boolean allAscii = true;
+                for (int i = start; i < end; i++) {
+                    byte b = byteAt(i);
+                    allAscii &= b >= 0;
+                    if ((b & 0xC0) != 0x80) {
+                        chars += (b & 0xF8) == 0xF0 ? 2 : 1;   // 4-byte sequence = surrogate pair
+                    }
+                }
+                ascii = allAscii;
+                length = chars;
+            }
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+            }
+            return ascii ? (char) byteAt(start + index) : toString().charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length() || from > to) {
+                throw new IndexOutOfBoundsException("[" + from + ", " + to + "), length " + length());
+            }
+            return ascii ? new DecodedSlice(start + from, start + to) : toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return decode(start, end);
+        }
+    }
+}
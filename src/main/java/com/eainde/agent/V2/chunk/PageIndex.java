@@ -0,0 +1,323 @@
+package com.eainde.agent.V2.chunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Page-offset index over a document buffer, built in a single scan.
+ *
+ * <p>Instead of materialising every page as its own {@code String}, the index
+ * records the start/end offset of each non-empty page (after stripping
+ * surrounding whitespace) in two {@code int[]} arrays. Page and chunk text is
+ * then exposed as {@link CharSequence} views over the original buffer, so
+ * indexing a 600-page document costs O(pages) ints rather than copies of the text.</p>
+ *
+ * <pre>
+ *   source:  "  page one \f\f page two \f page three  "
+ *   index:   [0] = [2, 10)   [1] = [14, 22)   [2] = [25, 35)
+ * </pre>
+ *
+ * <p>Page numbers are 0-based here; {@link DocumentChunker} converts them to the
+ * 1-based numbers carried on {@link ChunkContext}.</p>
+ *
+ * <p>For a {@link MappedDocument} the scanned buffer is a byte view of the mapping
+ * and offsets are byte offsets; page views then decode their range each time they
+ * are read instead of slicing the scanned buffer, and keep no decoded copy. Code
+ * that scans every page reads it through {@link #scanText(int)}.</p>
+ */
+public final class PageIndex {
+
+    /** Creates the text view for an offset range of the scanned buffer. */
+    @FunctionalInterface
+    interface SliceFactory {
+        CharSequence slice(int start, int end);
+    }
+
+    private final CharSequence source;
+    private final int[] pageStarts;
+    private final int[] pageEnds;
+    private final int pageCount;
+    private final SliceFactory slices;
+    /** True when views decode on read — a scan then works on one decoded copy per page. */
+    private final boolean decodingViews;
+
+    private PageIndex(CharSequence source, int[] pageStarts, int[] pageEnds, int pageCount,
+                      SliceFactory slices) {
+        this.source = source;
+        this.pageStarts = pageStarts;
+        this.pageEnds = pageEnds;
+        this.pageCount = pageCount;
+        this.slices = slices != null ? slices : (start, end) -> new TextSlice(source, start, end);
+        this.decodingViews = slices != null;
+    }
+
+    /**
+     * Scans {@code source} once with the page delimiter and records the stripped
+     * bounds of every non-empty page. If no non-empty page is found, the whole
+     * (stripped) source is treated as a single page.
+     *
+     * @param source        the full document text
+     * @param pageDelimiter regex matching page boundaries
+     * @return the page index, never empty for non-blank input
+     */
+    public static PageIndex build(CharSequence source, Pattern pageDelimiter) {
+        return build(source, pageDelimiter, null);
+    }
+
+    /**
+     * Same as {@link #build(CharSequence, Pattern)}, but page and chunk views are
+     * created by {@code slices} rather than as slices of {@code source}.
+     *
+     * @param slices view factory, or null to slice {@code source} directly
+     */
+    static PageIndex build(CharSequence source, Pattern pageDelimiter, SliceFactory slices) {
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        int count = 0;
+
+        Matcher matcher = pageDelimiter.matcher(source);
+        int segmentStart = 0;
+        while (true) {
+            boolean found = matcher.find();
+            int segmentEnd = found ? matcher.start() : source.length();
+
+            // ── Strip surrounding whitespace by moving the bounds, not by copying ──
+            int s = segmentStart;
+            int e = segmentEnd;
+            while (s < e && Character.isWhitespace(source.charAt(s))) s++;
+            while (e > s && Character.isWhitespace(source.charAt(e - 1))) e--;
+
+            if (s < e) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = s;
+                ends[count] = e;
+                count++;
+            }
+
+            if (!found) break;
+            segmentStart = matcher.end();
+        }
+
+        return new PageIndex(source, starts, ends, count, slices);
+    }
+
+    // =========================================================================
+    //  Accessors
+    // =========================================================================
+
+    /** @return the number of non-empty pages */
+    public int pageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return the buffer this index points into — for a {@link MappedDocument}, a byte
+     *         view that is only meaningful for offsets; read text through {@link #page(int)}
+     */
+    public CharSequence source() {
+        return source;
+    }
+
+    /** @return offset of the first character of the given 0-based page */
+    public int pageStart(int page) {
+        checkPage(page);
+        return pageStarts[page];
+    }
+
+    /** @return offset one past the last character of the given 0-based page */
+    public int pageEnd(int page) {
+        checkPage(page);
+        return pageEnds[page];
+    }
+
+    /**
+     * @return a view over the text of a single 0-based page
+     */
+    public CharSequence page(int page) {
+        return slices.slice(pageStart(page), pageEnd(page));
+    }
+
+    /**
+     * Text of a single 0-based page for one sequential scan (token counting, page
+     * screening): the view itself over an in-memory source, the page decoded once
+     * over a mapped one. Do not keep the result.
+     */
+    public CharSequence scanText(int page) {
+        CharSequence view = page(page);
+        return decodingViews ? view.toString() : view;
+    }
+
+    /**
+     * Returns a view spanning pages {@code [fromPage, toPage)}, including the
+     * original delimiters between them. Nothing is copied until the view's
+     * {@code toString()} is called.
+     *
+     * @param fromPage 0-based inclusive first page
+     * @param toPage   0-based exclusive last page
+     */
+    public CharSequence pages(int fromPage, int toPage) {
+        if (fromPage >= toPage) {
+            throw new IllegalArgumentException("Empty page range [" + fromPage + ", " + toPage + ")");
+        }
+        return slices.slice(pageStart(fromPage), pageEnd(toPage - 1));
+    }
+
+    /**
+     * Returns a view over a selection of pages, e.g. the pages kept by
+     * {@link GovernancePageFilter}. Runs of consecutive pages are exposed as one
+     * slice of the source; gaps between runs are joined with a form feed.
+     *
+     * @param pageNumbers 0-based page numbers, ascending
+     * @param from        inclusive index into {@code pageNumbers}
+     * @param to          exclusive index into {@code pageNumbers}
+     */
+    public CharSequence selectedPages(int[] pageNumbers, int from, int to) {
+        if (from >= to) {
+            throw new IllegalArgumentException("Empty page selection [" + from + ", " + to + ")");
+        }
+        List<CharSequence> runs = new ArrayList<>();
+        int runStart = from;
+        for (int i = from + 1; i <= to; i++) {
+            if (i == to || pageNumbers[i] != pageNumbers[i - 1] + 1) {
+                runs.add(pages(pageNumbers[runStart], pageNumbers[i - 1] + 1));
+                runStart = i;
+            }
+        }
+        return runs.size() == 1 ? runs.get(0) : new JoinedText(runs, '\f');
+    }
+
+    private void checkPage(int page) {
+        if (page < 0 || page >= pageCount) {
+            throw new IndexOutOfBoundsException("Page " + page + " out of range [0, " + pageCount + ")");
+        }
+    }
+
+    // =========================================================================
+    //  Text view
+    // =========================================================================
+
+    /**
+     * Read-only window over a region of a backing {@link CharSequence}.
+     * {@link #toString()} is the only operation that copies characters.
+     */
+    static final class TextSlice implements CharSequence {
+
+        private final CharSequence source;
+        private final int start;
+        private final int end;
+
+        TextSlice(CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+            }
+            return source.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length() || from > to) {
+                throw new IndexOutOfBoundsException("[" + from + ", " + to + "), length " + length());
+            }
+            return new TextSlice(source, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return source.subSequence(start, end).toString();
+        }
+    }
+
+    /**
+     * Read-only concatenation of several slices with a single-character separator.
+     * Character lookup binary-searches the run offsets; nothing is copied until
+     * {@link #toString()}, and {@link #subSequence} joins sub-views of the parts it spans.
+     */
+    static final class JoinedText implements CharSequence {
+
+        private final List<CharSequence> parts;
+        private final char separator;
+        /** offsets[i] = start of part i within the joined text; offsets[n] = length */
+        private final int[] offsets;
+
+        JoinedText(List<CharSequence> parts, char separator) {
+            this.parts = parts;
+            this.separator = separator;
+            this.offsets = new int[parts.size() + 1];
+            for (int i = 0; i < parts.size(); i++) {
+                offsets[i + 1] = offsets[i] + parts.get(i).length() + (i + 1 < parts.size() ? 1 : 0);
+            }
+        }
+
+        @Override
+        public int length() {
+            return offsets[parts.size()];
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+            }
+            int part = partAt(index);
+            int local = index - offsets[part];
+            CharSequence text = parts.get(part);
+            return local < text.length() ? text.charAt(local) : separator;
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length() || from > to) {
+                throw new IndexOutOfBoundsException("[" + from + ", " + to + "), length " + length());
+            }
+            if (from == to) return "";
+            int first = partAt(from);
+            int last = partAt(to - 1);
+            List<CharSequence> selected = new ArrayList<>(last - first + 2);
+            for (int i = first; i <= last; i++) {
+                CharSequence part = parts.get(i);
+                int partFrom = i == first ? Math.min(from - offsets[i], part.length()) : 0;
+                int partTo = i == last ? Math.min(to - offsets[i], part.length()) : part.length();
+                selected.add(part.subSequence(partFrom, partTo));
+            }
+            // The range ends on the separator after its last part
+            if (to - offsets[last] > parts.get(last).length()) {
+                selected.add("");
+            }
+            return selected.size() == 1 ? selected.get(0) : new JoinedText(selected, separator);
+        }
+
+        /** Index of the part holding {@code index}, or whose trailing separator it is. */
+        private int partAt(int index) {
+            int part = Arrays.binarySearch(offsets, index);
+            return part < 0 ? -part - 2 : part;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(length());
+            for (int i = 0; i < parts.size(); i++) {
+                if (i > 0) sb.append(separator);
+                sb.append(parts.get(i));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.eainde.agent.V2.chunk;
+
+/**
+ * Estimates how many LLM tokens a piece of text will consume.
+ *
+ * <p>Used for routing (direct vs chunked), chunk sizing and any guardrail that
+ * needs a size check. Implementations must be stateless and thread-safe, and
+ * should scan the text in a single pass without allocating per word — the
+ * document can be hundreds of pages long.</p>
+ *
+ * <h3>Implementations:</h3>
+ * <ul>
+ *   <li>{@link #wordHeuristic()} — default; whitespace-delimited words ÷ 0.75</li>
+ *   <li>{@link #forModel(String)} — BPE-style estimate tuned per model family</li>
+ * </ul>
+ *
+ * <h3>Compute once per document:</h3>
+ * <p>The count for the full source is computed once per request and stored in the
+ * agentic scope under {@link #SOURCE_TOKEN_ESTIMATE_KEY}, so routing, chunk sizing
+ * and guardrails all read the same number instead of re-scanning the text.</p>
+ */
+@FunctionalInterface
+public interface TokenCounter {
+
+    /** Scope key holding the cached token estimate for {@code sourceText}. */
+    String SOURCE_TOKEN_ESTIMATE_KEY = "sourceTokenEstimate";
+
+    /**
+     * Estimates the token count of {@code text[start, end)}.
+     *
+     * @param text  the text to scan
+     * @param start inclusive start offset
+     * @param end   exclusive end offset
+     * @return estimated token count, never negative
+     */
+    int count(CharSequence text, int start, int end);
+
+    /**
+     * Estimates the token count of the whole text.
+     *
+     * @param text the text to scan (may be null)
+     * @return estimated token count, 0 for null
+     */
+    default int count(CharSequence text) {
+        if (text == null) return 0;
+        return count(text, 0, text.length());
+    }
+
+    /**
+     * @return the default allocation-free word-count heuristic
+     */
+    static TokenCounter wordHeuristic() {
+        return WordHeuristicTokenCounter.INSTANCE;
+    }
+
+    /**
+     * Returns a BPE-style estimator for the given model, falling back to the
+     * word heuristic when no model is configured.
+     *
+     * @param modelName model name such as {@code gemini-2.5-pro}; blank for default
+     */
+    static TokenCounter forModel(String modelName) {
+        if (modelName == null || modelName.isBlank()) return wordHeuristic();
+        return BpeEstimatingTokenCounter.forModel(modelName);
+    }
+}
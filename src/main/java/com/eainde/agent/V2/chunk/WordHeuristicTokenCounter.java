@@ -0,0 +1,41 @@
+package com.eainde.agent.V2.chunk;
+
+/**
+ * Default {@link TokenCounter}: counts whitespace-delimited words in a single
+ * pass and divides by {@value #TOKENS_PER_WORD}.
+ *
+ * <p>Same heuristic as the original {@code text.split("\\s+")} estimate, but
+ * walks the characters directly instead of allocating one String per word.
+ * Intentionally conservative — it's better to chunk unnecessarily than to
+ * exceed the context window.</p>
+ */
+final class WordHeuristicTokenCounter implements TokenCounter {
+
+    static final WordHeuristicTokenCounter INSTANCE = new WordHeuristicTokenCounter();
+
+    /** Heuristic: average tokens per word for English/mixed text */
+    private static final double TOKENS_PER_WORD = 0.75;
+
+    private WordHeuristicTokenCounter() {
+    }
+
+    @Override
+    public int count(CharSequence text, int start, int end) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = start; i < end; i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                words++;
+            }
+        }
+        return (int) Math.ceil(words / TOKENS_PER_WORD);
+    }
+
+    @Override
+    public String toString() {
+        return "WordHeuristicTokenCounter";
+    }
+}
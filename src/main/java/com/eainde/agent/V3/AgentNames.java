@@ -32,7 +32,9 @@ package com.eainde.agent.V3;
  *
  * Wave 8 + Loop:
  *   Agent 11: csm-extraction-critic    → extractionReview
+ *        or csm-incremental-critic   → incrementalReview (csm.critic.mode=incremental, loop only)
  *   Agent 12: csm-output-refiner       → finalOutput (corrected)
+ *        or csm-output-patcher       → outputPatches (csm.refiner.mode=patch)
  * </pre>
  */
 public final class AgentNames {
@@ -88,9 +90,15 @@ public final class AgentNames {
     /** Agent 11: Reviews output against compliance checklist. Condensed all sections. */
     public static final String EXTRACTION_CRITIC = "csm-extraction-critic";
 
+    /** Agent 11 in incremental mode: reviews only records changed by the last refinement. */
+    public static final String INCREMENTAL_CRITIC = "csm-incremental-critic";
+
     /** Agent 12: Fixes only critic-identified issues. R, J, B2 + feedback. */
     public static final String OUTPUT_REFINER = "csm-output-refiner";
 
+    /** Agent 12 in patch mode: per-record patches for flagged records only. */
+    public static final String OUTPUT_PATCHER = "csm-output-patcher";
+
     // ── Map-Reduce (large document handling — separate flow) ────────────
 
     /** Chunk merger: Deduplicates persons across chunks. Used only in chunked path. */
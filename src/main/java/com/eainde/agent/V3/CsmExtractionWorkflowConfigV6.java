@@ -1,23 +1,27 @@
 package com.eainde.agent.V3;
 
-import com.db.clm.kyc.ai.config.AgentFactory;
 import com.db.clm.kyc.ai.config.AgentSpec;
 import com.db.clm.kyc.ai.model.ExtractionReview;
 import com.db.clm.kyc.ai.prompt.AgentNames;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.eainde.agent.engine.AgentCache;
+import com.eainde.agent.engine.GateEngine;
+import com.eainde.agent.engine.IncrementalReview;
+import com.eainde.agent.engine.OutputPatcher;
+import com.eainde.agent.engine.ScoringEngineAgent;
+import com.eainde.agent.engine.TailAssembler;
+import com.eainde.agent.engine.Wave5MergeEngine;
+import com.eainde.agent.thread.DagScheduler;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import dev.langchain4j.agentic.AgenticScope;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.observability.AgentMonitor;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
 
 /**
  * CSM Extraction Pipeline V6 — 12-agent wave-based decomposition.
@@ -28,6 +32,9 @@ import java.util.concurrent.Executors;
  *   <li><b>Agent ↔ Agent:</b> JSON strings via AgenticScope</li>
  *   <li><b>Orchestration logic:</b> DTOs only at merge boundaries and loop exit</li>
  *   <li><b>Parallel waves:</b> Wave 1 (extraction ∥ source) and Wave 5 (country ∥ title ∥ score)</li>
+ *   <li><b>Scheduling:</b> waves 1-7 are derived from each spec's inputs and outputKey
+ *       ({@link DagScheduler}); every agent starts once its inputs are in scope and the
+ *       critical path is logged per run</li>
  * </ul>
  *
  * <pre>
@@ -96,15 +103,48 @@ public class CsmExtractionWorkflowConfigV6 {
     private static final int    REFINEMENT_LOOP_MAX_ITERATIONS = 3;
     private static final double EXTRACTION_QUALITY_THRESHOLD   = 0.85;
 
-    private final AgentFactory agentFactory;
+    /** Agents are built once per prompt generation and reused across requests. */
+    private final AgentCache agentCache;
     private final ObjectMapper objectMapper;
+    private final Wave5MergeEngine wave5MergeEngine;
+    private final TailAssembler tailAssembler;
+    private final OutputPatcher outputPatcher;
+    private final IncrementalReview incrementalReview;
+
+    /** Agent 8: "llm" = scoring engine agent; "java" = {@link ScoringEngineAgent}, no LLM call. */
+    @Value("${csm.scoring.engine:llm}")
+    private String scoringEngineMode;
+
+    /** Waves 6-7: "llm" = reason assembler + output formatter; "java" = {@link TailAssembler}. */
+    @Value("${csm.tail.mode:llm}")
+    private String tailMode;
+
+    /** Wave 4: resolve gates 1, 6 and 7 in Java and classify only the rest with the LLM. */
+    @Value("${csm.classifier.pre-gates.enabled:false}")
+    private boolean classifierPreGatesEnabled;
+
+    /** Reference date for gate 1 (former officers), ISO-8601; empty = today. */
+    @Value("${csm.classifier.as-of-date:}")
+    private String classifierAsOfDate;
+
+    /** Wave 8 refiner: "full" = rewrite finalOutput; "patch" = per-record patches, see {@link OutputPatcher}. */
+    @Value("${csm.refiner.mode:full}")
+    private String refinerMode;
+
+    /** Loop critic: "full" = re-review everything; "incremental" = changed records only, see {@link IncrementalReview}. */
+    @Value("${csm.critic.mode:full}")
+    private String criticMode;
 
     private static final AgentMonitor monitor = new AgentMonitor();
 
-    public CsmExtractionWorkflowConfigV6(AgentFactory agentFactory,
+    public CsmExtractionWorkflowConfigV6(AgentCache agentCache,
                                          ObjectMapper objectMapper) {
-        this.agentFactory = agentFactory;
+        this.agentCache = agentCache;
         this.objectMapper = objectMapper;
+        this.wave5MergeEngine = new Wave5MergeEngine(objectMapper);
+        this.tailAssembler = new TailAssembler(objectMapper);
+        this.outputPatcher = new OutputPatcher(objectMapper);
+        this.incrementalReview = new IncrementalReview(objectMapper);
     }
 
     // =========================================================================
@@ -223,6 +263,22 @@ public class CsmExtractionWorkflowConfigV6 {
             .listener(monitor)
             .build();
 
+    private static final AgentSpec OUTPUT_PATCHER_SPEC = AgentSpec
+            .of(AgentNames.OUTPUT_PATCHER,
+                    "Returns per-record patches for critic-identified issues")
+            .inputs("flaggedRecords", "reviewIssues", "referenceCandidates")
+            .outputKey("outputPatches")
+            .listener(monitor)
+            .build();
+
+    private static final AgentSpec INCREMENTAL_CRITIC_SPEC = AgentSpec
+            .of(AgentNames.INCREMENTAL_CRITIC,
+                    "Re-reviews only the records changed by the last refinement")
+            .inputs("changedRecords", "openIssues", "sourceExcerpts")
+            .outputKey("incrementalReview")
+            .listener(monitor)
+            .build();
+
     private static final AgentSpec LOOP_CRITIC_SPEC = AgentSpec
             .of(AgentNames.EXTRACTION_CRITIC,
                     "Re-evaluates refined output against compliance checklist")
@@ -250,29 +306,8 @@ public class CsmExtractionWorkflowConfigV6 {
         scope.writeState("sourceText", sourceText);
         scope.writeState("fileNames", fileNames);
 
-        // ── Wave 1 (parallel): Candidate Extraction ∥ Source Classification ──
-        executeWave1Parallel(scope);
-
-        // ── Wave 2: Name Normalization ──────────────────────────────────
-        executeWave2(scope);
-
-        // ── Wave 3: Dedup + Source Linkage ──────────────────────────────
-        executeWave3(scope);
-
-        // ── Wave 4: CSM Classification ─────────────────────────────────
-        executeWave4(scope);
-
-        // ── Wave 5 (parallel): Country ∥ Title ∥ Scoring ───────────────
-        executeWave5Parallel(scope);
-
-        // ── Wave 5 merge: combine parallel outputs → enrichedCandidates ─
-        mergeWave5Outputs(scope);
-
-        // ── Wave 6: Reason Assembly ────────────────────────────────────
-        executeWave6(scope);
-
-        // ── Wave 7: Output Formatting ──────────────────────────────────
-        executeWave7(scope);
+        // ── Waves 1-7: each agent starts as soon as its inputs are in scope ──
+        buildWaveGraph(scope).run();
 
         // ── Wave 8 + Loop: Critic → Refiner ────────────────────────────
         executeWave8CriticLoop(scope);
@@ -287,45 +322,46 @@ public class CsmExtractionWorkflowConfigV6 {
     // =========================================================================
 
     /**
-     * Wave 1: Runs candidate extractor and source classifier in parallel.
-     * Both read sourceText + fileNames but produce independent outputs.
+     * Waves 1-7 as a dependency graph: every agent is a node reading its spec's
+     * {@code inputs} and writing its {@code outputKey}, so the waves follow from the
+     * specs — Wave 1 and Wave 5 run in parallel because their agents share no keys,
+     * and a new agent is scheduled by adding its node. The Java steps (Wave 5 merge,
+     * Java tail) declare their keys the same way.
      */
-    private void executeWave1Parallel(AgenticScope scope) {
-        log.info("Wave 1 — parallel: Candidate Extractor ∥ Source Classifier");
-
-        UntypedAgent candidateExtractor = agentFactory.create(CANDIDATE_EXTRACTOR_SPEC);
-        UntypedAgent sourceClassifier   = agentFactory.create(SOURCE_CLASSIFIER_SPEC);
-
-        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            CompletableFuture<Void> extractFuture = CompletableFuture.runAsync(
-                    () -> candidateExtractor.invoke(scope), executor);
-            CompletableFuture<Void> classifyFuture = CompletableFuture.runAsync(
-                    () -> sourceClassifier.invoke(scope), executor);
-
-            CompletableFuture.allOf(extractFuture, classifyFuture).join();
+    DagScheduler buildWaveGraph(AgenticScope scope) {
+        UntypedAgent scoringEngine = "java".equalsIgnoreCase(scoringEngineMode)
+                ? new ScoringEngineAgent(objectMapper)
+                : agentCache.create(SCORING_ENGINE_SPEC);
+
+        DagScheduler.Builder graph = DagScheduler.builder("sourceText", "fileNames");
+        agentNode(graph, CANDIDATE_EXTRACTOR_SPEC, scope);                                 // Wave 1a
+        agentNode(graph, SOURCE_CLASSIFIER_SPEC, scope);                                   // Wave 1b
+        agentNode(graph, NAME_NORMALIZER_SPEC, scope);                                     // Wave 2
+        agentNode(graph, DEDUP_LINKER_SPEC, scope);                                        // Wave 3
+        node(graph, CSM_CLASSIFIER_SPEC, () -> executeWave4(scope));                       // Wave 4
+        agentNode(graph, COUNTRY_OVERRIDE_SPEC, scope);                                    // Wave 5a
+        agentNode(graph, TITLE_EXTRACTOR_SPEC, scope);                                     // Wave 5b
+        node(graph, SCORING_ENGINE_SPEC, () -> scoringEngine.invoke(scope));               // Wave 5c
+        graph.node("wave5-merge",
+                List.of("classifiedCandidates", "countryOverrides", "titleExtractions", "scoredCandidates"),
+                "enrichedCandidates", () -> mergeWave5Outputs(scope));                     // Wave 5 merge
+
+        if ("java".equalsIgnoreCase(tailMode)) {
+            graph.node("java-tail", List.of("enrichedCandidates", "fileNames"),
+                    "finalOutput", () -> executeTailInJava(scope));                        // Waves 6-7
+        } else {
+            agentNode(graph, REASON_ASSEMBLER_SPEC, scope);                                // Wave 6
+            agentNode(graph, OUTPUT_FORMATTER_SPEC, scope);                                // Wave 7
         }
-
-        log.info("Wave 1 complete — rawNames and sourceClassification ready");
+        return graph.build();
     }
 
-    /**
-     * Wave 2: Name normalization — needs rawNames + sourceClassification.
-     */
-    private void executeWave2(AgenticScope scope) {
-        log.info("Wave 2 — Name Normalizer");
-        UntypedAgent nameNormalizer = agentFactory.create(NAME_NORMALIZER_SPEC);
-        nameNormalizer.invoke(scope);
-        log.info("Wave 2 complete — normalizedCandidates ready");
+    private void agentNode(DagScheduler.Builder graph, AgentSpec spec, AgenticScope scope) {
+        node(graph, spec, () -> agentCache.create(spec).invoke(scope));
     }
 
-    /**
-     * Wave 3: Deduplication + prevailing source linkage.
-     */
-    private void executeWave3(AgenticScope scope) {
-        log.info("Wave 3 — Dedup + Source Linkage");
-        UntypedAgent dedupLinker = agentFactory.create(DEDUP_LINKER_SPEC);
-        dedupLinker.invoke(scope);
-        log.info("Wave 3 complete — dedupedCandidates ready");
+    private static void node(DagScheduler.Builder graph, AgentSpec spec, Runnable task) {
+        graph.node(spec.getAgentName(), spec.getInputKeys(), spec.getOutputKey(), task);
     }
 
     /**
@@ -333,34 +369,46 @@ public class CsmExtractionWorkflowConfigV6 {
      */
     private void executeWave4(AgenticScope scope) {
         log.info("Wave 4 — CSM Classifier");
-        UntypedAgent csmClassifier = agentFactory.create(CSM_CLASSIFIER_SPEC);
-        csmClassifier.invoke(scope);
+        UntypedAgent csmClassifier = agentCache.create(CSM_CLASSIFIER_SPEC);
+        if (classifierPreGatesEnabled) {
+            executeWave4Gated(scope, csmClassifier);
+        } else {
+            csmClassifier.invoke(scope);
+        }
         log.info("Wave 4 complete — classifiedCandidates ready");
     }
 
     /**
-     * Wave 5: Runs country override, title extractor, and scoring engine in parallel.
-     * All three read classifiedCandidates but write to different scope keys.
+     * Wave 4 with rule-based pre-classification: {@link GateEngine} resolves gates 1, 6
+     * and 7, the classifier sees only the unresolved candidates, and both are merged
+     * back into classifiedCandidates in input order.
      */
-    private void executeWave5Parallel(AgenticScope scope) {
-        log.info("Wave 5 — parallel: Country Override ∥ Title Extractor ∥ Scoring Engine");
-
-        UntypedAgent countryOverride = agentFactory.create(COUNTRY_OVERRIDE_SPEC);
-        UntypedAgent titleExtractor  = agentFactory.create(TITLE_EXTRACTOR_SPEC);
-        UntypedAgent scoringEngine   = agentFactory.create(SCORING_ENGINE_SPEC);
-
-        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            CompletableFuture<Void> countryFuture = CompletableFuture.runAsync(
-                    () -> countryOverride.invoke(scope), executor);
-            CompletableFuture<Void> titleFuture = CompletableFuture.runAsync(
-                    () -> titleExtractor.invoke(scope), executor);
-            CompletableFuture<Void> scoringFuture = CompletableFuture.runAsync(
-                    () -> scoringEngine.invoke(scope), executor);
-
-            CompletableFuture.allOf(countryFuture, titleFuture, scoringFuture).join();
+    private void executeWave4Gated(AgenticScope scope, UntypedAgent csmClassifier) {
+        String dedupedCandidates = scope.readState("dedupedCandidates", "");
+        GateEngine gateEngine = new GateEngine(objectMapper, classifierAsOfDate.isBlank()
+                ? LocalDate::now : () -> LocalDate.parse(classifierAsOfDate.trim()));
+
+        GateEngine.Partition partition;
+        try {
+            partition = gateEngine.partition(dedupedCandidates);
+        } catch (IOException e) {
+            log.warn("Wave 4 — dedupedCandidates is not valid JSON, classifying without pre-gates", e);
+            csmClassifier.invoke(scope);
+            return;
         }
 
-        log.info("Wave 5 complete — countryOverrides, titleExtractions, scoredCandidates ready");
+        String classifierOutput = null;
+        if (partition.unresolvedCount() > 0) {
+            // The classifier reads dedupedCandidates — show it the unresolved ones only
+            scope.writeState("dedupedCandidates", partition.unresolvedJson());
+            try {
+                csmClassifier.invoke(scope);
+            } finally {
+                scope.writeState("dedupedCandidates", dedupedCandidates);
+            }
+            classifierOutput = scope.readState("classifiedCandidates", "");
+        }
+        scope.writeState("classifiedCandidates", partition.merge(classifierOutput));
     }
 
     /**
@@ -378,7 +426,8 @@ public class CsmExtractionWorkflowConfigV6 {
      *
      * <p>Merge strategy: match candidates by {@code id}, overlay each agent's fields
      * onto the base classifiedCandidates. Agent 6's {@code isCsm} override takes
-     * precedence over Agent 5's determination (country-specific stricter rules).</p>
+     * precedence over Agent 5's determination (country-specific stricter rules).
+     * Done by {@link Wave5MergeEngine} (id-indexed, streamed output).</p>
      */
     void mergeWave5Outputs(AgenticScope scope) {
         log.info("Merging Wave 5 outputs → enrichedCandidates");
@@ -389,65 +438,13 @@ public class CsmExtractionWorkflowConfigV6 {
         String scoredCandidatesJson = scope.readState("scoredCandidates", "{}");
 
         try {
-            // Parse all outputs
-            JsonNode classified = objectMapper.readTree(classifiedJson);
-            JsonNode countryOverrides = objectMapper.readTree(countryOverridesJson);
-            JsonNode titleExtractions = objectMapper.readTree(titleExtractionsJson);
-            JsonNode scoredCandidates = objectMapper.readTree(scoredCandidatesJson);
-
-            // Get the candidate arrays from each output
-            ArrayNode baseCandidates = getCandidateArray(classified,
-                    "classified_candidates", "candidates");
-            ArrayNode countryArray = getCandidateArray(countryOverrides,
-                    "country_overrides", "candidates");
-            ArrayNode titleArray = getCandidateArray(titleExtractions,
-                    "title_extractions", "candidates");
-            ArrayNode scoreArray = getCandidateArray(scoredCandidates,
-                    "scored_candidates", "candidates");
-
-            // Build enriched candidates by merging fields from each agent
-            ArrayNode enriched = objectMapper.createArrayNode();
-
-            for (int i = 0; i < baseCandidates.size(); i++) {
-                ObjectNode candidate = baseCandidates.get(i).deepCopy();
-                int candidateId = candidate.has("id") ? candidate.get("id").asInt() : i + 1;
-
-                // Merge country override fields (Agent 6)
-                JsonNode countryRecord = findById(countryArray, candidateId);
-                if (countryRecord != null) {
-                    mergeField(candidate, countryRecord, "isCsm");
-                    mergeField(candidate, countryRecord, "countryProfileApplied");
-                    mergeField(candidate, countryRecord, "countryOverrideNote");
-                }
-
-                // Merge title extraction fields (Agent 7)
-                JsonNode titleRecord = findById(titleArray, candidateId);
-                if (titleRecord != null) {
-                    mergeField(candidate, titleRecord, "jobTitle");
-                    mergeField(candidate, titleRecord, "personalTitle");
-                    mergeField(candidate, titleRecord, "anchorNote");
-                }
-
-                // Merge scoring fields (Agent 8)
-                JsonNode scoreRecord = findById(scoreArray, candidateId);
-                if (scoreRecord != null) {
-                    mergeField(candidate, scoreRecord, "score");
-                    mergeField(candidate, scoreRecord, "scoreBreakdown");
-                    mergeField(candidate, scoreRecord, "qualityGateNotes");
-                }
-
-                enriched.add(candidate);
-            }
-
-            ObjectNode result = objectMapper.createObjectNode();
-            result.set("enriched_candidates", enriched);
-
-            String enrichedJson = objectMapper.writeValueAsString(result);
+            String enrichedJson = wave5MergeEngine.merge(classifiedJson, countryOverridesJson,
+                    titleExtractionsJson, scoredCandidatesJson);
             scope.writeState("enrichedCandidates", enrichedJson);
 
-            log.info("Wave 5 merge complete — {} enriched candidates", enriched.size());
+            log.info("Wave 5 merge complete — enrichedCandidates written to scope");
 
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Failed to merge Wave 5 outputs", e);
             // Fallback: use scoredCandidates as enrichedCandidates
             scope.writeState("enrichedCandidates", scoredCandidatesJson);
@@ -455,23 +452,18 @@ public class CsmExtractionWorkflowConfigV6 {
     }
 
     /**
-     * Wave 6: Reason assembly — reads enrichedCandidates (all Wave 5 tags present).
-     */
-    private void executeWave6(AgenticScope scope) {
-        log.info("Wave 6 — Reason Assembler");
-        UntypedAgent reasonAssembler = agentFactory.create(REASON_ASSEMBLER_SPEC);
-        reasonAssembler.invoke(scope);
-        log.info("Wave 6 complete — reasonedCandidates ready");
-    }
-
-    /**
-     * Wave 7: Output formatting and schema validation.
+     * Waves 6-7 without LLM calls: R2 reasons and J1-J7 formatting by {@link TailAssembler}.
      */
-    private void executeWave7(AgenticScope scope) {
-        log.info("Wave 7 — Output Formatter");
-        UntypedAgent outputFormatter = agentFactory.create(OUTPUT_FORMATTER_SPEC);
-        outputFormatter.invoke(scope);
-        log.info("Wave 7 complete — finalOutput ready");
+    private void executeTailInJava(AgenticScope scope) {
+        log.info("Waves 6-7 — Reason Assembly + Output Formatting in Java");
+        try {
+            scope.writeState("finalOutput", tailAssembler.assemble(
+                    scope.readState("enrichedCandidates", "{}"),
+                    scope.readState("fileNames", "")));
+        } catch (IOException e) {
+            throw new IllegalStateException("Waves 6-7 — enrichedCandidates is not valid JSON", e);
+        }
+        log.info("Waves 6-7 complete — finalOutput ready");
     }
 
     /**
@@ -482,7 +474,7 @@ public class CsmExtractionWorkflowConfigV6 {
         log.info("Wave 8 — First Critic + Refiner Loop");
 
         // First critic (bootstraps extractionReview)
-        UntypedAgent firstCritic = agentFactory.create(FIRST_CRITIC_SPEC);
+        UntypedAgent firstCritic = agentCache.create(FIRST_CRITIC_SPEC);
         firstCritic.invoke(scope);
 
         // Check if refinement is needed
@@ -500,12 +492,20 @@ public class CsmExtractionWorkflowConfigV6 {
             log.info("Refinement iteration {}/{}", iteration, REFINEMENT_LOOP_MAX_ITERATIONS);
 
             // Run refiner
-            UntypedAgent refiner = agentFactory.create(OUTPUT_REFINER_SPEC);
-            refiner.invoke(scope);
+            String previousOutput = scope.readState("finalOutput", "{}");
+            if ("patch".equalsIgnoreCase(refinerMode)) {
+                executePatchRefiner(scope);
+            } else {
+                UntypedAgent refiner = agentCache.create(OUTPUT_REFINER_SPEC);
+                refiner.invoke(scope);
+            }
 
             // Run critic
-            UntypedAgent loopCritic = agentFactory.create(LOOP_CRITIC_SPEC);
-            loopCritic.invoke(scope);
+            if (!"incremental".equalsIgnoreCase(criticMode)
+                    || !executeIncrementalCritic(scope, previousOutput, reviewJson)) {
+                UntypedAgent loopCritic = agentCache.create(LOOP_CRITIC_SPEC);
+                loopCritic.invoke(scope);
+            }
 
             // Check exit condition
             reviewJson = scope.readState("extractionReview", "");
@@ -522,48 +522,71 @@ public class CsmExtractionWorkflowConfigV6 {
                 REFINEMENT_LOOP_MAX_ITERATIONS, score);
     }
 
-    // =========================================================================
-    //  Internal Helpers
-    // =========================================================================
-
     /**
-     * Finds a candidate array inside a JSON response.
-     * Tries multiple common key names since different agents use different keys.
+     * Loop critic in incremental mode: verdicts for unchanged records are carried
+     * forward, only changed records are re-reviewed, and the score is computed in Java.
+     *
+     * @return false if a full review is needed instead (too many changes, invalid JSON)
      */
-    private ArrayNode getCandidateArray(JsonNode root, String... possibleKeys) {
-        for (String key : possibleKeys) {
-            if (root.has(key) && root.get(key).isArray()) {
-                return (ArrayNode) root.get(key);
+    private boolean executeIncrementalCritic(AgenticScope scope, String previousOutput, String previousReview) {
+        try {
+            IncrementalReview.Delta delta = incrementalReview.diff(previousOutput, previousReview,
+                    scope.readState("finalOutput", "{}"), scope.readState("sourceText", ""));
+            if (!delta.isIncremental()) {
+                log.info("{} records changed — running the full loop critic", delta.changedCount());
+                return false;
             }
-        }
-        // If root itself is an array
-        if (root.isArray()) {
-            return (ArrayNode) root;
-        }
-        return objectMapper.createArrayNode();
-    }
 
-    /**
-     * Finds a candidate record by id within an array.
-     */
-    private JsonNode findById(ArrayNode array, int id) {
-        for (JsonNode node : array) {
-            if (node.has("id") && node.get("id").asInt() == id) {
-                return node;
+            String criticOutput = null;
+            if (delta.needsCritic()) {
+                scope.writeState("changedRecords", delta.changedRecords());
+                scope.writeState("openIssues", delta.openIssues());
+                scope.writeState("sourceExcerpts", delta.sourceExcerpts());
+                UntypedAgent incrementalCritic = agentCache.create(INCREMENTAL_CRITIC_SPEC);
+                incrementalCritic.invoke(scope);
+                criticOutput = scope.readState("incrementalReview", "");
+                if (criticOutput.isBlank()) return false;
             }
+            scope.writeState("extractionReview", delta.merge(criticOutput));
+            return true;
+        } catch (IOException e) {
+            log.warn("Incremental review failed on invalid JSON — running the full loop critic", e);
+            return false;
         }
-        return null;
     }
 
     /**
-     * Merges a single field from source to target if it exists and is not null.
+     * Refiner in patch mode: the patcher sees only the flagged records and their
+     * evidence, and its patches are applied to finalOutput in Java.
      */
-    private void mergeField(ObjectNode target, JsonNode source, String fieldName) {
-        if (source.has(fieldName) && !source.get(fieldName).isNull()) {
-            target.set(fieldName, source.get(fieldName).deepCopy());
+    private void executePatchRefiner(AgenticScope scope) {
+        String finalOutput = scope.readState("finalOutput", "{}");
+        try {
+            OutputPatcher.PatchRequest request = outputPatcher.prepare(finalOutput,
+                    scope.readState("extractionReview", ""),
+                    scope.readState("enrichedCandidates", ""));
+
+            String patches = null;
+            if (request.needsModel()) {
+                scope.writeState("flaggedRecords", request.flaggedRecords());
+                scope.writeState("reviewIssues", request.issues());
+                scope.writeState("referenceCandidates", request.referenceCandidates());
+                UntypedAgent patcher = agentCache.create(OUTPUT_PATCHER_SPEC);
+                patcher.invoke(scope);
+                patches = scope.readState("outputPatches", "");
+            }
+            scope.writeState("finalOutput", outputPatcher.apply(finalOutput, patches,
+                    scope.readState("fileNames", "")));
+        } catch (IOException e) {
+            log.warn("Patch refinement failed on invalid JSON — falling back to the full refiner", e);
+            agentCache.create(OUTPUT_REFINER_SPEC).invoke(scope);
         }
     }
 
+    // =========================================================================
+    //  Internal Helpers
+    // =========================================================================
+
     /**
      * Parses extraction_score from the critic's JSON review string.
      * Deserializes to ExtractionReview DTO for structured access.
@@ -0,0 +1,28 @@
+package com.eainde.agent.controller;
+
+import com.eainde.agent.engine.AgentCache;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Prompt reload: call after a new prompt version is released. Agents read their
+ * prompts when they are built, so reloading publishes
+ * {@link AgentCache.PromptsReloadedEvent} and every cached agent and workflow is
+ * rebuilt with the prompts now served on its next use.
+ */
+@RestController
+@RequestMapping("/prompts")
+public class PromptController {
+
+    private final ApplicationEventPublisher events;
+
+    public PromptController(ApplicationEventPublisher events) {
+        this.events = events;
+    }
+
+    @PostMapping("/reload")
+    public String reload(@RequestParam(required = false) String version) {
+        events.publishEvent(new AgentCache.PromptsReloadedEvent(version));
+        return "Prompts reloaded!";
+    }
+}
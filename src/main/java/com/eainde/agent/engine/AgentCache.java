@@ -0,0 +1,147 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.config.AgentFactory;
+import com.db.clm.kyc.ai.config.AgentSpec;
+import dev.langchain4j.agentic.UntypedAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Built agents and sub-workflows, reused across chunks, batches and requests.
+ *
+ * <p>{@code agentFactory.create(spec)} fetches both prompts, creates the AI-service
+ * proxy, instantiates guardrails and parses the output schema; a sequence does that
+ * for every agent in it. Agents keep no per-call state — everything goes through the
+ * {@code AgenticScope} they are invoked with, and the chat model is thread-safe — so
+ * one instance serves any number of concurrent invocations.</p>
+ *
+ * <ul>
+ *   <li>{@link #create(AgentSpec)} — keyed by spec identity: specs are
+ *       {@code static final} constants, so each is built once</li>
+ *   <li>{@link #workflow(String, Supplier)} — keyed by name, for sequences and
+ *       whole workflows</li>
+ * </ul>
+ *
+ * <p>Prompts are part of the built agent. Every entry is tagged with the prompt
+ * generation it was built under; {@link #invalidate()} — or a
+ * {@link PromptsReloadedEvent} — starts a new generation, and entries of an older one
+ * are rebuilt on next use. Concurrent first uses of one key may both build; one
+ * result is kept and the other is discarded.</p>
+ *
+ * <p>Agents opted in to the LLM response cache are built by its factory (see
+ * {@link ResponseCacheConfig}).</p>
+ *
+ * <pre>
+ * UntypedAgent mapPipeline = agentCache.workflow("v2.chunk-map", () -> agentFactory.sequence(
+ *         "rawCandidates", agentCache.create(SOURCE_CLASSIFIER_SPEC), agentCache.create(PERSON_EXTRACTOR_SPEC)));
+ * </pre>
+ */
+@Component
+public class AgentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentCache.class);
+
+    /**
+     * Published when prompts are reloaded (e.g. a new prompt version is released —
+     * {@code POST /prompts/reload}); cached agents are rebuilt with the new prompts on
+     * next use.
+     *
+     * @param promptVersion the version now live, for logging; may be null
+     */
+    public record PromptsReloadedEvent(String promptVersion) { }
+
+    private record Entry(UntypedAgent agent, long generation) { }
+
+    /** Identity key — two specs with equal fields are still two agents. */
+    private record SpecKey(AgentSpec spec) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SpecKey key && key.spec == spec;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(spec);
+        }
+    }
+
+    private final AgentFactory agentFactory;
+    private final ResponseCacheConfig responseCache;
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentMap<SpecKey, Entry> agents = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Entry> workflows = new ConcurrentHashMap<>();
+
+    public AgentCache(AgentFactory agentFactory) {
+        this(agentFactory, null);
+    }
+
+    @Autowired
+    public AgentCache(AgentFactory agentFactory, ResponseCacheConfig responseCache) {
+        this.agentFactory = agentFactory;
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * The agent for {@code spec}, built by {@code agentFactory.create(spec)} on first
+     * use in the current prompt generation.
+     */
+    public UntypedAgent create(AgentSpec spec) {
+        return get(agents, new SpecKey(spec), () -> factoryFor(spec).create(spec));
+    }
+
+    /**
+     * The workflow cached under {@code name}, built by {@code build} on first use in
+     * the current prompt generation. {@code build} should take its agents from
+     * {@link #create(AgentSpec)}.
+     *
+     * @param name unique per workflow shape — e.g. {@code "mapper_reducer.chunked"}
+     */
+    public UntypedAgent workflow(String name, Supplier<UntypedAgent> build) {
+        return get(workflows, name, build);
+    }
+
+    /**
+     * Starts a new prompt generation: every cached agent and workflow is rebuilt on
+     * its next use. Invocations already running keep their instances.
+     */
+    public void invalidate() {
+        long next = generation.incrementAndGet();
+        agents.clear();
+        workflows.clear();
+        log.info("Agent cache invalidated — prompt generation {}", next);
+    }
+
+    @EventListener
+    public void onPromptsReloaded(PromptsReloadedEvent event) {
+        log.info("Prompts reloaded (version {}) — invalidating agent cache", event.promptVersion());
+        invalidate();
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private AgentFactory factoryFor(AgentSpec spec) {
+        return responseCache != null ? responseCache.factoryFor(spec).orElse(agentFactory) : agentFactory;
+    }
+
+    private <K> UntypedAgent get(ConcurrentMap<K, Entry> cache, K key, Supplier<UntypedAgent> build) {
+        long current = generation.get();
+        Entry entry = cache.get(key);
+        if (entry != null && entry.generation() == current) {
+            return entry.agent();
+        }
+        // Built outside the map — a workflow's build() reads the agent map
+        Entry built = new Entry(build.get(), current);
+        return cache.merge(key, built,
+                (cached, fresh) -> cached.generation() >= fresh.generation() ? cached : fresh).agent();
+    }
+}
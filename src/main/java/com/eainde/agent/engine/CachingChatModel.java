@@ -0,0 +1,149 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A {@link ChatModel} that answers repeated requests from a {@link ResponseCache}.
+ *
+ * <p>The extraction agents run at temperature 0, top-k 1, seed 42, so the same
+ * request gets the same answer; re-running a party or replaying a failed run pays
+ * full model latency for answers we already have. This model sits below the agent
+ * and keys each request by {@link ChatRequestKey} — any change to a prompt, an input
+ * or a setting is a different key.</p>
+ *
+ * <p>Only complete answers are stored — a response cut off by the output limit or a
+ * content filter goes to the caller but not to the cache. So is a text answer that is
+ * not a JSON object or array: every cached agent answers in JSON, its output guardrail
+ * rejects anything else and retries with the same request, and that retry must reach
+ * the model instead of replaying the rejected answer. Listeners of the wrapped
+ * model see misses only. Opt in per agent (see {@link ResponseCacheConfig}); agents
+ * sampling with temperature above 0 should not.</p>
+ */
+public class CachingChatModel implements ChatModel {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingChatModel.class);
+
+    private static final Set<FinishReason> CACHEABLE = Set.of(FinishReason.STOP, FinishReason.TOOL_EXECUTION);
+
+    /** Stored form of a {@link ChatResponse}. */
+    record CachedResponse(String text, List<ToolCall> toolCalls, String modelName,
+                          Integer inputTokens, Integer outputTokens, FinishReason finishReason) { }
+
+    record ToolCall(String id, String name, String arguments) { }
+
+    private final ChatModel delegate;
+    private final ResponseCache cache;
+    private final ObjectMapper objectMapper;
+
+    public CachingChatModel(ChatModel delegate, ResponseCache cache, ObjectMapper objectMapper) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest request) {
+        String key = ChatRequestKey.of(request);
+        Optional<ChatResponse> cached = cache.get(key).flatMap(this::read);
+        if (cached.isPresent()) {
+            log.debug("Response cache hit {}", key);
+            return cached.get();
+        }
+
+        ChatResponse response = delegate.chat(request);
+        if (CACHEABLE.contains(response.finishReason()) && isUsable(response.aiMessage())) {
+            write(response).ifPresent(json -> cache.put(key, json));
+        }
+        return response;
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    public ResponseCache.Stats stats() {
+        return cache.stats();
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /** Tool calls, or text that parses as a JSON object or array. */
+    private boolean isUsable(AiMessage message) {
+        if (message.hasToolExecutionRequests()) {
+            return true;
+        }
+        if (message.text() == null) {
+            return false;
+        }
+        try {
+            return objectMapper.readTree(message.text()).isContainerNode();
+        } catch (JsonProcessingException e) {
+            log.debug("Response not cached — not JSON: {}", e.getOriginalMessage());
+            return false;
+        }
+    }
+
+    private Optional<String> write(ChatResponse response) {
+        AiMessage message = response.aiMessage();
+        List<ToolCall> toolCalls = message.hasToolExecutionRequests()
+                ? message.toolExecutionRequests().stream()
+                        .map(call -> new ToolCall(call.id(), call.name(), call.arguments()))
+                        .toList()
+                : List.of();
+        TokenUsage usage = response.tokenUsage();
+        try {
+            return Optional.of(objectMapper.writeValueAsString(new CachedResponse(
+                    message.text(), toolCalls, response.modelName(),
+                    usage != null ? usage.inputTokenCount() : null,
+                    usage != null ? usage.outputTokenCount() : null,
+                    response.finishReason())));
+        } catch (JsonProcessingException e) {
+            log.warn("Response not cached — serialization failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Optional<ChatResponse> read(String json) {
+        try {
+            CachedResponse cached = objectMapper.readValue(json, CachedResponse.class);
+            List<ToolExecutionRequest> toolCalls = cached.toolCalls() == null ? List.of()
+                    : cached.toolCalls().stream()
+                            .map(call -> ToolExecutionRequest.builder()
+                                    .id(call.id()).name(call.name()).arguments(call.arguments()).build())
+                            .toList();
+            return Optional.of(ChatResponse.builder()
+                    .aiMessage(AiMessage.builder().text(cached.text()).toolExecutionRequests(toolCalls).build())
+                    .modelName(cached.modelName())
+                    .tokenUsage(new TokenUsage(cached.inputTokens(), cached.outputTokens()))
+                    .finishReason(cached.finishReason())
+                    .build());
+        } catch (JsonProcessingException e) {
+            log.warn("Response cache entry unreadable — calling the model: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.model.MergedResult;
+import com.db.clm.kyc.ai.model.RawCandidate;
+import com.db.clm.kyc.ai.model.SourceEntry;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed candidate state shared by the BRIDGE and REDUCE phases of the chunked path.
+ *
+ * <p>Agent boundaries exchange JSON strings, and each Java step used to re-parse
+ * them: the bridge re-serialized the merged candidates, {@code CandidateBatcher}
+ * parsed them again to count, parsed and deep-copied them to split, and parsed
+ * every batch result again to merge. The table instead holds the merged candidates
+ * once as {@link RawCandidate} rows keyed by id (J4 order), the global
+ * {@link SourceEntry} ranking, and a Wave 5 column of enriched rows filled in per
+ * batch. JSON is produced only where an LLM prompt needs it.</p>
+ *
+ * <h3>Lifecycle:</h3>
+ * <pre>
+ * BRIDGE:  table = CandidateTable.fromMergedResult(mapper, mergedResult)
+ * REDUCE:  for batch in table.batches(50):                       ← row ranges, no copies
+ *            json = reduce(batch.normalizedCandidatesJson())       ← serialized for the prompt
+ *            table.putEnriched(batch, json)                        ← parsed once, stored by id
+ *          enrichedCandidates = table.enrichedCandidatesJson()    ← J4 renumbering, streamed
+ * </pre>
+ *
+ * <p>Base rows are immutable. {@link #putEnriched} may be called concurrently for
+ * different batches; {@link #enrichedCandidatesJson} must run after all of them.</p>
+ *
+ * <p>Only the base rows are typed. The Wave 5 column holds the merger's rows as
+ * {@link JsonNode}: an enriched row is a classified candidate plus whatever agents 6-8
+ * added, and no model type covers that shape without dropping fields the tail reads.
+ * Within a batch nothing changes — the per-batch Wave 5 merger still receives agents
+ * 5-8 as JSON and re-parses them. What the table removes is the re-parsing on the
+ * BRIDGE → REDUCE hand-off and the merge of batch results.</p>
+ */
+public final class CandidateTable {
+
+    private static final Logger log = LoggerFactory.getLogger(CandidateTable.class);
+
+    /** Scope key under which the bridge hands the table to the REDUCE phase. */
+    public static final String SCOPE_KEY = "candidateTable";
+
+    private final ObjectMapper objectMapper;
+    private final List<RawCandidate> candidates;
+    private final List<SourceEntry> sources;
+    private final Map<Integer, Integer> rowById;
+
+    /** Wave 5 column — enriched row per base row, null until its batch completes; untyped, see class doc. */
+    private final JsonNode[] enriched;
+    /** Enriched rows whose id matched no base row of their batch, keyed by the batch's last row. */
+    private final Map<Integer, List<JsonNode>> unmatchedByBatch = Collections.synchronizedMap(new HashMap<>());
+
+    private volatile String normalizedCandidatesJson;
+    private volatile String sourceClassificationJson;
+
+    private CandidateTable(ObjectMapper objectMapper, List<RawCandidate> candidates, List<SourceEntry> sources) {
+        this.objectMapper = objectMapper;
+        this.candidates = List.copyOf(candidates);
+        this.sources = List.copyOf(sources);
+        this.rowById = new HashMap<>(candidates.size() * 2);
+        for (int row = 0; row < this.candidates.size(); row++) {
+            rowById.putIfAbsent(this.candidates.get(row).id(), row);
+        }
+        this.enriched = new JsonNode[this.candidates.size()];
+    }
+
+    /**
+     * Builds the table from the chunk merger's output.
+     */
+    public static CandidateTable fromMergedResult(ObjectMapper objectMapper, MergedResult mergedResult) {
+        return new CandidateTable(objectMapper,
+                mergedResult.mergedCandidates() != null ? mergedResult.mergedCandidates() : List.of(),
+                mergedResult.globalSourceClassification() != null
+                        ? mergedResult.globalSourceClassification() : List.of());
+    }
+
+    // =========================================================================
+    //  Base rows
+    // =========================================================================
+
+    public int size() {
+        return candidates.size();
+    }
+
+    /**
+     * @return the candidate with this id, or null
+     */
+    public RawCandidate candidate(int id) {
+        Integer row = rowById.get(id);
+        return row != null ? candidates.get(row) : null;
+    }
+
+    /**
+     * @return {@code {"normalized_candidates": [...], "entities_found": []}} for the
+     *         whole table — the shape Agent 4 reads; serialized on first use
+     */
+    public String normalizedCandidatesJson() {
+        String json = normalizedCandidatesJson;
+        if (json == null) {
+            json = normalizedJson(candidates);
+            normalizedCandidatesJson = json;
+        }
+        return json;
+    }
+
+    /**
+     * @return {@code {"source_classification": [...]}}; serialized on first use
+     */
+    public String sourceClassificationJson() {
+        String json = sourceClassificationJson;
+        if (json == null) {
+            var wrapper = new LinkedHashMap<String, Object>();
+            wrapper.put("source_classification", sources);
+            json = write(wrapper);
+            sourceClassificationJson = json;
+        }
+        return json;
+    }
+
+    // =========================================================================
+    //  Batches
+    // =========================================================================
+
+    /**
+     * Splits the rows into consecutive batches of at most {@code batchSize}.
+     */
+    public List<Batch> batches(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be >= 1");
+        List<Batch> batches = new ArrayList<>();
+        for (int start = 0, index = 0; start < candidates.size(); start += batchSize, index++) {
+            batches.add(new Batch(index, start, Math.min(start + batchSize, candidates.size())));
+        }
+        return batches;
+    }
+
+    /** A consecutive range of rows, reduced as one unit. */
+    public final class Batch {
+
+        private final int index;
+        private final int fromRow;
+        private final int toRow;
+
+        private Batch(int index, int fromRow, int toRow) {
+            this.index = index;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        /** @return 0-based batch number */
+        public int index() { return index; }
+
+        public int size() { return toRow - fromRow; }
+
+        /** @return this batch's rows in the normalizedCandidates shape */
+        public String normalizedCandidatesJson() {
+            return normalizedJson(candidates.subList(fromRow, toRow));
+        }
+    }
+
+    // =========================================================================
+    //  Wave 5 column
+    // =========================================================================
+
+    /**
+     * Stores a batch's enrichedCandidates output. Rows are matched to the batch's
+     * base rows by id; rows with an unknown or repeated id are kept after the
+     * batch's matched rows, so nothing the agents returned is dropped.
+     *
+     * @param enrichedJson {@code {"enriched_candidates": [...]}} (or {@code candidates})
+     */
+    public void putEnriched(Batch batch, String enrichedJson) {
+        if (enrichedJson == null || enrichedJson.isBlank()) return;
+        JsonNode rows;
+        try {
+            JsonNode root = objectMapper.readTree(enrichedJson);
+            rows = root.has("enriched_candidates") ? root.get("enriched_candidates")
+                    : root.has("candidates") ? root.get("candidates") : root;
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to parse enriched batch {}, skipping", batch.index + 1, e);
+            return;
+        }
+        if (!rows.isArray()) return;
+
+        List<JsonNode> unmatched = new ArrayList<>();
+        for (JsonNode row : rows) {
+            Integer baseRow = row.has("id") ? rowById.get(row.get("id").asInt()) : null;
+            if (baseRow != null && baseRow >= batch.fromRow && baseRow < batch.toRow && enriched[baseRow] == null) {
+                enriched[baseRow] = row;
+            } else {
+                unmatched.add(row);
+            }
+        }
+        if (!unmatched.isEmpty()) {
+            unmatchedByBatch.put(batch.toRow - 1, unmatched);
+        }
+    }
+
+    /**
+     * Serializes the Wave 5 column in J4 order with ids renumbered 1..n — the
+     * REDUCE output the tail agents read.
+     *
+     * @return {@code {"enriched_candidates": [...]}}
+     */
+    public String enrichedCandidatesJson() {
+        StringWriter out = new StringWriter();
+        int written = 0;
+        try (JsonGenerator gen = objectMapper.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("enriched_candidates");
+            for (int row = 0; row < enriched.length; row++) {
+                if (enriched[row] != null) {
+                    writeRenumbered(gen, enriched[row], ++written);
+                }
+                for (JsonNode node : unmatchedByBatch.getOrDefault(row, List.of())) {
+                    writeRenumbered(gen, node, ++written);
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize enriched candidates", e);
+        }
+        log.info("Enriched candidates assembled — {} rows (ids renumbered 1-{})", written, written);
+        return out.toString();
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /** Writes an enriched row with its {@code id} replaced in place (appended if absent). */
+    private static void writeRenumbered(JsonGenerator gen, JsonNode node, int id) throws IOException {
+        if (!node.isObject()) {
+            gen.writeTree(node);
+            return;
+        }
+        gen.writeStartObject();
+        boolean hasId = false;
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if ("id".equals(field.getKey())) {
+                gen.writeNumberField("id", id);
+                hasId = true;
+            } else {
+                gen.writeFieldName(field.getKey());
+                gen.writeTree(field.getValue());
+            }
+        }
+        if (!hasId) gen.writeNumberField("id", id);
+        gen.writeEndObject();
+    }
+
+    private String normalizedJson(List<RawCandidate> rows) {
+        var wrapper = new LinkedHashMap<String, Object>();
+        wrapper.put("normalized_candidates", rows);
+        wrapper.put("entities_found", List.of());
+        return write(wrapper);
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to serialize candidate table", e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.eainde.agent.engine;
+
+import com.eainde.agent.thread.AdaptiveConcurrencyLimiter;
+import dev.langchain4j.model.chat.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Puts every {@link ChatModel} bean behind the JVM-wide
+ * {@link AdaptiveConcurrencyLimiter} (see {@link LimitedChatModel}).
+ *
+ * <p>Wrapping the bean rather than each call site means {@code AgentFactory}, the
+ * response cache factory and anything else injected with the chat model are
+ * admitted without change.</p>
+ */
+@Configuration
+public class ChatModelLimiterConfig {
+
+    /**
+     * Static — a post-processor must not wait for this configuration's own dependencies.
+     *
+     * @param enabled      off = chat model beans are left as they are
+     * @param initialLimit concurrent calls per model endpoint before any feedback
+     * @param minLimit     floor after 429s and slow responses
+     * @param maxLimit     ceiling after sustained success
+     */
+    @Bean
+    public static BeanPostProcessor chatModelLimiter(
+            @Value("${csm.llm-limiter.enabled:true}") boolean enabled,
+            @Value("${csm.llm-limiter.initial-limit:8}") int initialLimit,
+            @Value("${csm.llm-limiter.min-limit:1}") int minLimit,
+            @Value("${csm.llm-limiter.max-limit:64}") int maxLimit,
+            @Value("${csm.llm-limiter.latency-tolerance:2.0}") double latencyTolerance) {
+        AdaptiveConcurrencyLimiter.Settings settings =
+                new AdaptiveConcurrencyLimiter.Settings(initialLimit, minLimit, maxLimit, latencyTolerance);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (enabled && bean instanceof ChatModel model && !(bean instanceof LimitedChatModel)) {
+                    return new LimitedChatModel(model, settings);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * The same settings for model calls made without a chat model bean — e.g.
+     * {@code ContentAwareUntypedAgent} on a Gemini context cache. The first caller of
+     * an endpoint fixes its limiter, so such calls must pass these, not the defaults.
+     */
+    @Bean
+    public AdaptiveConcurrencyLimiter.Settings chatModelLimiterSettings(
+            @Value("${csm.llm-limiter.initial-limit:8}") int initialLimit,
+            @Value("${csm.llm-limiter.min-limit:1}") int minLimit,
+            @Value("${csm.llm-limiter.max-limit:64}") int maxLimit,
+            @Value("${csm.llm-limiter.latency-tolerance:2.0}") double latencyTolerance) {
+        return new AdaptiveConcurrencyLimiter.Settings(initialLimit, minLimit, maxLimit, latencyTolerance);
+    }
+}
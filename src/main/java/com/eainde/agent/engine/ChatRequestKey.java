@@ -0,0 +1,52 @@
+package com.eainde.agent.engine;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.request.ChatRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Identity of a chat request, shared by {@link CachingChatModel} and
+ * {@link SingleFlightChatModel}.
+ *
+ * <p>SHA-256 of the model name, every request parameter (sampling, seed, output
+ * limits, response format, tools, tool choice) and every message (system, user,
+ * previous AI turns and tool results) — langchain4j value types print all of their
+ * fields, so their {@code toString()} is the canonical form. Any change to a prompt,
+ * an input or a setting is a different key.</p>
+ */
+final class ChatRequestKey {
+
+    /** Bump when the key changes — stored responses under old keys are then unused. */
+    private static final String VERSION = "v1";
+
+    private ChatRequestKey() { }
+
+    /** @return 64 hex characters, safe as a file name */
+    static String of(ChatRequest request) {
+        MessageDigest digest = sha256();
+        update(digest, VERSION);
+        update(digest, String.valueOf(request.parameters().modelName()));
+        update(digest, String.valueOf(request.parameters()));
+        for (ChatMessage message : request.messages()) {
+            update(digest, String.valueOf(message));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
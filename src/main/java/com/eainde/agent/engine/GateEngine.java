@@ -0,0 +1,306 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Rule-based pre-classification for the CSM classifier (Agent 5).
+ *
+ * <p>Some exclusions follow from structured candidate fields alone. The engine
+ * resolves those candidates up front in the classifier's own
+ * {@code classified_candidates} shape, and only the rest go to the LLM. The
+ * classifier prompt and its output shrink by the share of candidates decided here.</p>
+ *
+ * <h3>Gates (first match wins; anything else is left to the LLM):</h3>
+ * <pre>
+ * Gate 1 (C8)  a resignation marker on every role hint,
+ *              in a source dated ≤ AS_OF_DATE               → isCsm=false, "former"
+ * Gate 6 (C6)  joint signatory / Gesamtprokura role hint,
+ *              no board or executive role hint             → isCsm=false
+ * Gate 7 (A2)  notary / witness / attestation official,
+ *              no board or executive role hint             → isCsm=false
+ * </pre>
+ *
+ * <p>The gates read only what the dedup linker emits — {@code roleHints} (merged over
+ * all occurrences), {@code sourceDate} and {@code sourceClass}. {@code temporalStatus},
+ * {@code formerEffectiveDate} and {@code signatoryType} are classifier outputs and
+ * are not on deduped candidates; rule decisions set them the way the classifier
+ * would, with no effective date where the source only states the resignation.</p>
+ *
+ * <p>Decisions are only ever exclusions with explicit evidence; a candidate with any
+ * current governance role hint is always classified by the LLM.</p>
+ *
+ * <h3>Usage:</h3>
+ * <pre>
+ * Partition p = gateEngine.partition(dedupedCandidatesJson);
+ * String llmOutput = p.unresolvedCount() > 0 ? classifier(p.unresolvedJson()) : null;
+ * String classifiedCandidates = p.merge(llmOutput);
+ * </pre>
+ */
+public class GateEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(GateEngine.class);
+
+    private static final List<String> FORMER_TERMS = List.of(
+            "former", "resigned", "retired", "ausgeschieden", "ehemalig", "abberufen",
+            "démissionnaire", "ancien", "voormalig");
+    private static final List<String> JOINT_SIGNATORY_TERMS = List.of(
+            "joint signatory", "jointly authorised", "jointly authorized", "gesamtprokura",
+            "gesamtvertretung", "prokura łączna", "prokura laczna", "kollektivunterschrift");
+    private static final List<String> NOTARY_WITNESS_TERMS = List.of(
+            "notary", "notar", "notaire", "notaio", "witness", "zeuge", "témoin",
+            "attestation", "commissioner for oaths");
+    /** Any of these in a role hint leaves the candidate to the LLM. */
+    private static final List<String> GOVERNANCE_TERMS = List.of(
+            "director", "board", "vorstand", "aufsichtsrat", "verwaltungsrat", "geschäftsführ",
+            "geschaftsfuhr", "managing", "executive", "ceo", "cfo", "chief", "president", "président",
+            "chair", "partner", "gérant", "gerant", "administrateur", "bestuur", "commissaris",
+            "zarząd", "zarzad", "trustee", "protector", "liquidator", "officer", "manager");
+
+    private final ObjectMapper objectMapper;
+    private final Supplier<LocalDate> asOfDate;
+
+    /**
+     * @param asOfDate AS_OF_DATE for Gate 1, read once per {@link #partition} call
+     */
+    public GateEngine(ObjectMapper objectMapper, Supplier<LocalDate> asOfDate) {
+        this.objectMapper = objectMapper;
+        this.asOfDate = asOfDate;
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Splits deduped candidates into rule-resolved and LLM-bound.
+     *
+     * @param dedupedCandidatesJson {@code {"deduped_candidates": [...]}}
+     * @throws IOException if the input is not valid JSON
+     */
+    public Partition partition(String dedupedCandidatesJson) throws IOException {
+        JsonNode root = objectMapper.readTree(
+                dedupedCandidatesJson == null || dedupedCandidatesJson.isBlank() ? "{}" : dedupedCandidatesJson);
+        JsonNode candidates = root.has("deduped_candidates") ? root.get("deduped_candidates")
+                : root.has("candidates") ? root.get("candidates") : root;
+
+        LocalDate asOf = asOfDate.get();
+        List<JsonNode> ordered = new ArrayList<>();
+        Map<Integer, ObjectNode> resolved = new HashMap<>();
+        ArrayNode unresolved = objectMapper.createArrayNode();
+        int[] gateCounts = new int[3];
+
+        if (candidates.isArray()) {
+            for (JsonNode candidate : candidates) {
+                ordered.add(candidate);
+                ObjectNode decision = candidate.isObject() && candidate.has("id")
+                        ? resolve((ObjectNode) candidate, asOf, gateCounts) : null;
+                if (decision != null) {
+                    resolved.put(candidate.get("id").asInt(), decision);
+                } else {
+                    unresolved.add(candidate);
+                }
+            }
+        }
+
+        log.info("Gate pre-classification (AS_OF_DATE {}) — {} of {} candidates resolved by rules "
+                        + "(Gate 1: {}, Gate 6: {}, Gate 7: {}), {} left to the classifier",
+                asOf, resolved.size(), ordered.size(), gateCounts[0], gateCounts[1], gateCounts[2],
+                unresolved.size());
+
+        ObjectNode unresolvedRoot = objectMapper.createObjectNode();
+        unresolvedRoot.set("deduped_candidates", unresolved);
+        if (root.has("entities_found")) unresolvedRoot.set("entities_found", root.get("entities_found"));
+        return new Partition(ordered, resolved, unresolvedRoot.toString(), unresolved.size());
+    }
+
+    /** Result of {@link #partition}: rule decisions plus the LLM's share of the input. */
+    public final class Partition {
+
+        private final List<JsonNode> ordered;
+        private final Map<Integer, ObjectNode> resolved;
+        private final String unresolvedJson;
+        private final int unresolvedCount;
+
+        private Partition(List<JsonNode> ordered, Map<Integer, ObjectNode> resolved,
+                          String unresolvedJson, int unresolvedCount) {
+            this.ordered = ordered;
+            this.resolved = resolved;
+            this.unresolvedJson = unresolvedJson;
+            this.unresolvedCount = unresolvedCount;
+        }
+
+        public int resolvedCount() { return resolved.size(); }
+
+        public int unresolvedCount() { return unresolvedCount; }
+
+        /** @return {@code {"deduped_candidates": [...]}} holding only the unresolved candidates */
+        public String unresolvedJson() { return unresolvedJson; }
+
+        /**
+         * Combines rule decisions with the classifier's output, in input order. LLM rows
+         * are matched by id; rows the LLM returned for unknown ids are appended.
+         *
+         * @param classifierOutput the classifier's {@code classified_candidates} JSON,
+         *                         or null when nothing was left to classify
+         * @return {@code {"classified_candidates": [...]}}
+         */
+        public String merge(String classifierOutput) {
+            Map<Integer, JsonNode> byId = new LinkedHashMap<>();
+            List<JsonNode> unmatched = new ArrayList<>();
+            for (JsonNode row : classifierRows(classifierOutput)) {
+                if (row.has("id") && byId.putIfAbsent(row.get("id").asInt(), row) == null) continue;
+                unmatched.add(row);
+            }
+
+            ArrayNode classified = objectMapper.createArrayNode();
+            for (JsonNode candidate : ordered) {
+                if (!candidate.has("id")) continue;
+                int id = candidate.get("id").asInt();
+                JsonNode llmRow = byId.remove(id);
+                JsonNode row = resolved.containsKey(id) ? resolved.get(id) : llmRow;
+                if (row != null) classified.add(row);
+            }
+            byId.values().forEach(classified::add);
+            unmatched.forEach(classified::add);
+
+            ObjectNode root = objectMapper.createObjectNode();
+            root.set("classified_candidates", classified);
+            return root.toString();
+        }
+    }
+
+    // =========================================================================
+    //  Gates
+    // =========================================================================
+
+    /** @return the classified row, or null if no gate resolves the candidate */
+    private ObjectNode resolve(ObjectNode candidate, LocalDate asOf, int[] gateCounts) {
+        List<String> roleHints = roleHints(candidate);
+
+        // ── Gate 1: every role former, per a source dated on or before AS_OF_DATE ──
+        LocalDate sourceDate = date(text(candidate, "sourceDate"));
+        if (!roleHints.isEmpty() && allHintsContain(roleHints, FORMER_TERMS)
+                && sourceDate != null && !sourceDate.isAfter(asOf)) {
+            gateCounts[0]++;
+            return classified(candidate, "Former officer (resignation per source dated " + sourceDate
+                    + ") = excluded", "former", "C8");
+        }
+
+        // Gates 6 and 7 only when no role hint carries a governance role
+        if (anyHintContains(roleHints, GOVERNANCE_TERMS)) return null;
+
+        // ── Gate 6: joint signatory without executive mandate ──
+        if (anyHintContains(roleHints, JOINT_SIGNATORY_TERMS)) {
+            gateCounts[1]++;
+            return classified(candidate, "Joint signatory only, no executive mandate = excluded",
+                    "unknown", "C6").put("signatoryType", "joint");
+        }
+
+        // ── Gate 7: notary / witness / attestation official ──
+        if (anyHintContains(roleHints, NOTARY_WITNESS_TERMS)) {
+            gateCounts[2]++;
+            return classified(candidate, "Notary / witness / attestation official = excluded",
+                    "unknown", "A2");
+        }
+        return null;
+    }
+
+    /**
+     * The candidate with the classifier's fields set — every deduped field (roleHints,
+     * allOccurrences, ...) is carried through for the Wave 5 agents.
+     */
+    private ObjectNode classified(ObjectNode candidate, String governanceBasis,
+                                  String temporalStatus, String control) {
+        ObjectNode row = candidate.deepCopy();
+        row.put("isCsm", false);
+        row.put("governanceBasis", governanceBasis);
+        row.put("temporalStatus", temporalStatus);
+        if (!row.has("formerEffectiveDate")) row.putNull("formerEffectiveDate");
+        if (text(row, "signatoryType").isEmpty()) row.put("signatoryType", "unknown");
+        if (!row.has("conflictTag")) row.put("conflictTag", "C: clear");
+        if (!row.has("scopeTag")) row.putNull("scopeTag");
+        if (!row.has("currencyTag")) {
+            if ("H4".equalsIgnoreCase(text(row, "sourceClass"))) row.put("currencyTag", "U: low-authority");
+            else row.putNull("currencyTag");
+        }
+        row.putArray("controlsApplied").add(control);
+        return row;
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private List<JsonNode> classifierRows(String classifierOutput) {
+        List<JsonNode> rows = new ArrayList<>();
+        if (classifierOutput == null || classifierOutput.isBlank()) return rows;
+        try {
+            JsonNode root = objectMapper.readTree(classifierOutput);
+            JsonNode array = root.has("classified_candidates") ? root.get("classified_candidates")
+                    : root.has("candidates") ? root.get("candidates") : root;
+            if (array.isArray()) array.forEach(rows::add);
+        } catch (IOException e) {
+            log.warn("Classifier output is not valid JSON — keeping rule decisions only", e);
+        }
+        return rows;
+    }
+
+    private static List<String> roleHints(JsonNode candidate) {
+        List<String> hints = new ArrayList<>();
+        JsonNode node = candidate.has("roleHints") ? candidate.get("roleHints") : candidate.path("roleHint");
+        if (node.isArray()) {
+            node.forEach(hint -> hints.add(hint.asText("").toLowerCase(Locale.ROOT)));
+        } else if (node.isTextual()) {
+            hints.add(node.asText().toLowerCase(Locale.ROOT));
+        }
+        hints.removeIf(String::isBlank);
+        return hints;
+    }
+
+    private static boolean anyHintContains(List<String> hints, List<String> terms) {
+        for (String hint : hints) {
+            for (String term : terms) {
+                if (hint.contains(term)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Every hint has a marker — "former CFO" next to a current "CEO" hint is not former. */
+    private static boolean allHintsContain(List<String> hints, List<String> terms) {
+        for (String hint : hints) {
+            if (!anyHintContains(List.of(hint), terms)) return false;
+        }
+        return true;
+    }
+
+    private static LocalDate date(String value) {
+        if (value.length() < 10) return null;
+        try {
+            return LocalDate.parse(value.substring(0, 10));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String text(JsonNode candidate, String fieldName) {
+        JsonNode value = candidate.get(fieldName);
+        return value != null && !value.isNull() ? value.asText("").trim() : "";
+    }
+}
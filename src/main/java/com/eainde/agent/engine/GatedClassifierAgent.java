@@ -0,0 +1,77 @@
+package com.eainde.agent.engine;
+
+import dev.langchain4j.agentic.ResultWithAgenticScope;
+import dev.langchain4j.agentic.UntypedAgent;
+import dev.langchain4j.agentic.scope.AgenticScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Agent 5 (CSM Classifier) with rule-based pre-classification.
+ *
+ * <p>{@link GateEngine} resolves the rule-decidable candidates first; the classifier
+ * agent only sees the rest, in its own scope, and both parts are merged back into
+ * one {@code classifiedCandidates} in input order. If every candidate is resolved by
+ * rules, the classifier is not called at all. Selected with
+ * {@code csm.classifier.pre-gates.enabled=true}.</p>
+ *
+ * <pre>
+ * invoke(scope):
+ *   partition = gateEngine.partition(scope["dedupedCandidates"])
+ *   if partition has unresolved candidates:
+ *     classifier.invokeWithAgenticScope(
+ *         {dedupedCandidates: unresolved, sourceText, sourceClassification})
+ *   scope["classifiedCandidates"] = partition.merge(classifier output)
+ * </pre>
+ */
+public class GatedClassifierAgent implements UntypedAgent {
+
+    private static final Logger log = LoggerFactory.getLogger(GatedClassifierAgent.class);
+
+    private final GateEngine gateEngine;
+    private final UntypedAgent classifier;
+
+    public GatedClassifierAgent(GateEngine gateEngine, UntypedAgent classifier) {
+        this.gateEngine = gateEngine;
+        this.classifier = classifier;
+    }
+
+    @Override
+    public void invoke(AgenticScope scope) {
+        String dedupedJson = readString(scope, "dedupedCandidates");
+
+        GateEngine.Partition partition;
+        try {
+            partition = gateEngine.partition(dedupedJson);
+        } catch (IOException e) {
+            log.warn("dedupedCandidates is not valid JSON — classifying without pre-gates", e);
+            classifier.invoke(scope);
+            return;
+        }
+
+        String classifierOutput = null;
+        if (partition.unresolvedCount() > 0) {
+            ResultWithAgenticScope<String> result = classifier.invokeWithAgenticScope(
+                    Map.of("dedupedCandidates", partition.unresolvedJson(),
+                            "sourceText", readString(scope, "sourceText"),
+                            "sourceClassification", readString(scope, "sourceClassification")));
+            classifierOutput = readString(result.agenticScope(), "classifiedCandidates");
+            if (classifierOutput.isBlank() && result.result() != null) {
+                classifierOutput = result.result();
+            }
+        } else {
+            log.info("All {} candidates resolved by gates — classifier not called",
+                    partition.resolvedCount());
+        }
+
+        scope.writeState("classifiedCandidates", partition.merge(classifierOutput));
+    }
+
+    private static String readString(AgenticScope scope, String key) {
+        Object value = scope.readState(key);
+        return value != null ? value.toString() : "";
+    }
+}
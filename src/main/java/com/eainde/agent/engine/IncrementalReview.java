@@ -0,0 +1,303 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.model.ReviewIssue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Incremental critic review for refinement iterations after the first.
+ *
+ * <p>The loop critic re-reads the whole {@code finalOutput} and {@code sourceText}
+ * after every refinement, although the refiner usually changes a few records. This
+ * class diffs the refined output against the previous iteration, carries forward the
+ * previous verdicts for unchanged records, and prepares a review request with only
+ * the changed records and the source passages that mention them. The critic's
+ * verdicts on those are merged back and the extraction score is recomputed in Java.</p>
+ *
+ * <h3>Flow:</h3>
+ * <pre>
+ * Delta delta = review.diff(previousOutput, previousReview, refinedOutput, sourceText);
+ * if (!delta.isIncremental())  → full loop critic
+ * String criticOutput = delta.needsCritic()
+ *         ? incrementalCritic(delta.changedRecords(), delta.openIssues(), delta.sourceExcerpts())
+ *         : null;
+ * extractionReview = delta.merge(criticOutput);
+ * </pre>
+ *
+ * <h3>Score (same bands as the critic prompt):</h3>
+ * <pre>
+ * no issues         1.00
+ * minor only        0.99 − 0.02 per extra minor,           ≥ 0.85
+ * major present     0.84 − 0.03 per extra major − 0.01/minor, ≥ 0.70
+ * critical present  0.69 − 0.10 per extra critical − 0.03/major − 0.01/minor, ≥ 0.00
+ * </pre>
+ *
+ * <p>Records are matched across iterations by content without the id, since ids are
+ * renumbered after every refinement. Coverage (RC2) is only re-checked for the
+ * issues still open; a person missed by every iteration is found by the first,
+ * full review.</p>
+ */
+public class IncrementalReview {
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalReview.class);
+
+    /** Above this share of changed records, a full review is cheaper to reason about. */
+    static final double MAX_CHANGED_SHARE = 0.5;
+    /** Characters of source text kept on each side of a name mention. */
+    static final int EXCERPT_RADIUS = 1000;
+    /** Name mentions kept per changed record. */
+    static final int MAX_MENTIONS_PER_RECORD = 5;
+    static final String EXCERPT_SEPARATOR = "\n[…]\n";
+
+    private final ObjectMapper objectMapper;
+
+    public IncrementalReview(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Diffs two iterations of finalOutput and splits the previous review into
+     * verdicts to carry forward and issues to re-check.
+     *
+     * @param previousOutput finalOutput the previous review was made on
+     * @param previousReview the previous extractionReview
+     * @param refinedOutput  finalOutput after the refiner
+     * @param sourceText     full source documents
+     * @throws IOException if any of the JSON inputs is invalid
+     */
+    public Delta diff(String previousOutput, String previousReview,
+                      String refinedOutput, String sourceText) throws IOException {
+        List<JsonNode> previous = records(previousOutput);
+        List<JsonNode> refined = records(refinedOutput);
+
+        // Unchanged = same content apart from id; queues keep duplicates apart
+        Map<JsonNode, ArrayDeque<Integer>> previousIdsByContent = new HashMap<>();
+        for (JsonNode record : previous) {
+            previousIdsByContent.computeIfAbsent(withoutId(record), k -> new ArrayDeque<>())
+                    .add(record.path("id").asInt());
+        }
+        Map<Integer, Integer> carriedIds = new HashMap<>();   // previous id → refined id
+        List<JsonNode> changed = new ArrayList<>();
+        for (JsonNode record : refined) {
+            ArrayDeque<Integer> ids = previousIdsByContent.get(withoutId(record));
+            if (ids != null && !ids.isEmpty()) {
+                carriedIds.put(ids.poll(), record.path("id").asInt());
+            } else {
+                changed.add(record);
+            }
+        }
+
+        Set<Integer> previousIds = new HashSet<>();
+        previous.forEach(record -> previousIds.add(record.path("id").asInt()));
+
+        List<ReviewIssue> carried = new ArrayList<>();
+        ArrayNode open = objectMapper.createArrayNode();
+        for (ReviewIssue issue : issues(previousReview)) {
+            Integer personId = issue.personId();
+            if (personId != null && carriedIds.containsKey(personId)) {
+                carried.add(new ReviewIssue(issue.ruleId(), issue.severity(), carriedIds.get(personId),
+                        issue.description(), issue.expectedBehavior()));
+            } else if (personId == null || !previousIds.contains(personId)) {
+                // Not tied to a record (e.g. RC2 missing person) — still open
+                open.add(objectMapper.valueToTree(issue));
+            }
+            // else: the record changed — its issues are re-reviewed
+        }
+
+        log.info("Incremental review — {} of {} records changed, {} verdicts carried forward, {} open issues",
+                changed.size(), refined.size(), carried.size(), open.size());
+        return new Delta(refined.size(), changed, carried, open, sourceText);
+    }
+
+    /**
+     * Extraction score from issue severities, in the critic's bands.
+     */
+    public static double score(List<ReviewIssue> issues) {
+        int critical = 0;
+        int major = 0;
+        int minor = 0;
+        for (ReviewIssue issue : issues) {
+            String severity = issue.severity() != null ? issue.severity().toLowerCase(Locale.ROOT) : "";
+            switch (severity) {
+                case "critical" -> critical++;
+                case "major" -> major++;
+                default -> minor++;
+            }
+        }
+        double score;
+        if (critical > 0) {
+            score = Math.max(0.0, 0.69 - 0.10 * (critical - 1) - 0.03 * major - 0.01 * minor);
+        } else if (major > 0) {
+            score = Math.max(0.70, 0.84 - 0.03 * (major - 1) - 0.01 * minor);
+        } else if (minor > 0) {
+            score = Math.max(0.85, 0.99 - 0.02 * (minor - 1));
+        } else {
+            score = 1.0;
+        }
+        return Math.round(score * 100) / 100.0;
+    }
+
+    /** Result of {@link #diff}: what the incremental critic needs, and how to merge its answer. */
+    public final class Delta {
+
+        private final int recordCount;
+        private final List<JsonNode> changed;
+        private final List<ReviewIssue> carried;
+        private final ArrayNode open;
+        private final String sourceText;
+
+        private Delta(int recordCount, List<JsonNode> changed, List<ReviewIssue> carried,
+                      ArrayNode open, String sourceText) {
+            this.recordCount = recordCount;
+            this.changed = changed;
+            this.carried = carried;
+            this.open = open;
+            this.sourceText = sourceText;
+        }
+
+        public int changedCount() { return changed.size(); }
+
+        public int carriedCount() { return carried.size(); }
+
+        /** @return false when so much changed that a full review should run instead */
+        public boolean isIncremental() {
+            return changed.size() <= recordCount * MAX_CHANGED_SHARE;
+        }
+
+        /** @return false when nothing changed — the carried review stands as is */
+        public boolean needsCritic() {
+            return !changed.isEmpty();
+        }
+
+        /** @return {@code {"extracted_records": [...]}} with only the changed records */
+        public String changedRecords() {
+            ArrayNode array = objectMapper.createArrayNode();
+            changed.forEach(array::add);
+            ObjectNode root = objectMapper.createObjectNode();
+            root.set("extracted_records", array);
+            return root.toString();
+        }
+
+        /** @return {@code {"issues": [...]}} — previous issues not tied to an unchanged record */
+        public String openIssues() {
+            ObjectNode root = objectMapper.createObjectNode();
+            root.set("issues", open);
+            return root.toString();
+        }
+
+        /**
+         * The source passages around each mention of a changed record's last name,
+         * or the full source text when a name cannot be located.
+         */
+        public String sourceExcerpts() {
+            if (sourceText == null || sourceText.isEmpty()) return "";
+            List<int[]> windows = new ArrayList<>();
+            for (JsonNode record : changed) {
+                String lastName = record.path("lastName").asText("").trim();
+                if (lastName.length() < 2) return sourceText;
+                Matcher mention = Pattern.compile(Pattern.quote(lastName),
+                        Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE).matcher(sourceText);
+                int found = 0;
+                while (found < MAX_MENTIONS_PER_RECORD && mention.find()) {
+                    windows.add(new int[]{Math.max(0, mention.start() - EXCERPT_RADIUS),
+                            Math.min(sourceText.length(), mention.end() + EXCERPT_RADIUS)});
+                    found++;
+                }
+                if (found == 0) return sourceText;   // transliterated or OCR-healed name
+            }
+
+            windows.sort((a, b) -> Integer.compare(a[0], b[0]));
+            StringBuilder excerpts = new StringBuilder();
+            int start = -1;
+            int end = -1;
+            for (int[] window : windows) {
+                if (window[0] <= end) {
+                    end = Math.max(end, window[1]);
+                    continue;
+                }
+                if (start >= 0) excerpts.append(sourceText, start, end).append(EXCERPT_SEPARATOR);
+                start = window[0];
+                end = window[1];
+            }
+            if (start >= 0) excerpts.append(sourceText, start, end);
+            return excerpts.toString();
+        }
+
+        /**
+         * Combines carried verdicts with the incremental critic's issues and scores
+         * the result.
+         *
+         * @param criticOutput the incremental critic's {@code {"issues": [...]}}, or null
+         *                     when nothing changed
+         * @return an extractionReview JSON ({@code ExtractionReview} shape)
+         */
+        public String merge(String criticOutput) throws IOException {
+            List<ReviewIssue> issues = new ArrayList<>(carried);
+            if (criticOutput != null) {
+                issues.addAll(issues(criticOutput));
+            } else {
+                for (JsonNode issue : open) issues.add(objectMapper.treeToValue(issue, ReviewIssue.class));
+            }
+
+            // Field by field — the record's isClean() would otherwise be written as "clean"
+            ObjectNode review = objectMapper.createObjectNode();
+            review.set("issues", objectMapper.valueToTree(issues));
+            review.put("extraction_score", score(issues));
+            review.put("summary", String.format(
+                    "Incremental review — %d changed records re-reviewed, %d verdicts carried forward, %d issues",
+                    changed.size(), carried.size(), issues.size()));
+            return review.toString();
+        }
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private List<JsonNode> records(String output) throws IOException {
+        JsonNode root = objectMapper.readTree(output == null || output.isBlank() ? "{}" : output);
+        JsonNode array = root.has("extracted_records") ? root.get("extracted_records") : root;
+        List<JsonNode> records = new ArrayList<>();
+        if (array.isArray()) {
+            array.forEach(record -> {
+                if (record.isObject()) records.add(record);
+            });
+        }
+        return records;
+    }
+
+    private List<ReviewIssue> issues(String reviewJson) throws IOException {
+        JsonNode root = objectMapper.readTree(reviewJson == null || reviewJson.isBlank() ? "{}" : reviewJson);
+        List<ReviewIssue> issues = new ArrayList<>();
+        for (JsonNode issue : root.path("issues")) {
+            issues.add(objectMapper.treeToValue(issue, ReviewIssue.class));
+        }
+        return issues;
+    }
+
+    private static JsonNode withoutId(JsonNode record) {
+        ObjectNode copy = ((ObjectNode) record).deepCopy();
+        copy.remove("id");
+        return copy;
+    }
+}
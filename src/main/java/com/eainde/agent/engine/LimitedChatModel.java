@@ -0,0 +1,60 @@
+package com.eainde.agent.engine;
+
+import com.eainde.agent.thread.AdaptiveConcurrencyLimiter;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link ChatModel} whose calls go through the JVM-wide
+ * {@link AdaptiveConcurrencyLimiter} of the request's model.
+ *
+ * <p>The limiter key is the request's model name, so two endpoints behind one chat
+ * model bean keep separate limits; the workflow queue is the caller's
+ * {@link AdaptiveConcurrencyLimiter#WORKFLOW_MDC_KEY} MDC entry. Registered for every
+ * chat model bean by {@link ChatModelLimiterConfig}, so every agent built by
+ * {@code AgentFactory} — and the response cache and single-flight layers above it —
+ * is admitted here. Listeners stay on the wrapped model.</p>
+ */
+public class LimitedChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final AdaptiveConcurrencyLimiter.Settings settings;
+
+    public LimitedChatModel(ChatModel delegate, AdaptiveConcurrencyLimiter.Settings settings) {
+        this.delegate = delegate;
+        this.settings = settings;
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest request) {
+        String model = request.parameters() != null ? request.parameters().modelName() : null;
+        if (model == null && delegate.defaultRequestParameters() != null) {
+            model = delegate.defaultRequestParameters().modelName();
+        }
+        return AdaptiveConcurrencyLimiter.forModel(model, settings)
+                .call(MDC.get(AdaptiveConcurrencyLimiter.WORKFLOW_MDC_KEY), () -> delegate.chat(request));
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public List<ChatModelListener> listeners() {
+        return delegate.listeners();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+}
@@ -0,0 +1,253 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.model.ExtractedRecord;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Patch-based refinement for the critic loop (Agent 12 in patch mode).
+ *
+ * <p>The full refiner regenerates the whole {@code finalOutput} to fix a handful of
+ * issues. In patch mode the refiner only sees the records the critic flagged and
+ * returns per-record patches; this class selects its input and applies its output to
+ * the existing records, so a refinement round costs in proportion to the issues.</p>
+ *
+ * <h3>Flow:</h3>
+ * <pre>
+ * PatchRequest req = patcher.prepare(finalOutput, extractionReview, enrichedCandidates);
+ * String patches = req.needsModel()
+ *         ? patcherAgent(req.flaggedRecords(), req.issues(), req.referenceCandidates())
+ *         : null;
+ * finalOutput = patcher.apply(finalOutput, patches, fileNames);
+ * </pre>
+ *
+ * <h3>Patch format (csm-output-patcher prompt):</h3>
+ * <pre>
+ * {"patches": [
+ *   {"op": "update", "id": 3, "fields": {"isCsm": false, "reason": "..."}},
+ *   {"op": "add", "record": {"firstName": "...", "lastName": "...", ...}}
+ * ]}
+ * </pre>
+ *
+ * <p>There is no delete (J7 zero drop). Schema rules the critic may flag
+ * (J2, J3, J4, J5, Z4) are not sent to the model: {@link #apply} re-runs the
+ * {@link TailAssembler} formatting, which enforces them on every record.</p>
+ */
+public class OutputPatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OutputPatcher.class);
+
+    /** Critic rules that the J1-J7 formatting fixes by construction. */
+    static final Set<String> FORMAT_RULES = Set.of("J2", "J3", "J4", "J5", "Z4");
+
+    /** Record fields a patch may set; id is always reassigned by J5. */
+    static final Set<String> PATCHABLE_FIELDS = Set.of(
+            "firstName", "middleName", "lastName", "personalTitle", "jobTitle",
+            "documentName", "pageNumber", "reason", "isCsm");
+
+    private final ObjectMapper objectMapper;
+    private final TailAssembler tailAssembler;
+
+    public OutputPatcher(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.tailAssembler = new TailAssembler(objectMapper);
+    }
+
+    /**
+     * What the patcher agent needs for one refinement round.
+     *
+     * @param flaggedRecords      {@code {"extracted_records": [...]}} — only records with issues
+     * @param issues              {@code {"issues": [...]}} — issues the model has to fix
+     * @param referenceCandidates {@code {"enriched_candidates": [...]}} — evidence for those issues
+     * @param flaggedCount        number of flagged records
+     * @param issueCount          number of issues sent to the model
+     */
+    public record PatchRequest(String flaggedRecords, String issues, String referenceCandidates,
+                               int flaggedCount, int issueCount) {
+
+        /** @return false when every issue is fixed by formatting alone */
+        public boolean needsModel() {
+            return issueCount > 0;
+        }
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Selects the flagged records, the issues to send and the enriched candidates they
+     * refer to. Issues without a personId (e.g. RC2 missing person) need the full
+     * enriched set as reference; record issues only need the matching candidates.
+     *
+     * @throws IOException if finalOutput or extractionReview is not valid JSON
+     */
+    public PatchRequest prepare(String finalOutput, String extractionReview,
+                                String enrichedCandidates) throws IOException {
+        Map<Integer, JsonNode> records = records(finalOutput);
+
+        ArrayNode issues = objectMapper.createArrayNode();
+        ArrayNode flagged = objectMapper.createArrayNode();
+        Set<Integer> flaggedIds = new HashSet<>();
+        boolean needsAllCandidates = false;
+
+        for (JsonNode issue : read(extractionReview).path("issues")) {
+            String ruleId = issue.path("ruleId").asText("").trim().toUpperCase(Locale.ROOT);
+            if (FORMAT_RULES.contains(ruleId)) continue;
+
+            JsonNode personId = issue.get("personId");
+            if (personId != null && personId.canConvertToInt() && records.containsKey(personId.asInt())) {
+                if (flaggedIds.add(personId.asInt())) flagged.add(records.get(personId.asInt()));
+            } else {
+                needsAllCandidates = true;
+            }
+            issues.add(issue);
+        }
+
+        ArrayNode reference = objectMapper.createArrayNode();
+        if (issues.size() > 0) {
+            Set<String> flaggedNames = new HashSet<>();
+            flagged.forEach(record -> flaggedNames.add(nameKey(record)));
+            for (JsonNode candidate : enrichedCandidates(enrichedCandidates)) {
+                if (needsAllCandidates || flaggedNames.contains(nameKey(candidate))) reference.add(candidate);
+            }
+        }
+
+        log.info("Patch request — {} of {} records flagged, {} issues for the model",
+                flagged.size(), records.size(), issues.size());
+
+        return new PatchRequest(
+                wrap("extracted_records", flagged),
+                wrap("issues", issues),
+                wrap("enriched_candidates", reference),
+                flagged.size(),
+                issues.size());
+    }
+
+    /**
+     * Applies patches to the current output and re-formats it (J1-J7).
+     *
+     * @param patches   the patcher agent's {@code {"patches": [...]}}, or null when the
+     *                  round needed no model call
+     * @param fileNames document reading order for J4
+     * @return {@code {"extracted_records": [...]}}
+     * @throws IOException if finalOutput is not valid JSON
+     */
+    public String apply(String finalOutput, String patches, String fileNames) throws IOException {
+        Map<Integer, JsonNode> records = records(finalOutput);
+        List<JsonNode> added = new ArrayList<>();
+        int updated = 0;
+
+        for (JsonNode patch : patchList(patches)) {
+            String op = patch.path("op").asText("update");
+            if ("add".equalsIgnoreCase(op) && patch.path("record").isObject()) {
+                ObjectNode record = objectMapper.createObjectNode();
+                copyPatchable(patch.get("record"), record);
+                added.add(record);
+            } else if ("update".equalsIgnoreCase(op) && patch.path("fields").isObject()) {
+                JsonNode target = records.get(patch.path("id").asInt(-1));
+                if (target == null) {
+                    log.warn("Patch for unknown record id {} — skipped", patch.path("id"));
+                    continue;
+                }
+                copyPatchable(patch.get("fields"), (ObjectNode) target);
+                updated++;
+            } else {
+                log.warn("Unsupported patch — skipped: {}", patch);
+            }
+        }
+
+        // Added records follow the existing ones of their document under J4's id order
+        int nextId = records.values().stream().mapToInt(r -> r.path("id").asInt(0)).max().orElse(0) + 1;
+        for (JsonNode record : added) ((ObjectNode) record).put("id", nextId++);
+
+        List<JsonNode> all = new ArrayList<>(records.values());
+        all.addAll(added);
+        List<ExtractedRecord> formatted = tailAssembler.format(all, fileNames);
+        log.info("Applied patches — {} records updated, {} added, {} records total",
+                updated, added.size(), formatted.size());
+        return objectMapper.writeValueAsString(Map.of("extracted_records", formatted));
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /** Records of the current output by id, in output order. */
+    private Map<Integer, JsonNode> records(String finalOutput) throws IOException {
+        Map<Integer, JsonNode> records = new LinkedHashMap<>();
+        JsonNode root = read(finalOutput);
+        JsonNode array = root.has("extracted_records") ? root.get("extracted_records") : root;
+        if (!array.isArray()) return records;
+        int nextId = 1;
+        for (JsonNode record : array) {
+            if (!record.isObject()) continue;
+            int id = record.path("id").asInt(0);
+            // Duplicate or missing ids still keep the record (J7)
+            if (id <= 0 || records.containsKey(id)) id = -(nextId);
+            records.put(id, record.deepCopy());
+            nextId++;
+        }
+        return records;
+    }
+
+    private List<JsonNode> enrichedCandidates(String enrichedCandidates) {
+        List<JsonNode> candidates = new ArrayList<>();
+        try {
+            JsonNode root = read(enrichedCandidates);
+            JsonNode array = root.has("enriched_candidates") ? root.get("enriched_candidates") : root;
+            if (array.isArray()) array.forEach(candidates::add);
+        } catch (IOException e) {
+            log.warn("enrichedCandidates is not valid JSON — no reference data for the patcher", e);
+        }
+        return candidates;
+    }
+
+    private List<JsonNode> patchList(String patches) {
+        List<JsonNode> list = new ArrayList<>();
+        if (patches == null || patches.isBlank()) return list;
+        try {
+            JsonNode root = objectMapper.readTree(patches);
+            JsonNode array = root.has("patches") ? root.get("patches") : root;
+            if (array.isArray()) array.forEach(list::add);
+        } catch (IOException e) {
+            log.warn("Patcher output is not valid JSON — keeping the current output", e);
+        }
+        return list;
+    }
+
+    private static void copyPatchable(JsonNode from, ObjectNode to) {
+        from.fields().forEachRemaining(field -> {
+            if (PATCHABLE_FIELDS.contains(field.getKey())) to.set(field.getKey(), field.getValue());
+        });
+    }
+
+    /** "first last", lowercased — links an output record to its enriched candidate. */
+    private static String nameKey(JsonNode node) {
+        return (node.path("firstName").asText("") + " " + node.path("lastName").asText(""))
+                .trim().toLowerCase(Locale.ROOT);
+    }
+
+    private JsonNode read(String json) throws IOException {
+        return objectMapper.readTree(json == null || json.isBlank() ? "{}" : json);
+    }
+
+    private String wrap(String key, ArrayNode array) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.set(key, array);
+        return root.toString();
+    }
+}
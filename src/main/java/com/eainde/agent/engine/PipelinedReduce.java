@@ -0,0 +1,183 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.chunking.GovernanceTermIndex;
+import com.eainde.agent.thread.BoundedParallelExecutor;
+import com.eainde.agent.thread.StagePipeline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agentic.ResultWithAgenticScope;
+import dev.langchain4j.agentic.UntypedAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Pipelined REDUCE — agents 4→5→(6∥7∥8)→Wave5Merge over candidate batches, with
+ * batches overlapping across waves (see {@link StagePipeline}).
+ *
+ * <p>Batched REDUCE runs each batch's whole reduce sequence as one task: a batch
+ * holds its model permit from agent 4 to the merge, agents 6, 7 and 8 run one after
+ * another although they only read agent 5's output, and no enriched rows are seen
+ * until a whole batch is done. Here each wave is a pipeline stage:</p>
+ *
+ * <pre>
+ * batches → [q] → Wave 3 dedup (4) → [q] → Wave 4 classifier (5) → [q] → Wave 5 (6∥7∥8) → [q] → merge
+ *                                                                         └ batch i here while batch i+1 is in 5
+ * </pre>
+ *
+ * <p>Every model call takes a permit from the reduce executor for the duration of
+ * the call only, so the endpoint sees a steady {@code maxConcurrency} calls while
+ * batches move through the waves; the merge is Java and takes none. The bounded
+ * queues keep at most {@code queueCapacity} batches waiting in front of each wave.
+ * Each batch's enriched JSON is handed to the caller as soon as it is merged.</p>
+ *
+ * <p>Each agent runs in a fresh scope seeded with its batch's state, as the batched
+ * reduce sequence did — steps are usually single-agent sequences, so Java agents and
+ * spec agents are invoked the same way. One instance serves every request; a step's
+ * agent is looked up per call, so agents rebuilt after a prompt reload are picked
+ * up.</p>
+ */
+public class PipelinedReduce {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelinedReduce.class);
+
+    /** State key of a batch not yet rendered; never seen by an agent. */
+    private static final String BATCH_KEY = "pipelinedReduce.batch";
+
+    /**
+     * One agent of the reduce and the scope key it writes.
+     *
+     * @param outputKey scope key read back after the agent ran
+     * @param agent     supplies the agent invoked with {@code invokeWithAgenticScope(batch state)}
+     */
+    public record Step(String outputKey, Supplier<UntypedAgent> agent) { }
+
+    private final Step dedupLinker;
+    private final Step csmClassifier;
+    private final List<Step> wave5;
+    private final Wave5MergeEngine mergeEngine;
+    private final BoundedParallelExecutor executor;
+    private final int queueCapacity;
+
+    /**
+     * @param dedupLinker   agent 4 → dedupedCandidates
+     * @param csmClassifier agent 5 → classifiedCandidates
+     * @param wave5         agents 6, 7, 8 → countryOverrides, titleExtractions, scoredCandidates
+     * @param executor      per-model limit for the model calls
+     * @param queueCapacity batches waiting in front of each wave
+     */
+    public PipelinedReduce(ObjectMapper objectMapper, Step dedupLinker, Step csmClassifier,
+                           List<Step> wave5, BoundedParallelExecutor executor, int queueCapacity) {
+        this.dedupLinker = dedupLinker;
+        this.csmClassifier = csmClassifier;
+        this.wave5 = List.copyOf(wave5);
+        this.mergeEngine = new Wave5MergeEngine(objectMapper);
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Reduces every batch.
+     *
+     * @param batches one entry per batch, rendered only when it enters Wave 3 — at most
+     *                {@code queueCapacity} rendered batches wait in front of a wave
+     * @param render  a batch's normalizedCandidates JSON
+     * @param anchors the document's governance anchors, seeded as
+     *                {@value GovernanceTermIndex#SCOPE_KEY} in every batch; null = none
+     * @param onBatch called with (batch index, enrichedCandidates JSON) as each batch
+     *                is merged — in completion order, on a worker thread
+     * @return enrichedCandidates per batch, in batch order
+     */
+    public <B> List<String> reduce(List<B> batches, Function<? super B, String> render,
+                                   String sourceClassification, String sourceText,
+                                   List<GovernanceTermIndex.Hit> anchors,
+                                   BiConsumer<Integer, String> onBatch) {
+        List<Map<String, Object>> states = IntStream.range(0, batches.size())
+                .mapToObj(i -> {
+                    Map<String, Object> state = new HashMap<>();
+                    state.put(BATCH_KEY, batches.get(i));
+                    state.put("sourceClassification", sourceClassification);
+                    state.put("sourceText", sourceText);
+                    if (anchors != null) state.put(GovernanceTermIndex.SCOPE_KEY, anchors);
+                    return state;
+                })
+                .toList();
+
+        int workers = executor.maxConcurrency();
+        StagePipeline<Map<String, Object>> pipeline = StagePipeline.<Map<String, Object>>builder()
+                .queueCapacity(queueCapacity)
+                .stage("wave 3 (dedup)", workers, state -> runStep(dedupLinker, rendered(state, render)))
+                .stage("wave 4 (classifier)", workers, state -> runStep(csmClassifier, state))
+                .stage("wave 5 (6∥7∥8)", workers, this::runWave5)
+                .stage("wave 5 merge", 1, this::merge)
+                .build();
+
+        int batchCount = batches.size();
+        List<Map<String, Object>> done = pipeline.run(states, (index, state) -> {
+            log.info("REDUCE — batch {}/{} enriched", index + 1, batchCount);
+            onBatch.accept(index, (String) state.get("enrichedCandidates"));
+        });
+        return done.stream().map(state -> (String) state.get("enrichedCandidates")).toList();
+    }
+
+    // =========================================================================
+    //  Stages
+    // =========================================================================
+
+    /** Replaces the batch with its normalizedCandidates JSON, just before agent 4 reads it. */
+    @SuppressWarnings("unchecked")
+    private static <B> Map<String, Object> rendered(Map<String, Object> state, Function<? super B, String> render) {
+        state.put("normalizedCandidates", render.apply((B) state.remove(BATCH_KEY)));
+        return state;
+    }
+
+    private Map<String, Object> runStep(Step step, Map<String, Object> state) {
+        state.put(step.outputKey(), executor.call(() -> invoke(step, state)));
+        return state;
+    }
+
+    /** Agents 6, 7 and 8 only read classifiedCandidates — run them side by side. */
+    private Map<String, Object> runWave5(Map<String, Object> state) {
+        List<String> outputs = executor.invokeAll(wave5, step -> invoke(step, state));
+        for (int i = 0; i < wave5.size(); i++) {
+            state.put(wave5.get(i).outputKey(), outputs.get(i));
+        }
+        return state;
+    }
+
+    private Map<String, Object> merge(Map<String, Object> state) {
+        String scored = read(state, "scoredCandidates");
+        String enriched;
+        try {
+            enriched = mergeEngine.merge(read(state, "classifiedCandidates"),
+                    read(state, "countryOverrides"), read(state, "titleExtractions"), scored);
+        } catch (IOException e) {
+            log.error("Wave 5 merge failed — falling back to scoredCandidates", e);
+            enriched = scored;
+        }
+        state.put("enrichedCandidates", enriched);
+        return state;
+    }
+
+    private static String invoke(Step step, Map<String, Object> state) {
+        ResultWithAgenticScope<String> result = step.agent().get().invokeWithAgenticScope(Map.copyOf(state));
+        Object value = result.agenticScope().readState(step.outputKey());
+        String output = value != null ? value.toString() : "";
+        if (output.isBlank() && result.result() != null) {
+            output = result.result();
+        }
+        return output;
+    }
+
+    private static String read(Map<String, Object> state, String key) {
+        Object value = state.get(key);
+        return value != null ? value.toString() : "";
+    }
+}
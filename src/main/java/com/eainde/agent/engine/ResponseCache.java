@@ -0,0 +1,206 @@
+package com.eainde.agent.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier, size-bounded LRU of string values — a small in-memory tier in front of
+ * one file per entry on local disk.
+ *
+ * <ul>
+ *   <li>Memory: the {@code memoryEntries} most recently used values</li>
+ *   <li>Disk: {@code <dir>/<key>.json}, evicted least recently used first once the
+ *       directory holds more than {@code maxDiskBytes}; recency is the file's
+ *       modification time, so it survives restarts</li>
+ * </ul>
+ *
+ * <p>Keys must be file-name safe (e.g. a hex hash). Files are written to a temporary
+ * name and moved into place, so a reader never sees half an entry; a file that
+ * cannot be read counts as a miss. File I/O happens outside the index lock.</p>
+ */
+public class ResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+    private static final String SUFFIX = ".json";
+
+    /**
+     * Counters since startup.
+     *
+     * @param diskBytes   current size of the disk tier
+     * @param diskEntries current entries in the disk tier
+     */
+    public record Stats(long memoryHits, long diskHits, long misses, long evictions,
+                        long diskBytes, int diskEntries) {
+
+        /** @return hits / lookups, 0 before the first lookup */
+        public double hitRate() {
+            long lookups = memoryHits + diskHits + misses;
+            return lookups == 0 ? 0 : (double) (memoryHits + diskHits) / lookups;
+        }
+    }
+
+    private final Path dir;
+    private final long maxDiskBytes;
+    private final Map<String, String> memory;
+    /** key → file size, least recently used first. Guarded by {@code this}. */
+    private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param dir           created if missing; entries already there are reused
+     * @param maxDiskBytes  size budget of the disk tier
+     * @param memoryEntries entries kept in memory (0 = disk only)
+     */
+    public ResponseCache(Path dir, long maxDiskBytes, int memoryEntries) {
+        this.dir = dir;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        loadIndex();
+    }
+
+    public Optional<String> get(String key) {
+        synchronized (this) {
+            String value = memory.get(key);
+            if (value != null) {
+                memoryHits.increment();
+                return Optional.of(value);
+            }
+            if (diskIndex.get(key) == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+        }
+
+        Path file = file(key);
+        try {
+            String value = Files.readString(file, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (this) {
+                memory.put(key, value);
+            }
+            diskHits.increment();
+            return Optional.of(value);
+        } catch (IOException e) {
+            log.warn("Response cache entry {} unreadable — treating as a miss: {}", key, e.getMessage());
+            synchronized (this) {
+                Long size = diskIndex.remove(key);
+                if (size != null) diskBytes -= size;
+            }
+            misses.increment();
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        Path file = file(key);
+        try {
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Response cache entry {} not written — memory only: {}", key, e.getMessage());
+            synchronized (this) {
+                memory.put(key, value);
+            }
+            return;
+        }
+
+        List<String> victims = new ArrayList<>();
+        synchronized (this) {
+            memory.put(key, value);
+            Long previous = diskIndex.put(key, (long) bytes.length);
+            diskBytes += bytes.length - (previous != null ? previous : 0);
+            Iterator<Map.Entry<String, Long>> eldest = diskIndex.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(key)) continue;
+                diskBytes -= entry.getValue();
+                victims.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        for (String victim : victims) {
+            deleteQuietly(file(victim));
+            evictions.increment();
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(memoryHits.sum(), diskHits.sum(), misses.sum(), evictions.sum(),
+                diskBytes, diskIndex.size());
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private Path file(String key) {
+        return dir.resolve(key + SUFFIX);
+    }
+
+    private void loadIndex() {
+        try {
+            Files.createDirectories(dir);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(dir)) {
+                files = listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                        .sorted(Comparator.comparing(ResponseCache::lastModified))
+                        .toList();
+            }
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                long size = Files.size(path);
+                diskIndex.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                diskBytes += size;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open response cache directory " + dir, e);
+        }
+        log.info("Response cache at {} — {} entries, {} bytes (budget {})",
+                dir, diskIndex.size(), diskBytes, maxDiskBytes);
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Response cache entry {} not deleted: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.config.AgentFactory;
+import com.db.clm.kyc.ai.config.AgentSpec;
+import com.db.clm.kyc.ai.prompt.PromptService;
+import com.eainde.agent.thread.SingleFlight;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.model.chat.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Per-agent opt-in to the LLM response cache ({@link CachingChatModel}) and to
+ * coalescing of identical in-flight requests ({@link SingleFlightChatModel}).
+ *
+ * <p>Agents named in {@code csm.llm-cache.agents} are built by a second
+ * {@link AgentFactory} whose default chat model is the wrapped one; every other
+ * agent, and any spec with its own chat model, is built as before.
+ * {@link AgentCache#create} asks this component which factory to use.</p>
+ *
+ * <pre>
+ * agent → CachingChatModel → SingleFlightChatModel → chat model
+ *         (answered before)   (same request in flight)
+ *
+ * csm.llm-cache.enabled=true
+ * csm.llm-cache.single-flight.enabled=true
+ * csm.llm-cache.agents=candidate-extractor,source-classifier,name-normalizer
+ * </pre>
+ */
+@Component
+public class ResponseCacheConfig {
+
+    private final ChatModel chatModel;
+    private final PromptService promptService;
+    private final ObjectMapper objectMapper;
+
+    /** Response cache; off = opted-in agents call the model for every request. */
+    @Value("${csm.llm-cache.enabled:false}")
+    private boolean enabled;
+
+    /** Coalesce identical concurrent requests of opted-in agents into one model call. */
+    @Value("${csm.llm-cache.single-flight.enabled:false}")
+    private boolean singleFlightEnabled;
+
+    /** Agent names (AgentSpec.getAgentName()) going through the cache and/or single-flight. */
+    @Value("${csm.llm-cache.agents:}")
+    private Set<String> agents;
+
+    /** Disk tier location; shared by every run on this host. */
+    @Value("${csm.llm-cache.dir:${java.io.tmpdir}/csm-llm-cache}")
+    private String dir;
+
+    /** Disk tier budget, least recently used entries evicted first. */
+    @Value("${csm.llm-cache.max-disk-mb:512}")
+    private long maxDiskMb;
+
+    /** Responses kept in memory in front of the disk tier. */
+    @Value("${csm.llm-cache.memory-entries:256}")
+    private int memoryEntries;
+
+    private volatile CachingChatModel cachingChatModel;
+    private volatile SingleFlightChatModel singleFlightChatModel;
+    private volatile AgentFactory cachingAgentFactory;
+
+    public ResponseCacheConfig(ChatModel chatModel, PromptService promptService, ObjectMapper objectMapper) {
+        this.chatModel = chatModel;
+        this.promptService = promptService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return the caching factory if {@code spec} opted in, empty otherwise
+     */
+    Optional<AgentFactory> factoryFor(AgentSpec spec) {
+        if (!(enabled || singleFlightEnabled)
+                || spec.getChatModel() != null || !agents.contains(spec.getAgentName())) {
+            return Optional.empty();
+        }
+        return Optional.of(cachingAgentFactory());
+    }
+
+    /** @return hit/miss counters, empty while the cache is off or unused */
+    public Optional<ResponseCache.Stats> stats() {
+        CachingChatModel model = cachingChatModel;
+        return Optional.ofNullable(model).map(CachingChatModel::stats);
+    }
+
+    /** @return executed/coalesced counters, empty while single-flight is off or unused */
+    public Optional<SingleFlight.Stats> singleFlightStats() {
+        SingleFlightChatModel model = singleFlightChatModel;
+        return Optional.ofNullable(model).map(SingleFlightChatModel::stats);
+    }
+
+    private synchronized AgentFactory cachingAgentFactory() {
+        if (cachingAgentFactory == null) {
+            ChatModel model = chatModel;
+            if (singleFlightEnabled) {
+                singleFlightChatModel = new SingleFlightChatModel(model);
+                model = singleFlightChatModel;
+            }
+            if (enabled) {
+                ResponseCache cache = new ResponseCache(Path.of(dir), maxDiskMb * 1024 * 1024, memoryEntries);
+                cachingChatModel = new CachingChatModel(model, cache, objectMapper);
+                model = cachingChatModel;
+            }
+            cachingAgentFactory = new AgentFactory(model, promptService);
+        }
+        return cachingAgentFactory;
+    }
+}
@@ -0,0 +1,331 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.model.ScoreBreakdown;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Agent 8 in Java — explanatory D-scores and quality gates from classifier fields.
+ *
+ * <p>Every input the scoring prompt reasons about is already a structured field of
+ * {@code classifiedCandidates} (governanceBasis, temporalStatus, signatoryType,
+ * sourceClass, conflictTag, ...), so the score is computed here instead of by an LLM
+ * call. Same input, same score. Weights are kept in hundredths, so sums and rounding
+ * are exact.</p>
+ *
+ * <h3>Scoring (D0-D6, as in the csm-scoring-engine prompt):</h3>
+ * <pre>
+ * D1 positive:  one governance role — +0.55 exec board | +0.45 non-exec | +0.40 GP
+ *                                     | +0.35 signatory + governance
+ *               +0.10 local-language title, +0.05 H1 source, +0.03 multi-source consensus
+ * D2 negative:  -0.30 non-exec only, -0.20 former, -0.15 H4 only,
+ *               -0.10 conflict unresolved, -0.05 missing attributes (each at most once)
+ * D3 multiplier: ×0.60 H4 only, else ×1.00 (2+ sources), else ×0.85
+ * D4 baseScore  = clamp(sum, 0.00, 1.00)
+ *    finalScore = clamp(round(baseScore × multiplier, 2), 0.00, 1.00)
+ * </pre>
+ *
+ * <p>Quality gates QG1-QG10 are checked on the same record. The score never
+ * changes {@code isCsm} (D5).</p>
+ */
+public class ScoringEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(ScoringEngine.class);
+
+    private static final List<String> EXEC_TERMS = List.of(
+            "(executive)", "executive board", "management board", "managing director",
+            "chief executive", "vorstand", "geschäftsführer", "geschaftsfuhrer", "gérant", "gerant",
+            "bestuurder", "directeur général", "directeur general", "président", "president");
+    private static final List<String> NON_EXEC_TERMS = List.of(
+            "non-executive", "non-exec", "supervisory", "aufsichtsrat", "verwaltungsrat",
+            "commissaris", "administrateur", "kansayaku");
+    private static final List<String> GP_TERMS = List.of(
+            "general partner", "komplementär", "komplementar", "associé commandité");
+    private static final List<String> LOCAL_TITLE_TERMS = List.of(
+            "vorstand", "aufsichtsrat", "geschäftsführer", "geschaftsfuhrer", "prokurist",
+            "verwaltungsrat", "gérant", "gerant", "administrateur", "président", "directeur",
+            "bestuurder", "commissaris", "torishimariyaku", "dong shi", "jian shi", "fa ren",
+            "zarząd", "zarzad", "rada nadzorcza");
+
+    private static final Set<String> TEMPORAL_STATUSES = Set.of("current", "former", "unknown");
+    private static final Set<String> SIGNATORY_TYPES = Set.of("sole", "joint", "none", "unknown");
+
+    /** QG10 threshold in hundredths. */
+    private static final int LOW_SCORE_FOR_CSM = 30;
+
+    /** D1/D2 signals, weights in hundredths. */
+    enum Signal {
+        EXEC_BOARD(55, "Executive Board"),
+        NON_EXEC(45, "Non-executive / supervisory board"),
+        GENERAL_PARTNER(40, "General partner"),
+        SIGNATORY_GOVERNANCE(35, "Signatory with governance authority"),
+        LOCAL_TITLE(10, "Local-language title"),
+        H1_SOURCE(5, "H1 source"),
+        MULTI_SOURCE(3, "Multi-source consensus"),
+
+        NON_EXEC_ONLY(-30, "Non-executive only"),
+        FORMER(-20, "Former"),
+        H4_ONLY(-15, "H4 only"),
+        CONFLICT_UNRESOLVED(-10, "Conflict unresolved"),
+        MISSING_ATTRIBUTES(-5, "Missing attributes");
+
+        final int weight;
+        final String label;
+
+        Signal(int weight, String label) {
+            this.weight = weight;
+            this.label = label;
+        }
+
+        String describe() {
+            return (weight > 0 ? "+" : "-") + hundredths(Math.abs(weight)) + " " + label;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    public ScoringEngine(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Scores every classified candidate — drop-in output of the scoring engine agent.
+     *
+     * @param classifiedCandidatesJson {@code {"classified_candidates": [...]}}
+     * @return {@code {"scored_candidates": [{id, score, scoreBreakdown, qualityGateNotes}]}}
+     * @throws IOException if the input is not valid JSON
+     */
+    public String scoreAll(String classifiedCandidatesJson) throws IOException {
+        JsonNode root = objectMapper.readTree(
+                classifiedCandidatesJson == null || classifiedCandidatesJson.isBlank()
+                        ? "{}" : classifiedCandidatesJson);
+        JsonNode candidates = root.has("classified_candidates") ? root.get("classified_candidates")
+                : root.has("candidates") ? root.get("candidates") : root;
+
+        List<Map<String, Object>> scored = new ArrayList<>();
+        int index = 0;
+        for (JsonNode candidate : candidates.isArray() ? candidates : objectMapper.createArrayNode()) {
+            index++;
+            if (!candidate.isObject()) continue;
+            ScoreBreakdown breakdown = breakdown(candidate);
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", candidate.has("id") ? candidate.get("id").asInt() : index);
+            row.put("score", breakdown.finalScore());
+            row.put("scoreBreakdown", breakdown);
+            row.put("qualityGateNotes", qualityGateNotes(candidate, breakdown));
+            scored.add(row);
+        }
+
+        log.info("Scored {} candidates in Java (no LLM call)", scored.size());
+        return objectMapper.writeValueAsString(Map.of("scored_candidates", scored));
+    }
+
+    /**
+     * Applies D1-D4 to one classified candidate.
+     */
+    public ScoreBreakdown breakdown(JsonNode candidate) {
+        List<Signal> signals = signals(candidate);
+
+        int sum = 0;
+        List<String> positive = new ArrayList<>();
+        List<String> negative = new ArrayList<>();
+        for (Signal signal : signals) {
+            sum += signal.weight;
+            (signal.weight > 0 ? positive : negative).add(signal.describe());
+        }
+
+        int multiplier = isH4Only(candidate) ? 60 : sourceCount(candidate) >= 2 ? 100 : 85;
+        int base = clamp(sum);
+        int finalScore = clamp((base * multiplier + 50) / 100);
+
+        return new ScoreBreakdown(positive, negative,
+                multiplier / 100.0, base / 100.0, finalScore / 100.0);
+    }
+
+    // =========================================================================
+    //  Signals
+    // =========================================================================
+
+    private List<Signal> signals(JsonNode candidate) {
+        String basis = lower(text(candidate, "governanceBasis"));
+        String roles = basis + " " + lower(roleHints(candidate));
+        boolean nonExec = containsAny(roles, NON_EXEC_TERMS);
+        // "non-executive board" must not read as "executive board"
+        boolean exec = containsAny(roles.replace("non-executive", "").replace("non-exec", ""), EXEC_TERMS);
+        String signatory = lower(text(candidate, "signatoryType", "signatoryCalibration"));
+
+        List<Signal> signals = new ArrayList<>();
+
+        // ── D1: strongest governance role, then additive evidence ──
+        if (exec) {
+            signals.add(Signal.EXEC_BOARD);
+        } else if (nonExec) {
+            signals.add(Signal.NON_EXEC);
+        } else if (containsAny(roles, GP_TERMS)) {
+            signals.add(Signal.GENERAL_PARTNER);
+        } else if ((signatory.contains("sole") || signatory.contains("joint")) && !basis.isBlank()) {
+            signals.add(Signal.SIGNATORY_GOVERNANCE);
+        }
+        if (hasLocalLanguageTitle(candidate)) signals.add(Signal.LOCAL_TITLE);
+        if ("H1".equalsIgnoreCase(sourceClass(candidate))) signals.add(Signal.H1_SOURCE);
+        if (sourceCount(candidate) >= 2) signals.add(Signal.MULTI_SOURCE);
+
+        // ── D2: each at most once ──
+        if (nonExec && !exec) signals.add(Signal.NON_EXEC_ONLY);
+        if ("former".equalsIgnoreCase(text(candidate, "temporalStatus"))) signals.add(Signal.FORMER);
+        if (isH4Only(candidate)) signals.add(Signal.H4_ONLY);
+        if (lower(text(candidate, "conflictTag")).contains("unresolved")) signals.add(Signal.CONFLICT_UNRESOLVED);
+        if (!attributeGaps(candidate).isEmpty()) signals.add(Signal.MISSING_ATTRIBUTES);
+
+        return signals;
+    }
+
+    private static boolean hasLocalLanguageTitle(JsonNode candidate) {
+        for (JsonNode hint : candidate.path("roleHints")) {
+            String value = hint.asText("");
+            if (containsAny(value.toLowerCase(Locale.ROOT), LOCAL_TITLE_TERMS)) return true;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) > 0x7F) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Only H4 evidence — the prevailing source and every linked occurrence. */
+    private static boolean isH4Only(JsonNode candidate) {
+        if (!"H4".equalsIgnoreCase(sourceClass(candidate))) return false;
+        for (JsonNode occurrence : candidate.path("allOccurrences")) {
+            if (!"H4".equalsIgnoreCase(occurrence.path("sourceClass").asText("H4"))) return false;
+        }
+        return true;
+    }
+
+    /** Distinct documents the candidate was linked to by the dedup agent (at least 1). */
+    private static int sourceCount(JsonNode candidate) {
+        Set<String> documents = new HashSet<>();
+        for (JsonNode occurrence : candidate.path("allOccurrences")) {
+            String document = occurrence.path("documentName").asText("");
+            if (!document.isBlank()) documents.add(document);
+        }
+        return Math.max(1, documents.size());
+    }
+
+    // =========================================================================
+    //  Quality gates
+    // =========================================================================
+
+    private List<String> qualityGateNotes(JsonNode candidate, ScoreBreakdown breakdown) {
+        List<String> notes = new ArrayList<>();
+
+        if (text(candidate, "firstName").isBlank() || text(candidate, "lastName").isBlank()) {
+            notes.add("QG1: name incomplete");
+        }
+        if (text(candidate, "documentName").isBlank()) {
+            notes.add("QG2: documentName missing");
+        }
+        if (candidate.path("pageNumber").asInt(0) < 1) {
+            notes.add("QG3: pageNumber missing or invalid");
+        }
+        boolean isCsm = candidate.path("isCsm").asBoolean(false);
+        if (isCsm && text(candidate, "governanceBasis").isBlank()) {
+            notes.add("QG4: isCsm=true without governanceBasis");
+        }
+        String temporalStatus = text(candidate, "temporalStatus");
+        if (!temporalStatus.isBlank() && !TEMPORAL_STATUSES.contains(temporalStatus.toLowerCase(Locale.ROOT))) {
+            notes.add("QG5: invalid temporalStatus \"" + temporalStatus + "\"");
+        }
+        String signatoryType = text(candidate, "signatoryType");
+        if (!signatoryType.isBlank() && !SIGNATORY_TYPES.contains(signatoryType.toLowerCase(Locale.ROOT))) {
+            notes.add("QG6: invalid signatoryType \"" + signatoryType + "\"");
+        }
+        for (String gap : attributeGaps(candidate)) {
+            notes.add("QG7: " + gap + " not evidenced");
+        }
+        if (breakdown.positiveSignals().isEmpty()) {
+            notes.add("QG9: no positive signal evidenced");
+        }
+        int finalScore = (int) Math.round(breakdown.finalScore() * 100);
+        if (isCsm && finalScore < LOW_SCORE_FOR_CSM) {
+            notes.add("QG10: score " + hundredths(finalScore) + " below 0.30 with isCsm=true — analyst review");
+        }
+        return notes;
+    }
+
+    /**
+     * QG7 gaps: the classifier's {@code attributeGaps} when present, otherwise DoB,
+     * nationality and address not carried on the record.
+     */
+    private static List<String> attributeGaps(JsonNode candidate) {
+        JsonNode declared = candidate.path("attributeGaps");
+        if (declared.isArray()) {
+            List<String> gaps = new ArrayList<>();
+            declared.forEach(gap -> gaps.add(gap.asText()));
+            return gaps;
+        }
+        List<String> gaps = new ArrayList<>();
+        if (text(candidate, "dateOfBirth").isBlank()) gaps.add("DoB");
+        if (text(candidate, "nationality").isBlank()) gaps.add("nationality");
+        if (text(candidate, "address").isBlank()) gaps.add("address");
+        return gaps;
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private static String sourceClass(JsonNode candidate) {
+        return text(candidate, "sourceClass", "sourceClassTag");
+    }
+
+    private static String roleHints(JsonNode candidate) {
+        StringBuilder hints = new StringBuilder();
+        for (JsonNode hint : candidate.path("roleHints")) {
+            hints.append(hint.asText("")).append(' ');
+        }
+        return hints.toString();
+    }
+
+    /** The first non-null textual field of the given names, or "". */
+    private static String text(JsonNode candidate, String... fieldNames) {
+        for (String fieldName : fieldNames) {
+            JsonNode value = candidate.get(fieldName);
+            if (value != null && !value.isNull()) return value.asText("");
+        }
+        return "";
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean containsAny(String text, List<String> terms) {
+        for (String term : terms) {
+            if (text.contains(term)) return true;
+        }
+        return false;
+    }
+
+    private static int clamp(int hundredths) {
+        return Math.max(0, Math.min(100, hundredths));
+    }
+
+    private static String hundredths(int value) {
+        return String.format(Locale.ROOT, "%d.%02d", value / 100, value % 100);
+    }
+}
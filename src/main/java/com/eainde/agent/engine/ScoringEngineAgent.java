@@ -0,0 +1,51 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agentic.UntypedAgent;
+import dev.langchain4j.agentic.scope.AgenticScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Agent 8 (Scoring Engine) as a Java-only agent — NO LLM call.
+ *
+ * <p>Drop-in for the {@code SCORING_ENGINE_SPEC} agent in a sequence: same input and
+ * output keys, same {@code scored_candidates} shape, computed by {@link ScoringEngine}.
+ * Selected with {@code csm.scoring.engine=java}.</p>
+ *
+ * <h3>Reads from scope:</h3>
+ * <ul>
+ *   <li>{@code classifiedCandidates} — Agent 5 output</li>
+ * </ul>
+ *
+ * <h3>Writes to scope:</h3>
+ * <ul>
+ *   <li>{@code scoredCandidates} — {@code {"scored_candidates": [...]}}</li>
+ * </ul>
+ */
+public class ScoringEngineAgent implements UntypedAgent {
+
+    private static final Logger log = LoggerFactory.getLogger(ScoringEngineAgent.class);
+
+    private final ScoringEngine scoringEngine;
+
+    public ScoringEngineAgent(ObjectMapper objectMapper) {
+        this.scoringEngine = new ScoringEngine(objectMapper);
+    }
+
+    @Override
+    public void invoke(AgenticScope scope) {
+        Object classified = scope.readState("classifiedCandidates");
+        String classifiedJson = classified != null ? classified.toString() : "";
+
+        try {
+            scope.writeState("scoredCandidates", scoringEngine.scoreAll(classifiedJson));
+        } catch (IOException e) {
+            // Wave 5 merge keeps the classifier's values for unscored candidates
+            log.error("Scoring failed — classifiedCandidates is not valid JSON", e);
+            scope.writeState("scoredCandidates", "{\"scored_candidates\":[]}");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.eainde.agent.engine;
+
+import com.eainde.agent.thread.SingleFlight;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.util.Set;
+
+/**
+ * A {@link ChatModel} that sends identical concurrent requests to the model once
+ * (see {@link SingleFlight}).
+ *
+ * <p>Bulk KYC refresh runs process overlapping document sets in parallel, and
+ * overlapping retries resend the same prompt; without this each copy pays for the
+ * same tokens. A request identical to one in flight — same {@link ChatRequestKey} —
+ * waits for that call's response instead of issuing its own. A caller that is
+ * interrupted detaches; the model call is abandoned only when every caller waiting
+ * for it has.</p>
+ *
+ * <p>Every coalesced caller gets the same response, so only agents that would get
+ * the same answer anyway — deterministic sampling — should go through this model
+ * (see {@link ResponseCacheConfig}).</p>
+ */
+public class SingleFlightChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final SingleFlight<String, ChatResponse> inFlight = new SingleFlight<>();
+
+    public SingleFlightChatModel(ChatModel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest request) {
+        return inFlight.call(ChatRequestKey.of(request), () -> delegate.chat(request));
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    public SingleFlight.Stats stats() {
+        return inFlight.stats();
+    }
+}
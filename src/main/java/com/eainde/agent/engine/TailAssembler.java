@@ -0,0 +1,252 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.model.ExtractedRecord;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Waves 6 and 7 in Java — R2 reason assembly and J1-J7 output formatting.
+ *
+ * <p>Both agents only rearrange fields that are already on {@code enrichedCandidates}:
+ * the reason assembler concatenates fragments in a fixed order, the output formatter
+ * copies fields into the J1 schema with fail-closed defaults and renumbers. Doing it
+ * here turns enrichedCandidates into finalOutput without two sequential LLM calls,
+ * and the output is valid JSON by construction.</p>
+ *
+ * <h3>R2 canonical reason (as in the csm-reason-assembler prompt):</h3>
+ * <pre>
+ * governanceBasis
+ *   + " — " + documentType + " (" + sourceDate + ") prevails."
+ *   + " (" + sourceClassTag + ")(" + recencyTag + ")(" + conflictTag + ")"
+ *   + " Country profile: " + countryOverrideNote + "."          [if applied]
+ *   + " Attribute completeness gap — " + gaps + " — no impact."  [if any]
+ *   + " QG: " + notes joined by "; "                             [if any]
+ *   + " — included." | " — excluded."
+ *   + " (MODE: ALL) (Score: X.XX)"
+ * </pre>
+ * <p>Null or blank fragments are skipped (R3); the reason is never truncated (R8).</p>
+ *
+ * <h3>J1-J7 (as in the csm-output-formatter prompt):</h3>
+ * <pre>
+ * J2/J3  ints and booleans typed; middleName/personalTitle/jobTitle null, never ""
+ * J4     isCsm=true first, then document reading order (fileNames), then id
+ * J5     ids renumbered 1..n after ordering
+ * J7     zero drop — every candidate object becomes a record
+ * Z5/Z6  pageNumber ≥ 1, names and documentName never empty (fail-closed defaults),
+ *        reason assembled here when the candidate has none
+ * </pre>
+ */
+public class TailAssembler {
+
+    private static final Logger log = LoggerFactory.getLogger(TailAssembler.class);
+
+    static final String SEPARATOR = " — ";
+    static final String MODE_STAMP = "(MODE: ALL)";
+    static final String UNKNOWN = "Unknown";
+
+    private final ObjectMapper objectMapper;
+
+    public TailAssembler(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // =========================================================================
+    //  Public API
+    // =========================================================================
+
+    /**
+     * Agent 9 + Agent 10: enrichedCandidates → finalOutput.
+     *
+     * @param enrichedCandidatesJson {@code {"enriched_candidates": [...]}}
+     * @param fileNames              comma-separated document names, in reading order
+     * @return {@code {"extracted_records": [...]}}
+     * @throws IOException if the input is not valid JSON
+     */
+    public String assemble(String enrichedCandidatesJson, String fileNames) throws IOException {
+        List<JsonNode> candidates = candidates(enrichedCandidatesJson);
+        List<ExtractedRecord> records = format(candidates, fileNames);
+        log.info("Tail assembled in Java — {} candidates → {} extracted records",
+                candidates.size(), records.size());
+        return objectMapper.writeValueAsString(Map.of("extracted_records", records));
+    }
+
+    /**
+     * Builds the R2 canonical reason for one enriched candidate.
+     */
+    public String reason(JsonNode candidate) {
+        StringBuilder reason = new StringBuilder();
+
+        // R2.1 — governance basis
+        reason.append(text(candidate, "governanceBasis"));
+
+        // R2.2 — source citation
+        String documentType = documentType(text(candidate, "documentName"));
+        if (!documentType.isEmpty()) {
+            String sourceDate = text(candidate, "sourceDate");
+            if (reason.length() > 0) reason.append(SEPARATOR);
+            reason.append(documentType);
+            if (!sourceDate.isEmpty()) reason.append(" (").append(sourceDate).append(')');
+            reason.append(" prevails.");
+        }
+
+        // R2.3 — tags
+        StringBuilder tags = new StringBuilder();
+        appendTag(tags, text(candidate, "sourceClassTag", "sourceClass"));
+        appendTag(tags, recencyTag(candidate));
+        appendTag(tags, text(candidate, "conflictTag"));
+        if (tags.length() > 0) reason.append(reason.length() > 0 ? " " : "").append(tags);
+
+        // R2.4 — country override
+        String countryNote = text(candidate, "countryOverrideNote");
+        if (!countryNote.isEmpty()) {
+            reason.append(" Country profile: ").append(countryNote);
+            if (!countryNote.endsWith(".")) reason.append('.');
+        }
+
+        // R2.5 — attribute gaps, R2.6 — remaining quality gate notes
+        List<String> gaps = new ArrayList<>();
+        List<String> notes = new ArrayList<>();
+        for (JsonNode note : candidate.path("qualityGateNotes")) {
+            String value = note.asText("").trim();
+            if (value.startsWith("QG7:")) gaps.add(value.substring(4).trim());
+            else if (!value.isEmpty()) notes.add(value);
+        }
+        if (gaps.isEmpty()) {
+            candidate.path("attributeGaps").forEach(gap -> gaps.add(gap.asText() + " not evidenced"));
+        }
+        if (!gaps.isEmpty()) {
+            reason.append(" Attribute completeness gap").append(SEPARATOR)
+                    .append(String.join(", ", gaps)).append(SEPARATOR).append("no impact.");
+        }
+        if (!notes.isEmpty()) {
+            reason.append(" QG: ").append(String.join("; ", notes));
+        }
+
+        // R2.7 — final determination
+        if (reason.length() > 0) reason.append(SEPARATOR);
+        reason.append(candidate.path("isCsm").asBoolean(false) ? "included." : "excluded.");
+
+        // R2.8 — footer
+        reason.append(' ').append(MODE_STAMP);
+        if (candidate.path("score").isNumber()) {
+            reason.append(String.format(Locale.ROOT, " (Score: %.2f)", candidate.get("score").asDouble()));
+        }
+
+        return reason.toString();
+    }
+
+    /**
+     * Applies J1-J7 to enriched (or reasoned) candidates. A candidate without a
+     * {@code reason} gets its R2 reason assembled here.
+     */
+    public List<ExtractedRecord> format(List<JsonNode> candidates, String fileNames) {
+        Map<String, Integer> readingOrder = readingOrder(fileNames);
+
+        List<JsonNode> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator
+                .comparing((JsonNode c) -> !c.path("isCsm").asBoolean(false))
+                .thenComparing(c -> readingOrder.getOrDefault(text(c, "documentName"), readingOrder.size()))
+                .thenComparing(c -> text(c, "documentName"))
+                .thenComparingInt(c -> c.path("id").asInt(0)));
+
+        List<ExtractedRecord> records = new ArrayList<>(ordered.size());
+        for (JsonNode candidate : ordered) {
+            String reason = text(candidate, "reason");
+            if (reason.isEmpty()) reason = reason(candidate);
+
+            String fallbackName = text(candidate, "rawName");
+            records.add(new ExtractedRecord(
+                    records.size() + 1,
+                    orDefault(text(candidate, "firstName"), fallbackName),
+                    nullIfBlank(candidate, "middleName"),
+                    orDefault(text(candidate, "lastName"), fallbackName),
+                    nullIfBlank(candidate, "personalTitle"),
+                    nullIfBlank(candidate, "jobTitle"),
+                    orDefault(text(candidate, "documentName"), UNKNOWN),
+                    Math.max(1, candidate.path("pageNumber").asInt(1)),
+                    reason,
+                    candidate.path("isCsm").asBoolean(false)));
+        }
+        return records;
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private List<JsonNode> candidates(String json) throws IOException {
+        JsonNode root = objectMapper.readTree(json == null || json.isBlank() ? "{}" : json);
+        JsonNode array = root;
+        for (String key : List.of("enriched_candidates", "reasoned_candidates", "candidates")) {
+            if (root.path(key).isArray()) {
+                array = root.get(key);
+                break;
+            }
+        }
+
+        List<JsonNode> candidates = new ArrayList<>();
+        if (!array.isArray()) return candidates;
+        for (JsonNode candidate : array) {
+            if (candidate.isObject()) candidates.add(candidate);
+            else log.warn("Skipping non-object candidate entry: {}", candidate);
+        }
+        return candidates;
+    }
+
+    /** "Registry.pdf" → "Registry". */
+    private static String documentType(String documentName) {
+        int dot = documentName.lastIndexOf('.');
+        return dot > 0 ? documentName.substring(0, dot) : documentName;
+    }
+
+    /** The recency tag as given, else derived from sourceDate. */
+    private static String recencyTag(JsonNode candidate) {
+        String tag = text(candidate, "recencyTag");
+        if (!tag.isEmpty()) return tag;
+        String sourceDate = text(candidate, "sourceDate");
+        return sourceDate.isEmpty() ? "R: undated" : "R: " + sourceDate;
+    }
+
+    private static void appendTag(StringBuilder tags, String tag) {
+        if (!tag.isEmpty()) tags.append('(').append(tag).append(')');
+    }
+
+    private static Map<String, Integer> readingOrder(String fileNames) {
+        Map<String, Integer> order = new HashMap<>();
+        if (fileNames == null) return order;
+        for (String fileName : fileNames.split(",")) {
+            String name = fileName.trim();
+            if (!name.isEmpty()) order.putIfAbsent(name, order.size());
+        }
+        return order;
+    }
+
+    /** The first non-null field of the given names, trimmed, or "". */
+    private static String text(JsonNode candidate, String... fieldNames) {
+        for (String fieldName : fieldNames) {
+            JsonNode value = candidate.get(fieldName);
+            if (value != null && !value.isNull()) return value.asText("").trim();
+        }
+        return "";
+    }
+
+    private static String nullIfBlank(JsonNode candidate, String fieldName) {
+        String value = text(candidate, fieldName);
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String orDefault(String value, String fallback) {
+        if (!value.isEmpty()) return value;
+        return fallback.isEmpty() ? UNKNOWN : fallback;
+    }
+}
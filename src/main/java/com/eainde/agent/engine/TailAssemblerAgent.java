@@ -0,0 +1,55 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agentic.UntypedAgent;
+import dev.langchain4j.agentic.scope.AgenticScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Agents 9 and 10 (Reason Assembler → Output Formatter) as one Java-only agent —
+ * NO LLM call.
+ *
+ * <p>Drop-in for the two tail agents in a sequence, computed by {@link TailAssembler}.
+ * Selected with {@code csm.tail.mode=java}.</p>
+ *
+ * <h3>Reads from scope:</h3>
+ * <ul>
+ *   <li>{@code enrichedCandidates} — Wave 5 merge output</li>
+ *   <li>{@code fileNames} — document reading order for J4</li>
+ * </ul>
+ *
+ * <h3>Writes to scope:</h3>
+ * <ul>
+ *   <li>{@code finalOutput} — {@code {"extracted_records": [...]}}</li>
+ * </ul>
+ */
+public class TailAssemblerAgent implements UntypedAgent {
+
+    private static final Logger log = LoggerFactory.getLogger(TailAssemblerAgent.class);
+
+    private final TailAssembler tailAssembler;
+
+    public TailAssemblerAgent(ObjectMapper objectMapper) {
+        this.tailAssembler = new TailAssembler(objectMapper);
+    }
+
+    @Override
+    public void invoke(AgenticScope scope) {
+        log.info("Waves 6-7 — assembling reasons and final output in Java");
+
+        Object enriched = scope.readState("enrichedCandidates");
+        Object fileNames = scope.readState("fileNames");
+
+        try {
+            scope.writeState("finalOutput", tailAssembler.assemble(
+                    enriched != null ? enriched.toString() : "",
+                    fileNames != null ? fileNames.toString() : ""));
+        } catch (IOException e) {
+            // Zero drop (J7): never replace the candidates with an empty output
+            throw new IllegalStateException("enrichedCandidates is not valid JSON", e);
+        }
+    }
+}
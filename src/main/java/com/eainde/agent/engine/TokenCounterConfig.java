@@ -0,0 +1,23 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.chunking.TokenCounter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The one {@link TokenCounter} shared by every chunking path — the V2 chunked
+ * executor, the mapper_reducer workflows and the chunk merge tree — so that routing,
+ * packing and merge budgets all count with the same estimator.
+ */
+@Configuration
+public class TokenCounterConfig {
+
+    /**
+     * @param tokenModel model name for the BPE-style estimator; blank = word-count heuristic
+     */
+    @Bean
+    public TokenCounter tokenCounter(@Value("${csm.chunking.token-model:}") String tokenModel) {
+        return TokenCounter.forModel(tokenModel);
+    }
+}
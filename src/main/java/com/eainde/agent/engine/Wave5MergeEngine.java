@@ -0,0 +1,221 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wave 5 merge — overlays Agent 6/7/8 outputs onto classifiedCandidates by {@code id}.
+ *
+ * <p>Single implementation behind the V3 workflow config and both
+ * {@code Wave5MergerAgent}s. Each overlay array is indexed by id once — a plain array
+ * when ids are dense (the normal 1..n case), a hash map otherwise — so the merge is
+ * O(n) instead of one linear {@code findById} scan per candidate and overlay.
+ * Nothing is deep-copied: {@code enriched_candidates} is streamed with a
+ * {@link JsonGenerator}, writing each base field or its overlay in place.</p>
+ *
+ * <h3>Overlays (non-null values only):</h3>
+ * <pre>
+ * Agent 6 countryOverrides:  isCsm (OVERRIDES Agent 5), countryProfileApplied, countryOverrideNote
+ * Agent 7 titleExtractions:  jobTitle, personalTitle, anchorNote
+ * Agent 8 scoredCandidates:  score, scoreBreakdown, qualityGateNotes
+ * </pre>
+ *
+ * <p>Output is field-for-field what the per-node merge produced: overlaid fields keep
+ * their position in the base candidate, new fields are appended in overlay order,
+ * and a duplicated id resolves to its first record. A candidate without an id is
+ * matched as {@code index + 1}.</p>
+ */
+public class Wave5MergeEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(Wave5MergeEngine.class);
+
+    private static final List<String> COUNTRY_FIELDS = List.of("isCsm", "countryProfileApplied", "countryOverrideNote");
+    private static final List<String> TITLE_FIELDS = List.of("jobTitle", "personalTitle", "anchorNote");
+    private static final List<String> SCORE_FIELDS = List.of("score", "scoreBreakdown", "qualityGateNotes");
+
+    /** Ids up to {@code DENSE_FACTOR * size + DENSE_SLACK} are indexed by array. */
+    private static final int DENSE_FACTOR = 2;
+    private static final int DENSE_SLACK = 16;
+
+    private final ObjectMapper objectMapper;
+
+    public Wave5MergeEngine(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Merges four agent outputs by matching candidates on {@code id}.
+     *
+     * @return {@code {"enriched_candidates": [...]}} JSON
+     * @throws IOException if an input is not valid JSON
+     */
+    public String merge(String classifiedJson,
+                        String countryOverridesJson,
+                        String titleExtractionsJson,
+                        String scoredCandidatesJson) throws IOException {
+
+        ArrayNode baseCandidates = candidateArray(parse(classifiedJson), "classified_candidates");
+        ArrayNode countryArray = candidateArray(parse(countryOverridesJson), "country_overrides");
+        ArrayNode titleArray = candidateArray(parse(titleExtractionsJson), "title_extractions");
+        ArrayNode scoreArray = candidateArray(parse(scoredCandidatesJson), "scored_candidates");
+
+        IdIndex countryIndex = IdIndex.of(countryArray);
+        IdIndex titleIndex = IdIndex.of(titleArray);
+        IdIndex scoreIndex = IdIndex.of(scoreArray);
+
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = objectMapper.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("enriched_candidates");
+            for (int i = 0; i < baseCandidates.size(); i++) {
+                JsonNode candidate = baseCandidates.get(i);
+                if (!candidate.isObject()) {
+                    gen.writeTree(candidate);
+                    continue;
+                }
+                int candidateId = candidate.has("id") ? candidate.get("id").asInt() : i + 1;
+                writeCandidate(gen, candidate,
+                        countryIndex.get(candidateId),
+                        titleIndex.get(candidateId),
+                        scoreIndex.get(candidateId));
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+
+        log.info("Merged {} base candidates with {} overrides, {} titles, {} scores",
+                baseCandidates.size(), countryArray.size(),
+                titleArray.size(), scoreArray.size());
+
+        return out.toString();
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /** Writes one base candidate with the overlay values substituted or appended. */
+    private static void writeCandidate(JsonGenerator gen, JsonNode base,
+                                       JsonNode country, JsonNode title, JsonNode score) throws IOException {
+        gen.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = base.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode overlay = overlayValue(field.getKey(), country, title, score);
+            gen.writeFieldName(field.getKey());
+            gen.writeTree(overlay != null ? overlay : field.getValue());
+        }
+        appendNew(gen, base, country, COUNTRY_FIELDS);
+        appendNew(gen, base, title, TITLE_FIELDS);
+        appendNew(gen, base, score, SCORE_FIELDS);
+        gen.writeEndObject();
+    }
+
+    /** The winning overlay value for a base field; later agents win, as with sequential set(). */
+    private static JsonNode overlayValue(String fieldName, JsonNode country, JsonNode title, JsonNode score) {
+        JsonNode value = null;
+        if (COUNTRY_FIELDS.contains(fieldName)) value = nonNull(country, fieldName, value);
+        if (TITLE_FIELDS.contains(fieldName)) value = nonNull(title, fieldName, value);
+        if (SCORE_FIELDS.contains(fieldName)) value = nonNull(score, fieldName, value);
+        return value;
+    }
+
+    private static void appendNew(JsonGenerator gen, JsonNode base, JsonNode record,
+                                  List<String> fieldNames) throws IOException {
+        if (record == null) return;
+        for (String fieldName : fieldNames) {
+            JsonNode value = record.get(fieldName);
+            if (value != null && !value.isNull() && !base.has(fieldName)) {
+                gen.writeFieldName(fieldName);
+                gen.writeTree(value);
+            }
+        }
+    }
+
+    private static JsonNode nonNull(JsonNode record, String fieldName, JsonNode fallback) {
+        if (record == null) return fallback;
+        JsonNode value = record.get(fieldName);
+        return value != null && !value.isNull() ? value : fallback;
+    }
+
+    private JsonNode parse(String json) throws IOException {
+        return objectMapper.readTree(json == null || json.isBlank() ? "{}" : json);
+    }
+
+    /**
+     * Finds the candidate array inside an agent response: the agent-specific key,
+     * then {@code candidates}, then the root itself if it is an array.
+     */
+    private ArrayNode candidateArray(JsonNode root, String key) {
+        for (String candidateKey : List.of(key, "candidates")) {
+            if (root.has(candidateKey) && root.get(candidateKey).isArray()) {
+                return (ArrayNode) root.get(candidateKey);
+            }
+        }
+        if (root.isArray()) {
+            return (ArrayNode) root;
+        }
+        return objectMapper.createArrayNode();
+    }
+
+    /**
+     * Overlay records by id, first record per id wins. Dense non-negative ids use an
+     * array slot per id; anything else falls back to a hash map.
+     */
+    private static final class IdIndex {
+
+        private final JsonNode[] byDenseId;
+        private final Map<Integer, JsonNode> bySparseId;
+
+        private IdIndex(JsonNode[] byDenseId, Map<Integer, JsonNode> bySparseId) {
+            this.byDenseId = byDenseId;
+            this.bySparseId = bySparseId;
+        }
+
+        static IdIndex of(ArrayNode records) {
+            int maxId = -1;
+            boolean dense = true;
+            for (JsonNode record : records) {
+                if (!record.has("id")) continue;
+                int id = record.get("id").asInt();
+                if (id < 0) dense = false;
+                maxId = Math.max(maxId, id);
+            }
+            dense = dense && maxId < DENSE_FACTOR * records.size() + DENSE_SLACK;
+
+            if (dense) {
+                JsonNode[] byId = new JsonNode[maxId + 1];
+                for (JsonNode record : records) {
+                    if (!record.has("id")) continue;
+                    int id = record.get("id").asInt();
+                    if (byId[id] == null) byId[id] = record;
+                }
+                return new IdIndex(byId, null);
+            }
+
+            Map<Integer, JsonNode> byId = new HashMap<>(records.size() * 2);
+            for (JsonNode record : records) {
+                if (record.has("id")) byId.putIfAbsent(record.get("id").asInt(), record);
+            }
+            return new IdIndex(null, byId);
+        }
+
+        JsonNode get(int id) {
+            if (byDenseId != null) {
+                return id >= 0 && id < byDenseId.length ? byDenseId[id] : null;
+            }
+            return bySparseId.get(id);
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package com.eainde.agent.mapper_reducer;
 
 import com.db.clm.kyc.ai.chunking.CandidateBatcher;
+import com.db.clm.kyc.ai.chunking.GovernanceTermIndex;
 import com.db.clm.kyc.ai.config.AgentFactory;
+import com.eainde.agent.engine.AgentCache;
+import com.eainde.agent.engine.CandidateTable;
+import com.eainde.agent.engine.PipelinedReduce;
+import com.eainde.agent.thread.BoundedParallelExecutor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agentic.ResultWithAgenticScope;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.scope.AgenticScope;
 import lombok.extern.log4j.Log4j2;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /**
  * REDUCE Phase — runs agents 4-8 + Wave5Merge with optional batching.
@@ -23,67 +32,88 @@ import java.util.List;
  * NOT batchable: Agent 9 → 10 → 11 → 12 (need full set, run after this agent)
  * </pre>
  *
- * <h3>Scope overwrite pattern (same as MapPhaseAgent):</h3>
+ * <h3>Isolated scope per batch (same as MapPhaseAgent):</h3>
+ * Each batch runs the reduce sub-workflow through {@code invokeWithAgenticScope}, in a
+ * fresh scope seeded with only that batch. The caller's scope is never overwritten, so
+ * batches run in parallel on virtual threads (bounded per model by
+ * {@code csm.reduce.max-concurrency}) and reduce latency is roughly that of one batch.
+ *
  * <pre>
  * invoke(scope):
  *   if candidateCount <= batchSize:
  *     reduceWorkflow.invoke(scope)                    ← single pass
  *
  *   else:
- *     save scope keys
- *     for each batch:
- *       scope["normalizedCandidates"] = batch.json    ← OVERWRITE
- *       reduceWorkflow.invoke(scope)                   ← agents 4-8
- *       collect scope["enrichedCandidates"]            ← COLLECT
+ *     parallel for each batch (ordered results):
+ *       batchScope = reduceWorkflow.invokeWithAgenticScope(
+ *           {normalizedCandidates: batch.json,
+ *            sourceClassification, sourceText})       ← agents 4-8, own scope
+ *       collect batchScope["enrichedCandidates"]      ← COLLECT
  *
  *     scope["enrichedCandidates"] = merged results     ← MERGED
- *     restore scope keys                               ← RESTORE
  * </pre>
  *
+ * <p>With a {@link PipelinedReduce} ({@code csm.reduce.pipelined=true}) batches are not
+ * one task each but move through the waves as a pipeline — batch i in Wave 5 while
+ * batch i+1 is still in the classifier, agents 6, 7 and 8 side by side.</p>
+ *
+ * <p>When {@link ChunkToReduceBridgeAgent} left a {@link CandidateTable} in scope,
+ * batches are row ranges of the table and enriched rows are collected into it,
+ * so the candidates are never re-parsed between BRIDGE and the tail.</p>
+ *
  * <h3>After this agent completes, scope contains:</h3>
  * <ul>
  *   <li>{@code enrichedCandidates} — merged, id-renumbered, full set</li>
- *   <li>{@code sourceText} — original (restored)</li>
- *   <li>{@code sourceClassification} — original (restored)</li>
+ *   <li>{@code sourceText}, {@code sourceClassification}, {@code normalizedCandidates}
+ *       — untouched</li>
  * </ul>
  */
 @Log4j2
 public class BatchingReduceAgent implements UntypedAgent {
 
-    private final AgentFactory agentFactory;
     private final ObjectMapper objectMapper;
+    /** Agent 4 → 5 → 6 → 7 → 8 → Wave5Merge, built once and shared by every batch. */
+    private final UntypedAgent reduceWorkflow;
     private final boolean batchingEnabled;
     private final int batchSize;
+    private final BoundedParallelExecutor reduceExecutor;
+    private final PipelinedReduce pipelinedReduce;
 
     public BatchingReduceAgent(AgentFactory agentFactory,
+                               AgentCache agentCache,
                                ObjectMapper objectMapper,
+                               UntypedAgent csmClassifier,
+                               UntypedAgent scoringEngine,
                                boolean batchingEnabled,
-                               int batchSize) {
-        this.agentFactory = agentFactory;
+                               int batchSize,
+                               BoundedParallelExecutor reduceExecutor,
+                               PipelinedReduce pipelinedReduce) {
         this.objectMapper = objectMapper;
+        this.reduceWorkflow = agentFactory.sequence("enrichedCandidates",
+                agentCache.create(CsmExtractionWorkflowConfigV6.DEDUP_LINKER_SPEC),
+                csmClassifier,
+                agentCache.create(CsmExtractionWorkflowConfigV6.COUNTRY_OVERRIDE_SPEC),
+                agentCache.create(CsmExtractionWorkflowConfigV6.TITLE_EXTRACTOR_SPEC),
+                scoringEngine,
+                new Wave5MergerAgent(objectMapper));
         this.batchingEnabled = batchingEnabled;
         this.batchSize = batchSize;
+        this.reduceExecutor = reduceExecutor;
+        this.pipelinedReduce = pipelinedReduce;
     }
 
     @Override
     public void invoke(AgenticScope scope) {
         log.info("REDUCE phase — agents 4-8 + Wave5Merge (batching={})", batchingEnabled);
 
-        // ── Build reduce sub-workflow: Agent 4 → 5 → 6 → 7 → 8 → Wave5Merge ──
-        Wave5MergerAgent wave5Merger = new Wave5MergerAgent(objectMapper);
-
-        UntypedAgent reduceWorkflow = agentFactory.sequence("enrichedCandidates",
-                agentFactory.create(CsmExtractionWorkflowConfigV6.DEDUP_LINKER_SPEC),
-                agentFactory.create(CsmExtractionWorkflowConfigV6.CSM_CLASSIFIER_SPEC),
-                agentFactory.create(CsmExtractionWorkflowConfigV6.COUNTRY_OVERRIDE_SPEC),
-                agentFactory.create(CsmExtractionWorkflowConfigV6.TITLE_EXTRACTOR_SPEC),
-                agentFactory.create(CsmExtractionWorkflowConfigV6.SCORING_ENGINE_SPEC),
-                wave5Merger);
-
         // ── Check if batching is needed ─────────────────────────────────
-        String normalizedCandidatesJson = readString(scope, "normalizedCandidates");
+        // The bridge leaves the parsed candidates in scope — no need to re-parse
+        Object table = scope.readState(CandidateTable.SCOPE_KEY);
+        CandidateTable candidates = table instanceof CandidateTable t ? t : null;
+        String normalizedCandidatesJson = candidates == null ? readString(scope, "normalizedCandidates") : null;
         CandidateBatcher batcher = new CandidateBatcher(objectMapper, batchSize);
-        int candidateCount = batcher.countCandidates(normalizedCandidatesJson);
+        int candidateCount = candidates != null
+                ? candidates.size() : batcher.countCandidates(normalizedCandidatesJson);
 
         if (!batchingEnabled || candidateCount <= batchSize) {
             // ── Single pass: no batching ────────────────────────────────
@@ -98,47 +128,110 @@ public class BatchingReduceAgent implements UntypedAgent {
         log.info("REDUCE — batching {} candidates into batches of {}",
                 candidateCount, batchSize);
 
+        String sourceClassification = readString(scope, "sourceClassification");
+        String sourceText = readString(scope, "sourceText");
+        List<GovernanceTermIndex.Hit> anchors = readAnchors(scope);
+
+        if (candidates != null) {
+            reduceTableBatches(scope, reduceWorkflow, candidates, sourceClassification, sourceText, anchors);
+            return;
+        }
+
         // Split candidates (DTO boundary)
         List<String> batches = batcher.splitCandidatesJson(normalizedCandidatesJson);
         log.info("Split into {} batches", batches.size());
 
-        // Save scope keys that will be overwritten
-        String savedNormalizedCandidates = normalizedCandidatesJson;
-        String savedSourceClassification = readString(scope, "sourceClassification");
-        String savedSourceText = readString(scope, "sourceText");
-
-        // Run reduce workflow per batch
-        List<String> batchResults = new ArrayList<>();
-
-        for (int i = 0; i < batches.size(); i++) {
-            log.info("REDUCE — batch {}/{}", i + 1, batches.size());
-
-            // OVERWRITE normalizedCandidates with this batch
-            scope.writeState("normalizedCandidates", batches.get(i));
-
-            // Run agents 4-8 + Wave5Merge on this batch
-            reduceWorkflow.invoke(scope);
-
-            // COLLECT enrichedCandidates for this batch
-            String batchEnriched = readString(scope, "enrichedCandidates");
-            batchResults.add(batchEnriched);
-
-            log.info("REDUCE — batch {}/{} complete", i + 1, batches.size());
+        // ── Run batches in parallel, each in an isolated scope ──────────
+        List<String> batchResults;
+        if (pipelinedReduce != null) {
+            batchResults = pipelinedReduce.reduce(batches, Function.identity(), sourceClassification, sourceText,
+                    anchors, (index, batchEnriched) -> { });
+        } else {
+            List<Integer> batchIndexes = IntStream.range(0, batches.size()).boxed().toList();
+            batchResults = reduceExecutor.invokeAll(batchIndexes,
+                    i -> reduceOneBatch(reduceWorkflow, batches.get(i), i, batches.size(),
+                            sourceClassification, sourceText, anchors));
         }
 
         // ── Merge batch results → renumber ids (J4) ────────────────────
         String mergedEnriched = batcher.mergeEnrichedResultsJson(batchResults);
         scope.writeState("enrichedCandidates", mergedEnriched);
 
-        // ── Restore overwritten scope keys ──────────────────────────────
-        scope.writeState("normalizedCandidates", savedNormalizedCandidates);
-        scope.writeState("sourceClassification", savedSourceClassification);
-        scope.writeState("sourceText", savedSourceText);
+        log.info("REDUCE complete — {} batches merged, enrichedCandidates in scope",
+                batches.size());
+    }
+
+    /**
+     * Batched execution over the bridge's {@link CandidateTable}: each batch's JSON is
+     * rendered only for its own reduce invocation, and enriched rows go straight into
+     * the table's Wave 5 column instead of through a parse-and-merge pass.
+     */
+    private void reduceTableBatches(AgenticScope scope, UntypedAgent reduceWorkflow,
+                                    CandidateTable candidates,
+                                    String sourceClassification, String sourceText,
+                                    List<GovernanceTermIndex.Hit> anchors) {
+        List<CandidateTable.Batch> batches = candidates.batches(batchSize);
+        log.info("Split into {} batches", batches.size());
+
+        if (pipelinedReduce != null) {
+            // Each batch is rendered as it enters Wave 3; enriched rows go into the table
+            // as each batch leaves the merge
+            pipelinedReduce.reduce(batches, CandidateTable.Batch::normalizedCandidatesJson,
+                    sourceClassification, sourceText, anchors,
+                    (index, batchEnriched) -> candidates.putEnriched(batches.get(index), batchEnriched));
+        } else {
+            reduceExecutor.invokeAll(batches, batch -> {
+                String batchEnriched = reduceOneBatch(reduceWorkflow, batch.normalizedCandidatesJson(),
+                        batch.index(), batches.size(), sourceClassification, sourceText, anchors);
+                candidates.putEnriched(batch, batchEnriched);
+                return batch;
+            });
+        }
+
+        // ── Enriched rows in J4 order → renumber ids ───────────────────
+        scope.writeState("enrichedCandidates", candidates.enrichedCandidatesJson());
 
         log.info("REDUCE complete — {} batches merged, enrichedCandidates in scope",
                 batches.size());
     }
 
+    /**
+     * Invokes agents 4-8 + Wave5Merge on one batch in a fresh scope and returns its
+     * enrichedCandidates.
+     *
+     * @param anchors the map phase's governance anchors, seeded as
+     *                {@value GovernanceTermIndex#SCOPE_KEY}; null = none
+     */
+    private String reduceOneBatch(UntypedAgent reduceWorkflow, String batchJson,
+                                  int batchIndex, int batchCount,
+                                  String sourceClassification, String sourceText,
+                                  List<GovernanceTermIndex.Hit> anchors) {
+        log.info("REDUCE — batch {}/{}", batchIndex + 1, batchCount);
+
+        Map<String, Object> state = new HashMap<>();
+        state.put("normalizedCandidates", batchJson);
+        state.put("sourceClassification", sourceClassification);
+        state.put("sourceText", sourceText);
+        if (anchors != null) state.put(GovernanceTermIndex.SCOPE_KEY, anchors);
+        ResultWithAgenticScope<String> result = reduceWorkflow.invokeWithAgenticScope(state);
+
+        // COLLECT enrichedCandidates from the batch's own scope
+        String batchEnriched = readString(result.agenticScope(), "enrichedCandidates");
+        if (batchEnriched.isBlank() && result.result() != null) {
+            batchEnriched = result.result();
+        }
+
+        log.info("REDUCE — batch {}/{} complete", batchIndex + 1, batchCount);
+        return batchEnriched;
+    }
+
+    /** The map phase's governance anchors from scope, or null if it left none. */
+    @SuppressWarnings("unchecked")
+    private static List<GovernanceTermIndex.Hit> readAnchors(AgenticScope scope) {
+        Object anchors = scope.readState(GovernanceTermIndex.SCOPE_KEY);
+        return anchors instanceof List<?> list ? (List<GovernanceTermIndex.Hit>) list : null;
+    }
+
     /**
      * Reads a string from scope, handling null and non-string values.
      */
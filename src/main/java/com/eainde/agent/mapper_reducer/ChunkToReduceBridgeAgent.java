@@ -1,6 +1,7 @@
 package com.eainde.agent.mapper_reducer;
 
 import com.db.clm.kyc.ai.model.MergedResult;
+import com.eainde.agent.engine.CandidateTable;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.agentic.UntypedAgent;
@@ -27,8 +28,10 @@ import lombok.extern.log4j.Log4j2;
  *   // DTO boundary: parse to extract what Agent 4 needs
  *   MergedResult dto = parse(mergedResult)
  *
- *   scope["normalizedCandidates"] = dto.mergedCandidates        ← Agent 4 reads this
- *   scope["sourceClassification"] = dto.globalSourceClassification  ← Agent 4, 5, 6 read this
+ *   table = CandidateTable.fromMergedResult(dto)
+ *   scope["candidateTable"]       = table                        ← BatchingReduceAgent batches from it
+ *   scope["normalizedCandidates"] = table.normalizedCandidates   ← Agent 4 reads this
+ *   scope["sourceClassification"] = table.sourceClassification   ← Agent 4, 5, 6 read this
  * </pre>
  */
 @Log4j2
@@ -56,27 +59,18 @@ public class ChunkToReduceBridgeAgent implements UntypedAgent {
             MergedResult mergedResult = objectMapper.readValue(
                     mergedResultJson, MergedResult.class);
 
-            // ── Build normalizedCandidates JSON ─────────────────────────
-            // Agent 4 expects: {"normalized_candidates": [...]}
-            // Merger output has: mergedCandidates (same structure as normalized)
-            String normalizedCandidatesJson = buildNormalizedCandidatesJson(
-                    mergedResult);
-
-            // ── Build global sourceClassification JSON ──────────────────
-            // Agents 4, 5, 6 expect: {"source_classification": [...]}
-            // Merger output has: globalSourceClassification (same structure)
-            String sourceClassificationJson = buildSourceClassificationJson(
-                    mergedResult);
+            // ── Parsed candidates, shared with the REDUCE phase ─────────
+            CandidateTable table = CandidateTable.fromMergedResult(objectMapper, mergedResult);
+            scope.writeState(CandidateTable.SCOPE_KEY, table);
 
             // ── Write to scope (overwrite per-chunk values with global) ─
-            scope.writeState("normalizedCandidates", normalizedCandidatesJson);
-            scope.writeState("sourceClassification", sourceClassificationJson);
-
-            int candidateCount = mergedResult.mergedCandidates() != null
-                    ? mergedResult.mergedCandidates().size() : 0;
+            // Agent 4 expects: {"normalized_candidates": [...]}
+            // Agents 4, 5, 6 expect: {"source_classification": [...]}
+            scope.writeState("normalizedCandidates", table.normalizedCandidatesJson());
+            scope.writeState("sourceClassification", table.sourceClassificationJson());
 
             log.info("BRIDGE complete — {} deduped candidates, {} sources written to scope",
-                    candidateCount,
+                    table.size(),
                     mergedResult.globalSourceClassification() != null
                             ? mergedResult.globalSourceClassification().size() : 0);
 
@@ -95,36 +89,4 @@ public class ChunkToReduceBridgeAgent implements UntypedAgent {
             scope.writeState("normalizedCandidates", mergedResultJson);
         }
     }
-
-    /**
-     * Builds the normalizedCandidates JSON in the format Agent 4 expects.
-     * Re-serializes merged candidates from the DTO.
-     */
-    private String buildNormalizedCandidatesJson(MergedResult mergedResult)
-            throws JsonProcessingException {
-        // Wrap merged candidates in the structure Agent 3 would produce
-        // Agent 4 reads "normalized_candidates" key
-        var wrapper = new java.util.LinkedHashMap<String, Object>();
-        wrapper.put("normalized_candidates",
-                mergedResult.mergedCandidates() != null
-                        ? mergedResult.mergedCandidates()
-                        : java.util.List.of());
-        // Pass through entities if present
-        wrapper.put("entities_found", java.util.List.of());
-        return objectMapper.writeValueAsString(wrapper);
-    }
-
-    /**
-     * Builds the sourceClassification JSON in the format agents expect.
-     * Re-serializes global source classification from the DTO.
-     */
-    private String buildSourceClassificationJson(MergedResult mergedResult)
-            throws JsonProcessingException {
-        var wrapper = new java.util.LinkedHashMap<String, Object>();
-        wrapper.put("source_classification",
-                mergedResult.globalSourceClassification() != null
-                        ? mergedResult.globalSourceClassification()
-                        : java.util.List.of());
-        return objectMapper.writeValueAsString(wrapper);
-    }
-}
\ No newline at end of file
+}
@@ -1,9 +1,20 @@
 package com.eainde.agent.mapper_reducer;
 
+import com.db.clm.kyc.ai.chunking.ChunkMergeTree;
+import com.db.clm.kyc.ai.chunking.DocumentChunker;
+import com.db.clm.kyc.ai.chunking.GovernancePageFilter;
+import com.db.clm.kyc.ai.chunking.TokenCounter;
 import com.db.clm.kyc.ai.config.AgentFactory;
 import com.db.clm.kyc.ai.config.AgentSpec;
 import com.db.clm.kyc.ai.model.ExtractionReview;
 import com.db.clm.kyc.ai.prompt.AgentNames;
+import com.eainde.agent.engine.AgentCache;
+import com.eainde.agent.engine.GateEngine;
+import com.eainde.agent.engine.GatedClassifierAgent;
+import com.eainde.agent.engine.PipelinedReduce;
+import com.eainde.agent.engine.ScoringEngineAgent;
+import com.eainde.agent.engine.TailAssemblerAgent;
+import com.eainde.agent.thread.BoundedParallelExecutor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.scope.AgenticScope;
@@ -12,6 +23,10 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+
 /**
  * CSM Extraction Pipeline V6 — 12-agent wave-based decomposition with Map-Reduce.
  *
@@ -41,7 +56,9 @@ public class CsmExtractionWorkflowConfigV6 {
     static final double EXTRACTION_QUALITY_THRESHOLD   = 0.85;
 
     private final AgentFactory agentFactory;
+    private final AgentCache agentCache;
     private final ObjectMapper objectMapper;
+    private final TokenCounter tokenCounter;
 
     private static final AgentMonitor monitor = new AgentMonitor();
 
@@ -61,17 +78,90 @@ public class CsmExtractionWorkflowConfigV6 {
     @Value("${csm.chunking.page-delimiter:\\f}")
     private String pageDelimiterRegex;
 
+    /** "pages" = fixed pages-per-chunk windows; "tokens" = pack pages up to max-token-estimate. */
+    @Value("${csm.chunking.packing:pages}")
+    private String chunkPacking;
+
+    @Value("${csm.chunking.overlap-tokens:4000}")
+    private int overlapTokens;
+
+    @Value("${csm.chunking.page-filter.enabled:false}")
+    private boolean pageFilterEnabled;
+
+    @Value("${csm.chunking.page-filter.min-score:1.0}")
+    private double pageFilterMinScore;
+
     // ── Batching config ─────────────────────────────────────────────────
+    /** Map-phase chunks in flight at once, shared by all requests using the same model. */
+    @Value("${csm.map.max-concurrency:4}")
+    private int mapMaxConcurrency;
+
+    /** Model key the map concurrency limit applies to. */
+    @Value("${csm.map.model:${csm.chunking.token-model:default}}")
+    private String mapModel;
+
+    /** Reduce batches in flight at once, shared by all requests (key {@code <csm.map.model>/reduce}). */
+    @Value("${csm.reduce.max-concurrency:4}")
+    private int reduceMaxConcurrency;
+
+    private BoundedParallelExecutor mapExecutor;
+    private BoundedParallelExecutor reduceExecutor;
+
+    /**
+     * "deterministic" = Java merge, LLM only for near-match groups; "llm" = chunk merger agent
+     * on everything; "tree" = chunk merger agent over groups of adjacent chunks, level by level.
+     */
+    @Value("${csm.merge.mode:deterministic}")
+    private String mergeMode;
+
+    /** Largest chunk merger prompt payload; bigger payloads are merged as a tree. */
+    @Value("${csm.merge.max-token-estimate:${csm.chunking.max-token-estimate:100000}}")
+    private int mergeMaxTokenEstimate;
+
+    /** Tree merge: chunk merger calls of one level in flight at once, shared by all requests. */
+    @Value("${csm.merge.max-concurrency:2}")
+    private int mergeMaxConcurrency;
+
+    private BoundedParallelExecutor mergeExecutor;
+
+    /** Agent 8: "llm" = scoring engine agent; "java" = {@link ScoringEngineAgent}, no LLM call. */
+    @Value("${csm.scoring.engine:llm}")
+    private String scoringEngineMode;
+
+    /** Agents 9-10: "llm" = reason assembler + output formatter; "java" = {@link TailAssemblerAgent}. */
+    @Value("${csm.tail.mode:llm}")
+    private String tailMode;
+
+    /** Agent 5: resolve gates 1, 6 and 7 in Java and send only the rest to the classifier. */
+    @Value("${csm.classifier.pre-gates.enabled:false}")
+    private boolean classifierPreGatesEnabled;
+
+    /** Reference date for gate 1 (former officers), ISO-8601; empty = today. */
+    @Value("${csm.classifier.as-of-date:}")
+    private String classifierAsOfDate;
+
     @Value("${csm.batching.enabled:true}")
     private boolean batchingEnabled;
 
     @Value("${csm.batching.batch-size:50}")
     private int batchSize;
 
+    /** Batched REDUCE: overlap batches across waves (see {@link PipelinedReduce}) instead of one task per batch. */
+    @Value("${csm.reduce.pipelined:false}")
+    private boolean reducePipelined;
+
+    /** Pipelined REDUCE: batches waiting in front of each wave. */
+    @Value("${csm.reduce.queue-capacity:2}")
+    private int reduceQueueCapacity;
+
     public CsmExtractionWorkflowConfigV6(AgentFactory agentFactory,
-                                         ObjectMapper objectMapper) {
+                                         AgentCache agentCache,
+                                         ObjectMapper objectMapper,
+                                         TokenCounter tokenCounter) {
         this.agentFactory = agentFactory;
+        this.agentCache = agentCache;
         this.objectMapper = objectMapper;
+        this.tokenCounter = tokenCounter;
     }
 
     // =========================================================================
@@ -212,6 +302,22 @@ public class CsmExtractionWorkflowConfigV6 {
     //  Workflow Builders
     // =========================================================================
 
+    /**
+     * The DIRECT path, built on first use and reused until prompts are reloaded
+     * (see {@link AgentCache}).
+     */
+    public UntypedAgent directWorkflow() {
+        return agentCache.workflow("mapper_reducer.direct", this::buildDirectWorkflow);
+    }
+
+    /**
+     * The CHUNKED path, built on first use and reused until prompts are reloaded
+     * (see {@link AgentCache}).
+     */
+    public UntypedAgent chunkedWorkflow() {
+        return agentCache.workflow("mapper_reducer.chunked", this::buildChunkedWorkflow);
+    }
+
     /**
      * Builds the DIRECT path — all 12 agents in sequence.
      * Used when document fits within token limit.
@@ -231,18 +337,17 @@ public class CsmExtractionWorkflowConfigV6 {
                 OUTPUT_REFINER_SPEC, LOOP_CRITIC_SPEC);
 
         return agentFactory.sequence("finalOutput",
-                agentFactory.create(CANDIDATE_EXTRACTOR_SPEC),   // Wave 1a → rawNames
-                agentFactory.create(SOURCE_CLASSIFIER_SPEC),     // Wave 1b → sourceClassification
-                agentFactory.create(NAME_NORMALIZER_SPEC),       // Wave 2  → normalizedCandidates
-                agentFactory.create(DEDUP_LINKER_SPEC),          // Wave 3  → dedupedCandidates
-                agentFactory.create(CSM_CLASSIFIER_SPEC),        // Wave 4  → classifiedCandidates
-                agentFactory.create(COUNTRY_OVERRIDE_SPEC),      // Wave 5a → countryOverrides
-                agentFactory.create(TITLE_EXTRACTOR_SPEC),       // Wave 5b → titleExtractions
-                agentFactory.create(SCORING_ENGINE_SPEC),        // Wave 5c → scoredCandidates
+                agentCache.create(CANDIDATE_EXTRACTOR_SPEC),     // Wave 1a → rawNames
+                agentCache.create(SOURCE_CLASSIFIER_SPEC),       // Wave 1b → sourceClassification
+                agentCache.create(NAME_NORMALIZER_SPEC),         // Wave 2  → normalizedCandidates
+                agentCache.create(DEDUP_LINKER_SPEC),            // Wave 3  → dedupedCandidates
+                createCsmClassifier(),                            // Wave 4  → classifiedCandidates
+                agentCache.create(COUNTRY_OVERRIDE_SPEC),        // Wave 5a → countryOverrides
+                agentCache.create(TITLE_EXTRACTOR_SPEC),         // Wave 5b → titleExtractions
+                createScoringEngine(),                            // Wave 5c → scoredCandidates
                 wave5Merger,                                      // Wave 5 merge → enrichedCandidates
-                agentFactory.create(REASON_ASSEMBLER_SPEC),      // Wave 6  → reasonedCandidates
-                agentFactory.create(OUTPUT_FORMATTER_SPEC),      // Wave 7  → finalOutput
-                agentFactory.create(FIRST_CRITIC_SPEC),          // Wave 8  → extractionReview
+                createTail(),                                     // Wave 6-7 → finalOutput
+                agentCache.create(FIRST_CRITIC_SPEC),            // Wave 8  → extractionReview
                 refinementLoop                                    // Loop    → finalOutput (corrected)
         );
     }
@@ -262,19 +367,28 @@ public class CsmExtractionWorkflowConfigV6 {
 
         // MAP phase: per-chunk agents 1-3
         MapPhaseAgent mapPhaseAgent = new MapPhaseAgent(
-                agentFactory, objectMapper,
-                pagesPerChunk, overlapPages, pageDelimiterRegex);
-
-        // MERGE phase: LLM chunk merger
-        UntypedAgent chunkMerger = agentFactory.create(CHUNK_MERGER_SPEC);
+                agentFactory, agentCache, objectMapper, buildChunker(), getMapExecutor());
+
+        // MERGE phase: Java merge (LLM chunk merger for near matches only), tree of LLM
+        // merges over adjacent chunks, or LLM on everything
+        UntypedAgent llmChunkMerger = agentCache.create(CHUNK_MERGER_SPEC);
+        UntypedAgent chunkMerger;
+        if (isDeterministicMerge()) {
+            chunkMerger = new DeterministicChunkMergerAgent(objectMapper, buildMergeTree(), llmChunkMerger);
+        } else if (isTreeMerge()) {
+            chunkMerger = new TreeChunkMergerAgent(buildMergeTree(), llmChunkMerger);
+        } else {
+            chunkMerger = llmChunkMerger;
+        }
 
         // Bridge: mergedResult → normalizedCandidates + sourceClassification
         ChunkToReduceBridgeAgent bridgeAgent = new ChunkToReduceBridgeAgent(objectMapper);
 
         // REDUCE phase: agents 4-8 + Wave5Merge with optional batching
         BatchingReduceAgent batchingReduceAgent = new BatchingReduceAgent(
-                agentFactory, objectMapper,
-                batchingEnabled, batchSize);
+                agentFactory, agentCache, objectMapper, createCsmClassifier(), createScoringEngine(),
+                batchingEnabled, batchSize, getReduceExecutor(),
+                reducePipelined ? buildPipelinedReduce() : null);
 
         // Post-batching tail: agents 9-12 (always on full set)
         Wave5MergerAgent wave5MergerForDirect = new Wave5MergerAgent(objectMapper);
@@ -289,9 +403,8 @@ public class CsmExtractionWorkflowConfigV6 {
                 chunkMerger,                                      // MERGE → mergedResult
                 bridgeAgent,                                      // Bridge → normalizedCandidates
                 batchingReduceAgent,                              // REDUCE 4-8 → enrichedCandidates
-                agentFactory.create(REASON_ASSEMBLER_SPEC),      // Wave 6  → reasonedCandidates
-                agentFactory.create(OUTPUT_FORMATTER_SPEC),      // Wave 7  → finalOutput
-                agentFactory.create(FIRST_CRITIC_SPEC),          // Wave 8  → extractionReview
+                createTail(),                                     // Wave 6-7 → finalOutput
+                agentCache.create(FIRST_CRITIC_SPEC),            // Wave 8  → extractionReview
                 refinementLoop                                    // Loop    → finalOutput (corrected)
         );
     }
@@ -343,4 +456,128 @@ public class CsmExtractionWorkflowConfigV6 {
 
     boolean isChunkingEnabled()  { return chunkingEnabled; }
     int getMaxTokenEstimate()    { return maxTokenEstimate; }
+    TokenCounter getTokenCounter() { return tokenCounter; }
+
+    boolean isDeterministicMerge() { return !"llm".equalsIgnoreCase(mergeMode) && !isTreeMerge(); }
+    boolean isTreeMerge()          { return "tree".equalsIgnoreCase(mergeMode); }
+    boolean isJavaScoring()        { return "java".equalsIgnoreCase(scoringEngineMode); }
+    boolean isJavaTail()           { return "java".equalsIgnoreCase(tailMode); }
+
+    /**
+     * Agent 5 — wrapped in a {@link GatedClassifierAgent} when
+     * {@code csm.classifier.pre-gates.enabled=true}, otherwise the classifier agent alone.
+     * Both read dedupedCandidates and write classifiedCandidates.
+     */
+    UntypedAgent createCsmClassifier() {
+        UntypedAgent classifier = agentCache.create(CSM_CLASSIFIER_SPEC);
+        if (!classifierPreGatesEnabled) {
+            return classifier;
+        }
+        Supplier<LocalDate> asOfDate = classifierAsOfDate.isBlank()
+                ? LocalDate::now : () -> LocalDate.parse(classifierAsOfDate.trim());
+        return new GatedClassifierAgent(new GateEngine(objectMapper, asOfDate), classifier);
+    }
+
+    /**
+     * Agent 8 — computed in Java when {@code csm.scoring.engine=java}, otherwise the
+     * scoring engine LLM agent. Both read classifiedCandidates and write scoredCandidates.
+     */
+    UntypedAgent createScoringEngine() {
+        return isJavaScoring() ? new ScoringEngineAgent(objectMapper) : agentCache.create(SCORING_ENGINE_SPEC);
+    }
+
+    /**
+     * Agents 9-10 — assembled in Java when {@code csm.tail.mode=java}, otherwise the
+     * reason assembler and output formatter agents in sequence. Both read
+     * enrichedCandidates and fileNames and write finalOutput.
+     */
+    UntypedAgent createTail() {
+        if (isJavaTail()) {
+            return new TailAssemblerAgent(objectMapper);
+        }
+        return agentFactory.sequence("finalOutput",
+                agentCache.create(REASON_ASSEMBLER_SPEC),        // Wave 6  → reasonedCandidates
+                agentCache.create(OUTPUT_FORMATTER_SPEC));       // Wave 7  → finalOutput
+    }
+
+    /**
+     * Runs map-phase chunks on virtual threads, at most {@code csm.map.max-concurrency}
+     * per {@code csm.map.model}; results come back in chunk order.
+     */
+    synchronized BoundedParallelExecutor getMapExecutor() {
+        if (mapExecutor == null) {
+            mapExecutor = new BoundedParallelExecutor(mapModel, mapMaxConcurrency);
+        }
+        return mapExecutor;
+    }
+
+    /**
+     * Runs reduce batches in parallel, at most {@code csm.reduce.max-concurrency} under
+     * its own key ({@code <csm.map.model>/reduce}) — a reduce batch never waits for map
+     * permits held by another request's chunks.
+     */
+    synchronized BoundedParallelExecutor getReduceExecutor() {
+        if (reduceExecutor == null) {
+            reduceExecutor = new BoundedParallelExecutor(mapModel + "/reduce", reduceMaxConcurrency);
+        }
+        return reduceExecutor;
+    }
+
+    /**
+     * Pipelined REDUCE for {@code csm.reduce.pipelined=true}: agents 4, 5, 6, 7, 8 each
+     * wrapped in a single-agent sequence, model calls bounded by the reduce executor.
+     */
+    PipelinedReduce buildPipelinedReduce() {
+        return new PipelinedReduce(objectMapper,
+                reduceStep("dedupedCandidates", agentCache.create(DEDUP_LINKER_SPEC)),
+                reduceStep("classifiedCandidates", createCsmClassifier()),
+                List.of(reduceStep("countryOverrides", agentCache.create(COUNTRY_OVERRIDE_SPEC)),
+                        reduceStep("titleExtractions", agentCache.create(TITLE_EXTRACTOR_SPEC)),
+                        reduceStep("scoredCandidates", createScoringEngine())),
+                getReduceExecutor(), reduceQueueCapacity);
+    }
+
+    /** One pipelined REDUCE wave: {@code agent} as a single-agent sequence, built with the chunked workflow. */
+    private PipelinedReduce.Step reduceStep(String outputKey, UntypedAgent agent) {
+        UntypedAgent sequence = agentFactory.sequence(outputKey, agent);
+        return new PipelinedReduce.Step(outputKey, () -> sequence);
+    }
+
+    /**
+     * Builds the tree merger: chunk merger prompts are kept within
+     * {@code csm.merge.max-token-estimate}, groups of one level run on the merge executor.
+     */
+    ChunkMergeTree buildMergeTree() {
+        return new ChunkMergeTree(objectMapper, getTokenCounter(), mergeMaxTokenEstimate, getMergeExecutor());
+    }
+
+    /**
+     * Runs the merges of one tree level, at most {@code csm.merge.max-concurrency} under
+     * its own key ({@code <csm.map.model>/merge}) — merges never wait for map permits.
+     */
+    synchronized BoundedParallelExecutor getMergeExecutor() {
+        if (mergeExecutor == null) {
+            mergeExecutor = new BoundedParallelExecutor(mapModel + "/merge", mergeMaxConcurrency);
+        }
+        return mergeExecutor;
+    }
+
+    /**
+     * Builds the document chunker from chunking config — fixed page windows, or
+     * token-budget packing when {@code csm.chunking.packing=tokens}.
+     */
+    DocumentChunker buildChunker() {
+        DocumentChunker.Builder builder = DocumentChunker.builder()
+                .pagesPerChunk(pagesPerChunk)
+                .overlapPages(overlapPages)
+                .pageDelimiter(pageDelimiterRegex)
+                .tokenCounter(getTokenCounter());
+        if ("tokens".equalsIgnoreCase(chunkPacking)) {
+            builder.maxTokensPerChunk(maxTokenEstimate).overlapTokens(overlapTokens);
+        }
+        if (pageFilterEnabled) {
+            builder.pageFilter(new GovernancePageFilter(pageFilterMinScore));
+        }
+        return builder.build();
+    }
 }
@@ -0,0 +1,64 @@
+package com.eainde.agent.mapper_reducer;
+
+import com.db.clm.kyc.ai.chunking.ChunkMergeTree;
+import com.db.clm.kyc.ai.chunking.ChunkResultMerger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agentic.UntypedAgent;
+import dev.langchain4j.agentic.scope.AgenticScope;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Map;
+
+/**
+ * MERGE phase — Java chunk merge with the LLM chunk merger as fallback.
+ *
+ * <p>Drop-in replacement for the chunk merger agent in the chunked sequence: reads
+ * {@code chunkResults}, writes {@code mergedResult} in the shape
+ * {@link ChunkToReduceBridgeAgent} parses. Exact and overlap duplicates are removed
+ * in Java ({@link ChunkResultMerger}); only near-match groups are sent to the LLM
+ * chunk merger, through a {@link ChunkMergeTree} so the prompt stays within budget.</p>
+ *
+ * <pre>
+ * invoke(scope):
+ *   chunkResults = scope["chunkResults"]
+ *   mergedResult = ChunkResultMerger.merge(chunkResults,
+ *                      residual -> mergeTree.merge(residual,
+ *                          part -> llmChunkMerger.invoke({chunkResults: part})))
+ *   scope["mergedResult"] = mergedResult
+ * </pre>
+ */
+@Log4j2
+public class DeterministicChunkMergerAgent implements UntypedAgent {
+
+    private final ChunkResultMerger merger;
+    private final ChunkMergeTree mergeTree;
+    private final UntypedAgent llmChunkMerger;
+
+    public DeterministicChunkMergerAgent(ObjectMapper objectMapper, ChunkMergeTree mergeTree,
+                                         UntypedAgent llmChunkMerger) {
+        this.merger = new ChunkResultMerger(objectMapper);
+        this.mergeTree = mergeTree;
+        this.llmChunkMerger = llmChunkMerger;
+    }
+
+    @Override
+    public void invoke(AgenticScope scope) {
+        log.info("MERGE — deterministic chunk merge");
+
+        Object chunkResultsObj = scope.readState("chunkResults");
+        if (chunkResultsObj == null) {
+            throw new IllegalStateException(
+                    "chunkResults not found in scope — MapPhaseAgent must write it");
+        }
+
+        String mergedResult = merger.merge(chunkResultsObj.toString(),
+                residual -> mergeTree.merge(residual, this::invokeLlmMerger));
+
+        scope.writeState("mergedResult", mergedResult);
+    }
+
+    private String invokeLlmMerger(String chunkResults) {
+        Object raw = llmChunkMerger.invoke(Map.of("chunkResults", chunkResults));
+        return raw != null ? raw.toString() : "{}";
+    }
+}
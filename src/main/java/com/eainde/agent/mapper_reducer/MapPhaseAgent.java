@@ -1,40 +1,54 @@
 package com.eainde.agent.mapper_reducer;
 
 import com.db.clm.kyc.ai.chunking.ChunkContext;
+import com.db.clm.kyc.ai.chunking.ChunkPlan;
 import com.db.clm.kyc.ai.chunking.DocumentChunker;
+import com.db.clm.kyc.ai.chunking.GovernanceTermIndex;
+import com.db.clm.kyc.ai.chunking.MappedDocument;
 import com.db.clm.kyc.ai.config.AgentFactory;
+import com.eainde.agent.engine.AgentCache;
+import com.eainde.agent.thread.BoundedParallelExecutor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agentic.ResultWithAgenticScope;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.scope.AgenticScope;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * MAP Phase — runs agents 1-3 per document chunk.
  *
- * <h3>Scope overwrite-collect-repeat pattern:</h3>
- * Since we can't create new AgenticScope instances, this agent reuses the
- * provided scope by overwriting "sourceText" with each chunk's text,
- * invoking the map sub-workflow, collecting outputs, and repeating.
- * Original sourceText is restored after all chunks complete.
+ * <h3>Isolated scope per chunk:</h3>
+ * Each chunk runs the map sub-workflow through {@code invokeWithAgenticScope}, which
+ * gives it a fresh scope seeded with only that chunk's text. The caller's scope is
+ * never overwritten, so chunks run in parallel on virtual threads (bounded by
+ * {@code csm.map.max-concurrency}) and results are collected in chunk order.
  *
  * <pre>
  * invoke(scope):
- *   originalSourceText = scope["sourceText"]
+ *   chunks = chunker.plan(scope["sourceText"])
  *
- *   for each chunk:
- *     scope["sourceText"] = chunk.text           ← OVERWRITE
- *     mapWorkflow.invoke(scope)                   ← Agents 1→2→3
- *     collect scope["rawNames"]
- *     collect scope["sourceClassification"]
- *     collect scope["normalizedCandidates"]
+ *   parallel for each chunk (ordered results):
+ *     chunkScope = mapWorkflow.invokeWithAgenticScope(
+ *         {sourceText: chunk.text, fileNames})    ← Agents 1→2→3, own scope
+ *     collect chunkScope["rawNames"]
+ *     collect chunkScope["sourceClassification"]
+ *     collect chunkScope["normalizedCandidates"]
  *
- *   scope["sourceText"] = originalSourceText      ← RESTORE
  *   scope["chunkResults"] = aggregated JSON        ← WRITE
  * </pre>
  *
+ * <p>If the scope carries {@value MappedDocument#SOURCE_PATH_KEY} (see
+ * {@link RoutingExtractionAgent}), chunks are planned over the memory-mapped file —
+ * the mapping the router published under {@value MappedDocument#DOCUMENT_KEY}, or a
+ * fresh one when run on its own — and each chunk's text is decoded only when its map
+ * invocation starts.</p>
+ *
  * <h3>Per-chunk output structure (chunkResults):</h3>
  * <pre>
  * {
@@ -56,78 +70,62 @@ import java.util.List;
 @Log4j2
 public class MapPhaseAgent implements UntypedAgent {
 
-    private final AgentFactory agentFactory;
     private final ObjectMapper objectMapper;
-    private final int pagesPerChunk;
-    private final int overlapPages;
-    private final String pageDelimiterRegex;
+    private final DocumentChunker chunker;
+    private final BoundedParallelExecutor mapExecutor;
+    /** Agent 1 → 2 → 3, built once and shared by every chunk (state lives in the chunk scope). */
+    private final UntypedAgent mapWorkflow;
 
     public MapPhaseAgent(AgentFactory agentFactory,
+                         AgentCache agentCache,
                          ObjectMapper objectMapper,
-                         int pagesPerChunk,
-                         int overlapPages,
-                         String pageDelimiterRegex) {
-        this.agentFactory = agentFactory;
+                         DocumentChunker chunker,
+                         BoundedParallelExecutor mapExecutor) {
         this.objectMapper = objectMapper;
-        this.pagesPerChunk = pagesPerChunk;
-        this.overlapPages = overlapPages;
-        this.pageDelimiterRegex = pageDelimiterRegex;
+        this.chunker = chunker;
+        this.mapExecutor = mapExecutor;
+        this.mapWorkflow = agentFactory.sequence("normalizedCandidates",
+                agentCache.create(CsmExtractionWorkflowConfigV6.CANDIDATE_EXTRACTOR_SPEC),
+                agentCache.create(CsmExtractionWorkflowConfigV6.SOURCE_CLASSIFIER_SPEC),
+                agentCache.create(CsmExtractionWorkflowConfigV6.NAME_NORMALIZER_SPEC));
     }
 
     @Override
     public void invoke(AgenticScope scope) {
         log.info("MAP phase — starting per-chunk extraction (agents 1-3)");
 
-        // ── Save original state ─────────────────────────────────────────
-        String originalSourceText = readString(scope, "sourceText");
+        String sourceText = readString(scope, "sourceText");
         String fileNames = readString(scope, "fileNames");
 
-        // ── Chunk the document ──────────────────────────────────────────
-        DocumentChunker chunker = DocumentChunker.builder()
-                .pagesPerChunk(pagesPerChunk)
-                .overlapPages(overlapPages)
-                .pageDelimiter(pageDelimiterRegex)
-                .build();
-
-        List<ChunkContext> chunks = chunker.chunk(originalSourceText);
-        log.info("Document split into {} chunks ({}pp each, {}pp overlap)",
-                chunks.size(), pagesPerChunk, overlapPages);
-
-        // ── Build map sub-workflow: Agent 1 → 2 → 3 ────────────────────
-        UntypedAgent mapWorkflow = agentFactory.sequence("normalizedCandidates",
-                agentFactory.create(CsmExtractionWorkflowConfigV6.CANDIDATE_EXTRACTOR_SPEC),
-                agentFactory.create(CsmExtractionWorkflowConfigV6.SOURCE_CLASSIFIER_SPEC),
-                agentFactory.create(CsmExtractionWorkflowConfigV6.NAME_NORMALIZER_SPEC));
-
-        // ── Run per chunk: overwrite → invoke → collect ─────────────────
-        List<String> chunkResultEntries = new ArrayList<>();
-
-        for (ChunkContext chunk : chunks) {
-            log.info("MAP — processing chunk {}/{}: pages {}-{}",
-                    chunk.chunkIndex() + 1, chunks.size(),
-                    chunk.pageStart(), chunk.pageEnd());
-
-            // OVERWRITE sourceText with chunk text
-            scope.writeState("sourceText", chunk.chunkText());
-
-            // Invoke agents 1-3 on this chunk
-            mapWorkflow.invoke(scope);
-
-            // COLLECT outputs from scope (agent outputs are strings)
-            String rawNames = readString(scope, "rawNames");
-            String sourceClassification = readString(scope, "sourceClassification");
-            String normalizedCandidates = readString(scope, "normalizedCandidates");
-
-            // Build chunk result JSON entry
-            String chunkEntry = buildChunkEntryJson(chunk,
-                    rawNames, sourceClassification, normalizedCandidates);
-            chunkResultEntries.add(chunkEntry);
-
-            log.info("MAP — chunk {}/{} complete", chunk.chunkIndex() + 1, chunks.size());
+        // ── Chunk the document (from the mapped file when one was handed over) ──
+        Object mapped = scope.readState(MappedDocument.DOCUMENT_KEY);
+        Object sourcePath = scope.readState(MappedDocument.SOURCE_PATH_KEY);
+        if (mapped instanceof MappedDocument document) {
+            mapChunks(scope, chunker.plan(document), fileNames);
+        } else if (sourcePath != null) {
+            try (MappedDocument document = MappedDocument.open(RoutingExtractionAgent.toPath(sourcePath))) {
+                mapChunks(scope, chunker.plan(document), fileNames);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map source document " + sourcePath, e);
+            }
+        } else {
+            mapChunks(scope, chunker.plan(sourceText), fileNames);
         }
+    }
+
+    /**
+     * Runs agents 1-3 once per chunk of the plan, each in its own scope, and writes
+     * the aggregated chunkResults to the caller's scope.
+     */
+    private void mapChunks(AgenticScope scope, ChunkPlan plan, String fileNames) {
+        List<ChunkContext> chunks = plan.chunks();
+        scope.writeState(ChunkPlan.METRICS_KEY, plan.metrics());
+        scope.writeState(GovernanceTermIndex.SCOPE_KEY, plan.governanceAnchors());
+        log.info("Document split into {} chunks — {}", chunks.size(), plan.metrics());
 
-        // ── Restore original sourceText ─────────────────────────────────
-        scope.writeState("sourceText", originalSourceText);
+        // ── Run chunks in parallel, each in an isolated scope ───────────
+        List<String> chunkResultEntries = mapExecutor.invokeAll(chunks,
+                chunk -> mapOneChunk(mapWorkflow, chunk, chunks.size(), fileNames));
 
         // ── Write aggregated chunk results ──────────────────────────────
         String chunkResultsJson = buildChunkResultsJson(chunkResultEntries);
@@ -137,6 +135,29 @@ public class MapPhaseAgent implements UntypedAgent {
                 chunks.size());
     }
 
+    /**
+     * Invokes agents 1-3 on one chunk in a fresh scope and returns its chunk entry JSON.
+     */
+    private String mapOneChunk(UntypedAgent mapWorkflow, ChunkContext chunk,
+                               int chunkCount, String fileNames) {
+        log.info("MAP — processing chunk {}/{}: pages {}-{}",
+                chunk.chunkIndex() + 1, chunkCount,
+                chunk.pageStart(), chunk.pageEnd());
+
+        ResultWithAgenticScope<String> result = mapWorkflow.invokeWithAgenticScope(
+                Map.of("sourceText", chunk.chunkText().toString(),
+                        "fileNames", fileNames));
+
+        // COLLECT outputs from the chunk's own scope (agent outputs are strings)
+        AgenticScope chunkScope = result.agenticScope();
+        String rawNames = readString(chunkScope, "rawNames");
+        String sourceClassification = readString(chunkScope, "sourceClassification");
+        String normalizedCandidates = readString(chunkScope, "normalizedCandidates");
+
+        log.info("MAP — chunk {}/{} complete", chunk.chunkIndex() + 1, chunkCount);
+        return buildChunkEntryJson(chunk, rawNames, sourceClassification, normalizedCandidates);
+    }
+
     // =========================================================================
     //  JSON Builders — string concatenation (no DTO needed)
     // =========================================================================
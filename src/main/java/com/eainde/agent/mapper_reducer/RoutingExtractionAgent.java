@@ -1,11 +1,17 @@
 package com.eainde.agent.mapper_reducer;
 
-import com.db.clm.kyc.ai.chunking.DocumentChunker;
+import com.db.clm.kyc.ai.chunking.MappedDocument;
+import com.db.clm.kyc.ai.chunking.TokenCounter;
+import com.eainde.agent.thread.WorkflowMdc;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.scope.AgenticScope;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
 /**
  * Top-level entry point for CSM extraction.
  * Reads sourceText from scope, decides whether to use direct or chunked path.
@@ -14,8 +20,8 @@ import org.springframework.stereotype.Component;
  * invoke(scope)
  *   │
  *   ├── sourceText fits in token limit?
- *   │     ├── YES → buildDirectWorkflow().invoke(scope)
- *   │     └── NO  → buildChunkedWorkflow().invoke(scope)
+ *   │     ├── YES → directWorkflow().invoke(scope)
+ *   │     └── NO  → chunkedWorkflow().invoke(scope)
  *   │
  *   └── "finalOutput" is in scope
  * </pre>
@@ -26,6 +32,15 @@ import org.springframework.stereotype.Component;
  * routingExtractionAgent.invoke(scope);
  * // scope now has "finalOutput"
  * </pre>
+ *
+ * <h3>Very large bundles:</h3>
+ * <p>Instead of "sourceText", upstream may seed {@value MappedDocument#SOURCE_PATH_KEY}
+ * with the extracted-text file. The file is memory-mapped once per run, published under
+ * {@value MappedDocument#DOCUMENT_KEY} and counted without being decoded whole. On the
+ * direct path its text is then written to "sourceText"; on the chunked path
+ * {@link MapPhaseAgent} plans over the same mapping and decodes one chunk at a time, and
+ * "sourceText" holds {@link MappedDocument#SOURCE_TEXT_PLACEHOLDER} for the reduce and
+ * critic agents.</p>
  */
 @Log4j2
 @Component
@@ -40,11 +55,11 @@ public class RoutingExtractionAgent implements UntypedAgent {
     @Override
     public void invoke(AgenticScope scope) {
         Object sourceTextObj = scope.readState("sourceText");
-        if (sourceTextObj == null) {
+        Object sourcePathObj = scope.readState(MappedDocument.SOURCE_PATH_KEY);
+        if (sourceTextObj == null && sourcePathObj == null) {
             throw new IllegalStateException(
                     "sourceText not found in scope — upstream node must seed it");
         }
-        String sourceText = sourceTextObj.toString();
 
         Object fileNamesObj = scope.readState("fileNames");
         String fileNames = fileNamesObj != null ? fileNamesObj.toString() : "";
@@ -52,18 +67,41 @@ public class RoutingExtractionAgent implements UntypedAgent {
             log.warn("fileNames is empty in scope — agents may produce incomplete output");
         }
 
-        boolean needsChunking = workflowConfig.isChunkingEnabled()
-                && DocumentChunker.estimateTokens(sourceText) > workflowConfig.getMaxTokenEstimate();
+        if (sourceTextObj != null) {
+            route(scope, resolveTokenEstimate(scope, sourceTextObj.toString()));
+            return;
+        }
 
-        if (!needsChunking) {
-            log.info("Document fits within token limit ({} estimated tokens) — using DIRECT path",
-                    DocumentChunker.estimateTokens(sourceText));
-            workflowConfig.buildDirectWorkflow().invoke(scope);
-        } else {
-            log.info("Document exceeds token limit ({} estimated tokens > {}) — using CHUNKED path",
-                    DocumentChunker.estimateTokens(sourceText),
-                    workflowConfig.getMaxTokenEstimate());
-            workflowConfig.buildChunkedWorkflow().invoke(scope);
+        // ── Map the file once; the map phase reads the same mapping from scope ──
+        Path sourcePath = toPath(sourcePathObj);
+        try (MappedDocument document = MappedDocument.open(sourcePath)) {
+            scope.writeState(MappedDocument.DOCUMENT_KEY, document);
+            int estimatedTokens = resolveMappedTokenEstimate(scope, document);
+            seedSourceTextFromFile(scope, document, needsChunking(estimatedTokens));
+            route(scope, estimatedTokens);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map source document " + sourcePath, e);
+        }
+    }
+
+    private boolean needsChunking(int estimatedTokens) {
+        return workflowConfig.isChunkingEnabled()
+                && estimatedTokens > workflowConfig.getMaxTokenEstimate();
+    }
+
+    private void route(AgenticScope scope, int estimatedTokens) {
+        // Model calls queue under this run's flowId in the LLM limiter
+        try (WorkflowMdc ignored = WorkflowMdc.join()) {
+            if (!needsChunking(estimatedTokens)) {
+                log.info("Document fits within token limit ({} estimated tokens) — using DIRECT path",
+                        estimatedTokens);
+                workflowConfig.directWorkflow().invoke(scope);
+            } else {
+                log.info("Document exceeds token limit ({} estimated tokens > {}) — using CHUNKED path",
+                        estimatedTokens,
+                        workflowConfig.getMaxTokenEstimate());
+                workflowConfig.chunkedWorkflow().invoke(scope);
+            }
         }
 
         // Verify finalOutput was produced
@@ -74,4 +112,47 @@ public class RoutingExtractionAgent implements UntypedAgent {
             log.info("CSM extraction complete — finalOutput in scope");
         }
     }
+
+    /**
+     * Returns the token estimate for sourceText, computing it at most once per request.
+     * The value is cached in scope under {@link TokenCounter#SOURCE_TOKEN_ESTIMATE_KEY}
+     * so downstream agents and guardrails reuse it instead of re-scanning the document.
+     */
+    private int resolveTokenEstimate(AgenticScope scope, String sourceText) {
+        Object cached = scope.readState(TokenCounter.SOURCE_TOKEN_ESTIMATE_KEY);
+        if (cached instanceof Number n) {
+            return n.intValue();
+        }
+        int estimatedTokens = workflowConfig.getTokenCounter().count(sourceText);
+        scope.writeState(TokenCounter.SOURCE_TOKEN_ESTIMATE_KEY, estimatedTokens);
+        return estimatedTokens;
+    }
+
+    /**
+     * Same as {@link #resolveTokenEstimate} for a document handed over as a file —
+     * counted over the memory mapping, never decoded as one string.
+     */
+    private int resolveMappedTokenEstimate(AgenticScope scope, MappedDocument document) {
+        Object cached = scope.readState(TokenCounter.SOURCE_TOKEN_ESTIMATE_KEY);
+        if (cached instanceof Number n) {
+            return n.intValue();
+        }
+        int estimatedTokens = document.countTokens(workflowConfig.getTokenCounter());
+        scope.writeState(TokenCounter.SOURCE_TOKEN_ESTIMATE_KEY, estimatedTokens);
+        return estimatedTokens;
+    }
+
+    /**
+     * Direct path: the document is small enough to decode. Chunked path: the map phase
+     * plans over the mapping, so downstream agents only get a placeholder.
+     */
+    private void seedSourceTextFromFile(AgenticScope scope, MappedDocument document, boolean needsChunking) {
+        scope.writeState("sourceText", needsChunking
+                ? MappedDocument.SOURCE_TEXT_PLACEHOLDER
+                : document.readString());
+    }
+
+    static Path toPath(Object sourcePath) {
+        return sourcePath instanceof Path path ? path : Path.of(sourcePath.toString());
+    }
 }
@@ -0,0 +1,52 @@
+package com.eainde.agent.mapper_reducer;
+
+import com.db.clm.kyc.ai.chunking.ChunkMergeTree;
+import dev.langchain4j.agentic.UntypedAgent;
+import dev.langchain4j.agentic.scope.AgenticScope;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Map;
+
+/**
+ * MERGE phase — LLM chunk merger applied as a k-ary tree ({@code csm.merge.mode=tree}).
+ *
+ * <p>Drop-in replacement for the chunk merger agent in the chunked sequence: reads
+ * {@code chunkResults}, writes {@code mergedResult}. Groups of adjacent chunks are
+ * merged in parallel, then the group results, until one remains; fan-in is derived
+ * from {@code csm.merge.max-token-estimate} (see {@link ChunkMergeTree}).</p>
+ *
+ * <pre>
+ * invoke(scope):
+ *   scope["mergedResult"] = mergeTree.merge(scope["chunkResults"],
+ *                               group -> llmChunkMerger.invoke({chunkResults: group}))
+ * </pre>
+ */
+@Log4j2
+public class TreeChunkMergerAgent implements UntypedAgent {
+
+    private final ChunkMergeTree mergeTree;
+    private final UntypedAgent llmChunkMerger;
+
+    public TreeChunkMergerAgent(ChunkMergeTree mergeTree, UntypedAgent llmChunkMerger) {
+        this.mergeTree = mergeTree;
+        this.llmChunkMerger = llmChunkMerger;
+    }
+
+    @Override
+    public void invoke(AgenticScope scope) {
+        log.info("MERGE — tree chunk merge");
+
+        Object chunkResultsObj = scope.readState("chunkResults");
+        if (chunkResultsObj == null) {
+            throw new IllegalStateException(
+                    "chunkResults not found in scope — MapPhaseAgent must write it");
+        }
+
+        String mergedResult = mergeTree.merge(chunkResultsObj.toString(), chunkResults -> {
+            Object raw = llmChunkMerger.invoke(Map.of("chunkResults", chunkResults));
+            return raw != null ? raw.toString() : "{}";
+        });
+
+        scope.writeState("mergedResult", mergedResult);
+    }
+}
@@ -1,14 +1,13 @@
 package com.eainde.agent.mapper_reducer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.eainde.agent.engine.Wave5MergeEngine;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.scope.AgenticScope;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.IOException;
+
 /**
  * Merges Wave 5 parallel agent outputs into a single enrichedCandidates JSON.
  * This is a Java-only agent — NO LLM call.
@@ -49,10 +48,10 @@ import lombok.extern.log4j.Log4j2;
 @Log4j2
 public class Wave5MergerAgent implements UntypedAgent {
 
-    private final ObjectMapper objectMapper;
+    private final Wave5MergeEngine mergeEngine;
 
     public Wave5MergerAgent(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+        this.mergeEngine = new Wave5MergeEngine(objectMapper);
     }
 
     @Override
@@ -79,116 +78,14 @@ public class Wave5MergerAgent implements UntypedAgent {
     }
 
     /**
-     * Core merge logic — match by id, overlay fields.
+     * Core merge logic — match by id, overlay fields (see {@link Wave5MergeEngine}).
      */
     String mergeOutputs(String classifiedJson,
                         String countryOverridesJson,
                         String titleExtractionsJson,
-                        String scoredCandidatesJson) throws JsonProcessingException {
-
-        JsonNode classified = objectMapper.readTree(
-                classifiedJson.isBlank() ? "{}" : classifiedJson);
-        JsonNode countryOverrides = objectMapper.readTree(
-                countryOverridesJson.isBlank() ? "{}" : countryOverridesJson);
-        JsonNode titleExtractions = objectMapper.readTree(
-                titleExtractionsJson.isBlank() ? "{}" : titleExtractionsJson);
-        JsonNode scoredCandidates = objectMapper.readTree(
-                scoredCandidatesJson.isBlank() ? "{}" : scoredCandidatesJson);
-
-        // Get candidate arrays — try common key names
-        ArrayNode baseCandidates = findCandidateArray(classified,
-                "classified_candidates", "candidates");
-        ArrayNode countryArray = findCandidateArray(countryOverrides,
-                "country_overrides", "candidates");
-        ArrayNode titleArray = findCandidateArray(titleExtractions,
-                "title_extractions", "candidates");
-        ArrayNode scoreArray = findCandidateArray(scoredCandidates,
-                "scored_candidates", "candidates");
-
-        // Merge
-        ArrayNode enriched = objectMapper.createArrayNode();
-
-        for (int i = 0; i < baseCandidates.size(); i++) {
-            ObjectNode candidate = baseCandidates.get(i).deepCopy();
-            int candidateId = candidate.has("id") ? candidate.get("id").asInt() : i + 1;
-
-            // Agent 6: Country Override fields
-            JsonNode countryRecord = findById(countryArray, candidateId);
-            if (countryRecord != null) {
-                overlayField(candidate, countryRecord, "isCsm");
-                overlayField(candidate, countryRecord, "countryProfileApplied");
-                overlayField(candidate, countryRecord, "countryOverrideNote");
-            }
-
-            // Agent 7: Title Extractor fields
-            JsonNode titleRecord = findById(titleArray, candidateId);
-            if (titleRecord != null) {
-                overlayField(candidate, titleRecord, "jobTitle");
-                overlayField(candidate, titleRecord, "personalTitle");
-                overlayField(candidate, titleRecord, "anchorNote");
-            }
-
-            // Agent 8: Scoring Engine fields
-            JsonNode scoreRecord = findById(scoreArray, candidateId);
-            if (scoreRecord != null) {
-                overlayField(candidate, scoreRecord, "score");
-                overlayField(candidate, scoreRecord, "scoreBreakdown");
-                overlayField(candidate, scoreRecord, "qualityGateNotes");
-            }
-
-            enriched.add(candidate);
-        }
-
-        // Wrap in result object
-        ObjectNode result = objectMapper.createObjectNode();
-        result.set("enriched_candidates", enriched);
-
-        log.info("Merged {} base candidates with {} country overrides, {} title extractions, {} scores",
-                baseCandidates.size(), countryArray.size(),
-                titleArray.size(), scoreArray.size());
-
-        return objectMapper.writeValueAsString(result);
-    }
-
-    // =========================================================================
-    //  Internal Helpers
-    // =========================================================================
-
-    /**
-     * Finds a candidate array inside a JSON response.
-     * Tries multiple common key names since different agents use different keys.
-     */
-    private ArrayNode findCandidateArray(JsonNode root, String... possibleKeys) {
-        for (String key : possibleKeys) {
-            if (root.has(key) && root.get(key).isArray()) {
-                return (ArrayNode) root.get(key);
-            }
-        }
-        if (root.isArray()) {
-            return (ArrayNode) root;
-        }
-        return objectMapper.createArrayNode();
-    }
-
-    /**
-     * Finds a record by id within an array.
-     */
-    private JsonNode findById(ArrayNode array, int id) {
-        for (JsonNode node : array) {
-            if (node.has("id") && node.get("id").asInt() == id) {
-                return node;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Overlays a single field from source to target if it exists and is not null.
-     */
-    private void overlayField(ObjectNode target, JsonNode source, String fieldName) {
-        if (source.has(fieldName) && !source.get(fieldName).isNull()) {
-            target.set(fieldName, source.get(fieldName).deepCopy());
-        }
+                        String scoredCandidatesJson) throws IOException {
+        return mergeEngine.merge(classifiedJson, countryOverridesJson,
+                titleExtractionsJson, scoredCandidatesJson);
     }
 
     private String readString(AgenticScope scope, String key) {
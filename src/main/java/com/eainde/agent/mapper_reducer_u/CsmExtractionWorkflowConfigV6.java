@@ -2,30 +2,50 @@ package com.eainde.agent.mapper_reducer_u;
 
 package com.db.clm.kyc.ai.agents;
 
+import com.db.clm.kyc.ai.chunking.ChunkMergeTree;
+import com.db.clm.kyc.ai.chunking.DocumentChunker;
+import com.db.clm.kyc.ai.chunking.GovernancePageFilter;
+import com.db.clm.kyc.ai.chunking.TokenCounter;
 import com.db.clm.kyc.ai.config.AgentFactory;
 import com.db.clm.kyc.ai.config.AgentSpec;
 import com.db.clm.kyc.ai.model.ExtractionReview;
 import com.db.clm.kyc.ai.prompt.AgentNames;
+import com.eainde.agent.engine.AgentCache;
+import com.eainde.agent.engine.GateEngine;
+import com.eainde.agent.engine.GatedClassifierAgent;
+import com.eainde.agent.engine.IncrementalReview;
+import com.eainde.agent.engine.OutputPatcher;
+import com.eainde.agent.engine.PipelinedReduce;
+import com.eainde.agent.engine.ScoringEngineAgent;
+import com.eainde.agent.engine.TailAssembler;
+import com.eainde.agent.engine.TailAssemblerAgent;
+import com.eainde.agent.thread.BoundedParallelExecutor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.scope.AgenticScope;
 import dev.langchain4j.agentic.observability.AgentMonitor;
-import jakarta.annotation.PostConstruct;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+
 /**
  * CSM Extraction Pipeline V6 — 12-agent wave-based decomposition with Map-Reduce.
  *
  * <p>Responsible for:</p>
  * <ul>
  *   <li>Declaring all 14 AgentSpecs (12 pipeline + chunk merger + consolidation)</li>
- *   <li>Creating all UntypedAgent instances from specs</li>
- *   <li>Building reusable sub-workflows (mapSequence, reduceSequence, tailSequence)</li>
- *   <li>Building the full direct workflow (single sequence + loop)</li>
+ *   <li>Serving UntypedAgent instances from specs</li>
+ *   <li>Serving reusable sub-workflows (mapSequence, reduceSequence, tailSequence)</li>
+ *   <li>Serving the full direct workflow (single sequence + loop)</li>
  * </ul>
  *
+ * <p>Agents and workflows are built on first use through {@link AgentCache} and
+ * rebuilt after a prompt reload.</p>
+ *
  * <h3>Direct path (small doc) — one sequence, framework manages scope:</h3>
  * <pre>
  * Agent 1→2→3→4→5→6→7→8→Wave5Merge→9→10→11→Loop(12→11)
@@ -45,7 +65,9 @@ public class CsmExtractionWorkflowConfigV6 {
     static final double EXTRACTION_QUALITY_THRESHOLD   = 0.85;
 
     private final AgentFactory agentFactory;
+    private final AgentCache agentCache;
     private final ObjectMapper objectMapper;
+    private final TokenCounter tokenCounter;
 
     private static final AgentMonitor monitor = new AgentMonitor();
 
@@ -66,41 +88,90 @@ public class CsmExtractionWorkflowConfigV6 {
     @Value("${csm.chunking.page-delimiter:\\f}")
     private String pageDelimiterRegex;
 
-    @Value("${csm.batching.enabled:true}")
-    private boolean batchingEnabled;
+    /** "pages" = fixed pages-per-chunk windows; "tokens" = pack pages up to max-token-estimate. */
+    @Value("${csm.chunking.packing:pages}")
+    private String chunkPacking;
 
-    @Value("${csm.batching.batch-size:50}")
-    private int batchSize;
+    @Value("${csm.chunking.overlap-tokens:4000}")
+    private int overlapTokens;
+
+    @Value("${csm.chunking.page-filter.enabled:false}")
+    private boolean pageFilterEnabled;
+
+    @Value("${csm.chunking.page-filter.min-score:1.0}")
+    private double pageFilterMinScore;
+
+    /** Map-phase chunks in flight at once, shared by all requests using the same model. */
+    @Value("${csm.map.max-concurrency:4}")
+    private int mapMaxConcurrency;
+
+    /** Model key the map concurrency limit applies to. */
+    @Value("${csm.map.model:${csm.chunking.token-model:default}}")
+    private String mapModel;
+
+    /** Reduce batches in flight at once, shared by all requests (key {@code <csm.map.model>/reduce}). */
+    @Value("${csm.reduce.max-concurrency:4}")
+    private int reduceMaxConcurrency;
 
-    // ── Agent instances (created at startup) ────────────────────────────
+    private BoundedParallelExecutor mapExecutor;
+    private BoundedParallelExecutor reduceExecutor;
 
-    private UntypedAgent candidateExtractor;
-    private UntypedAgent sourceClassifier;
-    private UntypedAgent nameNormalizer;
-    private UntypedAgent dedupLinker;
-    private UntypedAgent csmClassifier;
-    private UntypedAgent countryOverride;
-    private UntypedAgent titleExtractor;
-    private UntypedAgent scoringEngine;
-    private UntypedAgent reasonAssembler;
-    private UntypedAgent outputFormatter;
-    private UntypedAgent firstCritic;
-    private UntypedAgent outputRefiner;
-    private UntypedAgent chunkMerger;
+    /**
+     * "deterministic" = Java merge, LLM only for near-match groups; "llm" = chunk merger agent
+     * on everything; "tree" = chunk merger agent over groups of adjacent chunks, level by level.
+     */
+    @Value("${csm.merge.mode:deterministic}")
+    private String mergeMode;
+
+    /** Largest chunk merger prompt payload; bigger payloads are merged as a tree. */
+    @Value("${csm.merge.max-token-estimate:${csm.chunking.max-token-estimate:100000}}")
+    private int mergeMaxTokenEstimate;
+
+    /** Tree merge: chunk merger calls of one level in flight at once, shared by all requests. */
+    @Value("${csm.merge.max-concurrency:2}")
+    private int mergeMaxConcurrency;
+
+    private BoundedParallelExecutor mergeExecutor;
+
+    /** Agent 8: "llm" = scoring engine agent; "java" = {@link ScoringEngineAgent}, no LLM call. */
+    @Value("${csm.scoring.engine:llm}")
+    private String scoringEngineMode;
 
-    // ── Sub-workflows ───────────────────────────────────────────────────
+    /** Agents 9-10: "llm" = reason assembler + output formatter; "java" = {@link TailAssembler}. */
+    @Value("${csm.tail.mode:llm}")
+    private String tailMode;
 
-    /** Agents 1→2→3: per-chunk extraction. Final output key: normalizedCandidates */
-    private UntypedAgent mapSequence;
+    /** Agent 5: resolve gates 1, 6 and 7 in Java and send only the rest to the classifier. */
+    @Value("${csm.classifier.pre-gates.enabled:false}")
+    private boolean classifierPreGatesEnabled;
 
-    /** Agents 4→5→6→7→8→Wave5Merge: per-batch reduce. Final output key: enrichedCandidates */
-    private UntypedAgent reduceSequence;
+    /** Reference date for gate 1 (former officers), ISO-8601; empty = today. */
+    @Value("${csm.classifier.as-of-date:}")
+    private String classifierAsOfDate;
 
-    /** Agents 9→10: post-reduce tail. Final output key: finalOutput */
-    private UntypedAgent tailSequence;
+    /** Chunked-path refiner: "full" = rewrite finalOutput; "patch" = per-record patches ({@link OutputPatcher}). */
+    @Value("${csm.refiner.mode:full}")
+    private String refinerMode;
 
-    /** Full direct workflow: all 12 agents + critic loop. Final output key: finalOutput */
-    private UntypedAgent directWorkflow;
+    /** Chunked-path loop critic: "full" = re-review everything; "incremental" = changed records only. */
+    @Value("${csm.critic.mode:full}")
+    private String criticMode;
+
+    @Value("${csm.batching.enabled:true}")
+    private boolean batchingEnabled;
+
+    @Value("${csm.batching.batch-size:50}")
+    private int batchSize;
+
+    /** Batched REDUCE: overlap batches across waves (see {@link PipelinedReduce}) instead of one task per batch. */
+    @Value("${csm.reduce.pipelined:false}")
+    private boolean reducePipelined;
+
+    /** Pipelined REDUCE: batches waiting in front of each wave. */
+    @Value("${csm.reduce.queue-capacity:2}")
+    private int reduceQueueCapacity;
+
+    private PipelinedReduce pipelinedReduce;
 
     // =========================================================================
     //  Agent Specs — all String-based I/O via AgenticScope
@@ -220,6 +291,22 @@ public class CsmExtractionWorkflowConfigV6 {
             .listener(monitor)
             .build();
 
+    static final AgentSpec OUTPUT_PATCHER_SPEC = AgentSpec
+            .of(AgentNames.OUTPUT_PATCHER,
+                    "Returns per-record patches for critic-identified issues")
+            .inputs("flaggedRecords", "reviewIssues", "referenceCandidates")
+            .outputKey("outputPatches")
+            .listener(monitor)
+            .build();
+
+    static final AgentSpec INCREMENTAL_CRITIC_SPEC = AgentSpec
+            .of(AgentNames.INCREMENTAL_CRITIC,
+                    "Re-reviews only the records changed by the last refinement")
+            .inputs("changedRecords", "openIssues", "sourceExcerpts")
+            .outputKey("incrementalReview")
+            .listener(monitor)
+            .build();
+
     static final AgentSpec LOOP_CRITIC_SPEC = AgentSpec
             .of(AgentNames.EXTRACTION_CRITIC,
                     "Re-evaluates refined output against compliance checklist")
@@ -233,76 +320,90 @@ public class CsmExtractionWorkflowConfigV6 {
     // =========================================================================
 
     public CsmExtractionWorkflowConfigV6(AgentFactory agentFactory,
-                                         ObjectMapper objectMapper) {
+                                         AgentCache agentCache,
+                                         ObjectMapper objectMapper,
+                                         TokenCounter tokenCounter) {
         this.agentFactory = agentFactory;
+        this.agentCache = agentCache;
         this.objectMapper = objectMapper;
+        this.tokenCounter = tokenCounter;
     }
 
     // =========================================================================
-    //  Initialization — create agents and build workflows
+    //  Workflow Builders — called by AgentCache on first use per prompt generation
     // =========================================================================
 
-    @PostConstruct
-    void init() {
-        log.info("Initializing CSM extraction V6 — creating agents and workflows");
-
-        // ── Create agent instances from specs ───────────────────────────
-        this.candidateExtractor = agentFactory.create(CANDIDATE_EXTRACTOR_SPEC);
-        this.sourceClassifier   = agentFactory.create(SOURCE_CLASSIFIER_SPEC);
-        this.nameNormalizer     = agentFactory.create(NAME_NORMALIZER_SPEC);
-        this.dedupLinker        = agentFactory.create(DEDUP_LINKER_SPEC);
-        this.csmClassifier      = agentFactory.create(CSM_CLASSIFIER_SPEC);
-        this.countryOverride    = agentFactory.create(COUNTRY_OVERRIDE_SPEC);
-        this.titleExtractor     = agentFactory.create(TITLE_EXTRACTOR_SPEC);
-        this.scoringEngine      = agentFactory.create(SCORING_ENGINE_SPEC);
-        this.reasonAssembler    = agentFactory.create(REASON_ASSEMBLER_SPEC);
-        this.outputFormatter    = agentFactory.create(OUTPUT_FORMATTER_SPEC);
-        this.firstCritic        = agentFactory.create(FIRST_CRITIC_SPEC);
-        this.outputRefiner      = agentFactory.create(OUTPUT_REFINER_SPEC);
-        this.chunkMerger        = agentFactory.create(CHUNK_MERGER_SPEC);
-
-        // ── Wave5 Merger (Java logic, not LLM) ─────────────────────────
-        Wave5MergerAgent wave5Merger = new Wave5MergerAgent(objectMapper);
-
-        // ── Build sub-workflows ─────────────────────────────────────────
-
-        // MAP: Agents 1→2→3 — used per-chunk in chunked path
-        this.mapSequence = agentFactory.sequence("normalizedCandidates",
-                candidateExtractor, sourceClassifier, nameNormalizer);
-
-        // REDUCE: Agents 4→5→6→7→8→Wave5Merge — used per-batch or single pass
-        this.reduceSequence = agentFactory.sequence("enrichedCandidates",
-                dedupLinker, csmClassifier, countryOverride, titleExtractor,
-                scoringEngine, wave5Merger);
-
-        // TAIL: Agents 9→10 — always on full set
-        this.tailSequence = agentFactory.sequence("finalOutput",
-                reasonAssembler, outputFormatter);
-
-        // ── Critic-Refiner Loop ─────────────────────────────────────────
+    /** Agents 1→2→3 — used per-chunk in chunked path. */
+    private UntypedAgent buildMapSequence() {
+        return agentFactory.sequence("normalizedCandidates",
+                agentCache.create(CANDIDATE_EXTRACTOR_SPEC),
+                agentCache.create(SOURCE_CLASSIFIER_SPEC),
+                agentCache.create(NAME_NORMALIZER_SPEC));
+    }
+
+    /** Agents 4→5→6→7→8→Wave5Merge — used per-batch or single pass. */
+    private UntypedAgent buildReduceSequence() {
+        return agentFactory.sequence("enrichedCandidates",
+                agentCache.create(DEDUP_LINKER_SPEC),
+                csmClassifier(),
+                agentCache.create(COUNTRY_OVERRIDE_SPEC),
+                agentCache.create(TITLE_EXTRACTOR_SPEC),
+                scoringEngine(),
+                new Wave5MergerAgent(objectMapper));
+    }
+
+    /** Agents 9→10 — always on full set (one Java agent when csm.tail.mode=java). */
+    private UntypedAgent buildTailSequence() {
+        return isJavaTail()
+                ? new TailAssemblerAgent(objectMapper)
+                : agentFactory.sequence("finalOutput",
+                        agentCache.create(REASON_ASSEMBLER_SPEC),
+                        agentCache.create(OUTPUT_FORMATTER_SPEC));
+    }
+
+    /**
+     * Builds the DIRECT path — full 12-agent sequence + critic-refiner loop.
+     *
+     * <pre>
+     * Agent 1→2→3→4→5→6→7→8→Wave5Merge→9→10→11→Loop(12→11)
+     * </pre>
+     */
+    private UntypedAgent buildDirectWorkflow() {
+        log.info("Building CSM extraction V6 — direct workflow");
+
         UntypedAgent refinementLoop = agentFactory.loop(
                 REFINEMENT_LOOP_MAX_ITERATIONS,
                 scope -> parseExtractionScore(scope) >= EXTRACTION_QUALITY_THRESHOLD,
                 OUTPUT_REFINER_SPEC, LOOP_CRITIC_SPEC);
 
-        // ── Direct workflow: full 12-agent sequence + loop ──────────────
-        this.directWorkflow = agentFactory.sequence("finalOutput",
-                candidateExtractor,      // Wave 1a → rawNames
-                sourceClassifier,        // Wave 1b → sourceClassification
-                nameNormalizer,          // Wave 2  → normalizedCandidates
-                dedupLinker,             // Wave 3  → dedupedCandidates
-                csmClassifier,           // Wave 4  → classifiedCandidates
-                countryOverride,         // Wave 5a → countryOverrides
-                titleExtractor,          // Wave 5b → titleExtractions
-                scoringEngine,           // Wave 5c → scoredCandidates
-                wave5Merger,             // Wave 5  → enrichedCandidates (Java, no LLM)
-                reasonAssembler,         // Wave 6  → reasonedCandidates
-                outputFormatter,         // Wave 7  → finalOutput
-                firstCritic,             // Wave 8  → extractionReview
-                refinementLoop           // Loop    → finalOutput (corrected)
+        return agentFactory.sequence("finalOutput",
+                agentCache.create(CANDIDATE_EXTRACTOR_SPEC),  // Wave 1a → rawNames
+                agentCache.create(SOURCE_CLASSIFIER_SPEC),    // Wave 1b → sourceClassification
+                agentCache.create(NAME_NORMALIZER_SPEC),      // Wave 2  → normalizedCandidates
+                agentCache.create(DEDUP_LINKER_SPEC),         // Wave 3  → dedupedCandidates
+                csmClassifier(),                              // Wave 4  → classifiedCandidates
+                agentCache.create(COUNTRY_OVERRIDE_SPEC),     // Wave 5a → countryOverrides
+                agentCache.create(TITLE_EXTRACTOR_SPEC),      // Wave 5b → titleExtractions
+                scoringEngine(),                              // Wave 5c → scoredCandidates
+                new Wave5MergerAgent(objectMapper),           // Wave 5  → enrichedCandidates (Java, no LLM)
+                getTailSequence(),                            // Wave 6-7 → finalOutput
+                agentCache.create(FIRST_CRITIC_SPEC),         // Wave 8  → extractionReview
+                refinementLoop                                // Loop    → finalOutput (corrected)
         );
+    }
 
-        log.info("CSM extraction V6 initialized — direct workflow + sub-workflows ready");
+    /** Agent 5 — gates 1/6/7 in Java first when {@code csm.classifier.pre-gates.enabled=true}. */
+    private UntypedAgent csmClassifier() {
+        return classifierPreGatesEnabled
+                ? new GatedClassifierAgent(buildGateEngine(), agentCache.create(CSM_CLASSIFIER_SPEC))
+                : agentCache.create(CSM_CLASSIFIER_SPEC);
+    }
+
+    /** Agent 8 — Java, no LLM call, when {@code csm.scoring.engine=java}. */
+    private UntypedAgent scoringEngine() {
+        return isJavaScoring()
+                ? new ScoringEngineAgent(objectMapper)
+                : agentCache.create(SCORING_ENGINE_SPEC);
     }
 
     // =========================================================================
@@ -310,25 +411,31 @@ public class CsmExtractionWorkflowConfigV6 {
     // =========================================================================
 
     /** Full direct workflow: all 12 agents + loop. Invoke with {sourceText, fileNames}. */
-    public UntypedAgent getDirectWorkflow()  { return directWorkflow; }
+    public UntypedAgent getDirectWorkflow()  { return agentCache.workflow("mapper_reducer_u.direct", this::buildDirectWorkflow); }
 
     /** MAP sub-workflow: agents 1→2→3. Invoke per chunk with {sourceText, fileNames}. */
-    UntypedAgent getMapSequence()            { return mapSequence; }
+    UntypedAgent getMapSequence()            { return agentCache.workflow("mapper_reducer_u.map", this::buildMapSequence); }
 
     /** REDUCE sub-workflow: agents 4→5→6→7→8→Wave5Merge. Invoke with {normalizedCandidates, sourceClassification, sourceText}. */
-    UntypedAgent getReduceSequence()         { return reduceSequence; }
+    UntypedAgent getReduceSequence()         { return agentCache.workflow("mapper_reducer_u.reduce", this::buildReduceSequence); }
 
     /** TAIL sub-workflow: agents 9→10. Invoke with {enrichedCandidates, fileNames}. */
-    UntypedAgent getTailSequence()           { return tailSequence; }
+    UntypedAgent getTailSequence()           { return agentCache.workflow("mapper_reducer_u.tail", this::buildTailSequence); }
 
     /** Chunk merger agent (LLM). Invoke with {chunkResults}. */
-    UntypedAgent getChunkMerger()            { return chunkMerger; }
+    UntypedAgent getChunkMerger()            { return agentCache.create(CHUNK_MERGER_SPEC); }
 
     /** Critic agent (LLM). For manual loop in chunked path. */
-    UntypedAgent getCritic()                 { return firstCritic; }
+    UntypedAgent getCritic()                 { return agentCache.create(FIRST_CRITIC_SPEC); }
 
     /** Refiner agent (LLM). For manual loop in chunked path. */
-    UntypedAgent getRefiner()                { return outputRefiner; }
+    UntypedAgent getRefiner()                { return agentCache.create(OUTPUT_REFINER_SPEC); }
+
+    /** Patcher agent (LLM) for {@code csm.refiner.mode=patch}. Invoke with {flaggedRecords, reviewIssues, referenceCandidates}. */
+    UntypedAgent getPatcher()                { return agentCache.create(OUTPUT_PATCHER_SPEC); }
+
+    /** Incremental critic (LLM) for {@code csm.critic.mode=incremental}. Invoke with {changedRecords, openIssues, sourceExcerpts}. */
+    UntypedAgent getIncrementalCritic()      { return agentCache.create(INCREMENTAL_CRITIC_SPEC); }
 
     /** Jackson mapper — shared. */
     ObjectMapper getObjectMapper()           { return objectMapper; }
@@ -340,8 +447,123 @@ public class CsmExtractionWorkflowConfigV6 {
     int getPagesPerChunk()        { return pagesPerChunk; }
     int getOverlapPages()         { return overlapPages; }
     String getPageDelimiterRegex(){ return pageDelimiterRegex; }
+    TokenCounter getTokenCounter(){ return tokenCounter; }
     boolean isBatchingEnabled()   { return batchingEnabled; }
     int getBatchSize()            { return batchSize; }
+    boolean isPipelinedReduce()   { return reducePipelined; }
+
+    boolean isDeterministicMerge() { return !"llm".equalsIgnoreCase(mergeMode) && !isTreeMerge(); }
+    boolean isTreeMerge()          { return "tree".equalsIgnoreCase(mergeMode); }
+    boolean isJavaScoring()        { return "java".equalsIgnoreCase(scoringEngineMode); }
+    boolean isJavaTail()           { return "java".equalsIgnoreCase(tailMode); }
+    boolean isPatchRefiner()       { return "patch".equalsIgnoreCase(refinerMode); }
+    boolean isIncrementalCritic()  { return "incremental".equalsIgnoreCase(criticMode); }
+
+    /** Rule-based pre-classification for agent 5 when {@code csm.classifier.pre-gates.enabled=true}. */
+    GateEngine buildGateEngine() {
+        return new GateEngine(objectMapper, classifierAsOfDate.isBlank()
+                ? LocalDate::now : () -> LocalDate.parse(classifierAsOfDate.trim()));
+    }
+
+    /** Selects patcher input and applies its patches when {@code csm.refiner.mode=patch}. */
+    OutputPatcher buildOutputPatcher() {
+        return new OutputPatcher(objectMapper);
+    }
+
+    /** Diffs refinement iterations and carries verdicts forward when {@code csm.critic.mode=incremental}. */
+    IncrementalReview buildIncrementalReview() {
+        return new IncrementalReview(objectMapper);
+    }
+
+    /** Java tail (agents 9-10) for the chunked path when {@code csm.tail.mode=java}. */
+    TailAssembler buildTailAssembler() {
+        return new TailAssembler(objectMapper);
+    }
+
+    /**
+     * Runs map-phase chunks on virtual threads, at most {@code csm.map.max-concurrency}
+     * per {@code csm.map.model}; results come back in chunk order.
+     */
+    synchronized BoundedParallelExecutor getMapExecutor() {
+        if (mapExecutor == null) {
+            mapExecutor = new BoundedParallelExecutor(mapModel, mapMaxConcurrency);
+        }
+        return mapExecutor;
+    }
+
+    /**
+     * Runs reduce batches in parallel, at most {@code csm.reduce.max-concurrency} under
+     * its own key ({@code <csm.map.model>/reduce}) — a reduce batch never waits for map
+     * permits held by another request's chunks.
+     */
+    synchronized BoundedParallelExecutor getReduceExecutor() {
+        if (reduceExecutor == null) {
+            reduceExecutor = new BoundedParallelExecutor(mapModel + "/reduce", reduceMaxConcurrency);
+        }
+        return reduceExecutor;
+    }
+
+    /**
+     * Pipelined REDUCE for {@code csm.reduce.pipelined=true}: agents 4, 5, 6, 7, 8 each
+     * wrapped in a single-agent sequence, model calls bounded by the reduce executor.
+     * Built once; the step sequences come from {@link AgentCache} on each call.
+     */
+    synchronized PipelinedReduce getPipelinedReduce() {
+        if (pipelinedReduce == null) {
+            pipelinedReduce = new PipelinedReduce(objectMapper,
+                    reduceStep("dedupedCandidates", () -> agentCache.create(DEDUP_LINKER_SPEC)),
+                    reduceStep("classifiedCandidates", this::csmClassifier),
+                    List.of(reduceStep("countryOverrides", () -> agentCache.create(COUNTRY_OVERRIDE_SPEC)),
+                            reduceStep("titleExtractions", () -> agentCache.create(TITLE_EXTRACTOR_SPEC)),
+                            reduceStep("scoredCandidates", this::scoringEngine)),
+                    getReduceExecutor(), reduceQueueCapacity);
+        }
+        return pipelinedReduce;
+    }
+
+    /** One pipelined REDUCE wave: {@code agent} as a single-agent sequence cached under its output key. */
+    private PipelinedReduce.Step reduceStep(String outputKey, Supplier<UntypedAgent> agent) {
+        return new PipelinedReduce.Step(outputKey, () -> agentCache.workflow("mapper_reducer_u.reduce." + outputKey,
+                () -> agentFactory.sequence(outputKey, agent.get())));
+    }
+
+    /**
+     * Builds the tree merger: chunk merger prompts are kept within
+     * {@code csm.merge.max-token-estimate}, groups of one level run on the merge executor.
+     */
+    ChunkMergeTree buildMergeTree() {
+        return new ChunkMergeTree(objectMapper, getTokenCounter(), mergeMaxTokenEstimate, getMergeExecutor());
+    }
+
+    /**
+     * Runs the merges of one tree level, at most {@code csm.merge.max-concurrency} under
+     * its own key ({@code <csm.map.model>/merge}) — merges never wait for map permits.
+     */
+    synchronized BoundedParallelExecutor getMergeExecutor() {
+        if (mergeExecutor == null) {
+            mergeExecutor = new BoundedParallelExecutor(mapModel + "/merge", mergeMaxConcurrency);
+        }
+        return mergeExecutor;
+    }
+
+    /**
+     * Builds the document chunker from chunking config — fixed page windows, or
+     * token-budget packing when {@code csm.chunking.packing=tokens}.
+     */
+    DocumentChunker buildChunker() {
+        DocumentChunker.Builder builder = DocumentChunker.builder()
+                .pagesPerChunk(pagesPerChunk)
+                .overlapPages(overlapPages)
+                .pageDelimiter(pageDelimiterRegex)
+                .tokenCounter(getTokenCounter());
+        if ("tokens".equalsIgnoreCase(chunkPacking)) {
+            builder.maxTokensPerChunk(maxTokenEstimate).overlapTokens(overlapTokens);
+        }
+        if (pageFilterEnabled) {
+            builder.pageFilter(new GovernancePageFilter(pageFilterMinScore));
+        }
+        return builder.build();
+    }
 
     // =========================================================================
     //  Shared Helpers
@@ -2,10 +2,19 @@ package com.eainde.agent.mapper_reducer_u;
 
 package com.db.clm.kyc.ai.agents;
 
-import com.db.clm.kyc.ai.chunking.CandidateBatcher;
 import com.db.clm.kyc.ai.chunking.ChunkContext;
-import com.db.clm.kyc.ai.chunking.DocumentChunker;
+import com.db.clm.kyc.ai.chunking.ChunkPlan;
+import com.db.clm.kyc.ai.chunking.ChunkMergeTree;
+import com.db.clm.kyc.ai.chunking.ChunkResultMerger;
+import com.db.clm.kyc.ai.chunking.GovernanceTermIndex;
+import com.db.clm.kyc.ai.chunking.MappedDocument;
+import com.db.clm.kyc.ai.chunking.TokenCounter;
 import com.db.clm.kyc.ai.model.MergedResult;
+import com.eainde.agent.engine.CandidateTable;
+import com.eainde.agent.engine.IncrementalReview;
+import com.eainde.agent.engine.OutputPatcher;
+import com.eainde.agent.engine.PipelinedReduce;
+import com.eainde.agent.thread.WorkflowMdc;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.agentic.ResultWithAgenticScope;
@@ -14,8 +23,9 @@ import dev.langchain4j.agentic.scope.AgenticScope;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -37,12 +47,17 @@ import java.util.Map;
  *
  * <h3>Chunked path:</h3>
  * <pre>
- * MAP:    per chunk → mapSequence.invokeWithAgenticScope() → collect from scope
- * MERGE:  chunkMerger.invoke(chunkResults) → mergedResult
- * BRIDGE: Java extracts normalizedCandidates + sourceClassification from mergedResult
- * REDUCE: per batch → reduceSequence.invokeWithAgenticScope() → collect enrichedCandidates
- *         merge batches → single enrichedCandidates (J4 id renumbering)
+ * MAP:    per chunk (parallel, bounded) → mapSequence.invokeWithAgenticScope() → collect from scope
+ *         each completed chunk → StreamingChunkMerger (pairwise overlap dedup with neighbours)
+ * MERGE:  ChunkResultMerger (Java) → mergedResult; chunkMerger.invoke() only for near matches
+ *         (csm.merge.mode=llm: chunkMerger.invoke(chunkResults) on everything;
+ *          csm.merge.mode=tree: chunkMerger over groups of adjacent chunks, level by level)
+ * BRIDGE: Java parses mergedResult once into a CandidateTable (candidates + global sources)
+ * REDUCE: table batches in parallel → reduceSequence.invokeWithAgenticScope() → table Wave 5 column
+ *         (csm.reduce.pipelined=true: batches pipelined wave by wave, 6∥7∥8 side by side)
+ *         table → single enrichedCandidates (J4 id renumbering)
  * TAIL:   tailSequence.invoke(enrichedCandidates, fileNames) → finalOutput
+ *         (csm.tail.mode=java: TailAssembler in Java, no LLM call)
  * CRITIC: manual loop → critic.invoke() / refiner.invoke() → exit when score ≥ 0.85
  * </pre>
  *
@@ -51,6 +66,14 @@ import java.util.Map;
  * String result = orchestrator.execute(sourceText, fileNames);
  * ExtractionOutput output = objectMapper.readValue(result, ExtractionOutput.class);
  * </pre>
+ *
+ * <h3>Very large bundles:</h3>
+ * <p>{@code execute(Path, String)} / {@code execute(InputStream, String)} memory-map the
+ * extracted text ({@link MappedDocument}) instead of taking one {@code String}. Only
+ * chunk slices are decoded for the MAP phase; a document small enough for the direct
+ * path is decoded whole. REDUCE and CRITIC receive
+ * {@link MappedDocument#SOURCE_TEXT_PLACEHOLDER} as sourceText — the evidence they need
+ * has already been captured per candidate in the MAP phase.</p>
  */
 @Log4j2
 @Component
@@ -76,18 +99,71 @@ public class CsmPipelineOrchestrator {
      * @return finalOutput JSON string (ExtractionOutput schema)
      */
     public String execute(String sourceText, String fileNames) {
+        // Model calls queue under this run's flowId in the LLM limiter
+        try (WorkflowMdc ignored = WorkflowMdc.join()) {
+            // Single scan — every routing/sizing decision below reuses this number
+            int estimatedTokens = config.getTokenCounter().count(sourceText);
+            boolean needsChunking = config.isChunkingEnabled()
+                    && estimatedTokens > config.getMaxTokenEstimate();
+
+            if (!needsChunking) {
+                log.info("DIRECT path — document fits within token limit ({} estimated tokens)",
+                        estimatedTokens);
+                return executeDirect(sourceText, fileNames, estimatedTokens);
+            } else {
+                log.info("CHUNKED path — document exceeds token limit ({} > {})",
+                        estimatedTokens,
+                        config.getMaxTokenEstimate());
+                return executeChunked(config.buildChunker().plan(sourceText), fileNames, sourceText);
+            }
+        }
+    }
+
+    /**
+     * Executes CSM extraction on an extracted-text file (UTF-8, pages delimited as in
+     * {@code csm.chunking.page-delimiter}) without holding it on the heap as one String.
+     *
+     * @param sourcePath extracted document text (all documents concatenated)
+     * @param fileNames  comma-separated document file names
+     * @return finalOutput JSON string (ExtractionOutput schema)
+     * @throws IOException if the file cannot be mapped
+     */
+    public String execute(Path sourcePath, String fileNames) throws IOException {
+        // Model calls queue under this run's flowId in the LLM limiter
+        try (WorkflowMdc ignored = WorkflowMdc.join();
+             MappedDocument document = MappedDocument.open(sourcePath)) {
+            return execute(document, fileNames);
+        }
+    }
+
+    /**
+     * Same as {@link #execute(Path, String)} for a stream; it is spooled to a temporary
+     * file, mapped, and the file is deleted when extraction completes.
+     */
+    public String execute(InputStream source, String fileNames) throws IOException {
+        // Model calls queue under this run's flowId in the LLM limiter
+        try (WorkflowMdc ignored = WorkflowMdc.join();
+             MappedDocument document = MappedDocument.open(source)) {
+            return execute(document, fileNames);
+        }
+    }
+
+    private String execute(MappedDocument document, String fileNames) {
+        int estimatedTokens = document.countTokens(config.getTokenCounter());
         boolean needsChunking = config.isChunkingEnabled()
-                && DocumentChunker.estimateTokens(sourceText) > config.getMaxTokenEstimate();
+                && estimatedTokens > config.getMaxTokenEstimate();
 
         if (!needsChunking) {
-            log.info("DIRECT path — document fits within token limit ({} estimated tokens)",
-                    DocumentChunker.estimateTokens(sourceText));
-            return executeDirect(sourceText, fileNames);
+            log.info("DIRECT path — mapped document fits within token limit ({} estimated tokens, {} bytes)",
+                    estimatedTokens, document.byteLength());
+            return executeDirect(document.readString(), fileNames, estimatedTokens);
         } else {
-            log.info("CHUNKED path — document exceeds token limit ({} > {})",
-                    DocumentChunker.estimateTokens(sourceText),
-                    config.getMaxTokenEstimate());
-            return executeChunked(sourceText, fileNames);
+            log.info("CHUNKED path — mapped document exceeds token limit ({} > {}, {} bytes)",
+                    estimatedTokens,
+                    config.getMaxTokenEstimate(),
+                    document.byteLength());
+            return executeChunked(config.buildChunker().plan(document), fileNames,
+                    MappedDocument.SOURCE_TEXT_PLACEHOLDER);
         }
     }
 
@@ -99,11 +175,12 @@ public class CsmPipelineOrchestrator {
      * Direct path: invokes the full 12-agent sequence + critic loop.
      * Framework manages AgenticScope internally — we just pass initial inputs.
      */
-    private String executeDirect(String sourceText, String fileNames) {
+    private String executeDirect(String sourceText, String fileNames, int estimatedTokens) {
         log.info("Executing direct workflow — 12 agents + critic loop");
 
         Object result = config.getDirectWorkflow().invoke(
-                Map.of("sourceText", sourceText, "fileNames", fileNames));
+                Map.of("sourceText", sourceText, "fileNames", fileNames,
+                        TokenCounter.SOURCE_TOKEN_ESTIMATE_KEY, estimatedTokens));
 
         log.info("Direct workflow complete");
         return result != null ? result.toString() : "{}";
@@ -116,44 +193,40 @@ public class CsmPipelineOrchestrator {
     /**
      * Chunked path: MAP → MERGE → BRIDGE → REDUCE (batching) → TAIL → CRITIC.
      * Each phase invokes sub-workflows manually, carrying state in Java variables.
+     *
+     * @param plan       chunks of the document (STEP 1, done by the caller)
+     * @param sourceText full text for REDUCE/CRITIC, or a placeholder for mapped documents
      */
-    private String executeChunked(String sourceText, String fileNames) {
+    private String executeChunked(ChunkPlan plan, String fileNames, String sourceText) {
 
         // ── STEP 1: Chunk the document ──────────────────────────────────
-        DocumentChunker chunker = DocumentChunker.builder()
-                .pagesPerChunk(config.getPagesPerChunk())
-                .overlapPages(config.getOverlapPages())
-                .pageDelimiter(config.getPageDelimiterRegex())
-                .build();
-
-        List<ChunkContext> chunks = chunker.chunk(sourceText);
-        log.info("Document split into {} chunks ({}pp each, {}pp overlap)",
-                chunks.size(), config.getPagesPerChunk(), config.getOverlapPages());
+        List<ChunkContext> chunks = plan.chunks();
+        log.info("Document split into {} chunks — {}", chunks.size(), plan.metrics());
 
-        // ── STEP 2: MAP — per-chunk agents 1→2→3 ───────────────────────
-        List<ChunkOutput> chunkOutputs = executeMapPhase(chunks, fileNames);
+        // ── STEP 2: MAP — per-chunk agents 1→2→3, overlap dedup streamed ─
+        StreamingChunkMerger streamingMerger = executeMapPhase(chunks, fileNames);
 
-        // ── STEP 3: MERGE — LLM chunk merger ───────────────────────────
-        String chunkResultsJson = buildChunkResultsJson(chunkOutputs);
-        log.info("Invoking chunk merger agent");
-        Object mergedResultRaw = config.getChunkMerger().invoke(
-                Map.of("chunkResults", chunkResultsJson));
-        String mergedResultJson = mergedResultRaw != null ? mergedResultRaw.toString() : "{}";
+        // ── STEP 3: MERGE — Java / tree / flat LLM per csm.merge.mode ───
+        String chunkResultsJson = streamingMerger.chunkResultsJson();
+        log.info("MERGE — {} overlap duplicates already removed pairwise",
+                streamingMerger.overlapDuplicates());
+        String mergedResultJson = executeMerge(chunkResultsJson);
 
-        // ── STEP 4: BRIDGE — extract what REDUCE agents need ───────────
-        BridgeOutput bridge = executeBridge(mergedResultJson);
+        // ── STEP 4: BRIDGE — parse merged candidates into the table ────
+        CandidateTable candidates = executeBridge(mergedResultJson);
 
         // ── STEP 5: REDUCE — agents 4→5→6→7→8→Wave5Merge (with batching) ─
-        String enrichedCandidates = executeReducePhase(
-                bridge.normalizedCandidates(),
-                bridge.sourceClassification(),
-                sourceText);
+        // Anchors were found in STEP 1's page pass; every reduce scope carries them
+        List<GovernanceTermIndex.Hit> anchors = plan.governanceAnchors();
+        String enrichedCandidates = candidates != null
+                ? executeReducePhase(candidates, sourceText, anchors)
+                : executeSingleReduce(mergedResultJson, "{}", sourceText, anchors);
 
         // ── STEP 6: TAIL — agents 9→10 (always on full set) ───────────
         String finalOutput = executeTailPhase(enrichedCandidates, fileNames);
 
         // ── STEP 7: CRITIC LOOP — agents 11→12 (manual loop) ──────────
-        return executeCriticLoop(finalOutput, sourceText, enrichedCandidates);
+        return executeCriticLoop(finalOutput, sourceText, enrichedCandidates, fileNames);
     }
 
     // =========================================================================
@@ -162,38 +235,73 @@ public class CsmPipelineOrchestrator {
 
     /**
      * Runs agents 1→2→3 per chunk using mapSequence.invokeWithAgenticScope().
-     * Each invocation gets its own scope. We read intermediate outputs from scope.
+     * Each invocation gets its own scope, so chunks run in parallel on virtual threads
+     * (at most {@code csm.map.max-concurrency} per model).
+     *
+     * <p>Each output is handed to a {@link StreamingChunkMerger} the moment its chunk
+     * completes, so overlap dedup between adjacent chunks and merger-entry JSON
+     * building happen while later chunks are still running.</p>
      */
-    private List<ChunkOutput> executeMapPhase(List<ChunkContext> chunks, String fileNames) {
+    private StreamingChunkMerger executeMapPhase(List<ChunkContext> chunks, String fileNames) {
         log.info("MAP phase — running agents 1-3 per chunk");
 
         UntypedAgent mapSequence = config.getMapSequence();
-        List<ChunkOutput> outputs = new ArrayList<>();
-
-        for (ChunkContext chunk : chunks) {
-            log.info("MAP — chunk {}/{}: pages {}-{}",
-                    chunk.chunkIndex() + 1, chunks.size(),
-                    chunk.pageStart(), chunk.pageEnd());
+        StreamingChunkMerger streamingMerger = new StreamingChunkMerger(
+                objectMapper, chunks.size(), this::buildChunkEntryJson);
+        config.getMapExecutor().invokeAll(chunks,
+                chunk -> executeMapChunk(mapSequence, chunk, chunks.size(), fileNames),
+                (chunk, output) -> streamingMerger.accept(output));
+
+        log.info("MAP phase complete — {} chunks processed", chunks.size());
+        return streamingMerger;
+    }
 
-            // Invoke map sequence with this chunk's text
-            // Each invocation creates a fresh scope
-            ResultWithAgenticScope<String> result = mapSequence.invokeWithAgenticScope(
-                    Map.of("sourceText", chunk.chunkText(),
-                            "fileNames", fileNames));
+    /** Runs the map sequence on one chunk in a fresh scope and reads its outputs. */
+    private ChunkOutput executeMapChunk(UntypedAgent mapSequence, ChunkContext chunk,
+                                        int chunkCount, String fileNames) {
+        log.info("MAP — chunk {}/{}: pages {}-{}",
+                chunk.chunkIndex() + 1, chunkCount,
+                chunk.pageStart(), chunk.pageEnd());
+
+        // Invoke map sequence with this chunk's text
+        // Each invocation creates a fresh scope
+        ResultWithAgenticScope<String> result = mapSequence.invokeWithAgenticScope(
+                Map.of("sourceText", chunk.chunkText().toString(),
+                        "fileNames", fileNames));
 
-            // Read intermediate outputs from the scope
-            AgenticScope scope = result.agenticScope();
-            String rawNames               = readScopeString(scope, "rawNames");
-            String sourceClassification   = readScopeString(scope, "sourceClassification");
-            String normalizedCandidates   = readScopeString(scope, "normalizedCandidates");
+        // Read intermediate outputs from the scope
+        AgenticScope scope = result.agenticScope();
+        String rawNames               = readScopeString(scope, "rawNames");
+        String sourceClassification   = readScopeString(scope, "sourceClassification");
+        String normalizedCandidates   = readScopeString(scope, "normalizedCandidates");
 
-            outputs.add(new ChunkOutput(chunk, rawNames, sourceClassification, normalizedCandidates));
+        log.info("MAP — chunk {}/{} complete", chunk.chunkIndex() + 1, chunkCount);
+        return new ChunkOutput(chunk, rawNames, sourceClassification, normalizedCandidates);
+    }
 
-            log.info("MAP — chunk {}/{} complete", chunk.chunkIndex() + 1, chunks.size());
+    /**
+     * Merges chunk results per {@code csm.merge.mode}. Whatever reaches the LLM chunk
+     * merger in deterministic or tree mode goes through a {@link ChunkMergeTree}, so no
+     * merger prompt exceeds {@code csm.merge.max-token-estimate}.
+     */
+    private String executeMerge(String chunkResultsJson) {
+        if (config.isDeterministicMerge()) {
+            ChunkMergeTree mergeTree = config.buildMergeTree();
+            return new ChunkResultMerger(objectMapper).merge(chunkResultsJson,
+                    residual -> mergeTree.merge(residual, this::invokeChunkMerger));
+        }
+        if (config.isTreeMerge()) {
+            return config.buildMergeTree().merge(chunkResultsJson, this::invokeChunkMerger);
         }
+        return invokeChunkMerger(chunkResultsJson);
+    }
 
-        log.info("MAP phase complete — {} chunks processed", outputs.size());
-        return outputs;
+    /** Invokes the LLM chunk merger agent and returns its mergedResult JSON. */
+    private String invokeChunkMerger(String chunkResultsJson) {
+        log.info("Invoking chunk merger agent");
+        Object mergedResultRaw = config.getChunkMerger().invoke(
+                Map.of("chunkResults", chunkResultsJson));
+        return mergedResultRaw != null ? mergedResultRaw.toString() : "{}";
     }
 
     // =========================================================================
@@ -201,32 +309,19 @@ public class CsmPipelineOrchestrator {
     // =========================================================================
 
     /**
-     * Translates chunk merger output into the format REDUCE agents expect.
-     * Agent 4 reads "normalizedCandidates" and "sourceClassification" —
-     * same keys Agent 3 writes in the direct path.
+     * Parses chunk merger output once into a {@link CandidateTable}. REDUCE renders
+     * the "normalizedCandidates" and "sourceClassification" prompt inputs Agent 4
+     * reads — same keys Agent 3 writes in the direct path — from the table.
+     *
+     * @return the table, or null if mergedResult could not be parsed
      */
-    private BridgeOutput executeBridge(String mergedResultJson) {
+    private CandidateTable executeBridge(String mergedResultJson) {
         log.info("BRIDGE — translating mergedResult for REDUCE phase");
 
         try {
             MergedResult merged = objectMapper.readValue(mergedResultJson, MergedResult.class);
-
-            // Build normalizedCandidates: {"normalized_candidates": [...]}
-            var candidatesWrapper = new LinkedHashMap<String, Object>();
-            candidatesWrapper.put("normalized_candidates",
-                    merged.mergedCandidates() != null ? merged.mergedCandidates() : List.of());
-            candidatesWrapper.put("entities_found", List.of());
-            String normalizedCandidates = objectMapper.writeValueAsString(candidatesWrapper);
-
-            // Build sourceClassification: {"source_classification": [...]}
-            var sourceWrapper = new LinkedHashMap<String, Object>();
-            sourceWrapper.put("source_classification",
-                    merged.globalSourceClassification() != null
-                            ? merged.globalSourceClassification() : List.of());
-            String sourceClassification = objectMapper.writeValueAsString(sourceWrapper);
-
-            int candidateCount = merged.mergedCandidates() != null
-                    ? merged.mergedCandidates().size() : 0;
+            CandidateTable table = CandidateTable.fromMergedResult(objectMapper, merged);
+            int candidateCount = table.size();
 
             if (merged.mergeStats() != null) {
                 log.info("BRIDGE — {} candidates (before: {}, removed: {}, overlap dupes: {})",
@@ -236,11 +331,11 @@ public class CsmPipelineOrchestrator {
                         merged.mergeStats().overlapDuplicates());
             }
 
-            return new BridgeOutput(normalizedCandidates, sourceClassification);
+            return table;
 
         } catch (JsonProcessingException e) {
             log.error("BRIDGE — failed to parse mergedResult, passing raw JSON", e);
-            return new BridgeOutput(mergedResultJson, "{}");
+            return null;
         }
     }
 
@@ -250,41 +345,54 @@ public class CsmPipelineOrchestrator {
 
     /**
      * Runs agents 4→5→6→7→8→Wave5Merge on the merged candidates.
-     * If candidate count exceeds batch size, splits into batches and merges results.
+     * If candidate count exceeds batch size, splits the table into batches, runs them
+     * in parallel (at most {@code csm.reduce.max-concurrency} per model) and collects each
+     * batch's enriched rows into the table's Wave 5 column. With
+     * {@code csm.reduce.pipelined=true} batches overlap across waves instead
+     * (see {@link PipelinedReduce}).
      */
-    private String executeReducePhase(String normalizedCandidates,
-                                      String sourceClassification,
-                                      String sourceText) {
+    private String executeReducePhase(CandidateTable candidates, String sourceText,
+                                      List<GovernanceTermIndex.Hit> anchors) {
         log.info("REDUCE phase — agents 4-8 + Wave5Merge");
 
-        CandidateBatcher batcher = new CandidateBatcher(objectMapper, config.getBatchSize());
-        int candidateCount = batcher.countCandidates(normalizedCandidates);
+        int candidateCount = candidates.size();
+        String sourceClassification = candidates.sourceClassificationJson();
 
         if (!config.isBatchingEnabled() || candidateCount <= config.getBatchSize()) {
             // ── Single pass ─────────────────────────────────────────────
             log.info("REDUCE — single pass ({} candidates)", candidateCount);
-            return executeSingleReduce(normalizedCandidates, sourceClassification, sourceText);
+            return executeSingleReduce(candidates.normalizedCandidatesJson(), sourceClassification, sourceText,
+                    anchors);
         }
 
         // ── Batched execution ───────────────────────────────────────────
-        List<String> batches = batcher.splitCandidatesJson(normalizedCandidates);
+        List<CandidateTable.Batch> batches = candidates.batches(config.getBatchSize());
         log.info("REDUCE — batching {} candidates into {} batches of {}",
                 candidateCount, batches.size(), config.getBatchSize());
 
-        List<String> batchResults = new ArrayList<>();
-
-        for (int i = 0; i < batches.size(); i++) {
-            log.info("REDUCE — batch {}/{}", i + 1, batches.size());
-
-            String batchEnriched = executeSingleReduce(
-                    batches.get(i), sourceClassification, sourceText);
-            batchResults.add(batchEnriched);
-
-            log.info("REDUCE — batch {}/{} complete", i + 1, batches.size());
+        if (config.isPipelinedReduce()) {
+            // Batches overlap across waves, each rendered as it enters Wave 3; enriched
+            // rows are collected as each batch merges
+            config.getPipelinedReduce().reduce(batches, CandidateTable.Batch::normalizedCandidatesJson,
+                    sourceClassification, sourceText, anchors,
+                    (index, batchEnriched) -> candidates.putEnriched(batches.get(index), batchEnriched));
+            String merged = candidates.enrichedCandidatesJson();
+            log.info("REDUCE complete — {} batches pipelined and merged", batches.size());
+            return merged;
         }
 
-        // Merge batch results + renumber ids (J4)
-        String merged = batcher.mergeEnrichedResultsJson(batchResults);
+        // Each batch gets its own scope — run them in parallel
+        config.getReduceExecutor().invokeAll(batches, batch -> {
+            log.info("REDUCE — batch {}/{}", batch.index() + 1, batches.size());
+            String batchEnriched = executeSingleReduce(
+                    batch.normalizedCandidatesJson(), sourceClassification, sourceText, anchors);
+            candidates.putEnriched(batch, batchEnriched);
+            log.info("REDUCE — batch {}/{} complete", batch.index() + 1, batches.size());
+            return batch;
+        });
+
+        // Enriched rows in J4 order + renumber ids
+        String merged = candidates.enrichedCandidatesJson();
         log.info("REDUCE complete — {} batches merged", batches.size());
         return merged;
     }
@@ -292,15 +400,20 @@ public class CsmPipelineOrchestrator {
     /**
      * Single REDUCE pass: invokes reduceSequence (agents 4-8 + Wave5Merge)
      * and reads enrichedCandidates from the resulting scope.
+     *
+     * @param anchors the document's governance anchors, seeded as
+     *                {@value GovernanceTermIndex#SCOPE_KEY}
      */
     private String executeSingleReduce(String normalizedCandidates,
                                        String sourceClassification,
-                                       String sourceText) {
+                                       String sourceText,
+                                       List<GovernanceTermIndex.Hit> anchors) {
         ResultWithAgenticScope<String> result = config.getReduceSequence()
                 .invokeWithAgenticScope(Map.of(
                         "normalizedCandidates", normalizedCandidates,
                         "sourceClassification", sourceClassification,
-                        "sourceText", sourceText));
+                        "sourceText", sourceText,
+                        GovernanceTermIndex.SCOPE_KEY, anchors));
 
         AgenticScope scope = result.agenticScope();
 
@@ -321,9 +434,19 @@ public class CsmPipelineOrchestrator {
     // =========================================================================
 
     /**
-     * Post-reduce: Reason Assembly → Output Formatting on full enriched set.
+     * Post-reduce: Reason Assembly → Output Formatting on full enriched set — in Java
+     * when {@code csm.tail.mode=java}.
      */
     private String executeTailPhase(String enrichedCandidates, String fileNames) {
+        if (config.isJavaTail()) {
+            log.info("TAIL phase — reason assembly + output formatting in Java");
+            try {
+                return config.buildTailAssembler().assemble(enrichedCandidates, fileNames);
+            } catch (IOException e) {
+                throw new IllegalStateException("TAIL phase — enrichedCandidates is not valid JSON", e);
+            }
+        }
+
         log.info("TAIL phase — agents 9-10 (reason assembly + output formatting)");
 
         ResultWithAgenticScope<String> result = config.getTailSequence()
@@ -351,10 +474,16 @@ public class CsmPipelineOrchestrator {
      * <p>In the direct path, the loop is built by agentFactory.loop() and
      * runs inside the sequence. In the chunked path, we run it manually
      * because there is no shared scope across phases.</p>
+     *
+     * <p>With {@code csm.refiner.mode=patch} each round sends only the flagged records
+     * to the patcher and applies its patches in Java (see {@link OutputPatcher}). With
+     * {@code csm.critic.mode=incremental} the loop critic only re-reviews the records
+     * that round changed (see {@link IncrementalReview}).</p>
      */
     private String executeCriticLoop(String finalOutput,
                                      String sourceText,
-                                     String enrichedCandidates) {
+                                     String enrichedCandidates,
+                                     String fileNames) {
         log.info("CRITIC phase — first critic + refiner loop (max {} iterations)",
                 CsmExtractionWorkflowConfigV6.REFINEMENT_LOOP_MAX_ITERATIONS);
 
@@ -382,14 +511,25 @@ public class CsmPipelineOrchestrator {
                     i, CsmExtractionWorkflowConfigV6.REFINEMENT_LOOP_MAX_ITERATIONS);
 
             // Refiner: fixes critic-identified issues
-            Object refined = refiner.invoke(Map.of(
-                    "finalOutput", finalOutput,
-                    "extractionReview", review,
-                    "enrichedCandidates", enrichedCandidates));
-            finalOutput = refined != null ? refined.toString() : finalOutput;
+            String previousOutput = finalOutput;
+            String patched = config.isPatchRefiner()
+                    ? executePatchRefiner(finalOutput, review, enrichedCandidates, fileNames)
+                    : null;
+            if (patched != null) {
+                finalOutput = patched;
+            } else {
+                Object refined = refiner.invoke(Map.of(
+                        "finalOutput", finalOutput,
+                        "extractionReview", review,
+                        "enrichedCandidates", enrichedCandidates));
+                finalOutput = refined != null ? refined.toString() : finalOutput;
+            }
 
-            // Critic: re-evaluates
-            review = critic.invoke(Map.of(
+            // Critic: re-evaluates (changed records only when csm.critic.mode=incremental)
+            String incremental = config.isIncrementalCritic()
+                    ? executeIncrementalCritic(previousOutput, review, finalOutput, sourceText)
+                    : null;
+            review = incremental != null ? incremental : critic.invoke(Map.of(
                     "finalOutput", finalOutput,
                     "sourceText", sourceText));
 
@@ -408,12 +548,72 @@ public class CsmPipelineOrchestrator {
         return finalOutput;
     }
 
+    /**
+     * Loop critic in incremental mode.
+     *
+     * @return the merged extractionReview, or null if a full review is needed instead
+     *         (too many changed records, invalid JSON, empty critic answer)
+     */
+    private String executeIncrementalCritic(String previousOutput, Object previousReview,
+                                            String refinedOutput, String sourceText) {
+        try {
+            IncrementalReview.Delta delta = config.buildIncrementalReview().diff(previousOutput,
+                    previousReview != null ? previousReview.toString() : "", refinedOutput, sourceText);
+            if (!delta.isIncremental()) {
+                log.info("{} records changed — running the full loop critic", delta.changedCount());
+                return null;
+            }
+
+            String criticOutput = null;
+            if (delta.needsCritic()) {
+                Object answer = config.getIncrementalCritic().invoke(Map.of(
+                        "changedRecords", delta.changedRecords(),
+                        "openIssues", delta.openIssues(),
+                        "sourceExcerpts", delta.sourceExcerpts()));
+                if (answer == null || answer.toString().isBlank()) return null;
+                criticOutput = answer.toString();
+            }
+            return delta.merge(criticOutput);
+        } catch (IOException e) {
+            log.warn("Incremental review failed on invalid JSON — running the full loop critic", e);
+            return null;
+        }
+    }
+
+    /**
+     * One refinement round in patch mode.
+     *
+     * @return the patched finalOutput, or null if the output or review is not valid
+     *         JSON — the caller then runs the full refiner
+     */
+    private String executePatchRefiner(String finalOutput, Object review,
+                                       String enrichedCandidates, String fileNames) {
+        OutputPatcher patcher = config.buildOutputPatcher();
+        try {
+            OutputPatcher.PatchRequest request = patcher.prepare(
+                    finalOutput, review != null ? review.toString() : "", enrichedCandidates);
+
+            Object patches = null;
+            if (request.needsModel()) {
+                patches = config.getPatcher().invoke(Map.of(
+                        "flaggedRecords", request.flaggedRecords(),
+                        "reviewIssues", request.issues(),
+                        "referenceCandidates", request.referenceCandidates()));
+            }
+            return patcher.apply(finalOutput, patches != null ? patches.toString() : null, fileNames);
+        } catch (IOException e) {
+            log.warn("Patch refinement failed on invalid JSON — falling back to the full refiner", e);
+            return null;
+        }
+    }
+
     // =========================================================================
     //  JSON Builders
     // =========================================================================
 
     /**
-     * Builds the chunkResults JSON that the Chunk Merger Agent expects.
+     * Builds one chunk's entry of the chunkResults JSON that the Chunk Merger Agent
+     * expects. {@link StreamingChunkMerger} joins the entries as:
      *
      * <pre>
      * { "chunks": [
@@ -424,29 +624,23 @@ public class CsmPipelineOrchestrator {
      * ] }
      * </pre>
      */
-    private String buildChunkResultsJson(List<ChunkOutput> chunkOutputs) {
-        StringBuilder sb = new StringBuilder("{\"chunks\":[");
-
-        for (int i = 0; i < chunkOutputs.size(); i++) {
-            if (i > 0) sb.append(',');
-            ChunkOutput co = chunkOutputs.get(i);
-            ChunkContext chunk = co.chunk();
-
-            sb.append('{');
-            sb.append("\"chunkIndex\":").append(chunk.chunkIndex()).append(',');
-            sb.append("\"pageStart\":").append(chunk.pageStart()).append(',');
-            sb.append("\"pageEnd\":").append(chunk.pageEnd()).append(',');
-            sb.append("\"overlapStartPage\":").append(chunk.overlapStartPage()).append(',');
-            sb.append("\"overlapEndPage\":").append(chunk.overlapEndPage()).append(',');
-            sb.append("\"isFirstChunk\":").append(chunk.isFirstChunk()).append(',');
-            sb.append("\"isLastChunk\":").append(chunk.isLastChunk()).append(',');
-            sb.append("\"rawNames\":").append(ensureJson(co.rawNames())).append(',');
-            sb.append("\"sourceClassification\":").append(ensureJson(co.sourceClassification())).append(',');
-            sb.append("\"normalizedCandidates\":").append(ensureJson(co.normalizedCandidates()));
-            sb.append('}');
-        }
+    private String buildChunkEntryJson(ChunkOutput co) {
+        ChunkContext chunk = co.chunk();
+        StringBuilder sb = new StringBuilder();
+
+        sb.append('{');
+        sb.append("\"chunkIndex\":").append(chunk.chunkIndex()).append(',');
+        sb.append("\"pageStart\":").append(chunk.pageStart()).append(',');
+        sb.append("\"pageEnd\":").append(chunk.pageEnd()).append(',');
+        sb.append("\"overlapStartPage\":").append(chunk.overlapStartPage()).append(',');
+        sb.append("\"overlapEndPage\":").append(chunk.overlapEndPage()).append(',');
+        sb.append("\"isFirstChunk\":").append(chunk.isFirstChunk()).append(',');
+        sb.append("\"isLastChunk\":").append(chunk.isLastChunk()).append(',');
+        sb.append("\"rawNames\":").append(ensureJson(co.rawNames())).append(',');
+        sb.append("\"sourceClassification\":").append(ensureJson(co.sourceClassification())).append(',');
+        sb.append("\"normalizedCandidates\":").append(ensureJson(co.normalizedCandidates()));
+        sb.append('}');
 
-        sb.append("]}");
         return sb.toString();
     }
 
@@ -481,9 +675,4 @@ public class CsmPipelineOrchestrator {
             String rawNames,
             String sourceClassification,
             String normalizedCandidates) {}
-
-    /** BRIDGE output — translated format for REDUCE agents. */
-    record BridgeOutput(
-            String normalizedCandidates,
-            String sourceClassification) {}
 }
@@ -0,0 +1,216 @@
+package com.eainde.agent.mapper_reducer_u;
+
+import com.db.clm.kyc.ai.chunking.ChunkContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Incremental MERGE stage fed by the parallel MAP phase.
+ *
+ * <p>Instead of waiting for every chunk and handing the chunk merger one large
+ * payload, chunk outputs are accepted as they complete. As soon as two adjacent
+ * chunks are both available, the later chunk's overlap zone is deduplicated
+ * against the earlier one (chunk merger rule 3 — the lower chunkIndex wins), and
+ * the chunk's merger entry JSON is built. What is left for the LLM chunk merger is
+ * non-adjacent dedup, source merging and renumbering over a smaller payload.</p>
+ *
+ * <h3>Pairwise overlap rule:</h3>
+ * <pre>
+ * chunk k (k &gt; 0) drops a normalized candidate when
+ *   overlapStartPage(k) ≤ pageNumber ≤ overlapEndPage(k)
+ *   and its dedupKey or asciiDedupKey also occurs in chunk k-1 on a page of that
+ *   same overlap zone
+ * </pre>
+ *
+ * <p>Only the shared pages are compared: the same name on page 3 of chunk k-1 and
+ * page 18 of chunk k may be two mentions worth keeping (different roles, different
+ * dates), and deciding that is the chunk merger's job, not this stage's.</p>
+ *
+ * <p>Keys are taken from each chunk's output as produced by the MAP phase, so the
+ * result does not depend on completion order. Thread-safe: {@link #accept} is
+ * called from map worker threads.</p>
+ *
+ * <p>Only the chunked path of {@link CsmPipelineOrchestrator} streams through this
+ * stage. The MERGE step after it still runs over every chunk (in Java, or the LLM
+ * merger per {@code csm.merge.mode}); this stage only shrinks what it is given.</p>
+ */
+@Log4j2
+final class StreamingChunkMerger {
+
+    private static final String CANDIDATES_FIELD = "normalized_candidates";
+
+    private final ObjectMapper objectMapper;
+    private final Function<CsmPipelineOrchestrator.ChunkOutput, String> entryBuilder;
+
+    /** Outputs by chunkIndex; replaced by the deduplicated version once its pair is done. */
+    private final CsmPipelineOrchestrator.ChunkOutput[] outputs;
+    /** Dedup keys and pages of each chunk's candidates as produced by the MAP phase. */
+    private final List<List<CandidateKey>> keysByChunk;
+    /** Merger entry JSON per chunk, built once the chunk's candidates are final. */
+    private final String[] entries;
+    private int overlapDuplicates;
+
+    /**
+     * @param chunkCount   number of chunks the MAP phase will produce
+     * @param entryBuilder builds a chunk's chunk-merger entry JSON from its final output
+     */
+    StreamingChunkMerger(ObjectMapper objectMapper, int chunkCount,
+                         Function<CsmPipelineOrchestrator.ChunkOutput, String> entryBuilder) {
+        this.objectMapper = objectMapper;
+        this.entryBuilder = entryBuilder;
+        this.outputs = new CsmPipelineOrchestrator.ChunkOutput[chunkCount];
+        this.keysByChunk = new ArrayList<>(Collections.nCopies(chunkCount, (List<CandidateKey>) null));
+        this.entries = new String[chunkCount];
+    }
+
+    /**
+     * Accepts one completed chunk and resolves every adjacent pair it completes.
+     */
+    synchronized void accept(CsmPipelineOrchestrator.ChunkOutput output) {
+        int k = output.chunk().chunkIndex();
+        outputs[k] = output;
+        keysByChunk.set(k, candidateKeys(parseCandidates(output.normalizedCandidates())));
+
+        if (k == 0) {
+            finish(0);
+        } else if (outputs[k - 1] != null) {
+            resolvePair(k);
+        }
+        if (k + 1 < outputs.length && outputs[k + 1] != null) {
+            resolvePair(k + 1);
+        }
+    }
+
+    /**
+     * @return deduplicated outputs in chunk order
+     * @throws IllegalStateException if a chunk has not been accepted
+     */
+    synchronized List<CsmPipelineOrchestrator.ChunkOutput> outputs() {
+        checkComplete();
+        return List.of(outputs);
+    }
+
+    /**
+     * @return the chunkResults JSON for the chunk merger agent
+     * @throws IllegalStateException if a chunk has not been accepted
+     */
+    synchronized String chunkResultsJson() {
+        checkComplete();
+        return "{\"chunks\":[" + String.join(",", entries) + "]}";
+    }
+
+    /** @return candidates removed from overlap zones so far */
+    synchronized int overlapDuplicates() {
+        return overlapDuplicates;
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    /** Dedups chunk k's overlap zone against chunk k-1, then builds chunk k's entry. */
+    private void resolvePair(int k) {
+        CsmPipelineOrchestrator.ChunkOutput output = outputs[k];
+        ChunkContext chunk = output.chunk();
+        ObjectNode root = parseCandidates(output.normalizedCandidates());
+        JsonNode candidates = root == null ? null : root.get(CANDIDATES_FIELD);
+
+        if (candidates instanceof ArrayNode array && chunk.overlapStartPage() > 0) {
+            Set<String> previousKeys = overlapKeys(keysByChunk.get(k - 1), chunk);
+            ArrayNode kept = objectMapper.createArrayNode();
+            int removed = 0;
+            for (JsonNode candidate : array) {
+                if (inOverlapZone(candidate, chunk) && matchesAny(candidate, previousKeys)) {
+                    removed++;
+                } else {
+                    kept.add(candidate);
+                }
+            }
+            if (removed > 0) {
+                root.set(CANDIDATES_FIELD, kept);
+                outputs[k] = new CsmPipelineOrchestrator.ChunkOutput(chunk, output.rawNames(),
+                        output.sourceClassification(), root.toString());
+                overlapDuplicates += removed;
+                log.info("MERGE — chunk {}/{}: {} overlap duplicates of chunk {} removed (pages {}-{})",
+                        k + 1, outputs.length, removed, k, chunk.overlapStartPage(), chunk.overlapEndPage());
+            }
+        }
+        finish(k);
+    }
+
+    private void finish(int k) {
+        entries[k] = entryBuilder.apply(outputs[k]);
+    }
+
+    private static boolean inOverlapZone(JsonNode candidate, ChunkContext chunk) {
+        return inOverlapZone(candidate.path("pageNumber").asInt(0), chunk);
+    }
+
+    private static boolean inOverlapZone(int page, ChunkContext chunk) {
+        return page >= chunk.overlapStartPage() && page <= chunk.overlapEndPage();
+    }
+
+    private static boolean matchesAny(JsonNode candidate, Set<String> keys) {
+        String dedupKey = candidate.path("dedupKey").asText("");
+        String asciiKey = candidate.path("asciiDedupKey").asText("");
+        return (!dedupKey.isEmpty() && keys.contains(dedupKey))
+                || (!asciiKey.isEmpty() && keys.contains(asciiKey));
+    }
+
+    /** Keys of the previous chunk's candidates on the pages it shares with {@code chunk}. */
+    private static Set<String> overlapKeys(List<CandidateKey> previous, ChunkContext chunk) {
+        Set<String> keys = new HashSet<>();
+        for (CandidateKey candidate : previous) {
+            if (inOverlapZone(candidate.pageNumber(), chunk)) {
+                if (!candidate.dedupKey().isEmpty()) keys.add(candidate.dedupKey());
+                if (!candidate.asciiDedupKey().isEmpty()) keys.add(candidate.asciiDedupKey());
+            }
+        }
+        return keys;
+    }
+
+    private static List<CandidateKey> candidateKeys(ObjectNode root) {
+        List<CandidateKey> keys = new ArrayList<>();
+        JsonNode candidates = root == null ? null : root.get(CANDIDATES_FIELD);
+        if (candidates == null) return keys;
+        for (JsonNode candidate : candidates) {
+            keys.add(new CandidateKey(
+                    candidate.path("pageNumber").asInt(0),
+                    candidate.path("dedupKey").asText(""),
+                    candidate.path("asciiDedupKey").asText("")));
+        }
+        return keys;
+    }
+
+    /** Parses a chunk's normalizedCandidates; null if it is not a JSON object. */
+    private ObjectNode parseCandidates(String json) {
+        if (json == null || json.isBlank()) return null;
+        try {
+            JsonNode node = objectMapper.readTree(json);
+            return node instanceof ObjectNode object ? object : null;
+        } catch (Exception e) {
+            log.warn("MERGE — unparseable normalizedCandidates, chunk passed through unchanged");
+            return null;
+        }
+    }
+
+    private record CandidateKey(int pageNumber, String dedupKey, String asciiDedupKey) { }
+
+    private void checkComplete() {
+        for (int k = 0; k < entries.length; k++) {
+            if (entries[k] == null) {
+                throw new IllegalStateException("Chunk " + k + " has not completed the MAP phase");
+            }
+        }
+    }
+}
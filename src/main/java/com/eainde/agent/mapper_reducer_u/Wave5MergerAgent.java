@@ -2,16 +2,14 @@ package com.eainde.agent.mapper_reducer_u;
 
 package com.db.clm.kyc.ai.agents;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.eainde.agent.engine.Wave5MergeEngine;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import dev.langchain4j.agentic.ResultWithAgenticScope;
 import dev.langchain4j.agentic.UntypedAgent;
 import dev.langchain4j.agentic.scope.AgenticScope;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -43,10 +41,10 @@ import java.util.Map;
 @Log4j2
 public class Wave5MergerAgent implements UntypedAgent {
 
-    private final ObjectMapper objectMapper;
+    private final Wave5MergeEngine mergeEngine;
 
     public Wave5MergerAgent(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+        this.mergeEngine = new Wave5MergeEngine(objectMapper);
     }
 
     // =========================================================================
@@ -103,107 +101,23 @@ public class Wave5MergerAgent implements UntypedAgent {
     // =========================================================================
 
     /**
-     * Merges four agent outputs by matching candidates on {@code id}.
+     * Merges four agent outputs by matching candidates on {@code id}
+     * (see {@link Wave5MergeEngine}).
      *
      * <p>Also usable directly from CsmPipelineOrchestrator for the chunked path.</p>
      */
     public String mergeOutputs(String classifiedJson,
                                String countryOverridesJson,
                                String titleExtractionsJson,
-                               String scoredCandidatesJson) throws JsonProcessingException {
-
-        JsonNode classified      = parseJson(classifiedJson);
-        JsonNode countryOverrides = parseJson(countryOverridesJson);
-        JsonNode titleExtractions = parseJson(titleExtractionsJson);
-        JsonNode scoredCandidates = parseJson(scoredCandidatesJson);
-
-        ArrayNode baseCandidates = findCandidateArray(classified,
-                "classified_candidates", "candidates");
-        ArrayNode countryArray = findCandidateArray(countryOverrides,
-                "country_overrides", "candidates");
-        ArrayNode titleArray = findCandidateArray(titleExtractions,
-                "title_extractions", "candidates");
-        ArrayNode scoreArray = findCandidateArray(scoredCandidates,
-                "scored_candidates", "candidates");
-
-        ArrayNode enriched = objectMapper.createArrayNode();
-
-        for (int i = 0; i < baseCandidates.size(); i++) {
-            ObjectNode candidate = baseCandidates.get(i).deepCopy();
-            int candidateId = candidate.has("id") ? candidate.get("id").asInt() : i + 1;
-
-            // Agent 6: Country Override — isCsm OVERRIDE (stricter local rules)
-            JsonNode countryRecord = findById(countryArray, candidateId);
-            if (countryRecord != null) {
-                overlayField(candidate, countryRecord, "isCsm");
-                overlayField(candidate, countryRecord, "countryProfileApplied");
-                overlayField(candidate, countryRecord, "countryOverrideNote");
-            }
-
-            // Agent 7: Title Extractor — ADD titles
-            JsonNode titleRecord = findById(titleArray, candidateId);
-            if (titleRecord != null) {
-                overlayField(candidate, titleRecord, "jobTitle");
-                overlayField(candidate, titleRecord, "personalTitle");
-                overlayField(candidate, titleRecord, "anchorNote");
-            }
-
-            // Agent 8: Scoring Engine — ADD scores
-            JsonNode scoreRecord = findById(scoreArray, candidateId);
-            if (scoreRecord != null) {
-                overlayField(candidate, scoreRecord, "score");
-                overlayField(candidate, scoreRecord, "scoreBreakdown");
-                overlayField(candidate, scoreRecord, "qualityGateNotes");
-            }
-
-            enriched.add(candidate);
-        }
-
-        ObjectNode result = objectMapper.createObjectNode();
-        result.set("enriched_candidates", enriched);
-
-        log.info("Merged {} base candidates with {} overrides, {} titles, {} scores",
-                baseCandidates.size(), countryArray.size(),
-                titleArray.size(), scoreArray.size());
-
-        return objectMapper.writeValueAsString(result);
+                               String scoredCandidatesJson) throws IOException {
+        return mergeEngine.merge(classifiedJson, countryOverridesJson,
+                titleExtractionsJson, scoredCandidatesJson);
     }
 
     // =========================================================================
     //  Internal Helpers
     // =========================================================================
 
-    private JsonNode parseJson(String json) throws JsonProcessingException {
-        return objectMapper.readTree(json == null || json.isBlank() ? "{}" : json);
-    }
-
-    private ArrayNode findCandidateArray(JsonNode root, String... possibleKeys) {
-        for (String key : possibleKeys) {
-            if (root.has(key) && root.get(key).isArray()) {
-                return (ArrayNode) root.get(key);
-            }
-        }
-        if (root.isArray()) {
-            return (ArrayNode) root;
-        }
-        return objectMapper.createArrayNode();
-    }
-
-    private JsonNode findById(ArrayNode array, int id) {
-        for (JsonNode node : array) {
-            if (node.has("id") && node.get("id").asInt() == id) {
-                return node;
-            }
-        }
-        return null;
-    }
-
-    private void overlayField(ObjectNode target, JsonNode source, String fieldName) {
-        if (source.has(fieldName) && !source.get(fieldName).isNull()) {
-            target.set(fieldName, source.get(fieldName).deepCopy());
-        }
-    }
-
     private String getAsString(Map<String, Object> input, String key) {
         Object value = input.get(key);
         return value != null ? value.toString() : "";
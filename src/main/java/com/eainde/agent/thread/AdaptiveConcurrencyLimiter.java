@@ -0,0 +1,293 @@
+package com.eainde.agent.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide admission control for model calls — one limiter per model endpoint,
+ * whose limit follows the endpoint's feedback (AIMD).
+ *
+ * <p>{@link BoundedParallelExecutor} caps the tasks one fan-out starts, but parallel
+ * waves, reduce batches and concurrent workflows all reach the model independently;
+ * under load the endpoint answers 429 and the retries make it worse. Every call
+ * through {@link #call} takes a slot here first:</p>
+ *
+ * <ul>
+ *   <li><b>Throttled</b> (429 / RESOURCE_EXHAUSTED / rate-limit exception anywhere in
+ *       the cause chain) — limit halved</li>
+ *   <li><b>Slow</b> — latency above {@code latencyTolerance} × the endpoint's running
+ *       average: limit × 0.9. Model latency also grows with output length, hence the
+ *       gentle cut and the tolerance</li>
+ *   <li><b>Otherwise</b> — limit + 1/limit, i.e. +1 per limit's worth of successes,
+ *       but only for calls made while at least half the limit was in use: a
+ *       workflow calling one at a time says nothing about a higher limit, and
+ *       without this the limit drifts to the ceiling before the first burst</li>
+ * </ul>
+ *
+ * <p>A decrease only counts calls started after the previous decrease, so one burst
+ * of 429s halves the limit once, not once per failed call. Other failures leave the
+ * limit alone.</p>
+ *
+ * <p>Waiting calls queue per workflow, and freed slots go to the workflows in turn —
+ * a workflow fanning out fifty chunks does not starve one making a single call.
+ * {@link #stats()} exposes the effective limit, calls in flight and queue depth.</p>
+ *
+ * <pre>
+ * AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.forModel("gemini-2.5-pro");
+ * ChatResponse response = limiter.call(flowId, () -> model.chat(request));
+ * </pre>
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    /** MDC key holding the workflow a call belongs to; calls without one share a queue. */
+    public static final String WORKFLOW_MDC_KEY = "flowId";
+
+    private static final String DEFAULT_WORKFLOW = "default";
+    private static final double SLOW_DECREASE = 0.9;
+    private static final double THROTTLE_DECREASE = 0.5;
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    /** Limiters per model key, shared by every caller in the JVM. */
+    private static final ConcurrentMap<String, AdaptiveConcurrencyLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    /**
+     * @param initialLimit     concurrent calls allowed before any feedback
+     * @param minLimit         floor after decreases
+     * @param maxLimit         ceiling after increases
+     * @param latencyTolerance latency over this multiple of the running average counts as congestion
+     */
+    public record Settings(int initialLimit, int minLimit, int maxLimit, double latencyTolerance) {
+
+        public static final Settings DEFAULT = new Settings(8, 1, 64, 2.0);
+
+        public Settings {
+            if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+                throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max, got "
+                        + minLimit + " / " + initialLimit + " / " + maxLimit);
+            }
+        }
+    }
+
+    /**
+     * A point-in-time view of one limiter.
+     *
+     * @param limit      effective concurrency limit
+     * @param queueDepth calls waiting for a slot, all workflows
+     * @param throttled  throttling responses seen since startup
+     */
+    public record Stats(String model, int limit, int inFlight, int queueDepth, int queuedWorkflows,
+                        long throttled, double averageLatencyMillis) { }
+
+    private final String model;
+    private final Settings settings;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Guarded by {@code lock}. */
+    private double limit;
+    private int inFlight;
+    private int queueDepth;
+    private final Map<String, ArrayDeque<Waiter>> queues = new HashMap<>();
+    /** Workflows with waiting calls, next to be served first. */
+    private final ArrayDeque<String> rotation = new ArrayDeque<>();
+    private long lastDecreaseNanos;
+    private double averageLatencyNanos;
+    private long throttled;
+
+    public AdaptiveConcurrencyLimiter(String model, Settings settings) {
+        this.model = model == null || model.isBlank() ? "default" : model;
+        this.settings = settings;
+        this.limit = settings.initialLimit();
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /** The JVM-wide limiter for {@code model}, created with default settings on first use. */
+    public static AdaptiveConcurrencyLimiter forModel(String model) {
+        return forModel(model, Settings.DEFAULT);
+    }
+
+    /** The JVM-wide limiter for {@code model}; the first caller for a model fixes its settings. */
+    public static AdaptiveConcurrencyLimiter forModel(String model, Settings settings) {
+        String key = model == null || model.isBlank() ? "default" : model;
+        return LIMITERS.computeIfAbsent(key, k -> new AdaptiveConcurrencyLimiter(k, settings));
+    }
+
+    /** @return stats of every JVM-wide limiter */
+    public static List<Stats> allStats() {
+        return LIMITERS.values().stream().map(AdaptiveConcurrencyLimiter::stats).toList();
+    }
+
+    /**
+     * Runs {@code task} once a slot is free, and feeds its outcome back into the limit.
+     *
+     * @param workflow queue the call waits in; blank = the shared default queue
+     * @throws RuntimeException      the task's failure, unchanged
+     * @throws CancellationException if interrupted while waiting for a slot
+     */
+    public <R> R call(String workflow, Supplier<? extends R> task) {
+        acquire(workflow == null || workflow.isBlank() ? DEFAULT_WORKFLOW : workflow);
+        long start = System.nanoTime();
+        try {
+            R result = task.get();
+            release(start, false, false);
+            return result;
+        } catch (RuntimeException | Error e) {
+            release(start, true, isThrottle(e));
+            throw e;
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(model, effectiveLimit(), inFlight, queueDepth, queues.size(),
+                    throttled, averageLatencyNanos / 1_000_000);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private void acquire(String workflow) {
+        lock.lock();
+        try {
+            if (queueDepth == 0 && inFlight < effectiveLimit()) {
+                inFlight++;
+                return;
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            queues.computeIfAbsent(workflow, k -> {
+                rotation.add(k);
+                return new ArrayDeque<>();
+            }).add(waiter);
+            queueDepth++;
+            try {
+                while (!waiter.granted) {
+                    waiter.condition.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    inFlight--;   // granted while being interrupted — hand the slot on
+                } else {
+                    dequeue(workflow, waiter);
+                }
+                grant();
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted waiting for a '" + model + "' slot");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long startNanos, boolean failed, boolean throttle) {
+        long now = System.nanoTime();
+        long latency = now - startNanos;
+        lock.lock();
+        try {
+            int used = inFlight--;   // calls in flight while this one ran, itself included
+            double before = limit;
+            boolean afterLastDecrease = startNanos - lastDecreaseNanos > 0;
+            if (throttle) {
+                throttled++;
+                if (afterLastDecrease) {
+                    decrease(THROTTLE_DECREASE, now);
+                    log.warn("Model '{}' throttled — concurrency limit {} → {}", model,
+                            (int) before, effectiveLimit());
+                }
+            } else if (failed) {
+                // Other failures say nothing about the endpoint's capacity
+            } else if (averageLatencyNanos > 0 && latency > settings.latencyTolerance() * averageLatencyNanos
+                    && afterLastDecrease) {
+                decrease(SLOW_DECREASE, now);
+                log.debug("Model '{}' slow ({} ms) — concurrency limit {} → {}", model,
+                        latency / 1_000_000, (int) before, effectiveLimit());
+            } else if (used >= limit / 2) {
+                limit = Math.min(settings.maxLimit(), limit + 1 / limit);
+            }
+            if (!failed) {
+                averageLatencyNanos = averageLatencyNanos == 0 ? latency
+                        : averageLatencyNanos + LATENCY_SMOOTHING * (latency - averageLatencyNanos);
+            }
+            grant();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(double factor, long now) {
+        limit = Math.max(settings.minLimit(), limit * factor);
+        lastDecreaseNanos = now;
+    }
+
+    /** Hands free slots to waiting calls, one workflow at a time. Caller holds {@code lock}. */
+    private void grant() {
+        while (inFlight < effectiveLimit() && !rotation.isEmpty()) {
+            String workflow = rotation.poll();
+            ArrayDeque<Waiter> queue = queues.get(workflow);
+            Waiter waiter = queue.poll();
+            if (queue.isEmpty()) {
+                queues.remove(workflow);
+            } else {
+                rotation.add(workflow);
+            }
+            queueDepth--;
+            inFlight++;
+            waiter.granted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    private void dequeue(String workflow, Waiter waiter) {
+        ArrayDeque<Waiter> queue = queues.get(workflow);
+        if (queue != null && queue.remove(waiter)) {
+            queueDepth--;
+            if (queue.isEmpty()) {
+                queues.remove(workflow);
+                rotation.remove(workflow);
+            }
+        }
+    }
+
+    private int effectiveLimit() {
+        return (int) limit;
+    }
+
+    static boolean isThrottle(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            String message = String.valueOf(t.getMessage());
+            if (t.getClass().getSimpleName().contains("RateLimit")
+                    || message.contains("429")
+                    || message.contains("RESOURCE_EXHAUSTED")
+                    || message.contains("Too Many Requests")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Waiter {
+        private final Condition condition;
+        /** Guarded by the limiter's lock. */
+        private boolean granted;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.eainde.agent.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs one task per item on virtual threads, at most {@code maxConcurrency} at a
+ * time per model, and returns the results in item order.
+ *
+ * <p>The limit is a {@link Semaphore} shared by every executor created for the same
+ * model key, so two requests chunking at the same time together stay within the
+ * model's rate limit rather than each getting their own allowance. Every executor
+ * for a key must ask for the same limit — a conflicting one fails fast instead of
+ * silently running under the first. Phases that need their own limit use their own
+ * key (e.g. {@code "gemini-2.5-pro/reduce"}).</p>
+ *
+ * <pre>
+ * BoundedParallelExecutor executor = new BoundedParallelExecutor("gemini-2.5-pro", 4);
+ * List&lt;ChunkOutput&gt; outputs = executor.invokeAll(chunks, chunk -> mapOneChunk(chunk));
+ * // outputs.get(i) belongs to chunks.get(i), whatever order the chunks finished in
+ * </pre>
+ *
+ * <p>MDC is propagated to the worker threads (see {@link MdcAwareVirtualThreadExecutor}).
+ * If any task fails, tasks not yet started are cancelled and the first failure (in item
+ * order) is rethrown. With {@code maxConcurrency == 1} (or a single item) tasks run
+ * inline on the caller, still holding a permit.</p>
+ */
+public class BoundedParallelExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(BoundedParallelExecutor.class);
+
+    /** Permits per model key, shared across executor instances. */
+    private static final ConcurrentMap<String, Permits> PERMITS_BY_MODEL = new ConcurrentHashMap<>();
+
+    /** Virtual thread per task — one executor serves every instance. */
+    private static final Executor EXECUTOR = new MdcAwareVirtualThreadExecutor();
+
+    private record Permits(Semaphore semaphore, int limit) { }
+
+    private final String model;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+
+    /**
+     * @param model          model key the limit applies to (blank = "default")
+     * @param maxConcurrency maximum tasks in flight for this model across all executors
+     * @throws IllegalStateException if the key already has a different limit
+     */
+    public BoundedParallelExecutor(String model, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be >= 1, got " + maxConcurrency);
+        }
+        this.model = model == null || model.isBlank() ? "default" : model;
+        this.maxConcurrency = maxConcurrency;
+        Permits shared = PERMITS_BY_MODEL.computeIfAbsent(this.model,
+                k -> new Permits(new Semaphore(maxConcurrency, true), maxConcurrency));
+        if (shared.limit() != maxConcurrency) {
+            throw new IllegalStateException("Model key '" + this.model + "' already has a concurrency limit of "
+                    + shared.limit() + ", cannot create an executor with " + maxConcurrency);
+        }
+        this.permits = shared.semaphore();
+    }
+
+    /**
+     * Applies {@code task} to every item and waits for all of them.
+     *
+     * @param items inputs, in the order results are wanted
+     * @param task  work for one item; must not share mutable state with other items
+     * @return results, {@code result.get(i) = task.apply(items.get(i))}
+     * @throws RuntimeException the first task failure, unwrapped
+     */
+    public <T, R> List<R> invokeAll(List<T> items, Function<? super T, ? extends R> task) {
+        return invokeAll(items, task, (item, result) -> { });
+    }
+
+    /**
+     * Same as {@link #invokeAll(List, Function)}, but also hands each result to
+     * {@code onResult} as soon as its task completes — on the worker thread, in
+     * completion order — so downstream work can start before the slowest task ends.
+     *
+     * @param onResult called once per item with its result; must be thread-safe
+     */
+    public <T, R> List<R> invokeAll(List<T> items, Function<? super T, ? extends R> task,
+                                    BiConsumer<? super T, ? super R> onResult) {
+        if (maxConcurrency == 1 || items.size() <= 1) {
+            List<R> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                R result = runWithPermit(task, item);
+                onResult.accept(item, result);
+                results.add(result);
+            }
+            return results;
+        }
+
+        log.info("Running {} tasks in parallel — model '{}', max concurrency {}",
+                items.size(), model, maxConcurrency);
+
+        List<CompletableFuture<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                R result = runWithPermit(task, item);
+                onResult.accept(item, result);
+                return result;
+            }, EXECUTOR));
+        }
+
+        List<R> results = new ArrayList<>(items.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).join());
+            } catch (CompletionException | CancellationException e) {
+                futures.forEach(f -> f.cancel(false));
+                throw unwrap(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs one task on the caller's thread, holding a permit while it runs — for work
+     * that is already on its own thread (e.g. a {@link StagePipeline} stage) but must
+     * stay within the model's limit.
+     *
+     * @throws CancellationException if interrupted while waiting for a permit
+     */
+    public <R> R call(Supplier<? extends R> task) {
+        return runWithPermit(ignored -> task.get(), null);
+    }
+
+    /** @return the per-model limit this executor was created with */
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    private <T, R> R runWithPermit(Function<? super T, ? extends R> task, T item) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted waiting for a '" + model + "' permit");
+        }
+        try {
+            return task.apply(item);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static RuntimeException unwrap(RuntimeException e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RuntimeException runtime) return runtime;
+        if (cause instanceof Error error) throw error;
+        return new IllegalStateException(cause);
+    }
+}
@@ -0,0 +1,309 @@
+package com.eainde.agent.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Runs tasks that read and write named state keys, each as soon as the keys it reads
+ * exist — the waves are derived from the declared keys instead of written by hand.
+ *
+ * <p>Each node declares the keys it reads and the one key it writes (an agent's
+ * {@code AgentSpec.getInputKeys()} and {@code getOutputKey()}). A node depends on the
+ * nodes producing its inputs; initial keys are produced by the caller. The graph is
+ * checked when built: every input must be produced exactly once and there must be no
+ * cycle. When run, every node whose producers are done is started on a virtual
+ * thread, so independent nodes overlap without a barrier between waves.</p>
+ *
+ * <pre>
+ * DagScheduler graph = DagScheduler.builder("sourceText")
+ *         .node("extractor",  List.of("sourceText"), "rawNames", () -> ...)
+ *         .node("classifier", List.of("sourceText"), "sourceClassification", () -> ...)
+ *         .node("normalizer", List.of("rawNames", "sourceClassification"), "normalizedCandidates", () -> ...)
+ *         .build();
+ * graph.waves();   // [[extractor, classifier], [normalizer]]
+ * DagScheduler.Report report = graph.run();
+ * report.criticalPath();   // e.g. [extractor, normalizer] — the chain that set the total time
+ * </pre>
+ *
+ * <p>The critical path is walked back from the node that finished last, through the
+ * producer that finished last before it — the nodes worth making faster. MDC is
+ * propagated to the worker threads. If a node fails, nodes not yet started are not
+ * started, and the first failure is rethrown once the nodes in flight have finished —
+ * nothing writes to the caller's state after {@link #run} returns.</p>
+ */
+public class DagScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(DagScheduler.class);
+
+    /**
+     * One task of the graph.
+     *
+     * @param name      for logging and the report
+     * @param inputs    keys the task reads
+     * @param outputKey the key the task writes
+     * @param task      the work; must write {@code outputKey} where its dependents read it
+     */
+    public record Node(String name, List<String> inputs, String outputKey, Runnable task) { }
+
+    /**
+     * Timings of one {@link #run}.
+     *
+     * @param criticalPath node names, first to last
+     * @param durations    run time per node, in graph order
+     * @param elapsed      wall-clock time of the whole run
+     */
+    public record Report(List<String> criticalPath, Map<String, Duration> durations, Duration elapsed) {
+
+        /** @return e.g. {@code "extractor 12.1s → normalizer 4.0s (16.1s of 16.3s)"} */
+        public String describe() {
+            Duration onPath = criticalPath.stream().map(durations::get).reduce(Duration.ZERO, Duration::plus);
+            return criticalPath.stream()
+                    .map(name -> name + " " + seconds(durations.get(name)))
+                    .collect(Collectors.joining(" → "))
+                    + " (" + seconds(onPath) + " of " + seconds(elapsed) + ")";
+        }
+
+        private static String seconds(Duration duration) {
+            return String.format("%.1fs", duration.toMillis() / 1000.0);
+        }
+    }
+
+    private final Executor executor = new MdcAwareVirtualThreadExecutor();
+    private final List<Node> nodes;
+    /** producers.get(i) — indexes of the nodes writing node i's inputs. */
+    private final List<int[]> producers;
+    /** dependents.get(i) — indexes of the nodes reading node i's output. */
+    private final List<int[]> dependents;
+    private final List<List<String>> waves;
+
+    private DagScheduler(Set<String> initialKeys, List<Node> nodes) {
+        this.nodes = List.copyOf(nodes);
+
+        Map<String, Integer> producerByKey = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            String key = nodes.get(i).outputKey();
+            if (initialKeys.contains(key) || producerByKey.putIfAbsent(key, i) != null) {
+                throw new IllegalArgumentException("Key '" + key + "' is written by more than one node");
+            }
+        }
+
+        this.producers = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            Set<Integer> from = new LinkedHashSet<>();
+            for (String input : nodes.get(i).inputs()) {
+                Integer producer = producerByKey.get(input);
+                if (producer != null) {
+                    from.add(producer);
+                } else if (!initialKeys.contains(input)) {
+                    throw new IllegalArgumentException("Node '" + nodes.get(i).name()
+                            + "' reads '" + input + "', which no node writes");
+                }
+            }
+            producers.add(from.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        List<List<Integer>> dependentLists = new ArrayList<>();
+        nodes.forEach(node -> dependentLists.add(new ArrayList<>()));
+        this.dependents = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int producer : producers.get(i)) dependentLists.get(producer).add(i);
+        }
+        dependentLists.forEach(list -> dependents.add(list.stream().mapToInt(Integer::intValue).toArray()));
+
+        this.waves = layer();
+    }
+
+    public static Builder builder(String... initialKeys) {
+        return new Builder(initialKeys);
+    }
+
+    /**
+     * @return node names grouped by depth — what a hand-written wave plan would be;
+     *         nodes of one wave never depend on each other
+     */
+    public List<List<String>> waves() {
+        return waves;
+    }
+
+    /**
+     * Runs every node once, each as soon as its producers are done.
+     *
+     * @return timings and the critical path
+     * @throws RuntimeException the first node failure, unwrapped
+     */
+    public Report run() {
+        int count = nodes.size();
+        log.info("DAG — {} nodes, derived waves {}", count, waves);
+
+        long[] started = new long[count];
+        long[] finished = new long[count];
+        AtomicIntegerArray pending = new AtomicIntegerArray(count);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // Nodes launched and not finished, plus one for the caller while it launches the roots
+        AtomicInteger running = new AtomicInteger(1);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Runnable[] launchers = new Runnable[count];
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            pending.set(i, producers.get(i).length);
+            launchers[i] = () -> {
+                running.incrementAndGet();
+                executor.execute(() -> {
+                    try {
+                        runNode(index, started, finished, failure);
+                        if (failure.get() == null) {
+                            // Dependents are launched before this node stops counting as running
+                            for (int dependent : dependents.get(index)) {
+                                if (pending.decrementAndGet(dependent) == 0) launchers[dependent].run();
+                            }
+                        }
+                    } finally {
+                        if (running.decrementAndGet() == 0) done.complete(null);
+                    }
+                });
+            };
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (producers.get(i).length == 0) launchers[i].run();
+        }
+        if (running.decrementAndGet() == 0) done.complete(null);
+        done.join();
+        if (failure.get() != null) {
+            throw unwrap(failure.get());
+        }
+
+        Report report = report(started, finished, System.nanoTime() - start);
+        log.info("DAG complete — critical path: {}", report.describe());
+        return report;
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private void runNode(int index, long[] started, long[] finished, AtomicReference<Throwable> failure) {
+        if (failure.get() != null) return;   // an earlier node failed
+        Node node = nodes.get(index);
+        started[index] = System.nanoTime();
+        try {
+            node.task().run();
+            finished[index] = System.nanoTime();
+        } catch (Throwable t) {
+            log.error("DAG — node '{}' failed", node.name(), t);
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    /** Kahn layering; also the cycle check. */
+    private List<List<String>> layer() {
+        int[] depth = new int[nodes.size()];
+        int[] inDegree = new int[nodes.size()];
+        List<Integer> ready = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            inDegree[i] = producers.get(i).length;
+            if (inDegree[i] == 0) ready.add(i);
+        }
+        int visited = 0;
+        for (int r = 0; r < ready.size(); r++, visited++) {
+            int node = ready.get(r);
+            for (int dependent : dependents.get(node)) {
+                depth[dependent] = Math.max(depth[dependent], depth[node] + 1);
+                if (--inDegree[dependent] == 0) ready.add(dependent);
+            }
+        }
+        if (visited < nodes.size()) {
+            List<String> cyclic = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                if (inDegree[i] > 0) cyclic.add(nodes.get(i).name());
+            }
+            throw new IllegalArgumentException("Dependency cycle between nodes " + cyclic);
+        }
+
+        int maxDepth = Arrays.stream(depth).max().orElse(-1);
+        List<List<String>> layers = new ArrayList<>();
+        for (int d = 0; d <= maxDepth; d++) layers.add(new ArrayList<>());
+        for (int i = 0; i < nodes.size(); i++) layers.get(depth[i]).add(nodes.get(i).name());
+        return layers.stream().map(List::copyOf).toList();
+    }
+
+    private Report report(long[] started, long[] finished, long elapsedNanos) {
+        Map<String, Duration> durations = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            durations.put(nodes.get(i).name(), Duration.ofNanos(finished[i] - started[i]));
+        }
+
+        List<String> path = new ArrayList<>();
+        int last = -1;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (last < 0 || finished[i] > finished[last]) last = i;
+        }
+        // Walk back through the producer that released each node
+        for (int node = last; node >= 0; ) {
+            path.add(0, nodes.get(node).name());
+            int gate = -1;
+            for (int producer : producers.get(node)) {
+                if (gate < 0 || finished[producer] > finished[gate]) gate = producer;
+            }
+            node = gate;
+        }
+        return new Report(List.copyOf(path), durations, Duration.ofNanos(elapsedNanos));
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException runtime) return runtime;
+        if (cause instanceof Error error) throw error;
+        return new IllegalStateException(cause);
+    }
+
+    // =========================================================================
+    //  Builder
+    // =========================================================================
+
+    public static final class Builder {
+
+        private final Set<String> initialKeys;
+        private final List<Node> nodes = new ArrayList<>();
+
+        private Builder(String... initialKeys) {
+            this.initialKeys = Set.of(initialKeys);
+        }
+
+        /**
+         * Adds a node.
+         *
+         * @param inputs    keys the task reads — initial keys or other nodes' output keys
+         * @param outputKey the key the task writes; unique in the graph
+         */
+        public Builder node(String name, List<String> inputs, String outputKey, Runnable task) {
+            nodes.add(new Node(name, List.copyOf(inputs), outputKey, task));
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a key is written twice, an input is never
+         *                                  written, or the nodes form a cycle
+         */
+        public DagScheduler build() {
+            return new DagScheduler(initialKeys, nodes);
+        }
+    }
+}
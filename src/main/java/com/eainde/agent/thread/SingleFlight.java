@@ -0,0 +1,175 @@
+package com.eainde.agent.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one execution.
+ *
+ * <p>The first caller for a key starts the work on a virtual thread; callers arriving
+ * while it runs attach to it and get the same result (or the same failure) instead of
+ * running the work again. Once the work finishes the key is free, and the next call
+ * runs it again — caching results is not this class's job.</p>
+ *
+ * <pre>
+ * SingleFlight&lt;String, ChatResponse&gt; inFlight = new SingleFlight&lt;&gt;();
+ * ChatResponse response = inFlight.call(requestHash, () -> model.chat(request));
+ * </pre>
+ *
+ * <p>Cancellation is reference-counted: each caller holds its own future, and
+ * cancelling it (or interrupting a thread blocked in {@link #call}) detaches only that
+ * caller. The work is interrupted when the last attached caller detaches; a caller
+ * arriving after that starts a new execution. MDC of the first caller is propagated
+ * to the worker thread.</p>
+ */
+public class SingleFlight<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleFlight.class);
+
+    /**
+     * Counters since creation.
+     *
+     * @param executions calls that ran the work
+     * @param coalesced  calls that attached to a running execution
+     */
+    public record Stats(long executions, long coalesced) { }
+
+    private final Executor executor = new MdcAwareVirtualThreadExecutor();
+    private final ConcurrentMap<K, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs {@code work} for {@code key}, or attaches to the execution already running.
+     *
+     * @return this caller's future — cancelling it detaches this caller only
+     */
+    public CompletableFuture<V> submit(K key, Supplier<? extends V> work) {
+        AtomicReference<Flight> started = new AtomicReference<>();
+        Flight flight = flights.compute(key, (k, running) -> {
+            if (running != null && running.attach()) {
+                return running;
+            }
+            started.set(new Flight(k, work));
+            return started.get();
+        });
+
+        if (flight == started.get()) {
+            executions.increment();
+            executor.execute(flight.task);
+        } else {
+            coalesced.increment();
+            log.debug("Single-flight — attached to the call in flight for {}", key);
+        }
+        return flight.newCaller();
+    }
+
+    /**
+     * Blocking form of {@link #submit}.
+     *
+     * @throws RuntimeException      the work's failure, unwrapped
+     * @throws CancellationException if the calling thread is interrupted while waiting;
+     *                               the interrupt flag is restored
+     */
+    public V call(K key, Supplier<? extends V> work) {
+        CompletableFuture<V> result = submit(key, work);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for " + key);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(executions.sum(), coalesced.sum());
+    }
+
+    // =========================================================================
+    //  Internal
+    // =========================================================================
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException runtime) return runtime;
+        if (cause instanceof Error error) throw error;
+        return new IllegalStateException(cause);
+    }
+
+    /** One execution and the callers attached to it. */
+    private final class Flight {
+
+        private final K key;
+        private final FutureTask<V> task;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        /** Attached callers; 0 once abandoned — no caller can attach after that. Guarded by {@code this}. */
+        private int callers = 1;
+
+        Flight(K key, Supplier<? extends V> work) {
+            this.key = key;
+            this.task = new FutureTask<>(work::get) {
+                @Override
+                protected void done() {
+                    flights.remove(key, Flight.this);
+                    if (isCancelled()) {
+                        result.cancel(false);
+                        return;
+                    }
+                    try {
+                        result.complete(get());
+                    } catch (ExecutionException e) {
+                        result.completeExceptionally(e.getCause());
+                    } catch (InterruptedException e) {
+                        // get() on a completed task does not block
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+        }
+
+        synchronized boolean attach() {
+            if (callers == 0) return false;
+            callers++;
+            return true;
+        }
+
+        void detach() {
+            synchronized (this) {
+                if (--callers > 0) return;
+            }
+            // Outside the lock — compute() holds the map's lock while calling attach()
+            flights.remove(key, this);
+            task.cancel(true);
+            log.debug("Single-flight — last caller left, call for {} cancelled", key);
+        }
+
+        CompletableFuture<V> newCaller() {
+            CompletableFuture<V> caller = new CompletableFuture<>() {
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    boolean cancelled = super.cancel(mayInterruptIfRunning);
+                    if (cancelled) detach();
+                    return cancelled;
+                }
+            };
+            result.whenComplete((value, failure) -> {
+                if (failure != null) caller.completeExceptionally(failure);
+                else caller.complete(value);
+            });
+            return caller;
+        }
+    }
+}
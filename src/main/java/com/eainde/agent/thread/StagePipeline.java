@@ -0,0 +1,235 @@
+package com.eainde.agent.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Pushes items through a fixed chain of stages, with bounded queues between stages,
+ * so different items can be in different stages at the same time.
+ *
+ * <p>{@link BoundedParallelExecutor#invokeAll} runs each item's whole chain as one
+ * task: item {@code i+1} cannot use a stage the moment item {@code i} leaves it, and
+ * every stage of an item waits for the previous one. Here each stage has its own
+ * workers taking items off its input queue, so item 0 can be in stage 3 while item 1
+ * is in stage 2. The queues hold at most {@code queueCapacity} items each: a slow
+ * stage holds back the stages before it instead of piling up work, and the number of
+ * items in flight stays bounded.</p>
+ *
+ * <pre>
+ * items → [queue] → stage 1 (n workers) → [queue] → stage 2 (n workers) → … → results
+ * </pre>
+ *
+ * <pre>
+ * StagePipeline&lt;Batch&gt; pipeline = StagePipeline.&lt;Batch&gt;builder()
+ *         .queueCapacity(2)
+ *         .stage("classify", 4, batch -> executor.call(() -> classify(batch)))
+ *         .stage("merge", 1, batch -> merge(batch))
+ *         .build();
+ * List&lt;Batch&gt; done = pipeline.run(batches, (i, batch) -> collect(batch));
+ * </pre>
+ *
+ * <p>Stages do not take {@link BoundedParallelExecutor} permits themselves — a stage
+ * that calls a model wraps the call in {@link BoundedParallelExecutor#call} (or fans
+ * out with {@code invokeAll}), so permits are held per model call, not per item, and
+ * Java-only stages never wait for one. A stage must not share mutable state between
+ * items; an item is handled by one stage at a time.</p>
+ *
+ * <p>MDC is propagated to the workers. If a stage fails, all workers are interrupted
+ * and the first failure is rethrown on the caller.</p>
+ */
+public class StagePipeline<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(StagePipeline.class);
+
+    private final List<Stage<T>> stages;
+    private final int queueCapacity;
+    private final Executor executor = new MdcAwareVirtualThreadExecutor();
+
+    /** One step of the pipeline. */
+    private record Stage<T>(String name, int workers, UnaryOperator<T> work) { }
+
+    /** An item and its position in the input list. */
+    private record Slot<T>(int index, T value) { }
+
+    private StagePipeline(Builder<T> builder) {
+        this.stages = List.copyOf(builder.stages);
+        this.queueCapacity = builder.queueCapacity;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Runs every item through all stages and waits for the last one.
+     *
+     * @param items      inputs, in the order results are wanted
+     * @param onComplete called with (index, result) as soon as an item leaves the last
+     *                   stage — on a worker thread, in completion order; must be thread-safe
+     * @return results, {@code result.get(i)} = all stages applied to {@code items.get(i)}
+     * @throws RuntimeException the first stage failure, unwrapped
+     */
+    public List<T> run(List<T> items, BiConsumer<Integer, ? super T> onComplete) {
+        int count = items.size();
+        if (count == 0) return List.of();
+
+        log.info("Pipelining {} items through {} stages {} (queue capacity {})",
+                count, stages.size(), stages.stream().map(Stage::name).toList(), queueCapacity);
+
+        Run run = new Run(count, onComplete);
+
+        // Feeder: blocks on the first queue once it holds queueCapacity items
+        run.start(() -> {
+            for (int i = 0; i < count; i++) {
+                run.queues.get(0).put(new Slot<>(i, items.get(i)));
+            }
+        });
+        for (int s = 0; s < stages.size(); s++) {
+            int stageIndex = s;
+            for (int w = 0; w < stages.get(s).workers(); w++) {
+                run.start(() -> run.work(stageIndex));
+            }
+        }
+
+        try {
+            run.done.join();
+        } catch (CompletionException | CancellationException e) {
+            throw unwrap(e);
+        }
+
+        List<T> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) results.add(run.results.get(i));
+        return results;
+    }
+
+    /** State of one {@link #run} call. */
+    private final class Run {
+
+        private final int count;
+        private final BiConsumer<Integer, ? super T> onComplete;
+        private final List<BlockingQueue<Slot<T>>> queues = new ArrayList<>();
+        private final List<AtomicInteger> claimed = new ArrayList<>();
+        private final AtomicReferenceArray<T> results;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+
+        private Run(int count, BiConsumer<Integer, ? super T> onComplete) {
+            this.count = count;
+            this.onComplete = onComplete;
+            this.results = new AtomicReferenceArray<>(count);
+            for (int s = 0; s < stages.size(); s++) {
+                queues.add(new ArrayBlockingQueue<>(queueCapacity));
+                claimed.add(new AtomicInteger());
+            }
+        }
+
+        private interface Body {
+            void run() throws InterruptedException;
+        }
+
+        private void start(Body body) {
+            executor.execute(() -> {
+                workers.add(Thread.currentThread());
+                // Registered before the check — a failure either sees this thread or is seen by it
+                if (done.isDone()) return;
+                try {
+                    body.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    fail(new CancellationException("Pipeline worker interrupted"));
+                } catch (Throwable t) {
+                    fail(t);
+                } finally {
+                    workers.remove(Thread.currentThread());
+                }
+            });
+        }
+
+        /** A worker of stage {@code s}: each stage handles exactly {@code count} items. */
+        private void work(int s) throws InterruptedException {
+            Stage<T> stage = stages.get(s);
+            boolean last = s == stages.size() - 1;
+            while (claimed.get(s).getAndIncrement() < count) {
+                Slot<T> slot = queues.get(s).take();
+                T result = stage.work().apply(slot.value());
+                if (!last) {
+                    queues.get(s + 1).put(new Slot<>(slot.index(), result));
+                    continue;
+                }
+                results.set(slot.index(), result);
+                onComplete.accept(slot.index(), result);
+                if (completed.incrementAndGet() == count) done.complete(null);
+            }
+        }
+
+        private void fail(Throwable failure) {
+            if (!done.completeExceptionally(failure)) return;   // not the first failure
+            log.warn("Pipeline failed — interrupting {} workers", workers.size(), failure);
+            workers.forEach(Thread::interrupt);
+        }
+    }
+
+    private static RuntimeException unwrap(RuntimeException e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RuntimeException runtime) return runtime;
+        if (cause instanceof Error error) throw error;
+        return new IllegalStateException(cause);
+    }
+
+    // =========================================================================
+    //  Builder
+    // =========================================================================
+
+    public static final class Builder<T> {
+
+        private final List<Stage<T>> stages = new ArrayList<>();
+        private int queueCapacity = 2;
+
+        private Builder() { }
+
+        /** Items waiting in front of each stage; the feeder and earlier stages block beyond it. */
+        public Builder<T> queueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("queueCapacity must be >= 1, got " + queueCapacity);
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Appends a stage.
+         *
+         * @param name    for logging
+         * @param workers items this stage works on at once
+         * @param work    the stage's work on one item; returns the item handed to the next stage
+         */
+        public Builder<T> stage(String name, int workers, UnaryOperator<T> work) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("workers must be >= 1, got " + workers);
+            }
+            stages.add(new Stage<>(name, workers, work));
+            return this;
+        }
+
+        public StagePipeline<T> build() {
+            if (stages.isEmpty()) throw new IllegalStateException("StagePipeline needs at least one stage");
+            return new StagePipeline<>(this);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.eainde.agent.thread;
+
+import org.slf4j.MDC;
+
+import java.util.UUID;
+
+/**
+ * The {@link AdaptiveConcurrencyLimiter#WORKFLOW_MDC_KEY} MDC entry for one pipeline
+ * run, restored to its previous value on close.
+ *
+ * <p>Model calls queue per workflow in the limiter; a pipeline entered without a
+ * flowId would share the default queue with every other such run. Restoring rather
+ * than removing keeps the caller's flowId when a pipeline runs inside a workflow.</p>
+ *
+ * <pre>
+ * try (WorkflowMdc ignored = WorkflowMdc.join()) {
+ *     ... model calls queue under the caller's flowId, or a new one ...
+ * }
+ * </pre>
+ */
+public final class WorkflowMdc implements AutoCloseable {
+
+    private final String previous;
+
+    private WorkflowMdc(String flowId) {
+        this.previous = MDC.get(AdaptiveConcurrencyLimiter.WORKFLOW_MDC_KEY);
+        MDC.put(AdaptiveConcurrencyLimiter.WORKFLOW_MDC_KEY, flowId);
+    }
+
+    /** Runs under {@code flowId} until closed. */
+    public static WorkflowMdc open(String flowId) {
+        return new WorkflowMdc(flowId);
+    }
+
+    /** Runs under the caller's flowId, or a new one if the caller has none. */
+    public static WorkflowMdc join() {
+        String current = MDC.get(AdaptiveConcurrencyLimiter.WORKFLOW_MDC_KEY);
+        return new WorkflowMdc(current != null && !current.isBlank() ? current : UUID.randomUUID().toString());
+    }
+
+    @Override
+    public void close() {
+        if (previous != null) {
+            MDC.put(AdaptiveConcurrencyLimiter.WORKFLOW_MDC_KEY, previous);
+        } else {
+            MDC.remove(AdaptiveConcurrencyLimiter.WORKFLOW_MDC_KEY);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.eainde.agent.workflow;
 
 import com.eainde.agent.repository.WorkflowRepository;
+import com.eainde.agent.thread.WorkflowMdc;
 import lombok.extern.log4j.Log4j2;
 import org.bsc.langgraph4j.CompiledGraph;
 import org.bsc.langgraph4j.RunnableConfig;
@@ -92,6 +93,9 @@ public class WorkflowEngine {
         // 5. Execution: Kick off the graph asynchronously.
         // We do NOT wait here. We return the Future immediately so the caller
         // (Controller) can decide whether to block or return the ID to the user.
-        return graph.invoke(inputs, config);
+        // The flowId in MDC gives this run its own queue in the LLM limiter.
+        try (WorkflowMdc ignored = WorkflowMdc.open(flowId)) {
+            return graph.invoke(inputs, config);
+        }
     }
 }
\ No newline at end of file
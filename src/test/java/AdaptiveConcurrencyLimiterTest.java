@@ -0,0 +1,142 @@
+package com.eainde.agent.thread;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("AdaptiveConcurrencyLimiter")
+class AdaptiveConcurrencyLimiterTest {
+
+    /** Latency tolerance high enough that test timing never counts as congestion. */
+    private static AdaptiveConcurrencyLimiter limiter(int initial, int max) {
+        return new AdaptiveConcurrencyLimiter("gemini-2.5-pro",
+                new AdaptiveConcurrencyLimiter.Settings(initial, 1, max, 1_000.0));
+    }
+
+    @Test
+    @DisplayName("should raise the limit additively under load and halve it on a 429")
+    void adjustsLimitAimd() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 64);
+
+        // One call at a time never uses half the limit — no increase
+        for (int i = 0; i < 8; i++) limiter.call("flow-1", () -> "ok");
+        assertThat(limiter.stats().limit()).isEqualTo(4);
+
+        // Three rounds of four calls in flight: 4 → 4.49 → 4.92 → 5.32
+        for (int round = 0; round < 3; round++) callConcurrently(limiter, 4);
+        assertThat(limiter.stats().limit()).isEqualTo(5);
+
+        assertThatThrownBy(() -> limiter.call("flow-1", () -> {
+            throw new IllegalStateException("429 RESOURCE_EXHAUSTED");
+        })).hasMessageContaining("429");
+        assertThat(limiter.stats().limit()).isEqualTo(2);
+        assertThat(limiter.stats().throttled()).isEqualTo(1);
+
+        assertThatThrownBy(() -> limiter.call("flow-1", () -> {
+            throw new IllegalArgumentException("bad schema");
+        })).isInstanceOf(IllegalArgumentException.class);
+        assertThat(limiter.stats().limit()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should never run more calls than the limit")
+    void boundsCallsInFlight() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(3, 3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(12);
+
+        List<Future<?>> calls = new ArrayList<>();
+        for (int i = 0; i < 36; i++) {
+            String flow = "flow-" + (i % 3);
+            calls.add(callers.submit(() -> limiter.call(flow, () -> {
+                maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                sleep(5);
+                return inFlight.decrementAndGet();
+            })));
+        }
+        for (Future<?> call : calls) call.get();
+        callers.shutdown();
+
+        assertThat(maxSeen.get()).isEqualTo(3);
+        assertThat(limiter.stats().queueDepth()).isZero();
+    }
+
+    @Test
+    @DisplayName("should serve waiting workflows in turn")
+    void servesWorkflowsFairly() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Thread holder = new Thread(() -> limiter.call("A", () -> {
+            await(release);
+            return "";
+        }));
+        holder.start();
+        while (limiter.stats().inFlight() == 0) sleep(1);
+
+        List<Thread> waiting = new ArrayList<>();
+        for (String call : List.of("A1", "A2", "A3", "B1")) {
+            int depth = limiter.stats().queueDepth();
+            Thread thread = new Thread(() -> limiter.call(call.substring(0, 1), () -> order.add(call)));
+            thread.start();
+            waiting.add(thread);
+            while (limiter.stats().queueDepth() == depth) sleep(1);
+        }
+        assertThat(limiter.stats().queuedWorkflows()).isEqualTo(2);
+
+        release.countDown();
+        holder.join();
+        for (Thread thread : waiting) thread.join();
+
+        assertThat(order).containsExactly("A1", "B1", "A2", "A3");
+    }
+
+    /** Runs {@code calls} calls that all hold their slot until every one of them has started. */
+    private static void callConcurrently(AdaptiveConcurrencyLimiter limiter, int calls) throws Exception {
+        CountDownLatch started = new CountDownLatch(calls);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(calls);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            futures.add(callers.submit(() -> limiter.call("flow-1", () -> {
+                started.countDown();
+                await(release);
+                return "ok";
+            })));
+        }
+        started.await();
+        release.countDown();
+        for (Future<?> future : futures) future.get();
+        callers.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
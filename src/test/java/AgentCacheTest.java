@@ -0,0 +1,208 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.config.AgentFactory;
+import com.db.clm.kyc.ai.config.AgentSpec;
+import com.db.clm.kyc.ai.prompt.PromptService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agentic.AgenticServices;
+import dev.langchain4j.agentic.UntypedAgent;
+import dev.langchain4j.agentic.UntypedAgentBuilder;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("AgentCache")
+class AgentCacheTest {
+
+    private static final AgentSpec SPEC = AgentSpec
+            .of("candidate-extractor", "Extracts all person names from raw document text")
+            .inputs("sourceText")
+            .outputKey("rawNames")
+            .build();
+
+    @Mock private AgentFactory agentFactory;
+    @Mock private ChatModel chatModel;
+    @Mock private PromptService promptService;
+
+    @TempDir
+    Path dir;
+
+    private AgentCache agentCache;
+
+    @BeforeEach
+    void setUp() {
+        agentCache = new AgentCache(agentFactory);
+    }
+
+    @Test
+    @DisplayName("should build each spec once")
+    void buildsSpecOnce() {
+        UntypedAgent agent = mock(UntypedAgent.class);
+        when(agentFactory.create(SPEC)).thenReturn(agent);
+
+        assertThat(agentCache.create(SPEC)).isSameAs(agent);
+        assertThat(agentCache.create(SPEC)).isSameAs(agent);
+        verify(agentFactory, times(1)).create(SPEC);
+    }
+
+    @Test
+    @DisplayName("should rebuild agents and workflows after invalidation")
+    void rebuildsAfterInvalidate() {
+        UntypedAgent before = mock(UntypedAgent.class);
+        UntypedAgent after = mock(UntypedAgent.class);
+        when(agentFactory.create(SPEC)).thenReturn(before, after);
+        AtomicInteger builds = new AtomicInteger();
+
+        agentCache.create(SPEC);
+        agentCache.workflow("direct", () -> { builds.incrementAndGet(); return before; });
+        agentCache.onPromptsReloaded(new AgentCache.PromptsReloadedEvent("v2"));
+
+        assertThat(agentCache.create(SPEC)).isSameAs(after);
+        agentCache.workflow("direct", () -> { builds.incrementAndGet(); return after; });
+        assertThat(builds).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("should cache workflows by name")
+    void cachesWorkflowsByName() {
+        UntypedAgent direct = mock(UntypedAgent.class);
+        UntypedAgent chunked = mock(UntypedAgent.class);
+
+        assertThat(agentCache.workflow("direct", () -> direct)).isSameAs(direct);
+        assertThat(agentCache.workflow("direct", () -> chunked)).isSameAs(direct);
+        assertThat(agentCache.workflow("chunked", () -> chunked)).isSameAs(chunked);
+    }
+
+    @Test
+    @DisplayName("should build an opted-in spec on the caching chat model")
+    void optedInSpecGetsCachingModel() throws Exception {
+        AgentCache cache = new AgentCache(agentFactory, responseCache("candidate-extractor"));
+
+        assertThat(builtModel(cache)).isInstanceOf(CachingChatModel.class);
+        verify(agentFactory, never()).create(any());
+    }
+
+    @Test
+    @DisplayName("should send two concurrent identical calls of a single-flight agent to the model once")
+    void coalescesConcurrentAgentCalls() throws Exception {
+        ResponseCacheConfig responseCache = responseCache("candidate-extractor");
+        set(responseCache, "enabled", false);
+        set(responseCache, "singleFlightEnabled", true);
+        ChatModel agentModel = builtModel(new AgentCache(agentFactory, responseCache));
+        assertThat(agentModel).isInstanceOf(SingleFlightChatModel.class);
+
+        CountDownLatch calling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        lenient().when(chatModel.defaultRequestParameters()).thenReturn(ChatRequestParameters.builder().build());
+        when(chatModel.chat(any(ChatRequest.class))).thenAnswer(call -> {
+            calling.countDown();
+            release.await();
+            return ChatResponse.builder().aiMessage(AiMessage.from("[]")).finishReason(FinishReason.STOP).build();
+        });
+        ChatRequest request = ChatRequest.builder().messages(UserMessage.from("Extract names")).build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ChatResponse> first = executor.submit(() -> agentModel.chat(request));
+            assertThat(calling.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<ChatResponse> second = executor.submit(() -> agentModel.chat(request));
+            awaitCoalesced(responseCache, 1);
+
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS).aiMessage().text()).isEqualTo("[]");
+            assertThat(second.get(5, TimeUnit.SECONDS).aiMessage().text()).isEqualTo("[]");
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(chatModel, times(1)).chat(any(ChatRequest.class));
+    }
+
+    @Test
+    @DisplayName("should build a spec that did not opt in with the default factory")
+    void otherSpecsUseDefaultFactory() throws Exception {
+        AgentCache cache = new AgentCache(agentFactory, responseCache("critic"));
+        UntypedAgent agent = mock(UntypedAgent.class);
+        when(agentFactory.create(SPEC)).thenReturn(agent);
+
+        assertThat(cache.create(SPEC)).isSameAs(agent);
+    }
+
+    /** Builds {@link #SPEC} through {@code cache}; returns the chat model the agent was built on. */
+    private static ChatModel builtModel(AgentCache cache) {
+        UntypedAgentBuilder builder = mock(UntypedAgentBuilder.class, RETURNS_SELF);
+        UntypedAgent agent = mock(UntypedAgent.class);
+        when(builder.build()).thenReturn(agent);
+
+        try (MockedStatic<AgenticServices> services = mockStatic(AgenticServices.class)) {
+            services.when(AgenticServices::agentBuilder).thenReturn(builder);
+
+            assertThat(cache.create(SPEC)).isSameAs(agent);
+        }
+
+        ArgumentCaptor<ChatModel> model = ArgumentCaptor.forClass(ChatModel.class);
+        verify(builder).chatModel(model.capture());
+        return model.getValue();
+    }
+
+    /** Waits until {@code calls} callers have attached to an in-flight model call. */
+    private static void awaitCoalesced(ResponseCacheConfig responseCache, long calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (responseCache.singleFlightStats().map(stats -> stats.coalesced()).orElse(0L) < calls) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /** Response cache on, for the named agents only. */
+    private ResponseCacheConfig responseCache(String... agents) throws Exception {
+        ResponseCacheConfig config = new ResponseCacheConfig(chatModel, promptService, new ObjectMapper());
+        set(config, "enabled", true);
+        set(config, "agents", Set.of(agents));
+        set(config, "dir", dir.toString());
+        set(config, "maxDiskMb", 1L);
+        set(config, "memoryEntries", 16);
+        return config;
+    }
+
+    // @Value fields — set as Spring would
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
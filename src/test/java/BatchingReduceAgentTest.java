@@ -0,0 +1,126 @@
+package com.eainde.agent.mapper_reducer;
+
+import com.db.clm.kyc.ai.chunking.GovernanceTermIndex;
+import com.db.clm.kyc.ai.config.AgentFactory;
+import com.eainde.agent.engine.AgentCache;
+import com.eainde.agent.engine.CandidateTable;
+import com.eainde.agent.thread.BoundedParallelExecutor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.langchain4j.agentic.UntypedAgent;
+import dev.langchain4j.agentic.scope.AgenticScope;
+import dev.langchain4j.agentic.scope.ResultWithAgenticScope;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BatchingReduceAgent")
+class BatchingReduceAgentTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock private AgentFactory agentFactory;
+    @Mock private AgentCache agentCache;
+    @Mock private UntypedAgent reduceWorkflow;
+    @Mock private AgenticScope scope;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxSeen = new AtomicInteger();
+    private final AtomicInteger withAnchors = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(agentFactory.sequence(eq("enrichedCandidates"), any(UntypedAgent[].class))).thenReturn(reduceWorkflow);
+    }
+
+    private BatchingReduceAgent agent(int batchSize, BoundedParallelExecutor reduceExecutor) {
+        return new BatchingReduceAgent(agentFactory, agentCache, objectMapper,
+                mock(UntypedAgent.class), mock(UntypedAgent.class),
+                true, batchSize, reduceExecutor, null);
+    }
+
+    /** Five candidates, dedupKey person-0 .. person-4, ids 1-5. */
+    private String normalizedCandidates() {
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode candidates = root.putArray("normalized_candidates");
+        for (int i = 0; i < 5; i++) {
+            candidates.addObject()
+                    .put("id", i + 1)
+                    .put("dedupKey", "person-" + i);
+        }
+        root.putArray("entities_found");
+        return root.toString();
+    }
+
+    /** Fake agents 4-8: each batch's candidates come back as its enriched candidates. */
+    private ResultWithAgenticScope<String> enrich(Map<String, Object> input) throws Exception {
+        maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        if (input.containsKey(GovernanceTermIndex.SCOPE_KEY)) withAnchors.incrementAndGet();
+        Thread.sleep(50);
+        ObjectNode enriched = objectMapper.createObjectNode();
+        enriched.set("enriched_candidates",
+                objectMapper.readTree((String) input.get("normalizedCandidates")).get("normalized_candidates"));
+        inFlight.decrementAndGet();
+        return new ResultWithAgenticScope<>(mock(AgenticScope.class), enriched.toString());
+    }
+
+    @Test
+    @DisplayName("should reduce batches in parallel on the reduce executor and merge them in batch order")
+    void reducesBatchesInParallel() throws Exception {
+        when(scope.readState(CandidateTable.SCOPE_KEY)).thenReturn(null);
+        when(scope.readState("normalizedCandidates")).thenReturn(normalizedCandidates());
+        when(scope.readState("sourceClassification")).thenReturn("{\"source_classification\":[]}");
+        when(scope.readState("sourceText")).thenReturn("source");
+        when(scope.readState(GovernanceTermIndex.SCOPE_KEY)).thenReturn(List.of());
+        when(reduceWorkflow.invokeWithAgenticScope(anyMap())).thenAnswer(call -> enrich(call.getArgument(0)));
+
+        agent(2, new BoundedParallelExecutor("reduce-agent-test", 2)).invoke(scope);
+
+        verify(reduceWorkflow, times(3)).invokeWithAgenticScope(anyMap());
+        verify(reduceWorkflow, never()).invoke(any(AgenticScope.class));
+        assertThat(maxSeen.get()).isEqualTo(2);
+        assertThat(withAnchors.get()).isEqualTo(3);   // every batch scope sees the map phase's anchors
+
+        ArgumentCaptor<Object> enriched = ArgumentCaptor.forClass(Object.class);
+        verify(scope).writeState(eq("enrichedCandidates"), enriched.capture());
+        JsonNode rows = objectMapper.readTree((String) enriched.getValue()).get("enriched_candidates");
+        assertThat(rows.findValuesAsText("dedupKey"))
+                .containsExactly("person-0", "person-1", "person-2", "person-3", "person-4");
+        assertThat(rows.findValues("id").stream().map(JsonNode::asInt).toList())
+                .containsExactly(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    @DisplayName("should run a single pass on the caller's scope when candidates fit one batch")
+    void singlePassWhenCandidatesFit() {
+        when(scope.readState(CandidateTable.SCOPE_KEY)).thenReturn(null);
+        when(scope.readState("normalizedCandidates")).thenReturn(normalizedCandidates());
+
+        agent(5, new BoundedParallelExecutor("reduce-agent-test", 2)).invoke(scope);
+
+        verify(reduceWorkflow).invoke(scope);
+        verify(reduceWorkflow, never()).invokeWithAgenticScope(anyMap());
+        assertThat(maxSeen.get()).isZero();
+    }
+}
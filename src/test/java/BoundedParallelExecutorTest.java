@@ -0,0 +1,94 @@
+package com.eainde.agent.thread;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("BoundedParallelExecutor")
+class BoundedParallelExecutorTest {
+
+    private static final List<Integer> TEN = IntStream.range(0, 10).boxed().toList();
+
+    @Test
+    @DisplayName("should return results in item order, not completion order")
+    void preservesOrder() {
+        BoundedParallelExecutor executor = new BoundedParallelExecutor("order-test", 10);
+
+        List<Integer> results = executor.invokeAll(TEN, i -> {
+            sleep(10L * (10 - i));   // first items finish last
+            return i * i;
+        });
+
+        assertThat(results).containsExactly(0, 1, 4, 9, 16, 25, 36, 49, 64, 81);
+    }
+
+    @Test
+    @DisplayName("should never exceed the concurrency limit")
+    void boundsConcurrency() {
+        BoundedParallelExecutor executor = new BoundedParallelExecutor("limit-test", 3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+
+        executor.invokeAll(TEN, i -> {
+            maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(20);
+            inFlight.decrementAndGet();
+            return i;
+        });
+
+        assertThat(maxSeen.get()).isBetween(2, 3);
+    }
+
+    @Test
+    @DisplayName("wall-clock time should approach the slowest task, not the sum")
+    void runsInParallel() {
+        BoundedParallelExecutor executor = new BoundedParallelExecutor("wallclock-test", 10);
+
+        long start = System.nanoTime();
+        executor.invokeAll(TEN, i -> {
+            sleep(100);
+            return i;
+        });
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(elapsedMs).isLessThan(500);
+    }
+
+    @Test
+    @DisplayName("should rethrow a task failure unwrapped")
+    void propagatesFailure() {
+        BoundedParallelExecutor executor = new BoundedParallelExecutor("failure-test", 4);
+
+        assertThatThrownBy(() -> executor.invokeAll(TEN, i -> {
+            if (i == 5) throw new IllegalStateException("chunk 5 failed");
+            return i;
+        }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("chunk 5 failed");
+    }
+
+    @Test
+    @DisplayName("should reject a second limit for the same model key")
+    void rejectsConflictingLimit() {
+        new BoundedParallelExecutor("conflict-test", 4);
+
+        assertThat(new BoundedParallelExecutor("conflict-test", 4).maxConcurrency()).isEqualTo(4);
+        assertThatThrownBy(() -> new BoundedParallelExecutor("conflict-test", 2))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("conflict-test");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
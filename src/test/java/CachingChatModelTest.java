@@ -0,0 +1,113 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("CachingChatModel")
+class CachingChatModelTest {
+
+    @Mock private ChatModel delegate;
+
+    @TempDir
+    Path dir;
+
+    private CachingChatModel model;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(delegate.defaultRequestParameters())
+                .thenReturn(ChatRequestParameters.builder().modelName("gemini-2.5-pro").temperature(0.0).build());
+        model = new CachingChatModel(delegate, new ResponseCache(dir, 1024 * 1024, 16), new ObjectMapper());
+    }
+
+    @Test
+    @DisplayName("should answer an identical request from the cache")
+    void answersRepeatFromCache() {
+        when(delegate.chat(any(ChatRequest.class))).thenReturn(response("[\"Jane Doe\"]", FinishReason.STOP));
+
+        ChatResponse first = model.chat(request("Extract names", 0.0));
+        ChatResponse second = model.chat(request("Extract names", 0.0));
+
+        assertThat(second.aiMessage().text()).isEqualTo(first.aiMessage().text());
+        assertThat(second.tokenUsage().inputTokenCount()).isEqualTo(100);
+        verify(delegate, times(1)).chat(any(ChatRequest.class));
+        assertThat(model.stats().memoryHits()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should call the model when the prompt or sampling parameters differ")
+    void keysOnPromptAndParameters() {
+        when(delegate.chat(any(ChatRequest.class))).thenReturn(response("[]", FinishReason.STOP));
+
+        model.chat(request("Extract names", 0.0));
+        model.chat(request("Extract titles", 0.0));
+        model.chat(request("Extract names", 0.2));
+
+        verify(delegate, times(3)).chat(any(ChatRequest.class));
+    }
+
+    @Test
+    @DisplayName("should not store a truncated response")
+    void skipsTruncatedResponses() {
+        when(delegate.chat(any(ChatRequest.class))).thenReturn(response("[\"Jane", FinishReason.LENGTH));
+
+        model.chat(request("Extract names", 0.0));
+        model.chat(request("Extract names", 0.0));
+
+        verify(delegate, times(2)).chat(any(ChatRequest.class));
+    }
+
+    @Test
+    @DisplayName("should not store an answer that is not JSON, so a guardrail retry reaches the model")
+    void skipsAnswersThatAreNotJson() {
+        when(delegate.chat(any(ChatRequest.class)))
+                .thenReturn(response("Here are the names: Jane Doe", FinishReason.STOP),
+                        response("[\"Jane Doe\"]", FinishReason.STOP));
+
+        model.chat(request("Extract names", 0.0));
+        ChatResponse retry = model.chat(request("Extract names", 0.0));
+        ChatResponse repeat = model.chat(request("Extract names", 0.0));
+
+        assertThat(retry.aiMessage().text()).isEqualTo("[\"Jane Doe\"]");
+        assertThat(repeat.aiMessage().text()).isEqualTo("[\"Jane Doe\"]");
+        verify(delegate, times(2)).chat(any(ChatRequest.class));
+    }
+
+    private static ChatRequest request(String user, double temperature) {
+        return ChatRequest.builder()
+                .messages(SystemMessage.from("You extract person names"), UserMessage.from(user))
+                .parameters(ChatRequestParameters.builder().temperature(temperature).build())
+                .build();
+    }
+
+    private static ChatResponse response(String text, FinishReason finishReason) {
+        return ChatResponse.builder()
+                .aiMessage(AiMessage.from(text))
+                .modelName("gemini-2.5-pro")
+                .tokenUsage(new TokenUsage(100, 10))
+                .finishReason(finishReason)
+                .build();
+    }
+}
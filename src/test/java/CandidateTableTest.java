@@ -0,0 +1,97 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.model.MergedResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("CandidateTable")
+class CandidateTableTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private CandidateTable table;
+    private List<CandidateTable.Batch> batches;
+
+    /** Five merged candidates, ids 11-15, in batches [11, 12], [13, 14], [15]. */
+    @BeforeEach
+    void setUp() throws Exception {
+        MergedResult merged = objectMapper.readValue("""
+                {"merged_candidates": [
+                  {"id": 11, "lastName": "Adler"}, {"id": 12, "lastName": "Brandt"},
+                  {"id": 13, "lastName": "Claus"}, {"id": 14, "lastName": "Dorn"},
+                  {"id": 15, "lastName": "Engel"}],
+                 "global_source_classification": []}""", MergedResult.class);
+        table = CandidateTable.fromMergedResult(objectMapper, merged);
+        batches = table.batches(2);
+    }
+
+    @Test
+    @DisplayName("should split rows into consecutive batches")
+    void splitsIntoBatches() throws Exception {
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(2).size()).isEqualTo(1);
+        JsonNode second = objectMapper.readTree(batches.get(1).normalizedCandidatesJson());
+        assertThat(second.get("normalized_candidates").findValuesAsText("lastName"))
+                .containsExactly("Claus", "Dorn");
+    }
+
+    @Test
+    @DisplayName("should place enriched rows by id in base order, whatever order batches and rows arrive in")
+    void matchesEnrichedRowsById() throws Exception {
+        table.putEnriched(batches.get(2), enriched("{\"id\": 15, \"tag\": \"e\"}"));
+        table.putEnriched(batches.get(0), enriched("{\"id\": 12, \"tag\": \"b\"}, {\"id\": 11, \"tag\": \"a\"}"));
+        table.putEnriched(batches.get(1), enriched("{\"id\": 14, \"tag\": \"d\"}, {\"id\": 13, \"tag\": \"c\"}"));
+
+        JsonNode rows = enrichedRows();
+        assertThat(rows.findValuesAsText("tag")).containsExactly("a", "b", "c", "d", "e");
+    }
+
+    @Test
+    @DisplayName("should keep unmatched rows after their batch's matched rows")
+    void keepsUnmatchedRowsAfterTheirBatch() throws Exception {
+        table.putEnriched(batches.get(0), enriched("""
+                {"id": 11, "tag": "a"}, {"id": 99, "tag": "unknown"}, {"id": 13, "tag": "other-batch"},
+                {"id": 11, "tag": "repeated"}, {"tag": "no-id"}"""));
+        table.putEnriched(batches.get(1), enriched("{\"id\": 13, \"tag\": \"c\"}, {\"id\": 14, \"tag\": \"d\"}"));
+        table.putEnriched(batches.get(2), "not json");
+
+        JsonNode rows = enrichedRows();
+        assertThat(rows.findValuesAsText("tag"))
+                .containsExactly("a", "unknown", "other-batch", "repeated", "no-id", "c", "d");
+    }
+
+    @Test
+    @DisplayName("should renumber ids 1..n in place and append an id to rows without one")
+    void renumbersIds() throws Exception {
+        table.putEnriched(batches.get(0), enriched("{\"tag\": \"no-id\"}, {\"id\": 11, \"tag\": \"a\"}"));
+        table.putEnriched(batches.get(1), enriched("{\"tag\": \"c\", \"id\": 13}"));
+
+        JsonNode rows = enrichedRows();
+        assertThat(rows.findValues("id").stream().map(JsonNode::asInt).toList()).containsExactly(1, 2, 3);
+        assertThat(rows.get(1).get("tag").asText()).isEqualTo("no-id");
+        assertThat(fieldNames(rows.get(1))).containsExactly("tag", "id");   // appended
+        assertThat(fieldNames(rows.get(2))).containsExactly("tag", "id");   // replaced in place
+    }
+
+    private static String enriched(String rows) {
+        return "{\"enriched_candidates\": [" + rows + "]}";
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    private JsonNode enrichedRows() throws Exception {
+        return objectMapper.readTree(table.enrichedCandidatesJson()).get("enriched_candidates");
+    }
+}
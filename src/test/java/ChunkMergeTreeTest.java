@@ -0,0 +1,136 @@
+package com.eainde.agent.V2.chunk;
+
+import com.eainde.agent.thread.BoundedParallelExecutor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ChunkMergeTree")
+class ChunkMergeTreeTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BoundedParallelExecutor executor = new BoundedParallelExecutor("merge-tree-test", 4);
+
+    /** Page ranges ("10-19") of every merger call, one list per call. */
+    private final List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+
+    /** Fake chunk merger: concatenates the candidates of its chunks, in order. */
+    private final UnaryOperator<String> merger = chunkResults -> {
+        JsonNode chunks = read(chunkResults).path("chunks");
+        List<String> ranges = new ArrayList<>();
+        ObjectNode merged = objectMapper.createObjectNode();
+        ArrayNode candidates = merged.putArray("merged_candidates");
+        for (JsonNode chunk : chunks) {
+            ranges.add(chunk.path("pageStart").asInt() + "-" + chunk.path("pageEnd").asInt());
+            chunk.path("normalizedCandidates").path("normalized_candidates").forEach(candidates::add);
+        }
+        merged.putArray("global_source_classification");
+        merged.putObject("merge_stats").put("overlapDuplicates", 1);
+        calls.add(ranges);
+        return merged.toString();
+    };
+
+    /** Six chunks of ten pages each: 10-19, 20-29, ... 60-69, one candidate each. */
+    private String chunkResults() {
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode chunks = root.putArray("chunks");
+        for (int i = 0; i < 6; i++) {
+            ObjectNode chunk = chunks.addObject();
+            chunk.put("chunkIndex", i);
+            chunk.put("pageStart", 10 * (i + 1));
+            chunk.put("pageEnd", 10 * (i + 1) + 9);
+            chunk.put("overlapStartPage", 10 * (i + 1));
+            chunk.put("overlapEndPage", 10 * (i + 1) + 1);
+            chunk.put("isFirstChunk", i == 0);
+            chunk.put("isLastChunk", i == 5);
+            chunk.putObject("sourceClassification").putArray("source_classification");
+            chunk.putObject("normalizedCandidates").putArray("normalized_candidates")
+                    .addObject().put("dedupKey", "person-" + i);
+        }
+        return root.toString();
+    }
+
+    /** Same estimate as the tree: word heuristic, floored at four characters per token. */
+    private static int tokens(String json) {
+        return Math.max(TokenCounter.wordHeuristic().count(json), (json.length() + 3) / 4);
+    }
+
+    private int largestEntryTokens(String chunkResults) {
+        int largest = 0;
+        for (JsonNode chunk : read(chunkResults).path("chunks")) {
+            largest = Math.max(largest, tokens(chunk.toString()));
+        }
+        return largest;
+    }
+
+    private ChunkMergeTree tree(int tokenBudget) {
+        return new ChunkMergeTree(objectMapper, TokenCounter.wordHeuristic(), tokenBudget, executor);
+    }
+
+    @Test
+    @DisplayName("should make exactly one merger call when the payload fits the budget")
+    void singleCallWhenPayloadFits() {
+        String chunkResults = chunkResults();
+
+        String merged = tree(tokens(chunkResults)).merge(chunkResults, merger);
+
+        assertThat(calls).containsExactly(List.of("10-19", "20-29", "30-39", "40-49", "50-59", "60-69"));
+        assertThat(read(merged).path("merge_stats").path("overlapDuplicates").asInt()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should group as many adjacent entries per call as the budget allows")
+    void fanInFollowsTokenBudget() {
+        String chunkResults = chunkResults();
+        int budget = 3 * largestEntryTokens(chunkResults) + 1;   // room for three entries, not four
+
+        tree(budget).merge(chunkResults, merger);
+
+        assertThat(calls.subList(0, 2)).containsExactlyInAnyOrder(
+                List.of("10-19", "20-29", "30-39"),
+                List.of("40-49", "50-59", "60-69"));
+        assertThat(calls.get(2)).containsExactly("10-39", "40-69");
+        assertThat(calls).hasSize(3);
+    }
+
+    @Test
+    @DisplayName("should merge pairs level by level and keep candidates in chunk order")
+    void buildsTreeLevelByLevel() {
+        String chunkResults = chunkResults();
+        int budget = 2 * largestEntryTokens(chunkResults) + 1;   // fan-in 2
+
+        JsonNode merged = read(tree(budget).merge(chunkResults, merger));
+
+        // Level 1: three pairs of chunks; later levels merge the groups' page spans
+        assertThat(calls.subList(0, 3)).containsExactlyInAnyOrder(
+                List.of("10-19", "20-29"), List.of("30-39", "40-49"), List.of("50-59", "60-69"));
+        assertThat(calls.get(calls.size() - 1)).hasSize(2);
+        assertThat(calls.get(calls.size() - 1).get(0)).startsWith("10-");
+        assertThat(calls.get(calls.size() - 1).get(1)).endsWith("-69");
+
+        assertThat(merged.path("merged_candidates").findValuesAsText("dedupKey")).containsExactly(
+                "person-0", "person-1", "person-2", "person-3", "person-4", "person-5");
+        JsonNode stats = merged.path("merge_stats");
+        assertThat(stats.path("totalChunks").asInt()).isEqualTo(6);
+        assertThat(stats.path("totalCandidatesBeforeMerge").asInt()).isEqualTo(6);
+        assertThat(stats.path("overlapDuplicates").asInt()).isEqualTo(calls.size());
+    }
+
+    private JsonNode read(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.eainde.agent.V2.chunk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ChunkResultMerger")
+class ChunkResultMergerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChunkResultMerger merger = new ChunkResultMerger(objectMapper);
+
+    private static String candidate(String first, String last, int page, String asciiKey) {
+        String key = first.toLowerCase() + "|" + last.toLowerCase() + "|Registry.pdf|" + page;
+        return "{\"id\":1,\"firstName\":\"" + first + "\",\"lastName\":\"" + last + "\","
+                + "\"documentName\":\"Registry.pdf\",\"pageNumber\":" + page + ","
+                + "\"dedupKey\":\"" + key + "\",\"asciiDedupKey\":\"" + (asciiKey != null ? asciiKey : key) + "\","
+                + "\"roleHint\":\"Geschäftsführer\"}";
+    }
+
+    private static String chunk(int index, int overlapStart, int overlapEnd, String... candidates) {
+        return "{\"chunkIndex\":" + index + ",\"overlapStartPage\":" + overlapStart
+                + ",\"overlapEndPage\":" + overlapEnd + ","
+                + "\"sourceClassification\":{\"source_classification\":["
+                + "{\"documentName\":\"Registry.pdf\",\"sourceClass\":\"H2\"}]},"
+                + "\"normalizedCandidates\":{\"normalized_candidates\":[" + String.join(",", candidates) + "]}}";
+    }
+
+    @Test
+    @DisplayName("should collapse overlap duplicates without calling the LLM")
+    void collapsesOverlapDuplicates() throws Exception {
+        List<String> llmCalls = new ArrayList<>();
+        String chunkResults = "{\"chunks\":["
+                + chunk(0, -1, -1, candidate("Hans", "Müller", 19, "hans|mueller|Registry.pdf|19"))
+                + "," + chunk(1, 16, 20,
+                        candidate("Hans", "Muller", 19, "hans|mueller|Registry.pdf|19"),
+                        candidate("Eva", "Klein", 25, null))
+                + "]}";
+
+        JsonNode result = objectMapper.readTree(merger.merge(chunkResults, residual -> {
+            llmCalls.add(residual);
+            return "{}";
+        }));
+
+        assertThat(llmCalls).isEmpty();
+        assertThat(result.path("merged_candidates")).hasSize(2);
+        assertThat(result.path("merged_candidates").get(0).path("roleHint").asText()).isEqualTo("Geschäftsführer");
+        assertThat(result.path("merged_candidates").get(1).path("id").asInt()).isEqualTo(2);
+        assertThat(result.path("merge_stats").path("overlapDuplicates").asInt()).isEqualTo(1);
+        assertThat(result.path("global_source_classification")).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("should send only near-match groups to the LLM merger")
+    void delegatesNearMatches() throws Exception {
+        List<String> llmCalls = new ArrayList<>();
+        String chunkResults = "{\"chunks\":["
+                + chunk(0, -1, -1, candidate("Anna", "Schmidt", 3, null), candidate("Eva", "Klein", 4, null))
+                + "," + chunk(1, 16, 20, candidate("Andrea", "Schmidt", 30, null))
+                + "]}";
+
+        JsonNode result = objectMapper.readTree(merger.merge(chunkResults, residual -> {
+            llmCalls.add(residual);
+            return "{\"merged_candidates\":[{\"id\":1,\"firstName\":\"Anna\",\"lastName\":\"Schmidt\"}],"
+                    + "\"merge_stats\":{\"overlapDuplicates\":0}}";
+        }));
+
+        assertThat(llmCalls).hasSize(1);
+        assertThat(llmCalls.get(0)).contains("Schmidt").doesNotContain("Klein");
+        assertThat(result.path("merged_candidates")).hasSize(2);
+        assertThat(result.path("merge_stats").path("duplicatesRemoved").asInt()).isEqualTo(1);
+    }
+}
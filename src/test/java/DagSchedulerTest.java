@@ -0,0 +1,100 @@
+package com.eainde.agent.thread;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("DagScheduler")
+class DagSchedulerTest {
+
+    private final Map<String, String> state = new ConcurrentHashMap<>(Map.of("sourceText", "text"));
+
+    @Test
+    @DisplayName("should derive waves from input and output keys")
+    void derivesWaves() {
+        DagScheduler graph = DagScheduler.builder("sourceText")
+                .node("normalizer", List.of("rawNames", "sourceClassification"), "normalizedCandidates", () -> { })
+                .node("extractor", List.of("sourceText"), "rawNames", () -> { })
+                .node("classifier", List.of("sourceText"), "sourceClassification", () -> { })
+                .node("title", List.of("normalizedCandidates", "sourceText"), "titleExtractions", () -> { })
+                .node("scoring", List.of("normalizedCandidates"), "scoredCandidates", () -> { })
+                .build();
+
+        assertThat(graph.waves()).containsExactly(
+                List.of("extractor", "classifier"), List.of("normalizer"), List.of("title", "scoring"));
+    }
+
+    @Test
+    @DisplayName("should run each node after its producers and report the critical path")
+    void runsInDependencyOrder() {
+        DagScheduler graph = DagScheduler.builder("sourceText")
+                .node("extractor", List.of("sourceText"), "rawNames", () -> write("rawNames", 10))
+                .node("classifier", List.of("sourceText"), "sourceClassification",
+                        () -> write("sourceClassification", 80))
+                .node("normalizer", List.of("rawNames", "sourceClassification"), "normalizedCandidates", () -> {
+                    assertThat(state).containsKeys("rawNames", "sourceClassification");
+                    write("normalizedCandidates", 10);
+                })
+                .build();
+
+        DagScheduler.Report report = graph.run();
+
+        assertThat(state).containsKey("normalizedCandidates");
+        assertThat(report.criticalPath()).containsExactly("classifier", "normalizer");
+        assertThat(report.durations()).containsOnlyKeys("extractor", "classifier", "normalizer");
+    }
+
+    @Test
+    @DisplayName("should reject missing inputs, duplicate outputs and cycles")
+    void validatesGraph() {
+        assertThatThrownBy(() -> DagScheduler.builder("sourceText")
+                .node("normalizer", List.of("rawNames"), "normalizedCandidates", () -> { })
+                .build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("rawNames");
+        assertThatThrownBy(() -> DagScheduler.builder("sourceText")
+                .node("formatter", List.of("sourceText"), "finalOutput", () -> { })
+                .node("refiner", List.of("sourceText"), "finalOutput", () -> { })
+                .build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("finalOutput");
+        assertThatThrownBy(() -> DagScheduler.builder()
+                .node("a", List.of("b"), "a", () -> { })
+                .node("b", List.of("a"), "b", () -> { })
+                .build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("cycle");
+    }
+
+    @Test
+    @DisplayName("should not start dependents of a failed node and rethrow its failure")
+    void propagatesFailure() {
+        DagScheduler graph = DagScheduler.builder("sourceText")
+                .node("extractor", List.of("sourceText"), "rawNames", () -> {
+                    throw new IllegalStateException("extractor failed");
+                })
+                .node("normalizer", List.of("rawNames"), "normalizedCandidates",
+                        () -> write("normalizedCandidates", 0))
+                .build();
+
+        assertThatThrownBy(graph::run)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("extractor failed");
+        assertThat(state).doesNotContainKey("normalizedCandidates");
+    }
+
+    private void write(String key, long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        state.put(key, key);
+    }
+}
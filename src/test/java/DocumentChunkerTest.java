@@ -0,0 +1,195 @@
+package com.eainde.agent.V2.chunk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("DocumentChunker")
+class DocumentChunkerTest {
+
+    private static String pages(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(i -> "  page " + i + " text  ")
+                .collect(Collectors.joining("\f"));
+    }
+
+    // =========================================================================
+    //  Page index
+    // =========================================================================
+
+    @Nested
+    @DisplayName("PageIndex")
+    class PageIndexTests {
+
+        @Test
+        @DisplayName("should record stripped page bounds and skip empty pages")
+        void stripsAndSkipsEmpty() {
+            PageIndex index = DocumentChunker.withDefaults().indexPages(" one \f\f  \f two\n\f three ");
+
+            assertThat(index.pageCount()).isEqualTo(3);
+            assertThat(index.page(0).toString()).isEqualTo("one");
+            assertThat(index.page(1).toString()).isEqualTo("two");
+            assertThat(index.page(2).toString()).isEqualTo("three");
+        }
+
+        @Test
+        @DisplayName("should treat text without delimiters as a single page")
+        void noDelimiter() {
+            PageIndex index = DocumentChunker.withDefaults().indexPages("  just one page  ");
+
+            assertThat(index.pageCount()).isEqualTo(1);
+            assertThat(index.page(0).toString()).isEqualTo("just one page");
+        }
+
+        @Test
+        @DisplayName("page range views should support subSequence without copying the source")
+        void subSequenceView() {
+            String source = "alpha\fbeta\fgamma";
+            CharSequence view = DocumentChunker.withDefaults().indexPages(source).pages(1, 3);
+
+            assertThat(view.length()).isEqualTo("beta\fgamma".length());
+            assertThat(view.charAt(0)).isEqualTo('b');
+            assertThat(view.subSequence(5, 10).toString()).isEqualTo("gamma");
+        }
+    }
+
+    // =========================================================================
+    //  Page-mode chunking
+    // =========================================================================
+
+    @Nested
+    @DisplayName("chunk()")
+    class Chunking {
+
+        @Test
+        @DisplayName("should return a single chunk when the document fits")
+        void singleChunk() {
+            List<ChunkContext> chunks = DocumentChunker.withDefaults().chunk(pages(10));
+
+            assertThat(chunks).hasSize(1);
+            assertThat(chunks.get(0).pageEnd()).isEqualTo(10);
+            assertThat(chunks.get(0).isLastChunk()).isTrue();
+        }
+
+        @Test
+        @DisplayName("should produce overlapping page ranges with correct totalChunks")
+        void overlappingRanges() {
+            List<ChunkContext> chunks = DocumentChunker.builder()
+                    .pagesPerChunk(20)
+                    .overlapPages(5)
+                    .build()
+                    .chunk(pages(50));
+
+            assertThat(chunks).extracting(ChunkContext::pageStart).containsExactly(1, 16, 31);
+            assertThat(chunks).extracting(ChunkContext::pageEnd).containsExactly(20, 35, 50);
+            assertThat(chunks).allMatch(c -> c.totalChunks() == 3);
+            assertThat(chunks.get(1).overlapStartPage()).isEqualTo(16);
+            assertThat(chunks.get(1).overlapEndPage()).isEqualTo(20);
+        }
+
+        @Test
+        @DisplayName("chunk text should span its pages in the original buffer")
+        void chunkTextView() {
+            List<ChunkContext> chunks = DocumentChunker.builder()
+                    .pagesPerChunk(2)
+                    .overlapPages(1)
+                    .build()
+                    .chunk(pages(3));
+
+            assertThat(chunks).hasSize(2);
+            assertThat(chunks.get(1).chunkText().toString())
+                    .startsWith("page 2 text")
+                    .endsWith("page 3 text");
+        }
+
+        @Test
+        @DisplayName("should return one empty chunk for blank input")
+        void blankInput() {
+            List<ChunkContext> chunks = DocumentChunker.withDefaults().chunk("  \f  ");
+
+            assertThat(chunks).hasSize(1);
+            assertThat(chunks.get(0).chunkText().toString()).isEmpty();
+        }
+    }
+
+    // =========================================================================
+    //  Token-budget packing
+    // =========================================================================
+
+    @Nested
+    @DisplayName("token packing")
+    class TokenPacking {
+
+        /** Counts one token per non-whitespace character — easy to reason about. */
+        private final TokenCounter charCounter = (text, start, end) -> {
+            int n = 0;
+            for (int i = start; i < end; i++) {
+                if (!Character.isWhitespace(text.charAt(i))) n++;
+            }
+            return n;
+        };
+
+        private DocumentChunker chunker(int maxTokens, int overlapTokens) {
+            return DocumentChunker.builder()
+                    .maxTokensPerChunk(maxTokens)
+                    .overlapTokens(overlapTokens)
+                    .tokenCounter(charCounter)
+                    .build();
+        }
+
+        @Test
+        @DisplayName("should pack pages greedily up to the token budget")
+        void greedyPacking() {
+            // Pages of 4, 4, 4, 10, 2 tokens
+            String text = "aaaa\fbbbb\fcccc\fdddddddddd\fee";
+
+            List<ChunkContext> chunks = chunker(12, 0).chunk(text);
+
+            assertThat(chunks).extracting(ChunkContext::pageStart).containsExactly(1, 4);
+            assertThat(chunks).extracting(ChunkContext::pageEnd).containsExactly(3, 5);
+            assertThat(chunks).extracting(ChunkContext::estimatedTokens).containsExactly(12, 12);
+            assertThat(chunks.get(1).overlapStartPage()).isEqualTo(-1);
+        }
+
+        @Test
+        @DisplayName("should re-read trailing pages that fit in the overlap budget")
+        void tokenOverlap() {
+            String text = "aaaa\fbbbb\fcccc\fdddd\feeee";
+
+            List<ChunkContext> chunks = chunker(12, 4).chunk(text);
+
+            assertThat(chunks).extracting(ChunkContext::pageStart).containsExactly(1, 3);
+            assertThat(chunks).extracting(ChunkContext::pageEnd).containsExactly(3, 5);
+            assertThat(chunks.get(1).overlapStartPage()).isEqualTo(3);
+            assertThat(chunks.get(1).overlapEndPage()).isEqualTo(3);
+            assertThat(chunks).allMatch(c -> c.estimatedTokens() <= 12);
+        }
+
+        @Test
+        @DisplayName("should give an oversized page its own chunk instead of stalling")
+        void oversizedPage() {
+            String text = "aa\f" + "x".repeat(50) + "\fbb";
+
+            List<ChunkContext> chunks = chunker(10, 4).chunk(text);
+
+            assertThat(chunks).extracting(ChunkContext::pageEnd).containsExactly(1, 2, 3);
+            assertThat(chunks.get(1).estimatedTokens()).isEqualTo(50);
+            assertThat(chunks.get(1).overlapStartPage()).isEqualTo(-1);
+        }
+
+        @Test
+        @DisplayName("should keep a document within budget as a single chunk")
+        void fitsInBudget() {
+            List<ChunkContext> chunks = chunker(1_000, 10).chunk(pages(30));
+
+            assertThat(chunks).hasSize(1);
+            assertThat(chunks.get(0).pageEnd()).isEqualTo(30);
+        }
+    }
+}
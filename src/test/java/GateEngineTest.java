@@ -0,0 +1,114 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("GateEngine")
+class GateEngineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GateEngine gateEngine = new GateEngine(objectMapper, () -> LocalDate.of(2025, 6, 30));
+
+    /** Agent 4 output shape (csm-dedup-linker): no temporalStatus or signatoryType yet. */
+    private static final String DEDUPED = """
+            {"deduped_candidates":[
+              {"id":1,"firstName":"Max","middleName":null,"lastName":"Mueller","personalTitle":"Herr",
+               "documentName":"Registry.pdf","pageNumber":2,"roleHints":["Geschäftsführer"],
+               "dedupKey":"max|mueller|Registry.pdf|2","sourceClass":"H2","sourceDate":"2025-03-10",
+               "conflictTag":"C: clear","dedupNote":null,
+               "allOccurrences":[{"documentName":"Registry.pdf","pageNumber":2,"sourceClass":"H2"}]},
+              {"id":2,"firstName":"Eva","middleName":null,"lastName":"Klein","personalTitle":"Frau",
+               "documentName":"Registry.pdf","pageNumber":3,"roleHints":["Geschäftsführerin (ausgeschieden)"],
+               "dedupKey":"eva|klein|Registry.pdf|3","sourceClass":"H2","sourceDate":"2024-12-31",
+               "conflictTag":"C: clear","dedupNote":null,
+               "allOccurrences":[{"documentName":"Registry.pdf","pageNumber":3,"sourceClass":"H2"}]},
+              {"id":3,"firstName":"Jan","middleName":null,"lastName":"Roth","personalTitle":null,
+               "documentName":"Registry.pdf","pageNumber":3,"roleHints":["Gesamtprokura"],
+               "dedupKey":"jan|roth|Registry.pdf|3","sourceClass":"H2","sourceDate":"2025-03-10",
+               "conflictTag":"C: clear","dedupNote":null,
+               "allOccurrences":[{"documentName":"Registry.pdf","pageNumber":3,"sourceClass":"H2"}]},
+              {"id":4,"firstName":"Anna","middleName":null,"lastName":"Weber","personalTitle":"Dr.",
+               "documentName":"Minutes.pdf","pageNumber":7,"roleHints":["Notar"],
+               "dedupKey":"anna|weber|Minutes.pdf|7","sourceClass":"H4","sourceDate":"2023-05-02",
+               "conflictTag":"C: clear","dedupNote":null,
+               "allOccurrences":[{"documentName":"Minutes.pdf","pageNumber":7,"sourceClass":"H4"}]},
+              {"id":5,"firstName":"Paul","middleName":null,"lastName":"Frey","personalTitle":null,
+               "documentName":"Notice.pdf","pageNumber":1,"roleHints":["former director"],
+               "dedupKey":"paul|frey|Notice.pdf|1","sourceClass":"H3","sourceDate":"2025-09-01",
+               "conflictTag":"C: clear","dedupNote":null,
+               "allOccurrences":[{"documentName":"Notice.pdf","pageNumber":1,"sourceClass":"H3"}]},
+              {"id":6,"firstName":"Lea","middleName":null,"lastName":"Hahn","personalTitle":null,
+               "documentName":"Registry.pdf","pageNumber":4,"roleHints":["former CFO","CEO"],
+               "dedupKey":"lea|hahn|Registry.pdf|4","sourceClass":"H2","sourceDate":"2025-03-10",
+               "conflictTag":"C: clear","dedupNote":"merged from AR.pdf",
+               "allOccurrences":[{"documentName":"Registry.pdf","pageNumber":4,"sourceClass":"H2"},
+                                 {"documentName":"AR.pdf","pageNumber":12,"sourceClass":"H3"}]}],
+             "entities_found":[{"name":"Beispiel Holding GmbH","pageNumber":2}]}
+            """;
+
+    @Test
+    @DisplayName("should resolve gates 1, 6 and 7 and leave the rest to the classifier")
+    void partitionsByGate() throws Exception {
+        GateEngine.Partition partition = gateEngine.partition(DEDUPED);
+
+        assertThat(partition.resolvedCount()).isEqualTo(3);
+        assertThat(partition.unresolvedCount()).isEqualTo(3);
+
+        JsonNode unresolved = objectMapper.readTree(partition.unresolvedJson());
+        assertThat(unresolved.path("deduped_candidates")).extracting(c -> c.path("id").asInt())
+                .containsExactly(1, 5, 6);
+        assertThat(unresolved.path("entities_found")).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("should merge rule decisions and classifier rows in input order")
+    void mergesInInputOrder() throws Exception {
+        GateEngine.Partition partition = gateEngine.partition(DEDUPED);
+
+        String llmOutput = """
+                {"classified_candidates":[
+                  {"id":6,"isCsm":true,"temporalStatus":"current"},
+                  {"id":5,"isCsm":false,"temporalStatus":"current"},
+                  {"id":1,"isCsm":true,"temporalStatus":"current"}]}
+                """;
+        JsonNode classified = objectMapper.readTree(partition.merge(llmOutput)).path("classified_candidates");
+
+        assertThat(classified).extracting(c -> c.path("id").asInt()).containsExactly(1, 2, 3, 4, 5, 6);
+        assertThat(classified.get(0).path("isCsm").asBoolean()).isTrue();
+
+        JsonNode former = classified.get(1);
+        assertThat(former.path("isCsm").asBoolean()).isFalse();
+        assertThat(former.path("temporalStatus").asText()).isEqualTo("former");
+        assertThat(former.path("formerEffectiveDate").isNull()).isTrue();
+        assertThat(former.path("governanceBasis").asText()).isEqualTo(
+                "Former officer (resignation per source dated 2024-12-31) = excluded");
+        assertThat(former.path("controlsApplied").get(0).asText()).isEqualTo("C8");
+        assertThat(former.path("lastName").asText()).isEqualTo("Klein");
+        assertThat(former.path("allOccurrences")).hasSize(1);
+
+        assertThat(classified.get(2).path("controlsApplied").get(0).asText()).isEqualTo("C6");
+        assertThat(classified.get(2).path("signatoryType").asText()).isEqualTo("joint");
+        assertThat(classified.get(2).path("temporalStatus").asText()).isEqualTo("unknown");
+        assertThat(classified.get(3).path("controlsApplied").get(0).asText()).isEqualTo("A2");
+        assertThat(classified.get(3).path("currencyTag").asText()).isEqualTo("U: low-authority");
+    }
+
+    @Test
+    @DisplayName("should keep rule decisions when nothing is left for the classifier")
+    void mergesWithoutClassifierOutput() throws Exception {
+        GateEngine.Partition partition = gateEngine.partition("""
+                {"deduped_candidates":[{"id":1,"roleHints":["witness"]}]}
+                """);
+
+        assertThat(partition.unresolvedCount()).isZero();
+        JsonNode classified = objectMapper.readTree(partition.merge(null)).path("classified_candidates");
+        assertThat(classified).hasSize(1);
+        assertThat(classified.get(0).path("signatoryType").asText()).isEqualTo("unknown");
+    }
+}
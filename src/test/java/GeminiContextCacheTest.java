@@ -0,0 +1,151 @@
+package com.db.clm.kyc.ai.nexus.agent;
+
+import com.google.genai.types.CachedContent;
+import com.google.genai.types.CreateCachedContentConfig;
+import com.google.genai.types.DeleteCachedContentConfig;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.TextContent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("GeminiContextCache")
+class GeminiContextCacheTest {
+
+    private static final List<Content> DOCUMENTS = List.of(TextContent.from("Annual report 2024 ..."));
+
+    @Mock private GeminiContextCache.Endpoint endpoint;
+
+    private GeminiContextCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new GeminiContextCache(endpoint, "gemini-2.5-pro", Duration.ofMinutes(30));
+    }
+
+    @Test
+    @DisplayName("should create one handle per document and system prompt")
+    void createsHandleOncePerKey() {
+        when(endpoint.create(eq("gemini-2.5-pro"), any(CreateCachedContentConfig.class)))
+                .thenReturn(cached("cachedContents/extractor"), cached("cachedContents/critic"));
+
+        assertThat(cache.handleFor("You extract names", DOCUMENTS)).contains("cachedContents/extractor");
+        assertThat(cache.handleFor("You extract names", DOCUMENTS)).contains("cachedContents/extractor");
+        assertThat(cache.handleFor("You review extractions", DOCUMENTS)).contains("cachedContents/critic");
+
+        verify(endpoint, times(2)).create(eq("gemini-2.5-pro"), any(CreateCachedContentConfig.class));
+    }
+
+    @Test
+    @DisplayName("should create a handle once for concurrent first uses without blocking other keys")
+    void concurrentFirstUsesShareOneCreate() throws Exception {
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger creates = new AtomicInteger();
+        when(endpoint.create(eq("gemini-2.5-pro"), any(CreateCachedContentConfig.class))).thenAnswer(call -> {
+            if (creates.incrementAndGet() > 1) {
+                return cached("cachedContents/critic");
+            }
+            creating.countDown();
+            release.await();
+            return cached("cachedContents/extractor");
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Optional<String>> first = executor.submit(() -> cache.handleFor("You extract names", DOCUMENTS));
+            assertThat(creating.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<Optional<String>> second = executor.submit(() -> cache.handleFor("You extract names", DOCUMENTS));
+
+            // Another key is created while the first creation is still in flight
+            assertThat(cache.handleFor("You review extractions", DOCUMENTS)).contains("cachedContents/critic");
+            assertThat(second.isDone()).isFalse();
+
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).contains("cachedContents/extractor");
+            assertThat(second.get(5, TimeUnit.SECONDS)).contains("cachedContents/extractor");
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(endpoint, times(2)).create(eq("gemini-2.5-pro"), any(CreateCachedContentConfig.class));
+    }
+
+    @Test
+    @DisplayName("should generate with the handle instead of a system instruction")
+    void generatesWithHandle() {
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(endpoint.generate(eq("gemini-2.5-pro"), anyList(), any(GenerateContentConfig.class)))
+                .thenReturn(response);
+
+        cache.generate("cachedContents/extractor", List.of(TextContent.from("Extract all names")),
+                GenerateContentConfig.builder().temperature(0.0f).build());
+
+        ArgumentCaptor<GenerateContentConfig> config = ArgumentCaptor.forClass(GenerateContentConfig.class);
+        verify(endpoint).generateContent(eq("gemini-2.5-pro"), anyList(), config.capture());
+        assertThat(config.getValue().cachedContent()).contains("cachedContents/extractor");
+        assertThat(config.getValue().systemInstruction()).isEmpty();
+        assertThat(config.getValue().temperature()).contains(0.0f);
+    }
+
+    @Test
+    @DisplayName("should remember an uncacheable prefix and not retry it")
+    void fallsBackWhenCreateFails() {
+        when(endpoint.create(any(), any())).thenThrow(new IllegalStateException("Cached content is too small"));
+
+        assertThat(cache.handleFor("You extract names", DOCUMENTS)).isEmpty();
+        assertThat(cache.handleFor("You extract names", DOCUMENTS)).isEmpty();
+
+        verify(endpoint, times(1)).create(any(), any());
+    }
+
+    @Test
+    @DisplayName("should delete every handle on close")
+    void deletesHandlesOnClose() {
+        when(endpoint.create(any(), any()))
+                .thenReturn(cached("cachedContents/extractor"), cached("cachedContents/critic"));
+        cache.handleFor("You extract names", DOCUMENTS);
+        cache.handleFor("You review extractions", DOCUMENTS);
+
+        cache.close();
+
+        verify(endpoint).delete(eq("cachedContents/extractor"), any(DeleteCachedContentConfig.class));
+        verify(endpoint).delete(eq("cachedContents/critic"), any(DeleteCachedContentConfig.class));
+    }
+
+    @Test
+    @DisplayName("should create no handle once closed")
+    void createsNoHandleAfterClose() {
+        cache.close();
+
+        assertThat(cache.handleFor("You extract names", DOCUMENTS)).isEmpty();
+
+        verify(endpoint, never()).create(any(), any());
+    }
+
+    private static CachedContent cached(String name) {
+        return CachedContent.builder().name(name).build();
+    }
+}
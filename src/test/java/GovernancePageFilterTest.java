@@ -0,0 +1,103 @@
+package com.eainde.agent.V2.chunk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("GovernancePageFilter")
+class GovernancePageFilterTest {
+
+    private static final String COVER = "Annual Report 2024";
+    private static final String FINANCIALS = "Total assets 1.234.567 EUR\n Liabilities 987.654 EUR\n Equity 246.913 EUR";
+    private static final String BALANCE_SHEET = """
+            Consolidated Statement of Financial Position as at 31 December 2024
+            Non-Current Assets
+            Property, Plant and Equipment      1,234,567
+            Intangible Assets                    456,789
+            Current Assets
+            Trade Receivables                    321,000
+            Cash and Cash Equivalents             98,765
+            Total Assets                       2,111,121
+            Share Capital                        500,000
+            Retained Earnings                  1,200,000
+            Directors' remuneration               45,000
+            Key Management Personnel compensation 12,000
+            Administrative Expenses               87,000
+            Approved by the Board on 12 March 2025""";
+    private static final String BOARD = "Mitglieder des Vorstands: Hans Müller (Vorsitzender), Anna Schmidt";
+
+    private final GovernancePageFilter filter = GovernancePageFilter.withDefaults();
+
+    private PageIndex index(String... pages) {
+        return DocumentChunker.withDefaults().indexPages(String.join("\f", pages));
+    }
+
+    @Test
+    @DisplayName("should score lexicon terms in several scripts")
+    void multilingualTerms() {
+        assertThat(filter.scorePage("Członek Zarządu", 0, 15)).isGreaterThanOrEqualTo(1.0);
+        assertThat(filter.scorePage("代表取締役社長", 0, 7)).isGreaterThanOrEqualTo(1.0);
+        assertThat(filter.scorePage("Direktur Utama", 0, 14)).isGreaterThanOrEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should require a word boundary before Latin terms but allow inflections")
+    void wordBoundaries() {
+        assertThat(filter.scorePage("Landesvorstand", 0, 14)).isZero();
+        assertThat(filter.scorePage("PROCEO", 0, 6)).isZero();
+        assertThat(filter.scorePage("Vorstands", 0, 9)).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should score honorific followed by a capitalised word")
+    void honorifics() {
+        String text = "signed by Mr. Tanaka on behalf of the company";
+
+        assertThat(filter.scorePage(text, 0, text.length())).isGreaterThanOrEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should not keep a financial statement page for its line items and generic titles")
+    void financialStatementScoresBelowThreshold() {
+        assertThat(filter.scorePage(BALANCE_SHEET, 0, BALANCE_SHEET.length())).isLessThan(1.0);
+
+        GovernancePageFilter.Result result = filter.filter(
+                index(COVER, BALANCE_SHEET, BALANCE_SHEET, BALANCE_SHEET));
+        assertThat(result.droppedPages()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    @DisplayName("should drop pages with no signal but keep neighbours of hit pages")
+    void dropsAndKeepsNeighbours() {
+        GovernancePageFilter.Result result = filter.filter(
+                index(COVER, FINANCIALS, FINANCIALS, FINANCIALS, BOARD, FINANCIALS));
+
+        // page 0 always kept, page 4 hit, pages 3 and 5 are its neighbours
+        assertThat(result.keptPages()).containsExactly(0, 3, 4, 5);
+        assertThat(result.droppedPages()).containsExactly(1, 2);
+    }
+
+    @Test
+    @DisplayName("chunker should keep original page numbers and report dropped pages")
+    void chunkerIntegration() {
+        DocumentChunker chunker = DocumentChunker.builder()
+                .pageFilter(filter)
+                .build();
+
+        ChunkPlan plan = chunker.plan(String.join("\f",
+                COVER, FINANCIALS, FINANCIALS, FINANCIALS, BOARD, FINANCIALS));
+        List<ChunkContext> chunks = plan.chunks();
+
+        assertThat(plan.droppedPages()).containsExactly(2, 3);
+        assertThat(plan.keptPageCount()).isEqualTo(4);
+        assertThat(chunks).hasSize(1);
+        assertThat(chunks.get(0).pageEnd()).isEqualTo(6);
+        assertThat(chunks.get(0).chunkText().toString())
+                .startsWith(COVER + "\f")
+                .contains("Vorstands")
+                .doesNotContain(FINANCIALS + "\f" + FINANCIALS);
+    }
+}
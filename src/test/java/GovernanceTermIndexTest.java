@@ -0,0 +1,63 @@
+package com.eainde.agent.V2.chunk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("GovernanceTermIndex")
+class GovernanceTermIndexTest {
+
+    private final GovernanceTermIndex index = GovernanceTermIndex.lexicon();
+
+    @Test
+    @DisplayName("should find terms in several scripts, leftmost-longest")
+    void findsTermsInOnePass() {
+        String text = "Der Vorstand: Direktur Utama, 代表取締役社長, CEO";
+
+        List<GovernanceTermIndex.Hit> hits = index.scan(text, 0, text.length());
+
+        assertThat(hits).extracting(hit -> hit.term().text())
+                .containsExactly("Vorstand", "Direktur Utama", "代表取締役", "社長", "CEO");
+        assertThat(hits.get(1).offset()).isEqualTo(14);
+        assertThat(hits.get(1).term().category()).isEqualTo(GovernanceLexicon.Category.EXECUTIVE);
+        assertThat(index.count(text, 0, text.length())).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("should apply the lexicon word-boundary rules")
+    void wordBoundaries() {
+        assertThat(index.count("Landesvorstand", 0, 14)).isZero();
+        assertThat(index.count("PROCEO", 0, 6)).isZero();
+        assertThat(index.count("CEOs", 0, 4)).isZero();
+        assertThat(index.count("Vorstands", 0, 9)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should report hits with 0-based page and page-relative offset")
+    void scansPages() {
+        PageIndex pages = DocumentChunker.withDefaults().indexPages(
+                String.join("\f", "Annual Report 2024", "Total assets 1.234 EUR", "signed: Notar Dr. Weber"));
+
+        List<GovernanceTermIndex.Hit> hits = index.scan(pages);
+
+        assertThat(hits).hasSize(1);
+        assertThat(hits.get(0).page()).isEqualTo(2);
+        assertThat(hits.get(0).offset()).isEqualTo(8);
+        assertThat(hits.get(0).term().category()).isEqualTo(GovernanceLexicon.Category.EXCLUSION);
+    }
+
+    @Test
+    @DisplayName("should collect a document's anchors in the chunker's page pass")
+    void planCarriesAnchors() {
+        ChunkPlan plan = DocumentChunker.withDefaults().plan(
+                String.join("\f", "Der Vorstand", "Total assets 1.234 EUR", "signed: Notar Dr. Weber"));
+
+        assertThat(plan.governanceAnchors()).extracting(GovernanceTermIndex.Hit::page).containsExactly(0, 2);
+        assertThat(plan.governanceAnchors()).extracting(hit -> hit.term().text())
+                .containsExactly("Vorstand", "Notar");
+        assertThat(plan.metrics()).containsEntry("governanceAnchors", 2);
+    }
+}
@@ -0,0 +1,94 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.model.ReviewIssue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("IncrementalReview")
+class IncrementalReviewTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final IncrementalReview incrementalReview = new IncrementalReview(objectMapper);
+
+    private static final String PREVIOUS_OUTPUT = """
+            {"extracted_records":[
+              {"id":1,"firstName":"Max","lastName":"Mueller","reason":"a","isCsm":true},
+              {"id":2,"firstName":"Eva","lastName":"Klein","reason":"b","isCsm":true},
+              {"id":3,"firstName":"Jan","lastName":"Roth","reason":"c","isCsm":false},
+              {"id":4,"firstName":"Tom","lastName":"Berg","reason":"d","isCsm":false}]}
+            """;
+
+    private static final String PREVIOUS_REVIEW = """
+            {"issues":[
+              {"ruleId":"L4","severity":"minor","personId":1,"description":"Title Case"},
+              {"ruleId":"C8","severity":"critical","personId":2,"description":"Eva Klein resigned"},
+              {"ruleId":"RC2","severity":"critical","personId":null,"description":"Anna Weber missing"}],
+             "extraction_score":0.55}
+            """;
+
+    /** Eva Klein corrected, Anna Weber added, ids renumbered. */
+    private static final String REFINED_OUTPUT = """
+            {"extracted_records":[
+              {"id":1,"firstName":"Max","lastName":"Mueller","reason":"a","isCsm":true},
+              {"id":2,"firstName":"Anna","lastName":"Weber","reason":"e","isCsm":true},
+              {"id":3,"firstName":"Eva","lastName":"Klein","reason":"b2","isCsm":false},
+              {"id":4,"firstName":"Jan","lastName":"Roth","reason":"c","isCsm":false},
+              {"id":5,"firstName":"Tom","lastName":"Berg","reason":"d","isCsm":false}]}
+            """;
+
+    private static final String SOURCE = "x".repeat(5000) + " Vorstand: Eva Klein (ausgeschieden) "
+            + "y".repeat(5000) + " Anna Weber, Geschäftsführerin " + "z".repeat(5000);
+
+    @Test
+    @DisplayName("should carry forward verdicts for unchanged records and send only changed ones")
+    void diffsIterations() throws Exception {
+        IncrementalReview.Delta delta = incrementalReview.diff(
+                PREVIOUS_OUTPUT, PREVIOUS_REVIEW, REFINED_OUTPUT, SOURCE);
+
+        assertThat(delta.isIncremental()).isTrue();
+        assertThat(delta.changedCount()).isEqualTo(2);
+        assertThat(delta.carriedCount()).isEqualTo(1);
+        assertThat(objectMapper.readTree(delta.changedRecords()).path("extracted_records"))
+                .extracting(r -> r.path("lastName").asText()).containsExactly("Weber", "Klein");
+        assertThat(objectMapper.readTree(delta.openIssues()).path("issues"))
+                .extracting(i -> i.path("ruleId").asText()).containsExactly("RC2");
+
+        String excerpts = delta.sourceExcerpts();
+        assertThat(excerpts).contains("Eva Klein (ausgeschieden)", "Anna Weber, Geschäftsführerin");
+        assertThat(excerpts.length()).isLessThan(SOURCE.length() / 2);
+    }
+
+    @Test
+    @DisplayName("should remap carried issues to new ids and score in Java")
+    void mergesAndScores() throws Exception {
+        IncrementalReview.Delta delta = incrementalReview.diff(
+                PREVIOUS_OUTPUT, PREVIOUS_REVIEW, REFINED_OUTPUT, SOURCE);
+
+        JsonNode review = objectMapper.readTree(delta.merge("""
+                {"issues":[{"ruleId":"L4","severity":"minor","personId":2,"description":"Title Case"}]}
+                """));
+
+        assertThat(review.path("issues")).extracting(i -> i.path("personId").asInt())
+                .containsExactly(1, 2);
+        assertThat(review.path("extraction_score").asDouble()).isEqualTo(0.97);
+    }
+
+    @Test
+    @DisplayName("should score issues in the critic's severity bands")
+    void scoreBands() {
+        assertThat(IncrementalReview.score(List.of())).isEqualTo(1.0);
+        assertThat(IncrementalReview.score(List.of(issue("minor")))).isEqualTo(0.99);
+        assertThat(IncrementalReview.score(List.of(issue("major"), issue("minor")))).isEqualTo(0.83);
+        assertThat(IncrementalReview.score(List.of(issue("critical"), issue("critical")))).isEqualTo(0.59);
+    }
+
+    private static ReviewIssue issue(String severity) {
+        return new ReviewIssue("X", severity, null, "", "");
+    }
+}
@@ -0,0 +1,109 @@
+package com.eainde.agent.V2.chunk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("MappedDocument")
+class MappedDocumentTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String TEXT = IntStream.rangeClosed(1, 30)
+            .mapToObj(i -> "  Seite " + i + ": Geschäftsführer Jürgen Müller, 代表取締役 " + i + "  ")
+            .collect(Collectors.joining("\f"));
+
+    private Path write(String text) throws Exception {
+        Path file = tempDir.resolve("source.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    @DisplayName("should index pages on the mapped bytes and decode multi-byte text per page")
+    void indexesPages() throws Exception {
+        try (MappedDocument document = MappedDocument.open(write(TEXT))) {
+            PageIndex pages = document.indexPages(Pattern.compile("\\f"));
+
+            assertThat(pages.pageCount()).isEqualTo(30);
+            assertThat(pages.page(0).toString())
+                    .isEqualTo("Seite 1: Geschäftsführer Jürgen Müller, 代表取締役 1");
+            assertThat(pages.pages(28, 30).toString()).contains("\f").endsWith("代表取締役 30");
+        }
+    }
+
+    @Test
+    @DisplayName("should produce the same chunks as the in-memory path")
+    void chunksMatchStringPath() throws Exception {
+        DocumentChunker chunker = DocumentChunker.builder().pagesPerChunk(10).overlapPages(2).build();
+
+        List<ChunkContext> expected = chunker.chunk(TEXT);
+        try (MappedDocument document = MappedDocument.open(write(TEXT))) {
+            List<ChunkContext> actual = chunker.plan(document).chunks();
+
+            assertThat(actual).hasSameSizeAs(expected);
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(actual.get(i).pageStart()).isEqualTo(expected.get(i).pageStart());
+                assertThat(actual.get(i).pageEnd()).isEqualTo(expected.get(i).pageEnd());
+                assertThat(actual.get(i).estimatedTokens()).isEqualTo(expected.get(i).estimatedTokens());
+                assertThat(actual.get(i).chunkText().toString())
+                        .isEqualTo(expected.get(i).chunkText().toString());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should cut sub-views of selected mapped pages without decoding the rest")
+    void subSequenceOfSelectedPages() throws Exception {
+        try (MappedDocument document = MappedDocument.open(write(TEXT))) {
+            PageIndex pages = document.indexPages(Pattern.compile("\\f"));
+            CharSequence selection = pages.selectedPages(new int[]{0, 2, 3, 7}, 0, 4);
+            String expected = selection.toString();
+            int separator = expected.indexOf('\f');
+
+            assertThat(selection.length()).isEqualTo(expected.length());
+            for (int[] range : new int[][]{
+                    {5, 40}, {separator - 3, separator + 1}, {separator, separator + 6},
+                    {separator - 4, separator + 60}, {0, expected.length()}}) {
+                assertThat(selection.subSequence(range[0], range[1]).toString())
+                        .isEqualTo(expected.substring(range[0], range[1]));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should count tokens like the string path and skip a UTF-8 BOM")
+    void countsTokensAndSkipsBom() throws Exception {
+        TokenCounter counter = TokenCounter.wordHeuristic();
+
+        try (MappedDocument document = MappedDocument.open(write("\uFEFF" + TEXT))) {
+            assertThat(document.countTokens(counter)).isEqualTo(counter.count(TEXT));
+            assertThat(document.readString()).isEqualTo(TEXT);
+        }
+    }
+
+    @Test
+    @DisplayName("should spool a stream to a temp file and delete it on close")
+    void spoolsStream() throws Exception {
+        Path spooled;
+        try (MappedDocument document = MappedDocument.open(
+                new ByteArrayInputStream(TEXT.getBytes(StandardCharsets.UTF_8)))) {
+            spooled = document.path();
+            assertThat(spooled).exists();
+            assertThat(document.readString()).isEqualTo(TEXT);
+        }
+        assertThat(spooled).doesNotExist();
+    }
+}
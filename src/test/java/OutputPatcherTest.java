@@ -0,0 +1,91 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("OutputPatcher")
+class OutputPatcherTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OutputPatcher patcher = new OutputPatcher(objectMapper);
+
+    private static final String FINAL_OUTPUT = """
+            {"extracted_records":[
+              {"id":1,"firstName":"Max","lastName":"Mueller","documentName":"Registry.pdf",
+               "pageNumber":2,"reason":"Director = included — included. (MODE: ALL)","isCsm":true},
+              {"id":2,"firstName":"Eva","lastName":"Klein","documentName":"Registry.pdf",
+               "pageNumber":3,"reason":"Director = included — included. (MODE: ALL)","isCsm":true},
+              {"id":3,"firstName":"Jan","lastName":"Roth","documentName":"Registry.pdf",
+               "pageNumber":4,"reason":"Prokurist — excluded. (MODE: ALL)","isCsm":false,"jobTitle":""}]}
+            """;
+
+    private static final String ENRICHED = """
+            {"enriched_candidates":[
+              {"id":1,"firstName":"Max","lastName":"Mueller"},
+              {"id":2,"firstName":"Eva","lastName":"Klein","governanceBasis":"Former director"},
+              {"id":3,"firstName":"Jan","lastName":"Roth"}]}
+            """;
+
+    @Test
+    @DisplayName("should send only flagged records and their candidates to the model")
+    void preparesFlaggedRecordsOnly() throws Exception {
+        String review = """
+                {"issues":[
+                  {"ruleId":"C8","severity":"critical","personId":2,"description":"Eva Klein resigned"},
+                  {"ruleId":"J3","severity":"minor","personId":3,"description":"jobTitle is empty string"}],
+                 "extraction_score":0.6}
+                """;
+
+        OutputPatcher.PatchRequest request = patcher.prepare(FINAL_OUTPUT, review, ENRICHED);
+
+        assertThat(request.needsModel()).isTrue();
+        assertThat(request.flaggedCount()).isEqualTo(1);
+        assertThat(request.issueCount()).isEqualTo(1);
+        assertThat(objectMapper.readTree(request.flaggedRecords()).path("extracted_records"))
+                .extracting(r -> r.path("lastName").asText()).containsExactly("Klein");
+        assertThat(objectMapper.readTree(request.referenceCandidates()).path("enriched_candidates"))
+                .extracting(c -> c.path("id").asInt()).containsExactly(2);
+    }
+
+    @Test
+    @DisplayName("should fix schema-only issues without a model call")
+    void formatsSchemaIssuesInJava() throws Exception {
+        String review = """
+                {"issues":[{"ruleId":"J3","severity":"minor","personId":3,"description":"empty jobTitle"}],
+                 "extraction_score":0.9}
+                """;
+
+        OutputPatcher.PatchRequest request = patcher.prepare(FINAL_OUTPUT, review, ENRICHED);
+        JsonNode records = objectMapper.readTree(patcher.apply(FINAL_OUTPUT, null, "Registry.pdf"))
+                .path("extracted_records");
+
+        assertThat(request.needsModel()).isFalse();
+        assertThat(records).hasSize(3);
+        assertThat(records.get(2).path("jobTitle").isNull()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should apply update and add patches, then reorder and renumber")
+    void appliesPatches() throws Exception {
+        String patches = """
+                {"patches":[
+                  {"op":"update","id":2,"fields":{"isCsm":false,"reason":"Former director — excluded.","id":9}},
+                  {"op":"add","record":{"firstName":"Anna","lastName":"Weber","documentName":"Registry.pdf",
+                                        "pageNumber":5,"reason":"Director = included — included.","isCsm":true}},
+                  {"op":"delete","id":1}]}
+                """;
+
+        JsonNode records = objectMapper.readTree(patcher.apply(FINAL_OUTPUT, patches, "Registry.pdf"))
+                .path("extracted_records");
+
+        assertThat(records).extracting(r -> r.path("lastName").asText())
+                .containsExactly("Mueller", "Weber", "Klein", "Roth");
+        assertThat(records).extracting(r -> r.path("id").asInt()).containsExactly(1, 2, 3, 4);
+        assertThat(records.get(2).path("isCsm").asBoolean()).isFalse();
+        assertThat(records.get(2).path("reason").asText()).isEqualTo("Former director — excluded.");
+    }
+}
@@ -0,0 +1,53 @@
+package com.eainde.agent.engine;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ResponseCache")
+class ResponseCacheTest {
+
+    private static final String TEN_BYTES = "0123456789";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("should serve from memory, then from disk after a restart")
+    void servesFromBothTiers() {
+        ResponseCache cache = new ResponseCache(dir, 1024, 8);
+        cache.put("a", TEN_BYTES);
+
+        assertThat(cache.get("a")).contains(TEN_BYTES);
+        assertThat(cache.get("b")).isEmpty();
+        assertThat(cache.stats().memoryHits()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(1);
+
+        ResponseCache restarted = new ResponseCache(dir, 1024, 8);
+        assertThat(restarted.get("a")).contains(TEN_BYTES);
+        assertThat(restarted.stats().diskHits()).isEqualTo(1);
+        assertThat(restarted.stats().hitRate()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used entry once over the disk budget")
+    void evictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(dir, 25, 0);
+        cache.put("a", TEN_BYTES);
+        cache.put("b", TEN_BYTES);
+        cache.get("a");
+
+        cache.put("c", TEN_BYTES);
+
+        assertThat(cache.get("b")).isEmpty();
+        assertThat(cache.get("a")).contains(TEN_BYTES);
+        assertThat(cache.get("c")).contains(TEN_BYTES);
+        assertThat(cache.stats().evictions()).isEqualTo(1);
+        assertThat(cache.stats().diskBytes()).isEqualTo(20);
+        assertThat(dir.resolve("b.json")).doesNotExist();
+    }
+}
@@ -0,0 +1,99 @@
+package com.eainde.agent.engine;
+
+import com.db.clm.kyc.ai.model.ScoreBreakdown;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ScoringEngine")
+class ScoringEngineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScoringEngine engine = new ScoringEngine(objectMapper);
+
+    private JsonNode candidate(String json) throws Exception {
+        return objectMapper.readTree(json);
+    }
+
+    @Test
+    @DisplayName("should score an executive board member on two sources at full multiplier")
+    void scoresExecutiveBoardMember() throws Exception {
+        ScoreBreakdown breakdown = engine.breakdown(candidate("""
+                {"id":1,"firstName":"Max","lastName":"Mueller","documentName":"Registry.pdf","pageNumber":2,
+                 "roleHints":["Geschäftsführer"],"isCsm":true,
+                 "governanceBasis":"Member, Management Board (executive) = included",
+                 "temporalStatus":"current","signatoryType":"unknown","sourceClass":"H1",
+                 "conflictTag":"C: clear","attributeGaps":[],
+                 "allOccurrences":[{"documentName":"Registry.pdf","sourceClass":"H2"},
+                                   {"documentName":"AoA.pdf","sourceClass":"H1"}]}
+                """));
+
+        assertThat(breakdown.positiveSignals()).containsExactly(
+                "+0.55 Executive Board", "+0.10 Local-language title",
+                "+0.05 H1 source", "+0.03 Multi-source consensus");
+        assertThat(breakdown.negativeSignals()).isEmpty();
+        assertThat(breakdown.consensusMultiplier()).isEqualTo(1.00);
+        assertThat(breakdown.baseScore()).isEqualTo(0.73);
+        assertThat(breakdown.finalScore()).isEqualTo(0.73);
+    }
+
+    @Test
+    @DisplayName("should not read a non-executive role as an executive board")
+    void scoresNonExecutiveOnly() throws Exception {
+        ScoreBreakdown breakdown = engine.breakdown(candidate("""
+                {"id":2,"governanceBasis":"Member, non-executive board = included",
+                 "temporalStatus":"current","sourceClass":"H2","conflictTag":"C: unresolved",
+                 "attributeGaps":["DoB"]}
+                """));
+
+        assertThat(breakdown.positiveSignals()).containsExactly("+0.45 Non-executive / supervisory board");
+        assertThat(breakdown.negativeSignals()).containsExactly(
+                "-0.30 Non-executive only", "-0.10 Conflict unresolved", "-0.05 Missing attributes");
+        // 0.45 - 0.45 = 0.00
+        assertThat(breakdown.baseScore()).isEqualTo(0.00);
+        assertThat(breakdown.finalScore()).isEqualTo(0.00);
+    }
+
+    @Test
+    @DisplayName("should apply the H4 multiplier and round half up")
+    void appliesH4Multiplier() throws Exception {
+        ScoreBreakdown breakdown = engine.breakdown(candidate("""
+                {"id":3,"governanceBasis":"General partner = included","sourceClass":"H4",
+                 "temporalStatus":"former","attributeGaps":[]}
+                """));
+
+        // 0.40 - 0.20 - 0.15 = 0.05; 0.05 × 0.60 = 0.03
+        assertThat(breakdown.consensusMultiplier()).isEqualTo(0.60);
+        assertThat(breakdown.baseScore()).isEqualTo(0.05);
+        assertThat(breakdown.finalScore()).isEqualTo(0.03);
+    }
+
+    @Test
+    @DisplayName("should write scored_candidates with quality gate notes")
+    void writesScoredCandidates() throws Exception {
+        String classified = """
+                {"classified_candidates":[
+                  {"id":7,"firstName":"Eva","lastName":"Klein","documentName":"Registry.pdf","pageNumber":0,
+                   "isCsm":true,"governanceBasis":null,"temporalStatus":"retired","sourceClass":"H2"}]}
+                """;
+
+        JsonNode scored = objectMapper.readTree(engine.scoreAll(classified)).path("scored_candidates");
+
+        assertThat(scored).hasSize(1);
+        assertThat(scored.get(0).path("id").asInt()).isEqualTo(7);
+        assertThat(scored.get(0).path("score").asDouble()).isEqualTo(0.00);
+        assertThat(scored.get(0).path("scoreBreakdown").path("consensusMultiplier").asDouble()).isEqualTo(0.85);
+        assertThat(scored.get(0).path("qualityGateNotes")).extracting(JsonNode::asText).containsExactly(
+                "QG3: pageNumber missing or invalid",
+                "QG4: isCsm=true without governanceBasis",
+                "QG5: invalid temporalStatus \"retired\"",
+                "QG7: DoB not evidenced",
+                "QG7: nationality not evidenced",
+                "QG7: address not evidenced",
+                "QG9: no positive signal evidenced",
+                "QG10: score 0.00 below 0.30 with isCsm=true — analyst review");
+    }
+}
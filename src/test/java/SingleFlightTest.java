@@ -0,0 +1,83 @@
+package com.eainde.agent.thread;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("SingleFlight")
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> inFlight = new SingleFlight<>();
+
+    @Test
+    @DisplayName("should run concurrent calls for one key once and share the result")
+    void coalescesConcurrentCalls() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<String>> callers = IntStream.range(0, 8)
+                .mapToObj(i -> inFlight.submit("prompt", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return "response";
+                }))
+                .toList();
+        release.countDown();
+
+        for (CompletableFuture<String> caller : callers) {
+            assertThat(caller.get(5, TimeUnit.SECONDS)).isEqualTo("response");
+        }
+        assertThat(executions).hasValue(1);
+        assertThat(inFlight.stats()).isEqualTo(new SingleFlight.Stats(1, 7));
+        assertThat(inFlight.call("prompt", () -> "again")).isEqualTo("again");
+    }
+
+    @Test
+    @DisplayName("should cancel the work only when the last caller cancels")
+    void cancelsWhenLastCallerLeaves() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> first = inFlight.submit("prompt", () -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "late";
+        });
+        CompletableFuture<String> second = inFlight.submit("prompt", () -> "unused");
+
+        first.cancel(true);
+        assertThat(interrupted.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(second).isNotDone();
+
+        second.cancel(true);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    @DisplayName("should rethrow the failure to every caller, unwrapped")
+    void propagatesFailure() {
+        assertThatThrownBy(() -> inFlight.call("prompt", () -> {
+            throw new IllegalStateException("quota exceeded");
+        }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("quota exceeded");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
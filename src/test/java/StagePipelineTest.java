@@ -0,0 +1,109 @@
+package com.eainde.agent.thread;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("StagePipeline")
+class StagePipelineTest {
+
+    private static final List<Integer> EIGHT = IntStream.range(0, 8).boxed().toList();
+
+    @Test
+    @DisplayName("should apply every stage and return results in item order")
+    void appliesStagesInOrder() {
+        List<Integer> completed = new CopyOnWriteArrayList<>();
+        StagePipeline<Integer> pipeline = StagePipeline.<Integer>builder()
+                .stage("double", 4, i -> {
+                    sleep(5L * (8 - i));   // first items finish last
+                    return i * 2;
+                })
+                .stage("increment", 2, i -> i + 1)
+                .build();
+
+        List<Integer> results = pipeline.run(EIGHT, (index, result) -> completed.add(index));
+
+        assertThat(results).containsExactly(1, 3, 5, 7, 9, 11, 13, 15);
+        assertThat(completed).containsExactlyInAnyOrderElementsOf(EIGHT);
+    }
+
+    @Test
+    @DisplayName("should start the next stage of one item while later items are in earlier stages")
+    void overlapsStages() {
+        Map<String, Long> firstEnd = new ConcurrentHashMap<>();
+        Map<String, Long> lastStart = new ConcurrentHashMap<>();
+        StagePipeline<Integer> pipeline = StagePipeline.<Integer>builder()
+                .stage("classify", 1, i -> {
+                    lastStart.put("classify", System.nanoTime());
+                    sleep(20);
+                    return i;
+                })
+                .stage("wave5", 1, i -> {
+                    firstEnd.putIfAbsent("wave5", System.nanoTime());
+                    return i;
+                })
+                .build();
+
+        pipeline.run(EIGHT, (index, result) -> { });
+
+        // Item 0 left the pipeline before the last item entered "classify"
+        assertThat(firstEnd.get("wave5")).isLessThan(lastStart.get("classify"));
+    }
+
+    @Test
+    @DisplayName("should hold back earlier stages when a queue is full")
+    void boundsItemsInFlight() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        StagePipeline<Integer> pipeline = StagePipeline.<Integer>builder()
+                .queueCapacity(1)
+                .stage("fast", 1, i -> {
+                    maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    return i;
+                })
+                .stage("slow", 1, i -> {
+                    sleep(10);
+                    inFlight.decrementAndGet();
+                    return i;
+                })
+                .build();
+
+        pipeline.run(EIGHT, (index, result) -> { });
+
+        // one in "slow", one queued in front of it, one in "fast" blocked on the queue
+        assertThat(maxSeen.get()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("should rethrow a stage failure unwrapped")
+    void propagatesFailure() {
+        StagePipeline<Integer> pipeline = StagePipeline.<Integer>builder()
+                .stage("classify", 2, i -> {
+                    if (i == 5) throw new IllegalStateException("batch 5 failed");
+                    return i;
+                })
+                .stage("merge", 1, i -> i)
+                .build();
+
+        assertThatThrownBy(() -> pipeline.run(EIGHT, (index, result) -> { }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("batch 5 failed");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.eainde.agent.mapper_reducer_u;
+
+import com.db.clm.kyc.ai.chunking.ChunkContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("StreamingChunkMerger")
+class StreamingChunkMergerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** Chunk 0: pages 1-20; chunk 1: pages 16-35 (overlap 16-20); chunk 2: pages 31-50 (overlap 31-35). */
+    private static ChunkContext chunk(int index) {
+        return switch (index) {
+            case 0 -> new ChunkContext(0, 1, 20, -1, -1, "", 3, 0);
+            case 1 -> new ChunkContext(1, 16, 35, 16, 20, "", 3, 0);
+            default -> new ChunkContext(2, 31, 50, 31, 35, "", 3, 0);
+        };
+    }
+
+    private static CsmPipelineOrchestrator.ChunkOutput output(int index, String... candidates) {
+        return new CsmPipelineOrchestrator.ChunkOutput(chunk(index), "{}", "{}",
+                "{\"normalized_candidates\":[" + String.join(",", candidates) + "]}");
+    }
+
+    private static String candidate(String dedupKey, int pageNumber) {
+        return "{\"dedupKey\":\"" + dedupKey + "\",\"pageNumber\":" + pageNumber + "}";
+    }
+
+    private StreamingChunkMerger merger() {
+        return new StreamingChunkMerger(objectMapper, 3, out -> out.normalizedCandidates());
+    }
+
+    private List<String> keys(CsmPipelineOrchestrator.ChunkOutput output) throws Exception {
+        return objectMapper.readTree(output.normalizedCandidates()).path("normalized_candidates")
+                .findValuesAsText("dedupKey");
+    }
+
+    @Test
+    @DisplayName("should drop a duplicate only when both mentions sit on the shared pages")
+    void dedupsOverlapPagesOnly() throws Exception {
+        StreamingChunkMerger merger = merger();
+
+        merger.accept(output(0,
+                candidate("mueller|hans", 18),      // shared page 18
+                candidate("schmidt|anna", 3)));     // page 3 — not shared with chunk 1
+        merger.accept(output(1,
+                candidate("mueller|hans", 18),      // duplicate on the shared page → dropped
+                candidate("schmidt|anna", 17),      // same key, but chunk 0's mention is on page 3 → kept
+                candidate("mueller|hans", 28)));    // outside the overlap zone → kept
+        merger.accept(output(2));
+
+        List<CsmPipelineOrchestrator.ChunkOutput> outputs = merger.outputs();
+        assertThat(keys(outputs.get(0))).containsExactly("mueller|hans", "schmidt|anna");
+        assertThat(keys(outputs.get(1))).containsExactly("schmidt|anna", "mueller|hans");
+        assertThat(merger.overlapDuplicates()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should give the same result in chunk order whatever order chunks complete in")
+    void independentOfCompletionOrder() {
+        StreamingChunkMerger inOrder = merger();
+        StreamingChunkMerger reversed = merger();
+        List<CsmPipelineOrchestrator.ChunkOutput> outputs = List.of(
+                output(0, candidate("a", 17)),
+                output(1, candidate("a", 17), candidate("b", 33)),
+                output(2, candidate("b", 33), candidate("c", 40)));
+
+        outputs.forEach(inOrder::accept);
+        for (int i = outputs.size() - 1; i >= 0; i--) {
+            reversed.accept(outputs.get(i));
+        }
+
+        assertThat(reversed.chunkResultsJson()).isEqualTo(inOrder.chunkResultsJson());
+        assertThat(inOrder.chunkResultsJson()).isEqualTo("{\"chunks\":["
+                + "{\"normalized_candidates\":[{\"dedupKey\":\"a\",\"pageNumber\":17}]},"
+                + "{\"normalized_candidates\":[{\"dedupKey\":\"b\",\"pageNumber\":33}]},"
+                + "{\"normalized_candidates\":[{\"dedupKey\":\"c\",\"pageNumber\":40}]}]}");
+        assertThat(inOrder.overlapDuplicates()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,77 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("TailAssembler")
+class TailAssemblerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TailAssembler assembler = new TailAssembler(objectMapper);
+
+    @Test
+    @DisplayName("should assemble the R2 reason in canonical order")
+    void assemblesCanonicalReason() throws Exception {
+        JsonNode candidate = objectMapper.readTree("""
+                {"id":1,"governanceBasis":"Member, Management Board (executive) = included",
+                 "documentName":"Registry.pdf","sourceDate":"2025-03-10","sourceClass":"H2",
+                 "conflictTag":"C: clear","isCsm":true,
+                 "countryOverrideNote":"Geschäftsführer = executive per CP-DE",
+                 "score":0.65,"qualityGateNotes":["QG7: DoB not evidenced"]}
+                """);
+
+        assertThat(assembler.reason(candidate)).isEqualTo(
+                "Member, Management Board (executive) = included — Registry (2025-03-10) prevails."
+                        + " (H2)(R: 2025-03-10)(C: clear)"
+                        + " Country profile: Geschäftsführer = executive per CP-DE."
+                        + " Attribute completeness gap — DoB not evidenced — no impact."
+                        + " — included. (MODE: ALL) (Score: 0.65)");
+    }
+
+    @Test
+    @DisplayName("should order CSMs first by document reading order and renumber ids")
+    void ordersAndRenumbers() throws Exception {
+        String enriched = """
+                {"enriched_candidates":[
+                  {"id":1,"firstName":"Eva","lastName":"Klein","middleName":"","documentName":"AoA.pdf",
+                   "pageNumber":3,"isCsm":true,"governanceBasis":"Director = included"},
+                  {"id":2,"firstName":"Jan","lastName":"Roth","documentName":"Registry.pdf",
+                   "pageNumber":0,"isCsm":false,"jobTitle":""},
+                  {"id":3,"firstName":"Max","lastName":"Mueller","documentName":"Registry.pdf",
+                   "pageNumber":2,"isCsm":true,"reason":"kept verbatim"}]}
+                """;
+
+        JsonNode records = objectMapper.readTree(assembler.assemble(enriched, "Registry.pdf, AoA.pdf"))
+                .path("extracted_records");
+
+        assertThat(records).hasSize(3);
+        assertThat(records).extracting(r -> r.path("lastName").asText())
+                .containsExactly("Mueller", "Klein", "Roth");
+        assertThat(records).extracting(r -> r.path("id").asInt()).containsExactly(1, 2, 3);
+        assertThat(records.get(0).path("reason").asText()).isEqualTo("kept verbatim");
+        assertThat(records.get(1).path("middleName").isNull()).isTrue();
+        assertThat(records.get(2).path("jobTitle").isNull()).isTrue();
+        assertThat(records.get(2).path("pageNumber").asInt()).isEqualTo(1);
+        assertThat(records.get(2).path("isCsm").asBoolean()).isFalse();
+        assertThat(records.get(2).path("reason").asText()).endsWith("— excluded. (MODE: ALL)");
+    }
+
+    @Test
+    @DisplayName("should order candidates of one document by id, not page")
+    void ordersWithinDocumentById() throws Exception {
+        String enriched = """
+                {"enriched_candidates":[
+                  {"id":2,"firstName":"Jan","lastName":"Roth","documentName":"AoA.pdf","pageNumber":1,"isCsm":true},
+                  {"id":1,"firstName":"Eva","lastName":"Klein","documentName":"AoA.pdf","pageNumber":9,"isCsm":true}]}
+                """;
+
+        JsonNode records = objectMapper.readTree(assembler.assemble(enriched, "AoA.pdf"))
+                .path("extracted_records");
+
+        assertThat(records).extracting(r -> r.path("lastName").asText()).containsExactly("Klein", "Roth");
+    }
+}
@@ -0,0 +1,63 @@
+package com.eainde.agent.V2.chunk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("TokenCounter")
+class TokenCounterTest {
+
+    @Test
+    @DisplayName("word heuristic should match the split-based estimate")
+    void wordHeuristicMatchesSplit() {
+        String text = "Member of the Management Board\f(Vorstand)  Hans   Müller\n";
+        int words = text.strip().split("\\s+").length;
+
+        assertThat(TokenCounter.wordHeuristic().count(text))
+                .isEqualTo((int) Math.ceil(words / 0.75));
+    }
+
+    @Test
+    @DisplayName("word heuristic should return 0 for null and blank text")
+    void wordHeuristicBlank() {
+        assertThat(TokenCounter.wordHeuristic().count(null)).isZero();
+        assertThat(TokenCounter.wordHeuristic().count("  \n\f ")).isZero();
+    }
+
+    @Test
+    @DisplayName("range count should only scan the given window")
+    void rangeCount() {
+        String text = "one two three four";
+
+        assertThat(TokenCounter.wordHeuristic().count(text, 0, 7))
+                .isEqualTo((int) Math.ceil(2 / 0.75));
+    }
+
+    @Test
+    @DisplayName("forModel should fall back to the word heuristic when blank")
+    void forModelBlank() {
+        assertThat(TokenCounter.forModel("")).isSameAs(TokenCounter.wordHeuristic());
+        assertThat(TokenCounter.forModel(null)).isSameAs(TokenCounter.wordHeuristic());
+    }
+
+    @Test
+    @DisplayName("BPE estimator should charge CJK text per character")
+    void bpeCountsCjk() {
+        TokenCounter counter = TokenCounter.forModel("gemini-2.5-pro");
+        String japanese = "代表取締役社長山田太郎";
+
+        // No whitespace: the word heuristic sees a single word
+        assertThat(TokenCounter.wordHeuristic().count(japanese)).isEqualTo(2);
+        assertThat(counter.count(japanese)).isGreaterThanOrEqualTo(japanese.length() - 2);
+    }
+
+    @Test
+    @DisplayName("BPE estimator should split long Latin words into several pieces")
+    void bpeSplitsLongWords() {
+        TokenCounter counter = TokenCounter.forModel("gpt-4o");
+
+        assertThat(counter.count("Geschäftsführer")).isGreaterThan(1);
+        assertThat(counter.count("CEO")).isEqualTo(1);
+    }
+}
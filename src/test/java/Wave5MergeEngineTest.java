@@ -0,0 +1,115 @@
+package com.eainde.agent.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Wave5MergeEngine")
+class Wave5MergeEngineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Wave5MergeEngine engine = new Wave5MergeEngine(objectMapper);
+
+    @Test
+    @DisplayName("should overlay each agent's fields by dense id")
+    void overlaysByDenseId() throws Exception {
+        JsonNode enriched = merge("""
+                {"classified_candidates": [
+                  {"id": 1, "lastName": "Meyer", "isCsm": false},
+                  {"id": 2, "lastName": "Roth",  "isCsm": false},
+                  {"id": 3, "lastName": "Vogel", "isCsm": true}]}""",
+                """
+                {"country_overrides": [{"id": 2, "isCsm": true, "countryProfileApplied": "DE"}]}""",
+                """
+                {"title_extractions": [{"id": 1, "jobTitle": "Director"}, {"id": 3, "jobTitle": null}]}""",
+                """
+                {"scored_candidates": [{"id": 3, "score": 90}, {"id": 1, "score": 70}, {"id": 2, "score": 80}]}""");
+
+        assertThat(enriched).hasSize(3);
+        assertThat(enriched.get(0).get("jobTitle").asText()).isEqualTo("Director");
+        assertThat(enriched.get(1).get("isCsm").asBoolean()).isTrue();
+        assertThat(enriched.get(1).get("countryProfileApplied").asText()).isEqualTo("DE");
+        assertThat(enriched.get(2).has("jobTitle")).isFalse();
+        assertThat(enriched.findValues("score").stream().map(JsonNode::asInt).toList())
+                .containsExactly(70, 80, 90);
+    }
+
+    @Test
+    @DisplayName("should match sparse ids through the hash index")
+    void overlaysBySparseId() throws Exception {
+        JsonNode enriched = merge("""
+                {"classified_candidates": [{"id": 70000, "lastName": "Meyer"}, {"id": -4, "lastName": "Roth"}]}""",
+                "{}", "{}",
+                """
+                {"scored_candidates": [{"id": -4, "score": 40}, {"id": 70000, "score": 95}]}""");
+
+        assertThat(enriched.get(0).get("score").asInt()).isEqualTo(95);
+        assertThat(enriched.get(1).get("score").asInt()).isEqualTo(40);
+    }
+
+    @Test
+    @DisplayName("should resolve a duplicated overlay id to its first record")
+    void firstRecordWinsForDuplicateIds() throws Exception {
+        String classified = """
+                {"classified_candidates": [{"id": 1, "lastName": "Meyer"}, {"id": 50000, "lastName": "Roth"}]}""";
+        String titles = """
+                {"title_extractions": [
+                  {"id": 1, "jobTitle": "Director"},     {"id": 1, "jobTitle": "Secretary"},
+                  {"id": 50000, "jobTitle": "Chairman"}, {"id": 50000, "jobTitle": "Treasurer"}]}""";
+
+        JsonNode enriched = merge(classified, "{}", titles, "{}");
+
+        assertThat(enriched.get(0).get("jobTitle").asText()).isEqualTo("Director");
+        assertThat(enriched.get(1).get("jobTitle").asText()).isEqualTo("Chairman");
+    }
+
+    @Test
+    @DisplayName("should match a candidate without an id as its position + 1")
+    void missingIdMatchesIndexPlusOne() throws Exception {
+        JsonNode enriched = merge("""
+                {"classified_candidates": [{"lastName": "Meyer"}, {"lastName": "Roth"}]}""",
+                "{}", "{}",
+                """
+                {"scored_candidates": [{"id": 2, "score": 80}, {"id": 1, "score": 70}]}""");
+
+        assertThat(enriched.get(0).get("score").asInt()).isEqualTo(70);
+        assertThat(enriched.get(1).get("score").asInt()).isEqualTo(80);
+        assertThat(enriched.get(0).has("id")).isFalse();
+    }
+
+    @Test
+    @DisplayName("should keep overlaid fields in place and append new fields in overlay order")
+    void preservesFieldOrder() throws Exception {
+        JsonNode enriched = merge("""
+                {"classified_candidates": [{"id": 1, "score": 0, "lastName": "Meyer", "isCsm": false}]}""",
+                """
+                {"country_overrides": [{"id": 1, "countryOverrideNote": "DE rule", "isCsm": true}]}""",
+                """
+                {"title_extractions": [{"id": 1, "anchorNote": "AN", "jobTitle": "Director"}]}""",
+                """
+                {"scored_candidates": [{"id": 1, "qualityGateNotes": "ok", "score": 85}]}""");
+
+        JsonNode candidate = enriched.get(0);
+        assertThat(fieldNames(candidate)).containsExactly(
+                "id", "score", "lastName", "isCsm",
+                "countryOverrideNote", "jobTitle", "anchorNote", "qualityGateNotes");
+        assertThat(candidate.get("score").asInt()).isEqualTo(85);
+        assertThat(candidate.get("isCsm").asBoolean()).isTrue();
+    }
+
+    private JsonNode merge(String classified, String country, String titles, String scores) throws Exception {
+        return objectMapper.readTree(engine.merge(classified, country, titles, scores)).get("enriched_candidates");
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+}
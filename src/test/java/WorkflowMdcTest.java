@@ -0,0 +1,48 @@
+package com.eainde.agent.thread;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("WorkflowMdc")
+class WorkflowMdcTest {
+
+    private static final String KEY = AdaptiveConcurrencyLimiter.WORKFLOW_MDC_KEY;
+
+    @AfterEach
+    void clearMdc() {
+        MDC.remove(KEY);
+    }
+
+    @Test
+    @DisplayName("should give a pipeline without a caller flowId its own and remove it afterwards")
+    void startsNewFlow() {
+        try (WorkflowMdc ignored = WorkflowMdc.join()) {
+            assertThat(MDC.get(KEY)).isNotBlank();
+        }
+        assertThat(MDC.get(KEY)).isNull();
+    }
+
+    @Test
+    @DisplayName("should keep the caller's flowId when joining")
+    void joinsCallerFlow() {
+        MDC.put(KEY, "flow-1");
+        try (WorkflowMdc ignored = WorkflowMdc.join()) {
+            assertThat(MDC.get(KEY)).isEqualTo("flow-1");
+        }
+        assertThat(MDC.get(KEY)).isEqualTo("flow-1");
+    }
+
+    @Test
+    @DisplayName("should restore the previous flowId after a nested run")
+    void restoresPreviousFlow() {
+        MDC.put(KEY, "outer");
+        try (WorkflowMdc ignored = WorkflowMdc.open("inner")) {
+            assertThat(MDC.get(KEY)).isEqualTo("inner");
+        }
+        assertThat(MDC.get(KEY)).isEqualTo("outer");
+    }
+}